@@ -3,7 +3,7 @@ package core;
 public class AES {
 
     //S-box
-    private static final int[] SBOX = {
+    static final int[] SBOX = {
             0x63, 0x7c, 0x77, 0x7b, 0xf2, 0x6b, 0x6f, 0xc5, 0x30, 0x01, 0x67, 0x2b, 0xfe, 0xd7, 0xab, 0x76,
             0xca, 0x82, 0xc9, 0x7d, 0xfa, 0x59, 0x47, 0xf0, 0xad, 0xd4, 0xa2, 0xaf, 0x9c, 0xa4, 0x72, 0xc0,
             0xb7, 0xfd, 0x93, 0x26, 0x36, 0x3f, 0xf7, 0xcc, 0x34, 0xa5, 0xe5, 0xf1, 0x71, 0xd8, 0x31, 0x15,
@@ -23,7 +23,7 @@ public class AES {
     };
 
     // Inverse S-box for decryption
-    private static final int[] INV_SBOX = {
+    static final int[] INV_SBOX = {
             0x52, 0x09, 0x6a, 0xd5, 0x30, 0x36, 0xa5, 0x38, 0xbf, 0x40, 0xa3, 0x9e, 0x81, 0xf3, 0xd7, 0xfb,
             0x7c, 0xe3, 0x39, 0x82, 0x9b, 0x2f, 0xff, 0x87, 0x34, 0x8e, 0x43, 0x44, 0xc4, 0xde, 0xe9, 0xcb,
             0x54, 0x7b, 0x94, 0x32, 0xa6, 0xc2, 0x23, 0x3d, 0xee, 0x4c, 0x95, 0x0b, 0x42, 0xfa, 0xc3, 0x4e,
@@ -48,18 +48,74 @@ public class AES {
             0x80, 0x1b, 0x36, 0x6c, 0xd8, 0xab, 0x4d, 0x9a
     };
 
-    private byte[] expandedKey;
-    private int rounds;
+    // Encryption tables: TE0[x] = (02, 01, 01, 03) * SBOX[x] as a big-endian word,
+    // TE1..TE3 are TE0 rotated right by 8, 16 and 24 bits
+    static final int[] TE0 = new int[256];
+    static final int[] TE1 = new int[256];
+    static final int[] TE2 = new int[256];
+    static final int[] TE3 = new int[256];
+
+    // Decryption tables: TD0[x] = (0e, 09, 0d, 0b) * INV_SBOX[x] as a big-endian word,
+    // TD1..TD3 are TD0 rotated right by 8, 16 and 24 bits
+    static final int[] TD0 = new int[256];
+    static final int[] TD1 = new int[256];
+    static final int[] TD2 = new int[256];
+    static final int[] TD3 = new int[256];
+
+    static {
+        for (int x = 0; x < 256; x++) {
+            int s = SBOX[x];
+            int word = (gfMul(0x02, s) << 24) | (s << 16) | (s << 8) | gfMul(0x03, s);
+            TE0[x] = word;
+            TE1[x] = Integer.rotateRight(word, 8);
+            TE2[x] = Integer.rotateRight(word, 16);
+            TE3[x] = Integer.rotateRight(word, 24);
+
+            s = INV_SBOX[x];
+            word = (gfMul(0x0e, s) << 24) | (gfMul(0x09, s) << 16) | (gfMul(0x0d, s) << 8) | gfMul(0x0b, s);
+            TD0[x] = word;
+            TD1[x] = Integer.rotateRight(word, 8);
+            TD2[x] = Integer.rotateRight(word, 16);
+            TD3[x] = Integer.rotateRight(word, 24);
+        }
+    }
+
+    private final KeySize keySize;
+    private final int rounds;
+
+    // Round keys as big-endian words, 4 per round
+    private final int[] encryptionKey;
+
+    // Round keys for the equivalent inverse cipher (FIPS-197 5.3.5):
+    // reverse round order, InvMixColumns applied to rounds 1..Nr-1
+    // Derived on first decrypt, so encrypt-only instances never pay for it
+    private volatile int[] decryptionKey;
 
     /**
      * Initializes AES with a key
+     * The instance is an immutable prepared key: expand once, then reuse it
+     * for any number of blocks and messages, from any number of threads
      */
     public AES(byte[] key, KeySize keySize)
     {
         if (key.length != keySize.getBytesAmount()) throw new IllegalArgumentException("Incorrect key size");
 
-        this.expandedKey = expandKey(key, keySize);
+        this.keySize = keySize;
         this.rounds = keySize.getRounds();
+        this.encryptionKey = expandKey(key, keySize);
+    }
+
+    /**
+     * For subclasses that keep their round keys elsewhere and override encrypt/decrypt
+     */
+    AES(KeySize keySize) {
+        this.keySize = keySize;
+        this.rounds = keySize.getRounds();
+        this.encryptionKey = null;
+    }
+
+    public KeySize getKeySize() {
+        return keySize;
     }
 
     /**
@@ -70,39 +126,43 @@ public class AES {
             throw new IllegalArgumentException("Block must be 16 bytes");
         }
 
-        // Copy plaintext to state (column-major order)
-        byte[][] state = new byte[4][4];
-        for (int i = 0; i < 4; i++) {
-            for (int j = 0; j < 4; j++) {
-                state[j][i] = plaintext[i * 4 + j];
-            }
-        }
+        byte[] ciphertext = new byte[16];
+        encrypt(plaintext, 0, ciphertext, 0);
+        return ciphertext;
+    }
+
+    /**
+     * Encrypt the 16-byte block at in[inOffset] into out[outOffset]
+     * in and out may be the same array (in-place encryption)
+     */
+    public void encrypt(byte[] in, int inOffset, byte[] out, int outOffset) {
+        int[] rk = encryptionKey;
 
         // Initial round - just AddRoundKey
-        addRoundKey(state, 0);
+        int s0 = bytesToWord(in, inOffset) ^ rk[0];
+        int s1 = bytesToWord(in, inOffset + 4) ^ rk[1];
+        int s2 = bytesToWord(in, inOffset + 8) ^ rk[2];
+        int s3 = bytesToWord(in, inOffset + 12) ^ rk[3];
 
-        // Main rounds (rounds - 1)
+        // Main rounds: ShiftRows picks the bytes, TE tables do SubBytes + MixColumns
+        int k = 4;
         for (int round = 1; round < rounds; round++) {
-            subBytes(state);
-            shiftRows(state);
-            mixColumns(state);
-            addRoundKey(state, round);
+            int t0 = TE0[s0 >>> 24] ^ TE1[(s1 >>> 16) & 0xFF] ^ TE2[(s2 >>> 8) & 0xFF] ^ TE3[s3 & 0xFF] ^ rk[k];
+            int t1 = TE0[s1 >>> 24] ^ TE1[(s2 >>> 16) & 0xFF] ^ TE2[(s3 >>> 8) & 0xFF] ^ TE3[s0 & 0xFF] ^ rk[k + 1];
+            int t2 = TE0[s2 >>> 24] ^ TE1[(s3 >>> 16) & 0xFF] ^ TE2[(s0 >>> 8) & 0xFF] ^ TE3[s1 & 0xFF] ^ rk[k + 2];
+            int t3 = TE0[s3 >>> 24] ^ TE1[(s0 >>> 16) & 0xFF] ^ TE2[(s1 >>> 8) & 0xFF] ^ TE3[s2 & 0xFF] ^ rk[k + 3];
+            s0 = t0;
+            s1 = t1;
+            s2 = t2;
+            s3 = t3;
+            k += 4;
         }
 
         // Final round (no MixColumns)
-        subBytes(state);
-        shiftRows(state);
-        addRoundKey(state, rounds);
-
-        // Convert state back to byte array
-        byte[] ciphertext = new byte[16];
-        for (int i = 0; i < 4; i++) {
-            for (int j = 0; j < 4; j++) {
-                ciphertext[i * 4 + j] = state[j][i];
-            }
-        }
-
-        return ciphertext;
+        wordToBytes(finalRound(s0, s1, s2, s3) ^ rk[k], out, outOffset);
+        wordToBytes(finalRound(s1, s2, s3, s0) ^ rk[k + 1], out, outOffset + 4);
+        wordToBytes(finalRound(s2, s3, s0, s1) ^ rk[k + 2], out, outOffset + 8);
+        wordToBytes(finalRound(s3, s0, s1, s2) ^ rk[k + 3], out, outOffset + 12);
     }
 
     /**
@@ -113,187 +173,108 @@ public class AES {
             throw new IllegalArgumentException("Block must be 16 bytes");
         }
 
-        // Copy ciphertext to state
-        byte[][] state = new byte[4][4];
-        for (int i = 0; i < 4; i++) {
-            for (int j = 0; j < 4; j++) {
-                state[j][i] = ciphertext[i * 4 + j];
-            }
-        }
-
-        // Initial round
-        addRoundKey(state, rounds);
-
-        // Main rounds (in reverse)
-        for (int round = rounds - 1; round >= 1; round--) {
-            invShiftRows(state);
-            invSubBytes(state);
-            addRoundKey(state, round);
-            invMixColumns(state);
-        }
-
-        // Final round
-        invShiftRows(state);
-        invSubBytes(state);
-        addRoundKey(state, 0);
-
-        // Convert state back to byte array
         byte[] plaintext = new byte[16];
-        for (int i = 0; i < 4; i++) {
-            for (int j = 0; j < 4; j++) {
-                plaintext[i * 4 + j] = state[j][i];
-            }
-        }
-
+        decrypt(ciphertext, 0, plaintext, 0);
         return plaintext;
     }
 
-    // ==================== ENCRYPTION OPERATIONS ====================
-
     /**
-     * SubBytes - substitute each byte using S-box
+     * Decrypt the 16-byte block at in[inOffset] into out[outOffset]
+     * Uses the equivalent inverse cipher: the same round structure as encryption,
+     * with InvSubBytes, InvShiftRows and InvMixColumns folded into the TD tables
+     * in and out may be the same array (in-place decryption)
      */
-    private void subBytes(byte[][] state) {
-        for (int i = 0; i < 4; i++) {
-            for (int j = 0; j < 4; j++) {
-                state[i][j] = (byte) SBOX[state[i][j] & 0xFF];
-            }
+    public void decrypt(byte[] in, int inOffset, byte[] out, int outOffset) {
+        int[] dk = decryptionKey;
+        if (dk == null) {
+            dk = expandDecryptionKey(encryptionKey, rounds);
+            decryptionKey = dk;
         }
-    }
 
-    /**
-     * Row 0: no shift
-     * Row 1: shift left by 1
-     * Row 2: shift left by 2
-     * Row 3: shift left by 3
-     */
+        // Initial round - AddRoundKey with the last encryption round key
+        int s0 = bytesToWord(in, inOffset) ^ dk[0];
+        int s1 = bytesToWord(in, inOffset + 4) ^ dk[1];
+        int s2 = bytesToWord(in, inOffset + 8) ^ dk[2];
+        int s3 = bytesToWord(in, inOffset + 12) ^ dk[3];
 
-    //Yeah, its hardcoded, why not?
-    private void shiftRows(byte[][] state) {
-        byte temp;
-
-        // Row 1: shift left by 1
-        temp = state[1][0];
-        state[1][0] = state[1][1];
-        state[1][1] = state[1][2];
-        state[1][2] = state[1][3];
-        state[1][3] = temp;
-
-        // Row 2: shift left by 2
-        temp = state[2][0];
-        state[2][0] = state[2][2];
-        state[2][2] = temp;
-        temp = state[2][1];
-        state[2][1] = state[2][3];
-        state[2][3] = temp;
-
-        // Row 3: shift left by 3 (right by 1)
-        temp = state[3][3];
-        state[3][3] = state[3][2];
-        state[3][2] = state[3][1];
-        state[3][1] = state[3][0];
-        state[3][0] = temp;
+        // Main rounds: InvShiftRows picks the bytes, TD tables do InvSubBytes + InvMixColumns
+        int k = 4;
+        for (int round = 1; round < rounds; round++) {
+            int t0 = TD0[s0 >>> 24] ^ TD1[(s3 >>> 16) & 0xFF] ^ TD2[(s2 >>> 8) & 0xFF] ^ TD3[s1 & 0xFF] ^ dk[k];
+            int t1 = TD0[s1 >>> 24] ^ TD1[(s0 >>> 16) & 0xFF] ^ TD2[(s3 >>> 8) & 0xFF] ^ TD3[s2 & 0xFF] ^ dk[k + 1];
+            int t2 = TD0[s2 >>> 24] ^ TD1[(s1 >>> 16) & 0xFF] ^ TD2[(s0 >>> 8) & 0xFF] ^ TD3[s3 & 0xFF] ^ dk[k + 2];
+            int t3 = TD0[s3 >>> 24] ^ TD1[(s2 >>> 16) & 0xFF] ^ TD2[(s1 >>> 8) & 0xFF] ^ TD3[s0 & 0xFF] ^ dk[k + 3];
+            s0 = t0;
+            s1 = t1;
+            s2 = t2;
+            s3 = t3;
+            k += 4;
+        }
+
+        // Final round (no InvMixColumns)
+        wordToBytes(invFinalRound(s0, s3, s2, s1) ^ dk[k], out, outOffset);
+        wordToBytes(invFinalRound(s1, s0, s3, s2) ^ dk[k + 1], out, outOffset + 4);
+        wordToBytes(invFinalRound(s2, s1, s0, s3) ^ dk[k + 2], out, outOffset + 8);
+        wordToBytes(invFinalRound(s3, s2, s1, s0) ^ dk[k + 3], out, outOffset + 12);
     }
 
     /**
-     * MixColumns - mix data within each column
+     * ShiftRows + SubBytes for one output column of the last round
      */
-    private void mixColumns(byte[][] state) {
-        for (int i = 0; i < 4; i++) {
-            byte[] col = new byte[4];
-            col[0] = state[0][i];
-            col[1] = state[1][i];
-            col[2] = state[2][i];
-            col[3] = state[3][i];
-
-            state[0][i] = (byte) (gfMul(0x02, col[0]) ^ gfMul(0x03, col[1]) ^ col[2] ^ col[3]);
-            state[1][i] = (byte) (col[0] ^ gfMul(0x02, col[1]) ^ gfMul(0x03, col[2]) ^ col[3]);
-            state[2][i] = (byte) (col[0] ^ col[1] ^ gfMul(0x02, col[2]) ^ gfMul(0x03, col[3]));
-            state[3][i] = (byte) (gfMul(0x03, col[0]) ^ col[1] ^ col[2] ^ gfMul(0x02, col[3]));
-        }
+    static int finalRound(int a, int b, int c, int d) {
+        return (SBOX[a >>> 24] << 24) |
+                (SBOX[(b >>> 16) & 0xFF] << 16) |
+                (SBOX[(c >>> 8) & 0xFF] << 8) |
+                SBOX[d & 0xFF];
     }
 
     /**
-     * AddRoundKey - XOR state with round key
+     * InvShiftRows + InvSubBytes for one output column of the last round
      */
-    private void addRoundKey(byte[][] state, int round) {
-        for (int i = 0; i < 4; i++) {
-            for (int j = 0; j < 4; j++) {
-                state[j][i] ^= expandedKey[round * 16 + i * 4 + j];
-            }
-        }
+    static int invFinalRound(int a, int b, int c, int d) {
+        return (INV_SBOX[a >>> 24] << 24) |
+                (INV_SBOX[(b >>> 16) & 0xFF] << 16) |
+                (INV_SBOX[(c >>> 8) & 0xFF] << 8) |
+                INV_SBOX[d & 0xFF];
     }
 
-    // ==================== DECRYPTION OPERATIONS ====================
+    // ==================== DECRYPTION KEY SCHEDULE ====================
 
     /**
-     * Inverse SubBytes
+     * Builds the equivalent inverse cipher key schedule:
+     * round keys in reverse order, with InvMixColumns applied to all but the first and last
      */
-    private void invSubBytes(byte[][] state) {
-        for (int i = 0; i < 4; i++) {
-            for (int j = 0; j < 4; j++) {
-                state[i][j] = (byte) INV_SBOX[state[i][j] & 0xFF];
+    static int[] expandDecryptionKey(int[] encryptionKey, int rounds) {
+        int[] dk = new int[(rounds + 1) * 4];
+
+        for (int round = 0; round <= rounds; round++) {
+            int source = (rounds - round) * 4;
+            for (int i = 0; i < 4; i++) {
+                int word = encryptionKey[source + i];
+                dk[round * 4 + i] = (round == 0 || round == rounds) ? word : invMixColumn(word);
             }
         }
-    }
 
-    /**
-     * Inverse ShiftRows
-     */
-    private void invShiftRows(byte[][] state) {
-        byte temp;
-
-        // Row 1: shift right by 1 (or left by 3)
-        temp = state[1][3];
-        state[1][3] = state[1][2];
-        state[1][2] = state[1][1];
-        state[1][1] = state[1][0];
-        state[1][0] = temp;
-
-        // Row 2: shift right by 2
-        temp = state[2][0];
-        state[2][0] = state[2][2];
-        state[2][2] = temp;
-        temp = state[2][1];
-        state[2][1] = state[2][3];
-        state[2][3] = temp;
-
-        // Row 3: shift right by 3 (or left by 1)
-        temp = state[3][0];
-        state[3][0] = state[3][1];
-        state[3][1] = state[3][2];
-        state[3][2] = state[3][3];
-        state[3][3] = temp;
+        return dk;
     }
 
     /**
-     * Inverse MixColumns
+     * InvMixColumns of one column, via TD[SBOX[x]] = InvMixColumns contribution of x
      */
-    private void invMixColumns(byte[][] state) {
-        for (int i = 0; i < 4; i++) {
-            byte[] col = new byte[4];
-            col[0] = state[0][i];
-            col[1] = state[1][i];
-            col[2] = state[2][i];
-            col[3] = state[3][i];
-
-            state[0][i] = (byte) (gfMul(0x0e, col[0]) ^ gfMul(0x0b, col[1]) ^
-                    gfMul(0x0d, col[2]) ^ gfMul(0x09, col[3]));
-            state[1][i] = (byte) (gfMul(0x09, col[0]) ^ gfMul(0x0e, col[1]) ^
-                    gfMul(0x0b, col[2]) ^ gfMul(0x0d, col[3]));
-            state[2][i] = (byte) (gfMul(0x0d, col[0]) ^ gfMul(0x09, col[1]) ^
-                    gfMul(0x0e, col[2]) ^ gfMul(0x0b, col[3]));
-            state[3][i] = (byte) (gfMul(0x0b, col[0]) ^ gfMul(0x0d, col[1]) ^
-                    gfMul(0x09, col[2]) ^ gfMul(0x0e, col[3]));
-        }
+    private static int invMixColumn(int word) {
+        return TD0[SBOX[word >>> 24]] ^
+                TD1[SBOX[(word >>> 16) & 0xFF]] ^
+                TD2[SBOX[(word >>> 8) & 0xFF]] ^
+                TD3[SBOX[word & 0xFF]];
     }
 
     // ==================== GALOIS FIELD OPERATIONS ====================
 
     /**
      * Multiply in GF(2^8)
+     * Only used to build the lookup tables at class load
      */
-    private int gfMul(int a, int b) {
+    private static int gfMul(int a, int b) {
         int p = 0;
 
         for (int i = 0; i < 8; i++) {
@@ -316,64 +297,108 @@ public class AES {
 
     // ==================== KEY EXPANSION ====================
 
-    private byte[] expandKey(byte[] key, KeySize keySize) {
-        int keyWords = keySize.getWords();
-        int rounds = keySize.getRounds();
-        int totalWords = keyWords * (rounds + 1);
+    /**
+     * Word-oriented key schedule, unrolled per key size
+     * Each loop iteration produces one full key-length group of words
+     */
+    static int[] expandKey(byte[] key, KeySize keySize) {
+        switch (keySize) {
+            case K128:
+                return expandKey128(key);
+            case K192:
+                return expandKey192(key);
+            default:
+                return expandKey256(key);
+        }
+    }
+
+    private static int[] expandKey128(byte[] key) {
+        int[] w = new int[44];
+        w[0] = bytesToWord(key, 0);
+        w[1] = bytesToWord(key, 4);
+        w[2] = bytesToWord(key, 8);
+        w[3] = bytesToWord(key, 12);
+
+        for (int i = 4, r = 1; i < 44; i += 4, r++) {
+            w[i] = w[i - 4] ^ subRotWord(w[i - 1]) ^ (RCON[r] << 24);
+            w[i + 1] = w[i - 3] ^ w[i];
+            w[i + 2] = w[i - 2] ^ w[i + 1];
+            w[i + 3] = w[i - 1] ^ w[i + 2];
+        }
 
-        int[] w = new int[totalWords];
+        return w;
+    }
 
-        // Copy original key
-        for (int i = 0; i < keyWords; i++) {
+    private static int[] expandKey192(byte[] key) {
+        int[] w = new int[52];
+        for (int i = 0; i < 6; i++) {
             w[i] = bytesToWord(key, i * 4);
         }
 
-        // Generate remaining words
-        for (int i = keyWords; i < totalWords; i++) {
-            int temp = w[i - 1];
-
-            if (i % keyWords == 0) {
-                // Apply transformation every keyWords-th word
-                temp = subWord(rotWord(temp)) ^ (RCON[i / keyWords] << 24);
-            }
-            else if (keyWords == 8 && i % keyWords == 4) {
-                // AES-256 only: additional SubWord at position 4
-                temp = subWord(temp);
+        for (int i = 6, r = 1; ; i += 6, r++) {
+            w[i] = w[i - 6] ^ subRotWord(w[i - 1]) ^ (RCON[r] << 24);
+            w[i + 1] = w[i - 5] ^ w[i];
+            w[i + 2] = w[i - 4] ^ w[i + 1];
+            w[i + 3] = w[i - 3] ^ w[i + 2];
+            if (i + 4 == 52) {
+                break;
             }
+            w[i + 4] = w[i - 2] ^ w[i + 3];
+            w[i + 5] = w[i - 1] ^ w[i + 4];
+        }
 
-            w[i] = w[i - keyWords] ^ temp;
+        return w;
+    }
+
+    private static int[] expandKey256(byte[] key) {
+        int[] w = new int[60];
+        for (int i = 0; i < 8; i++) {
+            w[i] = bytesToWord(key, i * 4);
         }
 
-        // Convert to bytes
-        byte[] expandedKey = new byte[totalWords * 4];
-        for (int i = 0; i < totalWords; i++) {
-            wordToBytes(w[i], expandedKey, i * 4);
+        for (int i = 8, r = 1; ; i += 8, r++) {
+            w[i] = w[i - 8] ^ subRotWord(w[i - 1]) ^ (RCON[r] << 24);
+            w[i + 1] = w[i - 7] ^ w[i];
+            w[i + 2] = w[i - 6] ^ w[i + 1];
+            w[i + 3] = w[i - 5] ^ w[i + 2];
+            if (i + 4 == 60) {
+                break;
+            }
+            // AES-256 only: additional SubWord at position 4
+            w[i + 4] = w[i - 4] ^ subWord(w[i + 3]);
+            w[i + 5] = w[i - 3] ^ w[i + 4];
+            w[i + 6] = w[i - 2] ^ w[i + 5];
+            w[i + 7] = w[i - 1] ^ w[i + 6];
         }
 
-        return expandedKey;
+        return w;
     }
 
-    private int rotWord(int word) {
-        return (word << 8) | ((word >>> 24) & 0xFF);
+    /**
+     * SubWord(RotWord(word))
+     */
+    private static int subRotWord(int word) {
+        return (SBOX[(word >>> 16) & 0xFF] << 24) |
+                (SBOX[(word >>> 8) & 0xFF] << 16) |
+                (SBOX[word & 0xFF] << 8) |
+                SBOX[word >>> 24];
     }
 
-    private int subWord(int word) {
-        int result = 0;
-        for (int i = 0; i < 4; i++) {
-            int byteVal = (word >>> (24 - i * 8)) & 0xFF;
-            result |= (SBOX[byteVal] << (24 - i * 8));
-        }
-        return result;
+    private static int subWord(int word) {
+        return (SBOX[word >>> 24] << 24) |
+                (SBOX[(word >>> 16) & 0xFF] << 16) |
+                (SBOX[(word >>> 8) & 0xFF] << 8) |
+                SBOX[word & 0xFF];
     }
 
-    private int bytesToWord(byte[] bytes, int offset) {
+    static int bytesToWord(byte[] bytes, int offset) {
         return ((bytes[offset] & 0xFF) << 24) |
                 ((bytes[offset + 1] & 0xFF) << 16) |
                 ((bytes[offset + 2] & 0xFF) << 8) |
                 (bytes[offset + 3] & 0xFF);
     }
 
-    private void wordToBytes(int word, byte[] bytes, int offset) {
+    static void wordToBytes(int word, byte[] bytes, int offset) {
         bytes[offset] = (byte) (word >>> 24);
         bytes[offset + 1] = (byte) (word >>> 16);
         bytes[offset + 2] = (byte) (word >>> 8);
@@ -384,50 +409,17 @@ public class AES {
 
     /**
      * Convert byte array to hex string
+     * @see Codec#toHex(byte[])
      */
     public static String toHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02x", b & 0xFF));
-        }
-        return sb.toString();
+        return Codec.toHex(bytes);
     }
 
     /**
      * Convert hex string to byte array
+     * @see Codec#fromHex(CharSequence)
      */
     public static byte[] hexStringToBytes(String hex) {
-        // Remove spaces and make lowercase
-        hex = hex.replaceAll("\\s+", "").toLowerCase();
-
-        // Check if valid length (must be even)
-        if (hex.length() % 2 != 0) {
-            throw new IllegalArgumentException("Hex string must have even length");
-        }
-
-        // Create byte array
-        byte[] bytes = new byte[hex.length() / 2];
-
-        // Convert each pair of hex digits to a byte
-        for (int i = 0; i < hex.length(); i += 2) {
-            String hexByte = hex.substring(i, i + 2);
-            bytes[i / 2] = (byte) Integer.parseInt(hexByte, 16);
-        }
-
-        return bytes;
-    }
-
-    /**
-     * Print state matrix for debugging
-     */
-    private void printState(byte[][] state, String label) {
-        System.out.println(label + ":");
-        for (int i = 0; i < 4; i++) {
-            for (int j = 0; j < 4; j++) {
-                System.out.printf("%02x ", state[i][j] & 0xFF);
-            }
-            System.out.println();
-        }
-        System.out.println();
+        return Codec.fromHex(hex);
     }
 }
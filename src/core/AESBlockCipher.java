@@ -14,9 +14,7 @@ public class AESBlockCipher {
             throw new IllegalArgumentException("Block must be 16 bytes");
         }
 
-        KeySize keySize = determineKeySize(key);
-        AES aes = new AES(key, keySize);
-        return aes.encrypt(block);
+        return prepareKey(key).encrypt(block);
     }
 
     /**
@@ -27,21 +25,31 @@ public class AESBlockCipher {
             throw new IllegalArgumentException("Block must be 16 bytes");
         }
 
-        KeySize keySize = determineKeySize(key);
-        AES aes = new AES(key, keySize);
-        return aes.decrypt(block);
+        return prepareKey(key).decrypt(block);
     }
 
     /**
-     * Определение размера ключа
+     * Подготовка ключа: расширение ключа выполняется один раз
+     * Возвращаемый объект неизменяемый и потокобезопасный,
+     * его можно переиспользовать для любого числа блоков и сообщений
      */
-    private KeySize determineKeySize(byte[] key) {
-        return switch (key.length) {
-            case 16 -> KeySize.K128;
-            case 24 -> KeySize.K192;
-            case 32 -> KeySize.K256;
-            default -> throw new IllegalArgumentException("Invalid key length: " + key.length +
-                    ". Must be 16, 24, or 32 bytes.");
-        };
+    public AES prepareKey(byte[] key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+
+        return new AES(key, KeySize.forKeyLength(key.length));
+    }
+
+    /**
+     * Подготовка ключа с раундовыми ключами вне кучи Java
+     * Вызывающий код обязан вызвать close(), чтобы обнулить раундовые ключи
+     */
+    public OffHeapAES prepareOffHeapKey(byte[] key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+
+        return new OffHeapAES(key, KeySize.forKeyLength(key.length));
     }
-}
\ No newline at end of file
+}
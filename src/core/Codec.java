@@ -0,0 +1,261 @@
+package core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Hex and Base64 encoding shared by the whole project
+ * Hex goes through lookup tables straight into preallocated char[]/byte[] arrays
+ * (no per-byte String.format, substring or parseInt); the stream variants convert
+ * data of any size through fixed buffers
+ * Hex output is lowercase; hex input may be either case and may contain whitespace
+ */
+public final class Codec {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // Stream buffer size in bytes (the char buffer is twice as large)
+    private static final int STREAM_BUFFER_SIZE = 8192;
+
+    // Byte value -> its two hex digits
+    private static final char[] HEX_PAIRS = new char[512];
+
+    // ASCII character -> nibble value, -1 if not a hex digit
+    private static final byte[] NIBBLES = new byte[128];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            HEX_PAIRS[2 * b] = HEX_DIGITS[b >>> 4];
+            HEX_PAIRS[2 * b + 1] = HEX_DIGITS[b & 0x0F];
+        }
+
+        Arrays.fill(NIBBLES, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            NIBBLES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            NIBBLES['a' + i] = (byte) (10 + i);
+            NIBBLES['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    private Codec() {
+    }
+
+    // ==================== HEX ====================
+
+    /**
+     * Convert byte array to lowercase hex string
+     */
+    public static String toHex(byte[] bytes) {
+        return toHex(bytes, 0, bytes.length);
+    }
+
+    public static String toHex(byte[] bytes, int offset, int length) {
+        char[] hex = new char[2 * length];
+        encodeHex(bytes, offset, length, hex, 0);
+        return new String(hex);
+    }
+
+    /**
+     * Hex string with the bytes separated, e.g. "0a 1b 2c" for separator ' '
+     */
+    public static String toHex(byte[] bytes, char separator) {
+        if (bytes.length == 0) {
+            return "";
+        }
+
+        char[] hex = new char[3 * bytes.length - 1];
+        for (int i = 0, j = 0; i < bytes.length; i++) {
+            int pair = (bytes[i] & 0xFF) << 1;
+            if (i > 0) {
+                hex[j++] = separator;
+            }
+            hex[j++] = HEX_PAIRS[pair];
+            hex[j++] = HEX_PAIRS[pair + 1];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Encodes in[inOffset, inOffset + length) into out at outOffset
+     * @return Characters written (2 * length)
+     */
+    public static int encodeHex(byte[] in, int inOffset, int length, char[] out, int outOffset) {
+        if (inOffset < 0 || length < 0 || inOffset + length > in.length
+                || outOffset < 0 || outOffset + 2 * length > out.length) {
+            throw new IllegalArgumentException("Invalid buffer range");
+        }
+
+        for (int i = 0; i < length; i++) {
+            int pair = (in[inOffset + i] & 0xFF) << 1;
+            out[outOffset++] = HEX_PAIRS[pair];
+            out[outOffset++] = HEX_PAIRS[pair + 1];
+        }
+        return 2 * length;
+    }
+
+    /**
+     * Convert hex string to byte array, ignoring whitespace
+     * @throws IllegalArgumentException on a non-hex character or an odd number of digits
+     */
+    public static byte[] fromHex(CharSequence hex) {
+        int digits = 0;
+        for (int i = 0; i < hex.length(); i++) {
+            if (!isWhitespace(hex.charAt(i))) {
+                digits++;
+            }
+        }
+        if (digits % 2 != 0) {
+            throw new IllegalArgumentException("Hex string must have even length");
+        }
+
+        byte[] bytes = new byte[digits / 2];
+        int high = -1;
+        int j = 0;
+        for (int i = 0; i < hex.length(); i++) {
+            char c = hex.charAt(i);
+            if (isWhitespace(c)) {
+                continue;
+            }
+            int nibble = nibble(c);
+            if (high < 0) {
+                high = nibble;
+            } else {
+                bytes[j++] = (byte) (high << 4 | nibble);
+                high = -1;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Decodes hex[start, end) (digits only, no whitespace) into out at outOffset
+     * @return Bytes written ((end - start) / 2)
+     */
+    public static int decodeHex(CharSequence hex, int start, int end, byte[] out, int outOffset) {
+        if (start < 0 || end < start || end > hex.length() || (end - start) % 2 != 0) {
+            throw new IllegalArgumentException("Hex range must hold an even number of digits");
+        }
+        int length = (end - start) / 2;
+        if (outOffset < 0 || outOffset + length > out.length) {
+            throw new IllegalArgumentException("Output buffer too small");
+        }
+
+        for (int i = start; i < end; i += 2) {
+            out[outOffset++] = (byte) (nibble(hex.charAt(i)) << 4 | nibble(hex.charAt(i + 1)));
+        }
+        return length;
+    }
+
+    /**
+     * Hex-encodes the whole input stream into the writer through fixed buffers
+     * Neither end is closed
+     * @return Bytes read
+     */
+    public static long encodeHex(InputStream in, Writer out) throws IOException {
+        byte[] bytes = new byte[STREAM_BUFFER_SIZE];
+        char[] chars = new char[2 * STREAM_BUFFER_SIZE];
+        long total = 0;
+
+        int n;
+        while ((n = in.read(bytes)) > 0) {
+            out.write(chars, 0, encodeHex(bytes, 0, n, chars, 0));
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Decodes hex text of any length (whitespace allowed) into the output stream through fixed buffers
+     * Neither end is closed
+     * @return Bytes written
+     * @throws IllegalArgumentException on a non-hex character or an odd number of digits
+     */
+    public static long decodeHex(Reader in, OutputStream out) throws IOException {
+        char[] chars = new char[2 * STREAM_BUFFER_SIZE];
+        byte[] bytes = new byte[STREAM_BUFFER_SIZE];
+        long total = 0;
+
+        // A digit pair may straddle two reads
+        int high = -1;
+        int n;
+        while ((n = in.read(chars)) >= 0) {
+            int j = 0;
+            for (int i = 0; i < n; i++) {
+                char c = chars[i];
+                if (isWhitespace(c)) {
+                    continue;
+                }
+                int nibble = nibble(c);
+                if (high < 0) {
+                    high = nibble;
+                } else {
+                    bytes[j++] = (byte) (high << 4 | nibble);
+                    high = -1;
+                }
+            }
+            out.write(bytes, 0, j);
+            total += j;
+        }
+
+        if (high >= 0) {
+            throw new IllegalArgumentException("Hex string must have even length");
+        }
+        return total;
+    }
+
+    private static int nibble(char c) {
+        int value = c < 128 ? NIBBLES[c] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException("Invalid hex character: '" + c + "'");
+        }
+        return value;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    // ==================== BASE64 ====================
+
+    public static String toBase64(byte[] bytes) {
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    /**
+     * Convert Base64 (standard alphabet, with or without padding) to bytes, ignoring whitespace
+     * @throws IllegalArgumentException on invalid Base64
+     */
+    public static byte[] fromBase64(CharSequence base64) {
+        byte[] ascii = new byte[base64.length()];
+        int length = 0;
+        for (int i = 0; i < base64.length(); i++) {
+            char c = base64.charAt(i);
+            if (!isWhitespace(c)) {
+                ascii[length++] = c < 128 ? (byte) c : (byte) '?';
+            }
+        }
+        return Base64.getDecoder().decode(length == ascii.length ? ascii : Arrays.copyOf(ascii, length));
+    }
+
+    /**
+     * Stream that Base64-encodes everything written to it into out
+     * Closing it writes the final padding and closes out
+     */
+    public static OutputStream base64Encoder(OutputStream out) {
+        return Base64.getEncoder().wrap(out);
+    }
+
+    /**
+     * Stream that decodes Base64 (no line breaks) read from in
+     */
+    public static InputStream base64Decoder(InputStream in) {
+        return Base64.getDecoder().wrap(in);
+    }
+}
@@ -31,4 +31,23 @@ public enum KeySize
     {
         return bytes;
     }
+
+    /**
+     * Key size for a raw key length in bytes
+     */
+    public static KeySize forKeyLength(int length)
+    {
+        switch (length)
+        {
+            case 16:
+                return K128;
+            case 24:
+                return K192;
+            case 32:
+                return K256;
+            default:
+                throw new IllegalArgumentException("Invalid key length: " + length +
+                        ". Must be 16, 24, or 32 bytes.");
+        }
+    }
 }
@@ -0,0 +1,128 @@
+package core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * AES prepared key whose round keys live outside the Java heap
+ * The encryption and decryption schedules are written once into a direct buffer and
+ * read from there on every block, so the garbage collector never copies them; close()
+ * overwrites them with zeros. The heap arrays used while expanding the key are wiped
+ * before the constructor returns; wiping the caller's key bytes is up to the caller
+ *
+ * A drop-in AES for the modes: safe to share between threads, but it must not be
+ * closed while another thread is still using it
+ */
+public final class OffHeapAES extends AES implements AutoCloseable {
+
+    private final int rounds;
+    private final int decryptionOffset;
+
+    // Encryption round keys, then the equivalent inverse cipher round keys, native byte order
+    private final ByteBuffer roundKeys;
+    private volatile boolean closed;
+
+    /**
+     * Expands the key straight into off-heap memory
+     */
+    public OffHeapAES(byte[] key, KeySize keySize) {
+        super(keySize);
+        if (key.length != keySize.getBytesAmount()) throw new IllegalArgumentException("Incorrect key size");
+
+        this.rounds = keySize.getRounds();
+        int words = (rounds + 1) * 4;
+        this.decryptionOffset = words * 4;
+        this.roundKeys = ByteBuffer.allocateDirect(2 * words * 4).order(ByteOrder.nativeOrder());
+
+        int[] encryptionKey = expandKey(key, keySize);
+        int[] decryptionKey = expandDecryptionKey(encryptionKey, rounds);
+        for (int i = 0; i < words; i++) {
+            roundKeys.putInt(i * 4, encryptionKey[i]);
+            roundKeys.putInt(decryptionOffset + i * 4, decryptionKey[i]);
+        }
+        Arrays.fill(encryptionKey, 0);
+        Arrays.fill(decryptionKey, 0);
+    }
+
+    @Override
+    public void encrypt(byte[] in, int inOffset, byte[] out, int outOffset) {
+        checkOpen();
+        ByteBuffer rk = roundKeys;
+
+        int s0 = bytesToWord(in, inOffset) ^ rk.getInt(0);
+        int s1 = bytesToWord(in, inOffset + 4) ^ rk.getInt(4);
+        int s2 = bytesToWord(in, inOffset + 8) ^ rk.getInt(8);
+        int s3 = bytesToWord(in, inOffset + 12) ^ rk.getInt(12);
+
+        int k = 16;
+        for (int round = 1; round < rounds; round++) {
+            int t0 = TE0[s0 >>> 24] ^ TE1[(s1 >>> 16) & 0xFF] ^ TE2[(s2 >>> 8) & 0xFF] ^ TE3[s3 & 0xFF] ^ rk.getInt(k);
+            int t1 = TE0[s1 >>> 24] ^ TE1[(s2 >>> 16) & 0xFF] ^ TE2[(s3 >>> 8) & 0xFF] ^ TE3[s0 & 0xFF] ^ rk.getInt(k + 4);
+            int t2 = TE0[s2 >>> 24] ^ TE1[(s3 >>> 16) & 0xFF] ^ TE2[(s0 >>> 8) & 0xFF] ^ TE3[s1 & 0xFF] ^ rk.getInt(k + 8);
+            int t3 = TE0[s3 >>> 24] ^ TE1[(s0 >>> 16) & 0xFF] ^ TE2[(s1 >>> 8) & 0xFF] ^ TE3[s2 & 0xFF] ^ rk.getInt(k + 12);
+            s0 = t0;
+            s1 = t1;
+            s2 = t2;
+            s3 = t3;
+            k += 16;
+        }
+
+        wordToBytes(finalRound(s0, s1, s2, s3) ^ rk.getInt(k), out, outOffset);
+        wordToBytes(finalRound(s1, s2, s3, s0) ^ rk.getInt(k + 4), out, outOffset + 4);
+        wordToBytes(finalRound(s2, s3, s0, s1) ^ rk.getInt(k + 8), out, outOffset + 8);
+        wordToBytes(finalRound(s3, s0, s1, s2) ^ rk.getInt(k + 12), out, outOffset + 12);
+    }
+
+    @Override
+    public void decrypt(byte[] in, int inOffset, byte[] out, int outOffset) {
+        checkOpen();
+        ByteBuffer dk = roundKeys;
+        int base = decryptionOffset;
+
+        int s0 = bytesToWord(in, inOffset) ^ dk.getInt(base);
+        int s1 = bytesToWord(in, inOffset + 4) ^ dk.getInt(base + 4);
+        int s2 = bytesToWord(in, inOffset + 8) ^ dk.getInt(base + 8);
+        int s3 = bytesToWord(in, inOffset + 12) ^ dk.getInt(base + 12);
+
+        int k = base + 16;
+        for (int round = 1; round < rounds; round++) {
+            int t0 = TD0[s0 >>> 24] ^ TD1[(s3 >>> 16) & 0xFF] ^ TD2[(s2 >>> 8) & 0xFF] ^ TD3[s1 & 0xFF] ^ dk.getInt(k);
+            int t1 = TD0[s1 >>> 24] ^ TD1[(s0 >>> 16) & 0xFF] ^ TD2[(s3 >>> 8) & 0xFF] ^ TD3[s2 & 0xFF] ^ dk.getInt(k + 4);
+            int t2 = TD0[s2 >>> 24] ^ TD1[(s1 >>> 16) & 0xFF] ^ TD2[(s0 >>> 8) & 0xFF] ^ TD3[s3 & 0xFF] ^ dk.getInt(k + 8);
+            int t3 = TD0[s3 >>> 24] ^ TD1[(s2 >>> 16) & 0xFF] ^ TD2[(s1 >>> 8) & 0xFF] ^ TD3[s0 & 0xFF] ^ dk.getInt(k + 12);
+            s0 = t0;
+            s1 = t1;
+            s2 = t2;
+            s3 = t3;
+            k += 16;
+        }
+
+        wordToBytes(invFinalRound(s0, s3, s2, s1) ^ dk.getInt(k), out, outOffset);
+        wordToBytes(invFinalRound(s1, s0, s3, s2) ^ dk.getInt(k + 4), out, outOffset + 4);
+        wordToBytes(invFinalRound(s2, s1, s0, s3) ^ dk.getInt(k + 8), out, outOffset + 8);
+        wordToBytes(invFinalRound(s3, s2, s1, s0) ^ dk.getInt(k + 12), out, outOffset + 12);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Overwrites the round keys with zeros; the key cannot be used afterwards
+     * The off-heap memory itself is released when the object is garbage collected
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (int i = 0; i < roundKeys.capacity(); i += 8) {
+            roundKeys.putLong(i, 0L);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Key has been closed");
+        }
+    }
+}
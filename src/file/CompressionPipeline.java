@@ -0,0 +1,437 @@
+package file;
+
+import modes.GCMMode;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compress-then-encrypt pipeline on top of StreamEncryptor
+ * Encryption runs Deflater (zlib format) on one thread and chunked AES-GCM on the
+ * calling thread; decryption runs AES-GCM on one thread and Inflater on the calling
+ * thread. The two stages are connected by a bounded queue of 64 KiB blocks, so they
+ * overlap while memory stays bounded, and each stage reports its own throughput
+ *
+ * The output is an ordinary StreamEncryptor stream whose plaintext is the zlib data
+ * On decryption, output produced before a failing chunk has already been written
+ */
+public class CompressionPipeline {
+
+    /** Fastest zlib level: keeps compression from becoming the slower stage */
+    public static final int DEFAULT_LEVEL = Deflater.BEST_SPEED;
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int QUEUE_DEPTH = 8;
+
+    private final StreamEncryptor streams;
+    private final int level;
+
+    /**
+     * Constructor with the fastest compression level
+     * @param streams Encryption stage
+     */
+    public CompressionPipeline(StreamEncryptor streams) {
+        this(streams, DEFAULT_LEVEL);
+    }
+
+    /**
+     * Constructor
+     * @param streams Encryption stage
+     * @param level Deflater level, 0 (store) to 9 (smallest)
+     */
+    public CompressionPipeline(StreamEncryptor streams, int level) {
+        if (streams == null) {
+            throw new IllegalArgumentException("Stream encryptor cannot be null");
+        }
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be 0 to 9");
+        }
+
+        this.streams = streams;
+        this.level = level;
+    }
+
+    /**
+     * Counters of one stage
+     * Busy time is the stage's wall time minus the time it spent blocked on the queue
+     */
+    public static final class StageStats {
+        public final String name;
+        public final long bytesIn;
+        public final long bytesOut;
+        public final long busyNanos;
+        public final long queueWaitNanos;
+
+        StageStats(String name, long bytesIn, long bytesOut, long wallNanos, long queueWaitNanos) {
+            this.name = name;
+            this.bytesIn = bytesIn;
+            this.bytesOut = bytesOut;
+            this.busyNanos = Math.max(0, wallNanos - queueWaitNanos);
+            this.queueWaitNanos = queueWaitNanos;
+        }
+
+        /**
+         * Input bytes per second of busy time
+         */
+        public double getMegabytesPerSecond() {
+            return busyNanos == 0 ? 0 : bytesIn / (busyNanos / 1e9) / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-10s %,d -> %,d bytes, %.2f MB/s busy, %.1f ms waiting on queue",
+                    name, bytesIn, bytesOut, getMegabytesPerSecond(), queueWaitNanos / 1e6);
+        }
+    }
+
+    /**
+     * Outcome of one pipeline run, stages in data-flow order
+     */
+    public static final class Result {
+        public final StageStats first;
+        public final StageStats second;
+        public final long elapsedNanos;
+
+        Result(StageStats first, StageStats second, long elapsedNanos) {
+            this.first = first;
+            this.second = second;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Uncompressed bytes per second over the whole run
+         */
+        public double getMegabytesPerSecond() {
+            long plaintext = first.name.equals("compress") ? first.bytesIn : second.bytesOut;
+            return elapsedNanos == 0 ? 0 : plaintext / (elapsedNanos / 1e9) / 1e6;
+        }
+    }
+
+    /**
+     * Compresses and encrypts the whole input stream into the output stream
+     * Neither stream is closed
+     */
+    public Result encrypt(InputStream in, OutputStream out, GCMMode.PreparedKey key) throws IOException {
+        if (in == null || out == null || key == null) {
+            throw new IllegalArgumentException("Streams and key cannot be null");
+        }
+
+        long start = System.nanoTime();
+        Pipe pipe = new Pipe();
+        long[] compressed = new long[3]; // bytes in, bytes out, wall nanos
+
+        Thread compressor = new Thread(() -> {
+            long stageStart = System.nanoTime();
+            Deflater deflater = new Deflater(level);
+            try {
+                CountingOutputStream sink = new CountingOutputStream(pipe.sink());
+                DeflaterOutputStream deflate = new DeflaterOutputStream(sink, deflater, BLOCK_SIZE);
+                compressed[0] = in.transferTo(deflate);
+                deflate.finish();
+                compressed[1] = sink.count;
+                // Only a complete zlib stream is ever followed by the end marker
+                sink.close();
+            } catch (Throwable e) {
+                pipe.fail(e);
+            } finally {
+                deflater.end();
+                compressed[2] = System.nanoTime() - stageStart;
+            }
+        }, "compression-pipeline-compress");
+
+        CountingOutputStream sealed = new CountingOutputStream(out);
+        long encryptedBytes;
+        long encryptStart = System.nanoTime();
+        compressor.setDaemon(true);
+        compressor.start();
+        try {
+            encryptedBytes = streams.encrypt(pipe.source(), sealed, key);
+        } catch (IOException | RuntimeException e) {
+            pipe.abandon();
+            throw e;
+        } finally {
+            join(compressor);
+        }
+        long encryptNanos = System.nanoTime() - encryptStart;
+
+        return new Result(
+                new StageStats("compress", compressed[0], compressed[1], compressed[2], pipe.producerWaitNanos),
+                new StageStats("encrypt", encryptedBytes, sealed.count, encryptNanos, pipe.consumerWaitNanos),
+                System.nanoTime() - start);
+    }
+
+    /**
+     * Decrypts and decompresses the whole input stream into the output stream
+     * Neither stream is closed
+     * @throws IllegalArgumentException if a chunk fails authentication
+     */
+    public Result decrypt(InputStream in, OutputStream out, GCMMode.PreparedKey key) throws IOException {
+        if (in == null || out == null || key == null) {
+            throw new IllegalArgumentException("Streams and key cannot be null");
+        }
+
+        long start = System.nanoTime();
+        Pipe pipe = new Pipe();
+        long[] decrypted = new long[3]; // bytes in, bytes out, wall nanos
+
+        Thread decryptor = new Thread(() -> {
+            long stageStart = System.nanoTime();
+            try {
+                OutputStream sink = pipe.sink();
+                CountingInputStream sealed = new CountingInputStream(in);
+                decrypted[1] = streams.decrypt(sealed, sink, key);
+                decrypted[0] = sealed.count;
+                sink.close();
+            } catch (Throwable e) {
+                pipe.fail(e);
+            } finally {
+                decrypted[2] = System.nanoTime() - stageStart;
+            }
+        }, "compression-pipeline-decrypt");
+
+        long inflatedBytes;
+        long compressedBytes;
+        long inflateStart = System.nanoTime();
+        decryptor.setDaemon(true);
+        decryptor.start();
+        Inflater inflater = new Inflater();
+        try {
+            CountingInputStream source = new CountingInputStream(pipe.source());
+            inflatedBytes = new InflaterInputStream(source, inflater, BLOCK_SIZE).transferTo(out);
+            // Surface a decryption failure that arrived after the zlib stream ended
+            source.transferTo(OutputStream.nullOutputStream());
+            compressedBytes = source.count;
+        } catch (IOException | RuntimeException e) {
+            pipe.abandon();
+            throw e;
+        } finally {
+            inflater.end();
+            join(decryptor);
+        }
+        long inflateNanos = System.nanoTime() - inflateStart;
+
+        return new Result(
+                new StageStats("decrypt", decrypted[0], decrypted[1], decrypted[2], pipe.producerWaitNanos),
+                new StageStats("decompress", compressedBytes, inflatedBytes, inflateNanos, pipe.consumerWaitNanos),
+                System.nanoTime() - start);
+    }
+
+    private static void join(Thread stage) throws InterruptedIOException {
+        try {
+            stage.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for pipeline stage");
+        }
+    }
+
+    // ==================== PIPE ====================
+
+    /**
+     * Bounded queue of blocks between a producer thread and a consumer thread
+     * The producer ends the stream with END on success or FAILED on error, never both,
+     * so the consumer sees the failure after the blocks before it instead of a clean EOF;
+     * a consumer that gives up releases a producer blocked on a full queue
+     */
+    private static final class Pipe {
+
+        private static final byte[] END = new byte[0];
+        private static final byte[] FAILED = new byte[0];
+
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_DEPTH);
+        private volatile Throwable failure;
+        private volatile boolean abandoned;
+        volatile long producerWaitNanos;
+        volatile long consumerWaitNanos;
+
+        void put(byte[] block) throws IOException {
+            long start = System.nanoTime();
+            try {
+                while (!queue.offer(block, 10, TimeUnit.MILLISECONDS)) {
+                    if (abandoned) {
+                        throw new IOException("Pipeline consumer stopped");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while queueing block");
+            } finally {
+                producerWaitNanos += System.nanoTime() - start;
+            }
+        }
+
+        byte[] take() throws IOException {
+            long start = System.nanoTime();
+            byte[] block;
+            try {
+                block = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for block");
+            } finally {
+                consumerWaitNanos += System.nanoTime() - start;
+            }
+
+            if (block == FAILED) {
+                Throwable cause = failure;
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException("Pipeline stage failed", cause);
+            }
+            return block;
+        }
+
+        void fail(Throwable cause) {
+            failure = cause;
+            try {
+                put(FAILED);
+            } catch (IOException e) {
+                // Consumer already gone
+            }
+        }
+
+        void abandon() {
+            abandoned = true;
+            queue.clear();
+        }
+
+        /**
+         * Collects writes into full blocks; close() sends the last block and the end marker
+         */
+        OutputStream sink() {
+            return new OutputStream() {
+                private byte[] block = new byte[BLOCK_SIZE];
+                private int filled;
+                private boolean closed;
+
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    while (len > 0) {
+                        int n = Math.min(len, BLOCK_SIZE - filled);
+                        System.arraycopy(b, off, block, filled, n);
+                        filled += n;
+                        off += n;
+                        len -= n;
+                        if (filled == BLOCK_SIZE) {
+                            put(block);
+                            block = new byte[BLOCK_SIZE];
+                            filled = 0;
+                        }
+                    }
+                }
+
+                @Override
+                public void close() throws IOException {
+                    if (closed) {
+                        return;
+                    }
+                    closed = true;
+                    if (filled > 0) {
+                        put(Arrays.copyOf(block, filled));
+                    }
+                    put(END);
+                }
+            };
+        }
+
+        InputStream source() {
+            return new InputStream() {
+                private byte[] block = new byte[0];
+                private int position;
+                private boolean ended;
+
+                @Override
+                public int read() throws IOException {
+                    byte[] one = new byte[1];
+                    return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (len == 0) {
+                        return 0;
+                    }
+                    while (position == block.length) {
+                        if (ended) {
+                            return -1;
+                        }
+                        block = take();
+                        position = 0;
+                        ended = block == END;
+                    }
+                    int n = Math.min(len, block.length - position);
+                    System.arraycopy(block, position, b, off, n);
+                    position += n;
+                    return n;
+                }
+            };
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
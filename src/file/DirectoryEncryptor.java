@@ -0,0 +1,235 @@
+package file;
+
+import modes.GCMMode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Encrypts or decrypts a whole directory tree into a mirror tree
+ * Files are processed in parallel on a fixed pool of workers, each streaming its file
+ * through StreamEncryptor's fixed buffers; the walk blocks while twice as many files
+ * as there are workers are queued, so huge trees never pile up in memory
+ *
+ * Encrypted files get the ".enc" suffix, which decryption strips again
+ * Modification times (and POSIX permissions where supported) are copied to the output
+ * Symbolic links and special files are skipped; a file that fails is reported and its
+ * partial output deleted, and the rest of the tree is still processed
+ */
+public class DirectoryEncryptor {
+
+    public static final String ENCRYPTED_SUFFIX = ".enc";
+
+    private final StreamEncryptor streams;
+    private final int threads;
+
+    /**
+     * Constructor
+     * @param streams Stream format used for each file
+     * @param threads Files processed at the same time
+     */
+    public DirectoryEncryptor(StreamEncryptor streams, int threads) {
+        if (streams == null) {
+            throw new IllegalArgumentException("Stream encryptor cannot be null");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+
+        this.streams = streams;
+        this.threads = threads;
+    }
+
+    /**
+     * Outcome of one tree operation
+     */
+    public static final class Summary {
+        public final int files;
+        public final int failed;
+        public final long bytes;
+        public final long elapsedNanos;
+        public final List<String> failures;
+        public final List<String> skipped;
+
+        Summary(int files, int failed, long bytes, long elapsedNanos, List<String> failures, List<String> skipped) {
+            this.files = files;
+            this.failed = failed;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+            this.failures = failures;
+            this.skipped = skipped;
+        }
+
+        /**
+         * Plaintext throughput over the whole run
+         */
+        public double getMegabytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : bytes / (elapsedNanos / 1e9) / 1e6;
+        }
+    }
+
+    /**
+     * Encrypts every regular file under source into the same relative path under target
+     * @param key AES key (16, 24 or 32 bytes)
+     */
+    public Summary encryptTree(Path source, Path target, byte[] key) throws IOException {
+        try (GCMMode.PreparedKey prepared = streams.prepareKey(key)) {
+            return processTree(source, target, prepared, true);
+        }
+    }
+
+    /**
+     * Decrypts every ".enc" file under source into the same relative path under target
+     * @param key AES key (16, 24 or 32 bytes)
+     */
+    public Summary decryptTree(Path source, Path target, byte[] key) throws IOException {
+        try (GCMMode.PreparedKey prepared = streams.prepareKey(key)) {
+            return processTree(source, target, prepared, false);
+        }
+    }
+
+    private Summary processTree(Path source, Path target, GCMMode.PreparedKey key, boolean encrypt)
+            throws IOException {
+        Path sourceRoot = source.toAbsolutePath().normalize();
+        Path targetRoot = target.toAbsolutePath().normalize();
+        if (!Files.isDirectory(sourceRoot)) {
+            throw new IllegalArgumentException("Source is not a directory: " + source);
+        }
+        if (targetRoot.startsWith(sourceRoot)) {
+            throw new IllegalArgumentException("Target must not be inside the source tree");
+        }
+
+        AtomicInteger files = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        List<String> skipped = new ArrayList<>();
+        List<Path[]> directories = new ArrayList<>();
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "directory-encryptor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore queued = new Semaphore(threads * 2);
+        long start = System.nanoTime();
+
+        try {
+            Files.walkFileTree(sourceRoot, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    Path out = targetRoot.resolve(sourceRoot.relativize(dir).toString());
+                    Files.createDirectories(out);
+                    directories.add(new Path[]{dir, out});
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    String relative = sourceRoot.relativize(file).toString();
+                    if (!attrs.isRegularFile()) {
+                        skipped.add(relative);
+                        return FileVisitResult.CONTINUE;
+                    }
+                    if (!encrypt && !relative.endsWith(ENCRYPTED_SUFFIX)) {
+                        skipped.add(relative);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    String outName = encrypt
+                            ? relative + ENCRYPTED_SUFFIX
+                            : relative.substring(0, relative.length() - ENCRYPTED_SUFFIX.length());
+                    Path out = targetRoot.resolve(outName);
+
+                    queued.acquireUninterruptibly();
+                    workers.execute(() -> {
+                        try {
+                            bytes.addAndGet(processFile(file, out, key, encrypt));
+                            files.incrementAndGet();
+                        } catch (IOException | RuntimeException e) {
+                            failed.incrementAndGet();
+                            failures.add(relative + ": " + e.getMessage());
+                        } finally {
+                            queued.release();
+                        }
+                    });
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    failed.incrementAndGet();
+                    failures.add(sourceRoot.relativize(file) + ": " + e.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } finally {
+            workers.shutdown();
+            awaitWorkers(workers);
+        }
+
+        // Writing files touched the directories, so their times are restored last
+        for (Path[] pair : directories) {
+            try {
+                copyMetadata(pair[0], pair[1]);
+            } catch (IOException e) {
+                failures.add(sourceRoot.relativize(pair[0]) + ": " + e.getMessage());
+            }
+        }
+
+        return new Summary(files.get(), failed.get(), bytes.get(), System.nanoTime() - start,
+                new ArrayList<>(failures), skipped);
+    }
+
+    /**
+     * @return Plaintext bytes processed
+     */
+    private long processFile(Path in, Path out, GCMMode.PreparedKey key, boolean encrypt) throws IOException {
+        long processed;
+        try (InputStream input = Files.newInputStream(in);
+             OutputStream output = Files.newOutputStream(out)) {
+            processed = encrypt ? streams.encrypt(input, output, key) : streams.decrypt(input, output, key);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(out);
+            throw e;
+        }
+        copyMetadata(in, out);
+        return processed;
+    }
+
+    private static void copyMetadata(Path from, Path to) throws IOException {
+        Files.setLastModifiedTime(to, Files.getLastModifiedTime(from));
+        if (Files.getFileAttributeView(to, PosixFileAttributeView.class) != null) {
+            Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+        }
+    }
+
+    private static void awaitWorkers(ExecutorService workers) throws InterruptedIOException {
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                // Large trees take a while
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for workers");
+        }
+    }
+}
@@ -0,0 +1,479 @@
+package file;
+
+import core.AESBlockCipher;
+import modes.GCMMode;
+import random.RNG;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+/**
+ * Append-only log of independently AES-GCM sealed records (format in LogFormat)
+ *
+ * Appends are queued and written by one committer thread in groups: every record
+ * queued while the previous group was being synced goes into the next one, which
+ * is written with a single gathering write and made durable with a single fsync
+ * An append completes only after its group is on disk
+ *
+ * Closing the log writes the sparse offset index footer; a log that was not closed
+ * is recovered on the next open by authenticating every record and cutting off a
+ * torn tail (the unfinished last group commit). A wrong key, or a record that fails
+ * authentication before the last intact one, is an error and leaves the file untouched
+ * Read records with EncryptedLogReader
+ */
+public class EncryptedLog implements AutoCloseable {
+
+    public static final int DEFAULT_INDEX_INTERVAL = 64;
+
+    // Bound on queued appends, so producers cannot outrun the disk without limit
+    private static final int MAX_QUEUED_RECORDS = 4096;
+
+    // Groups with this many plaintext bytes are sealed in parallel
+    private static final int PARALLEL_SEAL_BYTES = 64 * 1024;
+
+    private final FileChannel channel;
+    private final GCMMode gcm;
+    private final GCMMode.PreparedKey key;
+    private final byte[] header;
+    private final int epoch;
+    private final int indexInterval;
+    private final BlockingQueue<Append> queue = new ArrayBlockingQueue<>(MAX_QUEUED_RECORDS);
+    private final Thread committer;
+    private final Object appendLock = new Object();
+
+    // Owned by the committer thread once it has started
+    private long end;
+    private long[] index;
+    private int indexCount;
+    private volatile long recordCount;
+    private volatile long commits;
+    private volatile IOException failure;
+
+    private boolean closed;
+
+    private static final class Append {
+        final byte[] record;
+        final CompletableFuture<Long> done = new CompletableFuture<>();
+
+        Append(byte[] record) {
+            this.record = record;
+        }
+    }
+
+    // Marks the end of the queue on close
+    private static final Append CLOSE = new Append(null);
+
+    private EncryptedLog(FileChannel channel, GCMMode gcm, GCMMode.PreparedKey key, byte[] header,
+                         long end, long recordCount, long[] index, int indexCount) {
+        this.channel = channel;
+        this.gcm = gcm;
+        this.key = key;
+        this.header = header;
+        this.epoch = LogFormat.epoch(header);
+        this.indexInterval = LogFormat.indexInterval(header);
+        this.end = end;
+        this.recordCount = recordCount;
+        this.index = index;
+        this.indexCount = indexCount;
+        this.committer = new Thread(this::commitLoop, "encrypted-log-committer");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    /**
+     * Opens a log for appending, creating it with the default index interval if it does not exist
+     * @param key AES key (16, 24 or 32 bytes)
+     */
+    public static EncryptedLog open(Path path, byte[] key) throws IOException {
+        return open(path, key, DEFAULT_INDEX_INTERVAL);
+    }
+
+    /**
+     * Opens a log for appending
+     * @param key AES key (16, 24 or 32 bytes)
+     * @param indexInterval Records between index entries for a new log (an existing log keeps its own)
+     */
+    public static EncryptedLog open(Path path, byte[] key, int indexInterval) throws IOException {
+        if (indexInterval < 1) {
+            throw new IllegalArgumentException("Index interval must be at least 1");
+        }
+
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+
+        RNG rng = new RNG();
+        GCMMode gcm = new GCMMode(new AESBlockCipher(), rng);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        GCMMode.PreparedKey prepared = null;
+
+        try {
+            // Two writers would both move to the same epoch and reuse IVs; the lock is
+            // released when the channel is closed
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                throw new IllegalStateException("Log is already open for appending: " + path);
+            }
+
+            long size = channel.size();
+            if (size == 0) {
+                byte[] salt = rng.randomBytes(LogFormat.SALT_SIZE);
+                prepared = LogFormat.prepareKey(gcm, key, salt);
+                byte[] header = LogFormat.newHeader(gcm, prepared, salt, 1, indexInterval);
+                writeFully(channel, ByteBuffer.wrap(header), 0);
+                channel.force(true);
+                return new EncryptedLog(channel, gcm, prepared, header, LogFormat.HEADER_SIZE, 0,
+                        new long[16], 0);
+            }
+
+            byte[] header = new byte[LogFormat.HEADER_SIZE];
+            if (size < LogFormat.HEADER_SIZE) {
+                throw new IllegalArgumentException("Truncated log header");
+            }
+            readFully(channel, header, 0);
+            LogFormat.validateHeader(header);
+            prepared = LogFormat.prepareKey(gcm, key, LogFormat.salt(header));
+            LogFormat.checkKey(gcm, prepared, header);
+            int previousEpoch = LogFormat.epoch(header);
+            if (previousEpoch >= LogFormat.MAX_EPOCH) {
+                throw new IllegalArgumentException("Log has been reopened too often; start a new one");
+            }
+
+            // Clean close: trust the authenticated footer; otherwise authenticate every record
+            // and cut off only an unfinished last group commit
+            LogFormat.Footer footer = readFooter(channel, gcm, prepared, header, size);
+            long end;
+            long recordCount;
+            long[] index;
+            int indexCount;
+            if (footer != null) {
+                end = footer.start;
+                recordCount = footer.recordCount;
+                index = Arrays.copyOf(footer.offsets, Math.max(16, footer.offsets.length * 2));
+                indexCount = footer.offsets.length;
+            } else {
+                int interval = LogFormat.indexInterval(header);
+                List<Long> offsets = new ArrayList<>();
+                end = LogFormat.HEADER_SIZE;
+                recordCount = 0;
+                while (end < size) {
+                    int sealedLength = readRecord(channel, gcm, prepared, header, recordCount, end, size,
+                            previousEpoch);
+                    if (sealedLength < 0) {
+                        if (!isTornTail(channel, gcm, prepared, header, recordCount, end, size, previousEpoch)) {
+                            throw new IllegalArgumentException("Corrupt log record " + recordCount
+                                    + " at offset " + end);
+                        }
+                        break;
+                    }
+                    if (recordCount % interval == 0) {
+                        offsets.add(end);
+                    }
+                    end += LogFormat.FRAME_HEADER_SIZE + sealedLength;
+                    recordCount++;
+                }
+                index = new long[Math.max(16, offsets.size() * 2)];
+                indexCount = offsets.size();
+                for (int i = 0; i < indexCount; i++) {
+                    index[i] = offsets.get(i);
+                }
+            }
+
+            // Drop the footer or torn tail, then move to a fresh epoch before writing anything
+            channel.truncate(end);
+            LogFormat.setEpoch(header, previousEpoch + 1);
+            writeFully(channel, ByteBuffer.wrap(header), 0);
+            channel.force(true);
+            return new EncryptedLog(channel, gcm, prepared, header, end, recordCount, index, indexCount);
+        } catch (IOException | RuntimeException e) {
+            if (prepared != null) {
+                prepared.close();
+            }
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Queues a record for the next group commit
+     * The array must not be modified until the returned future completes
+     * @param record Record contents (may be empty, at most 16 MiB)
+     * @return Future completed with the record number once the record is durable
+     */
+    public CompletableFuture<Long> append(byte[] record) {
+        if (record == null) {
+            throw new IllegalArgumentException("Record cannot be null");
+        }
+        if (record.length > LogFormat.MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("Record larger than " + LogFormat.MAX_RECORD_SIZE + " bytes");
+        }
+
+        Append append = new Append(record);
+        synchronized (appendLock) {
+            if (closed) {
+                throw new IllegalStateException("Log closed");
+            }
+            if (failure != null) {
+                append.done.completeExceptionally(failure);
+                return append.done;
+            }
+            enqueue(append);
+        }
+        return append.done;
+    }
+
+    /**
+     * Records committed so far
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Group commits (fsyncs) performed since the log was opened
+     */
+    public long getCommitCount() {
+        return commits;
+    }
+
+    /**
+     * Waits for queued appends, then writes the index footer and closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (appendLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            enqueue(CLOSE);
+        }
+
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            if (failure == null) {
+                byte[] footer = LogFormat.buildFooter(gcm, key, header, end, index, indexCount, recordCount);
+                writeFully(channel, ByteBuffer.wrap(footer), end);
+                channel.force(true);
+            }
+        } finally {
+            channel.close();
+            // An interrupted join may leave the committer sealing with the key
+            if (!committer.isAlive()) {
+                key.close();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Blocks while the queue is full; the committer never takes appendLock, so it keeps draining
+     */
+    private void enqueue(Append append) {
+        try {
+            queue.put(append);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the log");
+        }
+    }
+
+    // ==================== GROUP COMMIT ====================
+
+    private void commitLoop() {
+        List<Append> group = new ArrayList<>();
+        while (true) {
+            group.clear();
+            try {
+                group.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(group);
+
+            boolean closing = group.remove(CLOSE);
+            if (!group.isEmpty()) {
+                commit(group);
+            }
+            if (closing) {
+                return;
+            }
+        }
+    }
+
+    private void commit(List<Append> group) {
+        if (failure != null) {
+            group.forEach(append -> append.done.completeExceptionally(failure));
+            return;
+        }
+
+        // Offsets first: they decide each record's IV
+        int size = group.size();
+        long[] offsets = new long[size];
+        long offset = end;
+        long plaintextBytes = 0;
+        for (int i = 0; i < size; i++) {
+            offsets[i] = offset;
+            offset += LogFormat.FRAME_HEADER_SIZE + group.get(i).record.length + LogFormat.TAG_SIZE;
+            plaintextBytes += group.get(i).record.length;
+        }
+
+        ByteBuffer[] frames = new ByteBuffer[size];
+        long firstRecord = recordCount;
+        IntStream seal = IntStream.range(0, size);
+        if (plaintextBytes >= PARALLEL_SEAL_BYTES) {
+            seal = seal.parallel();
+        }
+        seal.forEach(i -> frames[i] = seal(group.get(i).record, firstRecord + i, offsets[i]));
+
+        try {
+            channel.position(end);
+            long remaining = offset - end;
+            while (remaining > 0) {
+                remaining -= channel.write(frames);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            failure = e;
+            group.forEach(append -> append.done.completeExceptionally(e));
+            return;
+        }
+
+        for (int i = 0; i < size; i++) {
+            if ((firstRecord + i) % indexInterval == 0) {
+                if (indexCount == index.length) {
+                    index = Arrays.copyOf(index, index.length * 2);
+                }
+                index[indexCount++] = offsets[i];
+            }
+        }
+        end = offset;
+        recordCount = firstRecord + size;
+        commits++;
+
+        for (int i = 0; i < size; i++) {
+            group.get(i).done.complete(firstRecord + i);
+        }
+    }
+
+    private ByteBuffer seal(byte[] record, long recordNumber, long offset) {
+        byte[] frame = new byte[LogFormat.FRAME_HEADER_SIZE + record.length + LogFormat.TAG_SIZE];
+        ByteBuffer.wrap(frame).putInt(record.length + LogFormat.TAG_SIZE).putShort((short) epoch);
+        gcm.encryptWithIV(key, LogFormat.iv(epoch, offset), LogFormat.aad(header, recordNumber, null),
+                record, 0, record.length, frame, LogFormat.FRAME_HEADER_SIZE);
+        return ByteBuffer.wrap(frame);
+    }
+
+    // ==================== RECOVERY ====================
+
+    /**
+     * Reads and authenticates the frame at offset
+     * @return Its sealed length, or -1 if it is incomplete, malformed or fails authentication
+     */
+    private static int readRecord(FileChannel channel, GCMMode gcm, GCMMode.PreparedKey key, byte[] header,
+                                  long recordNumber, long offset, long size, int maxEpoch) throws IOException {
+        if (offset + LogFormat.FRAME_HEADER_SIZE > size) {
+            return -1;
+        }
+        byte[] frameHeader = new byte[LogFormat.FRAME_HEADER_SIZE];
+        readFully(channel, frameHeader, offset);
+        int sealedLength = LogFormat.sealedLength(frameHeader, offset, size, maxEpoch);
+        if (sealedLength < 0) {
+            return -1;
+        }
+        byte[] sealed = new byte[sealedLength];
+        readFully(channel, sealed, offset + LogFormat.FRAME_HEADER_SIZE);
+        try {
+            LogFormat.open(gcm, key, header, recordNumber, offset, LogFormat.frameEpoch(frameHeader), sealed);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+        return sealedLength;
+    }
+
+    /**
+     * Whether everything from offset on is an unfinished group commit or footer: frames that
+     * run past the end of the file or fail authentication, up to the end of the file or a
+     * zeroed frame header (a hole, or the start of a footer), with no intact record after them
+     * Anything else is corruption of records that were already durable
+     */
+    private static boolean isTornTail(FileChannel channel, GCMMode gcm, GCMMode.PreparedKey key, byte[] header,
+                                      long recordNumber, long offset, long size, int maxEpoch) throws IOException {
+        byte[] frameHeader = new byte[LogFormat.FRAME_HEADER_SIZE];
+        while (offset + LogFormat.FRAME_HEADER_SIZE <= size) {
+            readFully(channel, frameHeader, offset);
+            int sealedLength = LogFormat.sealedLength(frameHeader, offset, Long.MAX_VALUE, maxEpoch);
+            if (sealedLength < 0) {
+                return Arrays.equals(frameHeader, new byte[LogFormat.FRAME_HEADER_SIZE]);
+            }
+            if (offset + LogFormat.FRAME_HEADER_SIZE + sealedLength > size) {
+                return true;
+            }
+            if (readRecord(channel, gcm, key, header, recordNumber, offset, size, maxEpoch) >= 0) {
+                return false;
+            }
+            offset += LogFormat.FRAME_HEADER_SIZE + sealedLength;
+            recordNumber++;
+        }
+        return true;
+    }
+
+    // ==================== FILE ACCESS ====================
+
+    private static LogFormat.Footer readFooter(FileChannel channel, GCMMode gcm, GCMMode.PreparedKey key,
+                                               byte[] header, long size) throws IOException {
+        if (size < LogFormat.HEADER_SIZE + LogFormat.TRAILER_SIZE) {
+            return null;
+        }
+        byte[] trailer = new byte[LogFormat.TRAILER_SIZE];
+        readFully(channel, trailer, size - LogFormat.TRAILER_SIZE);
+        int footerLength = LogFormat.footerLength(trailer, size);
+        if (footerLength < 0) {
+            return null;
+        }
+
+        byte[] footer = new byte[footerLength];
+        readFully(channel, footer, size - footerLength);
+        return LogFormat.parseFooter(gcm, key, header, size - footerLength, footer);
+    }
+
+    static void readFully(FileChannel channel, byte[] buffer, long position) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(buffer);
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) < 0) {
+                throw new IOException("Unexpected end of log");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package file;
+
+import core.AESBlockCipher;
+import modes.GCMMode;
+import random.RNG;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Random-access reader for an EncryptedLog
+ * The file is memory-mapped read-only and record lookups only use absolute reads on
+ * the mapping, so any number of threads may decrypt records at the same time
+ *
+ * A record is found through the sparse index (the footer of a closed log, or a scan of
+ * the frame lengths for a log that is still open or was not closed) and at most
+ * indexInterval - 1 frame headers after the indexed one
+ * The reader sees the records present when it was opened; close() wipes its key
+ * material, and its mappings are released when it is garbage collected
+ */
+public class EncryptedLogReader implements AutoCloseable {
+
+    // Largest single mapping; bigger files are mapped in several segments
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private final MappedByteBuffer[] segments;
+    private final GCMMode gcm;
+    private final GCMMode.PreparedKey key;
+    private final byte[] header;
+    private final int indexInterval;
+    private final long[] index;
+    private final long recordCount;
+    private final long end;
+
+    private EncryptedLogReader(MappedByteBuffer[] segments, GCMMode gcm, GCMMode.PreparedKey key, byte[] header,
+                               long[] index, long recordCount, long end) {
+        this.segments = segments;
+        this.gcm = gcm;
+        this.key = key;
+        this.header = header;
+        this.indexInterval = LogFormat.indexInterval(header);
+        this.index = index;
+        this.recordCount = recordCount;
+        this.end = end;
+    }
+
+    /**
+     * Maps a log for reading
+     * @param key AES key (16, 24 or 32 bytes)
+     * @throws IllegalArgumentException if the file is not a log or its footer fails authentication
+     */
+    public static EncryptedLogReader open(Path path, byte[] key) throws IOException {
+        GCMMode gcm = new GCMMode(new AESBlockCipher(), new RNG());
+
+        MappedByteBuffer[] segments;
+        long size;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = channel.size();
+            if (size < LogFormat.HEADER_SIZE) {
+                throw new IllegalArgumentException("Truncated log header");
+            }
+            segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+            }
+        }
+
+        byte[] header = new byte[LogFormat.HEADER_SIZE];
+        get(segments, 0, header);
+        LogFormat.validateHeader(header);
+        GCMMode.PreparedKey prepared = LogFormat.prepareKey(gcm, key, LogFormat.salt(header));
+        try {
+            LogFormat.checkKey(gcm, prepared, header);
+            return load(segments, size, gcm, prepared, header);
+        } catch (RuntimeException e) {
+            prepared.close();
+            throw e;
+        }
+    }
+
+    private static EncryptedLogReader load(MappedByteBuffer[] segments, long size, GCMMode gcm,
+                                           GCMMode.PreparedKey prepared, byte[] header) {
+        if (size >= LogFormat.HEADER_SIZE + LogFormat.TRAILER_SIZE) {
+            byte[] trailer = new byte[LogFormat.TRAILER_SIZE];
+            get(segments, size - LogFormat.TRAILER_SIZE, trailer);
+            int footerLength = LogFormat.footerLength(trailer, size);
+            if (footerLength >= 0) {
+                byte[] footer = new byte[footerLength];
+                get(segments, size - footerLength, footer);
+                LogFormat.Footer parsed = LogFormat.parseFooter(gcm, prepared, header, size - footerLength, footer);
+                return new EncryptedLogReader(segments, gcm, prepared, header, parsed.offsets, parsed.recordCount,
+                        parsed.start);
+            }
+        }
+
+        // No footer: walk the frame lengths (records are authenticated when read)
+        int interval = LogFormat.indexInterval(header);
+        List<Long> offsets = new ArrayList<>();
+        long offset = LogFormat.HEADER_SIZE;
+        long count = 0;
+        byte[] frameHeader = new byte[LogFormat.FRAME_HEADER_SIZE];
+        while (offset + LogFormat.FRAME_HEADER_SIZE <= size) {
+            get(segments, offset, frameHeader);
+            int sealedLength = LogFormat.sealedLength(frameHeader, offset, size, LogFormat.epoch(header));
+            if (sealedLength < 0) {
+                break;
+            }
+            if (count % interval == 0) {
+                offsets.add(offset);
+            }
+            offset += LogFormat.FRAME_HEADER_SIZE + sealedLength;
+            count++;
+        }
+        long[] index = new long[offsets.size()];
+        for (int i = 0; i < index.length; i++) {
+            index[i] = offsets.get(i);
+        }
+        return new EncryptedLogReader(segments, gcm, prepared, header, index, count, offset);
+    }
+
+    /**
+     * Records in the log
+     */
+    public long size() {
+        return recordCount;
+    }
+
+    /**
+     * Finds, verifies and decrypts one record
+     * @param recordNumber 0 to size() - 1
+     * @throws IllegalArgumentException if the record fails authentication
+     */
+    public byte[] read(long recordNumber) {
+        if (recordNumber < 0 || recordNumber >= recordCount) {
+            throw new IllegalArgumentException("Record " + recordNumber + " out of range");
+        }
+
+        // Indexed record, then step over the frames in between
+        long offset = index[(int) (recordNumber / indexInterval)];
+        byte[] frameHeader = new byte[LogFormat.FRAME_HEADER_SIZE];
+        int sealedLength;
+        long current = recordNumber - recordNumber % indexInterval;
+        while (true) {
+            get(segments, offset, frameHeader);
+            sealedLength = LogFormat.sealedLength(frameHeader, offset, end, LogFormat.MAX_EPOCH);
+            if (sealedLength < 0) {
+                throw new IllegalArgumentException("Corrupt record frame at offset " + offset);
+            }
+            if (current == recordNumber) {
+                break;
+            }
+            offset += LogFormat.FRAME_HEADER_SIZE + sealedLength;
+            current++;
+        }
+
+        byte[] sealed = new byte[sealedLength];
+        get(segments, offset + LogFormat.FRAME_HEADER_SIZE, sealed);
+        return LogFormat.open(gcm, key, header, recordNumber, offset, LogFormat.frameEpoch(frameHeader), sealed);
+    }
+
+    /**
+     * Zeroes the prepared key; reads afterwards throw IllegalStateException
+     * Must not be called while another thread is reading
+     */
+    @Override
+    public void close() {
+        key.close();
+    }
+
+    /**
+     * Absolute read across segment boundaries; leaves the buffers' positions untouched
+     */
+    private static void get(MappedByteBuffer[] segments, long position, byte[] target) {
+        int copied = 0;
+        while (copied < target.length) {
+            long at = position + copied;
+            ByteBuffer segment = segments[(int) (at / SEGMENT_SIZE)];
+            int segmentOffset = (int) (at % SEGMENT_SIZE);
+            int length = Math.min(target.length - copied, segment.limit() - segmentOffset);
+            segment.get(segmentOffset, target, copied, length);
+            copied += length;
+        }
+    }
+}
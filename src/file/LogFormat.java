@@ -0,0 +1,315 @@
+package file;
+
+import core.AESBlockCipher;
+import mac.CMAC;
+import modes.GCMMode;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * On-disk format shared by EncryptedLog and EncryptedLogReader
+ *
+ *   File    = Header || Record_0 || ... || Record_n-1 [|| Footer]
+ *   Header  = "AESL" || version (1) || reserved (1) || epoch (2) || salt (16) || indexInterval (4) || keyCheck (16)
+ *   Record  = sealedLength (4) || epoch (2) || Ciphertext || Tag
+ *   Footer  = offsets (8 each) || entryCount (4) || recordCount (8) || Tag || footerLength (4) || "AESI"
+ *
+ * Records are sealed under a per-log key derived from the caller's key and the random
+ * salt (SP 800-108 counter mode with AES-CMAC), so two logs under one key share no
+ * GCM key unless their 128-bit salts collide
+ *
+ * A record at file offset o written in epoch e is sealed with
+ *   IV  = 0^32 || e (2 bytes) || o (6 bytes)
+ *   AAD = Header with the epoch zeroed || recordNumber (8 bytes)
+ * so a record moved to another offset or position in the log fails authentication
+ * The epoch is bumped every time the log is opened for appending; offsets that are
+ * reused after a torn tail or the old footer is cut off therefore never repeat an IV
+ * (EncryptedLog holds a file lock, so two writers cannot take the same epoch)
+ *
+ * keyCheck is a GMAC tag over the first 16 header bytes (epoch zeroed) with the IV of
+ * epoch 0 and offset 0, which no record or footer uses; it rejects a wrong key before
+ * recovery touches the file
+ *
+ * The footer holds the offset of every indexInterval-th record and is authenticated
+ * (GMAC over the footer body, record number -1) with the IV of its own offset
+ * All integers are big-endian
+ */
+final class LogFormat {
+
+    static final int HEADER_SIZE = 44;
+    static final int SALT_SIZE = 16;
+    static final int FRAME_HEADER_SIZE = 6;
+    static final int TAG_SIZE = 16;
+    static final int TRAILER_SIZE = 8;
+    static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+    static final int MAX_EPOCH = 0xFFFF;
+    static final long MAX_OFFSET = 1L << 48;
+
+    private static final byte[] LOG_MAGIC = {'A', 'E', 'S', 'L'};
+    private static final byte[] INDEX_MAGIC = {'A', 'E', 'S', 'I'};
+    private static final byte VERSION = 3;
+    private static final int SALT_OFFSET = 8;
+    private static final int INDEX_INTERVAL_OFFSET = 24;
+    private static final int KEY_CHECK_OFFSET = 28;
+    private static final byte[] KEY_LABEL = "AESL log key".getBytes(StandardCharsets.US_ASCII);
+    private static final long FOOTER_RECORD = -1;
+
+    private LogFormat() {
+    }
+
+    /**
+     * Offsets of every indexInterval-th record and the total record count
+     */
+    static final class Footer {
+        final long start;
+        final long[] offsets;
+        final long recordCount;
+
+        Footer(long start, long[] offsets, long recordCount) {
+            this.start = start;
+            this.offsets = offsets;
+            this.recordCount = recordCount;
+        }
+    }
+
+    // ==================== KEYS ====================
+
+    /**
+     * Derives the per-log key and prepares it for GCM; the derived bytes are wiped
+     * K_log = first |K| bytes of CMAC(K, i || "AESL log key" || 0x00 || salt || L) for i = 1, 2
+     * @param key Caller's AES key (16, 24 or 32 bytes)
+     */
+    static GCMMode.PreparedKey prepareKey(GCMMode gcm, byte[] key, byte[] salt) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        if (key.length != 16 && key.length != 24 && key.length != 32) {
+            throw new IllegalArgumentException("Key must be 16, 24 or 32 bytes");
+        }
+
+        CMAC cmac = new CMAC(new AESBlockCipher());
+        CMAC.PreparedKey prf = cmac.prepareKey(key);
+        byte[] derived = new byte[2 * CMAC.TAG_SIZE];
+        for (int i = 1; i <= 2; i++) {
+            byte[] block = CMAC.start(prf)
+                    .update((byte) i)
+                    .update(KEY_LABEL)
+                    .update((byte) 0)
+                    .update(salt)
+                    .update(ByteBuffer.allocate(4).putInt(key.length * 8).array())
+                    .doFinal();
+            System.arraycopy(block, 0, derived, (i - 1) * CMAC.TAG_SIZE, CMAC.TAG_SIZE);
+            Arrays.fill(block, (byte) 0);
+        }
+
+        byte[] logKey = Arrays.copyOf(derived, key.length);
+        try {
+            return gcm.prepareKey(logKey);
+        } finally {
+            Arrays.fill(derived, (byte) 0);
+            Arrays.fill(logKey, (byte) 0);
+        }
+    }
+
+    // ==================== HEADER ====================
+
+    static byte[] newHeader(GCMMode gcm, GCMMode.PreparedKey key, byte[] salt, int epoch, int indexInterval) {
+        byte[] header = ByteBuffer.allocate(HEADER_SIZE)
+                .put(LOG_MAGIC)
+                .put(VERSION)
+                .put((byte) 0)
+                .putShort((short) epoch)
+                .put(salt, 0, SALT_SIZE)
+                .putInt(indexInterval)
+                .array();
+        System.arraycopy(keyCheck(gcm, key, header), 0, header, KEY_CHECK_OFFSET, TAG_SIZE);
+        return header;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the log was created under a different key
+     */
+    static void checkKey(GCMMode gcm, GCMMode.PreparedKey key, byte[] header) {
+        byte[] expected = keyCheck(gcm, key, header);
+        int difference = 0;
+        for (int i = 0; i < TAG_SIZE; i++) {
+            difference |= expected[i] ^ header[KEY_CHECK_OFFSET + i];
+        }
+        if (difference != 0) {
+            throw new IllegalArgumentException("Wrong key for this log");
+        }
+    }
+
+    private static byte[] keyCheck(GCMMode gcm, GCMMode.PreparedKey key, byte[] header) {
+        byte[] fields = Arrays.copyOf(header, KEY_CHECK_OFFSET);
+        setEpoch(fields, 0);
+        byte[] tag = new byte[TAG_SIZE];
+        gcm.encryptWithIV(key, iv(0, 0), fields, new byte[0], 0, 0, tag, 0);
+        return tag;
+    }
+
+    static void validateHeader(byte[] header) {
+        if (!Arrays.equals(header, 0, LOG_MAGIC.length, LOG_MAGIC, 0, LOG_MAGIC.length)) {
+            throw new IllegalArgumentException("Not an encrypted log");
+        }
+        if (header[4] != VERSION) {
+            throw new IllegalArgumentException("Unsupported log version");
+        }
+        if (indexInterval(header) < 1) {
+            throw new IllegalArgumentException("Invalid index interval in header");
+        }
+    }
+
+    static int epoch(byte[] header) {
+        return ((header[6] & 0xFF) << 8) | (header[7] & 0xFF);
+    }
+
+    static void setEpoch(byte[] header, int epoch) {
+        header[6] = (byte) (epoch >>> 8);
+        header[7] = (byte) epoch;
+    }
+
+    static int indexInterval(byte[] header) {
+        return ByteBuffer.wrap(header, INDEX_INTERVAL_OFFSET, 4).getInt();
+    }
+
+    static byte[] salt(byte[] header) {
+        return Arrays.copyOfRange(header, SALT_OFFSET, SALT_OFFSET + SALT_SIZE);
+    }
+
+    // ==================== RECORDS ====================
+
+    /**
+     * IV = 0^32 || epoch || offset (unique within the log; the per-log key separates logs)
+     */
+    static byte[] iv(int epoch, long offset) {
+        if (offset >= MAX_OFFSET) {
+            throw new IllegalArgumentException("Log offset beyond 2^48 bytes");
+        }
+        byte[] iv = new byte[12];
+        iv[4] = (byte) (epoch >>> 8);
+        iv[5] = (byte) epoch;
+        for (int i = 0; i < 6; i++) {
+            iv[6 + i] = (byte) (offset >>> (40 - 8 * i));
+        }
+        return iv;
+    }
+
+    /**
+     * AAD = Header with the epoch zeroed || recordNumber
+     */
+    static byte[] aad(byte[] header, long recordNumber, byte[] extra) {
+        int extraLength = extra == null ? 0 : extra.length;
+        ByteBuffer aad = ByteBuffer.allocate(HEADER_SIZE + 8 + extraLength)
+                .put(header)
+                .putLong(recordNumber);
+        if (extra != null) {
+            aad.put(extra);
+        }
+        byte[] result = aad.array();
+        setEpoch(result, 0);
+        return result;
+    }
+
+    /**
+     * Checks a frame header read at offset; returns the sealed length or -1 if no valid frame starts there
+     */
+    static int sealedLength(byte[] frameHeader, long offset, long end, int maxEpoch) {
+        ByteBuffer fields = ByteBuffer.wrap(frameHeader);
+        int sealedLength = fields.getInt();
+        int epoch = fields.getShort() & 0xFFFF;
+        if (sealedLength < TAG_SIZE || sealedLength > MAX_RECORD_SIZE + TAG_SIZE
+                || epoch < 1 || epoch > maxEpoch
+                || offset + FRAME_HEADER_SIZE + sealedLength > end) {
+            return -1;
+        }
+        return sealedLength;
+    }
+
+    static int frameEpoch(byte[] frameHeader) {
+        return ((frameHeader[4] & 0xFF) << 8) | (frameHeader[5] & 0xFF);
+    }
+
+    /**
+     * Verifies and decrypts a sealed record body
+     * @throws IllegalArgumentException if authentication fails
+     */
+    static byte[] open(GCMMode gcm, GCMMode.PreparedKey key, byte[] header, long recordNumber, long offset,
+                       int epoch, byte[] sealed) {
+        byte[] plaintext = new byte[sealed.length - TAG_SIZE];
+        gcm.decryptWithIV(key, iv(epoch, offset), aad(header, recordNumber, null),
+                sealed, 0, sealed.length, plaintext, 0);
+        return plaintext;
+    }
+
+    // ==================== FOOTER ====================
+
+    static byte[] buildFooter(GCMMode gcm, GCMMode.PreparedKey key, byte[] header, long start,
+                              long[] offsets, int entryCount, long recordCount) {
+        int bodyLength = 8 * entryCount + 4 + 8;
+        ByteBuffer body = ByteBuffer.allocate(bodyLength);
+        for (int i = 0; i < entryCount; i++) {
+            body.putLong(offsets[i]);
+        }
+        body.putInt(entryCount).putLong(recordCount);
+
+        byte[] tag = new byte[TAG_SIZE];
+        gcm.encryptWithIV(key, iv(epoch(header), start), aad(header, FOOTER_RECORD, body.array()),
+                new byte[0], 0, 0, tag, 0);
+
+        int footerLength = bodyLength + TAG_SIZE + TRAILER_SIZE;
+        return ByteBuffer.allocate(footerLength)
+                .put(body.array())
+                .put(tag)
+                .putInt(footerLength)
+                .put(INDEX_MAGIC)
+                .array();
+    }
+
+    /**
+     * Footer length from the last TRAILER_SIZE bytes of the file, or -1 if there is no footer
+     */
+    static int footerLength(byte[] trailer, long fileSize) {
+        if (!Arrays.equals(trailer, 4, 8, INDEX_MAGIC, 0, INDEX_MAGIC.length)) {
+            return -1;
+        }
+        int footerLength = ByteBuffer.wrap(trailer).getInt();
+        if (footerLength < 12 + TAG_SIZE + TRAILER_SIZE || footerLength > fileSize - HEADER_SIZE) {
+            return -1;
+        }
+        return footerLength;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the footer fails authentication
+     */
+    static Footer parseFooter(GCMMode gcm, GCMMode.PreparedKey key, byte[] header, long start, byte[] footer) {
+        int bodyLength = footer.length - TAG_SIZE - TRAILER_SIZE;
+        byte[] body = Arrays.copyOf(footer, bodyLength);
+        byte[] expected = new byte[TAG_SIZE];
+        gcm.encryptWithIV(key, iv(epoch(header), start), aad(header, FOOTER_RECORD, body),
+                new byte[0], 0, 0, expected, 0);
+
+        int difference = 0;
+        for (int i = 0; i < TAG_SIZE; i++) {
+            difference |= expected[i] ^ footer[bodyLength + i];
+        }
+        if (difference != 0) {
+            throw new IllegalArgumentException("Log footer failed authentication");
+        }
+
+        ByteBuffer fields = ByteBuffer.wrap(body);
+        int entryCount = fields.getInt(bodyLength - 12);
+        long recordCount = fields.getLong(bodyLength - 8);
+        if (entryCount < 0 || 8L * entryCount != bodyLength - 12) {
+            throw new IllegalArgumentException("Malformed log footer");
+        }
+        long[] offsets = new long[entryCount];
+        for (int i = 0; i < entryCount; i++) {
+            offsets[i] = fields.getLong();
+        }
+        return new Footer(start, offsets, recordCount);
+    }
+}
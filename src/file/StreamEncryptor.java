@@ -0,0 +1,228 @@
+package file;
+
+import core.AESBlockCipher;
+import modes.GCMMode;
+import random.RNG;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Chunked AES-GCM stream format for data of any size
+ * The input is read through one fixed buffer and sealed chunk by chunk, so memory use
+ * does not depend on the stream length
+ *
+ * Format: Header || Chunk_0 || ... || Chunk_n
+ *   Header  = "AESF" || version (1 byte) || chunkSize (4 bytes, BE) || noncePrefix (7 bytes)
+ *   Chunk_i = GCM(IV = noncePrefix || i (4 bytes, BE) || last (1 byte), AAD = Header) = Ciphertext || Tag
+ *
+ * Every chunk but the last holds exactly chunkSize plaintext bytes; the last one holds
+ * 0 to chunkSize bytes and is the only one with last = 1, so reordered, dropped or
+ * truncated chunks fail authentication
+ * On decryption, chunks before a failing one have already been written to the output;
+ * callers that need all-or-nothing must discard the output on failure
+ */
+public class StreamEncryptor {
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    public static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+    public static final int HEADER_SIZE = 16;
+
+    private static final byte[] MAGIC = {'A', 'E', 'S', 'F'};
+    private static final byte VERSION = 1;
+    private static final int NONCE_PREFIX_SIZE = 7;
+    private static final int IV_SIZE = 12; // 96 bits
+    private static final int TAG_SIZE = 16; // 128 bits
+
+    // Chunk index is 32 bits wide
+    private static final long MAX_CHUNKS = 1L << 32;
+
+    private final GCMMode gcm;
+    private final RNG randomGenerator;
+    private final int chunkSize;
+
+    /**
+     * Constructor with 64 KiB chunks
+     * @param randomGenerator The random number generator for nonce prefixes
+     */
+    public StreamEncryptor(RNG randomGenerator) {
+        this(randomGenerator, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor
+     * @param randomGenerator The random number generator for nonce prefixes
+     * @param chunkSize Plaintext bytes per chunk when encrypting (decryption uses the size in the header)
+     */
+    public StreamEncryptor(RNG randomGenerator, int chunkSize) {
+        if (randomGenerator == null) {
+            throw new IllegalArgumentException("Random generator cannot be null");
+        }
+        if (chunkSize < 1 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Chunk size must be 1 to " + MAX_CHUNK_SIZE + " bytes");
+        }
+
+        this.randomGenerator = randomGenerator;
+        this.chunkSize = chunkSize;
+        this.gcm = new GCMMode(new AESBlockCipher(), randomGenerator);
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Prepares a key once for any number of streams
+     * @param key AES key (16, 24 or 32 bytes)
+     */
+    public GCMMode.PreparedKey prepareKey(byte[] key) {
+        return gcm.prepareKey(key);
+    }
+
+    /**
+     * Encrypts the whole input stream into the output stream
+     * Neither stream is closed
+     * @return Plaintext bytes read
+     */
+    public long encrypt(InputStream in, OutputStream out, GCMMode.PreparedKey key) throws IOException {
+        if (in == null || out == null || key == null) {
+            throw new IllegalArgumentException("Streams and key cannot be null");
+        }
+
+        byte[] header = ByteBuffer.allocate(HEADER_SIZE)
+                .put(MAGIC)
+                .put(VERSION)
+                .putInt(chunkSize)
+                .put(randomGenerator.randomBytes(NONCE_PREFIX_SIZE))
+                .array();
+        out.write(header);
+
+        // One byte beyond the chunk tells whether another chunk follows
+        byte[] plaintext = new byte[chunkSize + 1];
+        byte[] sealed = new byte[chunkSize + TAG_SIZE];
+        byte[] iv = new byte[IV_SIZE];
+        long total = 0;
+        int buffered = 0;
+
+        try {
+            for (long index = 0; ; index++) {
+                if (index >= MAX_CHUNKS) {
+                    throw new IllegalArgumentException("Stream too long for chunk size " + chunkSize);
+                }
+
+                buffered += readFully(in, plaintext, buffered, plaintext.length - buffered);
+                boolean last = buffered <= chunkSize;
+                int length = last ? buffered : chunkSize;
+
+                chunkIV(header, index, last, iv);
+                int written = gcm.encryptWithIV(key, iv, header, plaintext, 0, length, sealed, 0);
+                out.write(sealed, 0, written);
+                total += length;
+
+                if (last) {
+                    return total;
+                }
+                plaintext[0] = plaintext[chunkSize];
+                buffered = 1;
+            }
+        } finally {
+            Arrays.fill(plaintext, (byte) 0);
+        }
+    }
+
+    /**
+     * Verifies and decrypts the whole input stream into the output stream
+     * Neither stream is closed
+     * @return Plaintext bytes written
+     * @throws IllegalArgumentException if the header is invalid or a chunk fails authentication
+     */
+    public long decrypt(InputStream in, OutputStream out, GCMMode.PreparedKey key) throws IOException {
+        if (in == null || out == null || key == null) {
+            throw new IllegalArgumentException("Streams and key cannot be null");
+        }
+
+        byte[] header = new byte[HEADER_SIZE];
+        if (readFully(in, header, 0, HEADER_SIZE) < HEADER_SIZE) {
+            throw new IllegalArgumentException("Truncated stream header");
+        }
+        ByteBuffer fields = ByteBuffer.wrap(header);
+        byte[] magic = new byte[MAGIC.length];
+        fields.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IllegalArgumentException("Not an encrypted stream");
+        }
+        if (fields.get() != VERSION) {
+            throw new IllegalArgumentException("Unsupported stream version");
+        }
+        int streamChunkSize = fields.getInt();
+        if (streamChunkSize < 1 || streamChunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Invalid chunk size in header");
+        }
+
+        int sealedChunk = streamChunkSize + TAG_SIZE;
+        byte[] sealed = new byte[sealedChunk + 1];
+        byte[] plaintext = new byte[streamChunkSize];
+        byte[] iv = new byte[IV_SIZE];
+        long total = 0;
+        int buffered = 0;
+
+        try {
+            for (long index = 0; ; index++) {
+                if (index >= MAX_CHUNKS) {
+                    throw new IllegalArgumentException("Too many chunks in stream");
+                }
+
+                buffered += readFully(in, sealed, buffered, sealed.length - buffered);
+                boolean last = buffered <= sealedChunk;
+                int length = last ? buffered : sealedChunk;
+                if (length < TAG_SIZE) {
+                    throw new IllegalArgumentException("Truncated stream");
+                }
+
+                chunkIV(header, index, last, iv);
+                int written = gcm.decryptWithIV(key, iv, header, sealed, 0, length, plaintext, 0);
+                out.write(plaintext, 0, written);
+                total += written;
+
+                if (last) {
+                    return total;
+                }
+                sealed[0] = sealed[sealedChunk];
+                buffered = 1;
+            }
+        } finally {
+            Arrays.fill(plaintext, (byte) 0);
+        }
+    }
+
+    /**
+     * IV = noncePrefix || index || last
+     */
+    private static void chunkIV(byte[] header, long index, boolean last, byte[] iv) {
+        System.arraycopy(header, HEADER_SIZE - NONCE_PREFIX_SIZE, iv, 0, NONCE_PREFIX_SIZE);
+        iv[7] = (byte) (index >>> 24);
+        iv[8] = (byte) (index >>> 16);
+        iv[9] = (byte) (index >>> 8);
+        iv[10] = (byte) index;
+        iv[11] = (byte) (last ? 1 : 0);
+    }
+
+    /**
+     * Reads until length bytes arrive or the stream ends
+     * @return Bytes read
+     */
+    private static int readFully(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int n = in.read(buffer, offset + read, length - read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        return read;
+    }
+}
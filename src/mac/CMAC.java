@@ -0,0 +1,315 @@
+package mac;
+
+import core.AES;
+import core.AESBlockCipher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * AES-CMAC Implementation (RFC 4493 / NIST SP 800-38B)
+ * Message authentication code over the AES block cipher, 128-bit tags
+ * Keys are prepared once (AES expansion plus K1/K2 subkeys) and reused;
+ * messages can be authenticated in one call, incrementally through a Context,
+ * or many at a time with interleaved lanes
+ */
+public class CMAC {
+
+    private static final int BLOCK_SIZE = 16; // AES block size in bytes
+
+    /** Tag length in bytes */
+    public static final int TAG_SIZE = 16;
+
+    // Messages processed side by side in computeBatch
+    private static final int LANES = 4;
+
+    private AESBlockCipher aes;
+
+    /**
+     * Constructor
+     * @param aes The AES block cipher
+     */
+    public CMAC(AESBlockCipher aes) {
+        this.aes = aes;
+    }
+
+    /**
+     * Expanded AES key with its K1/K2 subkeys
+     * Safe to share between threads; close() zeroes the subkeys but leaves the
+     * AES cipher to its owner
+     */
+    public static final class PreparedKey implements AutoCloseable {
+        private final AES cipher;
+        private final byte[] k1;
+        private final byte[] k2;
+        private volatile boolean closed;
+
+        private PreparedKey(AES cipher, byte[] k1, byte[] k2) {
+            this.cipher = cipher;
+            this.k1 = k1;
+            this.k2 = k2;
+        }
+
+        /**
+         * Overwrites K1 and K2 with zeros; the key cannot be used afterwards
+         */
+        @Override
+        public void close() {
+            closed = true;
+            Arrays.fill(k1, (byte) 0);
+            Arrays.fill(k2, (byte) 0);
+        }
+    }
+
+    /**
+     * Expands the key and derives the subkeys: L = E(K, 0^128), K1 = dbl(L), K2 = dbl(K1)
+     * @param key AES key (16, 24 or 32 bytes)
+     */
+    public PreparedKey prepareKey(byte[] key) {
+        AES cipher = aes.prepareKey(key);
+
+        byte[] l = cipher.encrypt(new byte[BLOCK_SIZE]);
+        byte[] k1 = l.clone();
+        dbl(k1);
+        byte[] k2 = k1.clone();
+        dbl(k2);
+        Arrays.fill(l, (byte) 0);
+
+        return new PreparedKey(cipher, k1, k2);
+    }
+
+    // ==================== ONE-SHOT ====================
+
+    /**
+     * Computes the tag of a message
+     * @param message The data to authenticate (may be empty)
+     * @param key AES key
+     * @return 16-byte tag
+     */
+    public byte[] compute(byte[] message, byte[] key) {
+        return compute(message, prepareKey(key));
+    }
+
+    /**
+     * Computes the tag of a message under an already prepared key
+     */
+    public byte[] compute(byte[] message, PreparedKey key) {
+        if (message == null) {
+            throw new IllegalArgumentException("Message cannot be null");
+        }
+        return start(key).update(message).doFinal();
+    }
+
+    /**
+     * Verifies a tag in constant time
+     * @param tag Expected tag (a truncated tag of at least 8 bytes is accepted)
+     * @return true if the tag matches
+     */
+    public boolean verify(byte[] message, byte[] key, byte[] tag) {
+        return verify(message, prepareKey(key), tag);
+    }
+
+    /**
+     * Verifies a tag in constant time under an already prepared key
+     */
+    public boolean verify(byte[] message, PreparedKey key, byte[] tag) {
+        if (tag == null || tag.length < 8 || tag.length > TAG_SIZE) {
+            throw new IllegalArgumentException("Tag must be 8 to " + TAG_SIZE + " bytes");
+        }
+
+        byte[] computed = compute(message, key);
+        int diff = 0;
+        for (int i = 0; i < tag.length; i++) {
+            diff |= computed[i] ^ tag[i];
+        }
+        return diff == 0;
+    }
+
+    // ==================== INCREMENTAL ====================
+
+    /**
+     * Starts an incremental computation
+     */
+    public static Context start(PreparedKey key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        if (key.closed) {
+            throw new IllegalStateException("Key has been closed");
+        }
+        return new Context(key);
+    }
+
+    /**
+     * Incremental CMAC state: feed data with update, finish with doFinal
+     * The last (possibly complete) block is held back until doFinal, since it is
+     * the one combined with K1 or K2
+     * Not thread-safe; use one Context per message
+     */
+    public static final class Context {
+        private final PreparedKey key;
+        private final byte[] state = new byte[BLOCK_SIZE];
+        private final byte[] buffer = new byte[BLOCK_SIZE];
+        private int buffered;
+
+        private Context(PreparedKey key) {
+            this.key = key;
+        }
+
+        public Context update(byte[] data) {
+            return update(data, 0, data.length);
+        }
+
+        public Context update(byte[] data, int offset, int length) {
+            if (data == null || offset < 0 || length < 0 || offset + length > data.length) {
+                throw new IllegalArgumentException("Invalid data range");
+            }
+
+            while (length > 0) {
+                // A full buffer is only processed once more data proves it is not the last block
+                if (buffered == BLOCK_SIZE) {
+                    xorBlock(state, buffer, 0);
+                    key.cipher.encrypt(state, 0, state, 0);
+                    buffered = 0;
+                }
+
+                // Whole blocks straight from the input, keeping at least one byte back
+                if (buffered == 0) {
+                    while (length > BLOCK_SIZE) {
+                        xorBlock(state, data, offset);
+                        key.cipher.encrypt(state, 0, state, 0);
+                        offset += BLOCK_SIZE;
+                        length -= BLOCK_SIZE;
+                    }
+                }
+
+                int n = Math.min(BLOCK_SIZE - buffered, length);
+                System.arraycopy(data, offset, buffer, buffered, n);
+                buffered += n;
+                offset += n;
+                length -= n;
+            }
+            return this;
+        }
+
+        public Context update(byte b) {
+            if (buffered == BLOCK_SIZE) {
+                xorBlock(state, buffer, 0);
+                key.cipher.encrypt(state, 0, state, 0);
+                buffered = 0;
+            }
+            buffer[buffered++] = b;
+            return this;
+        }
+
+        /**
+         * Finishes the computation and resets the context for the next message
+         * @return 16-byte tag
+         */
+        public byte[] doFinal() {
+            byte[] tag = state.clone();
+            finish(key, tag, buffer, 0, buffered);
+            reset();
+            return tag;
+        }
+
+        public void reset() {
+            Arrays.fill(state, (byte) 0);
+            Arrays.fill(buffer, (byte) 0);
+            buffered = 0;
+        }
+    }
+
+    // ==================== BATCH ====================
+
+    /**
+     * Computes the tags of many independent messages under one key
+     * Messages are processed LANES at a time, one block from each lane per step,
+     * so consecutive AES calls are independent of each other
+     * @param messages The data to authenticate
+     * @param key Prepared key
+     * @return Tag for each message, in order
+     */
+    public List<byte[]> computeBatch(List<byte[]> messages, PreparedKey key) {
+        if (messages == null) {
+            throw new IllegalArgumentException("Messages cannot be null");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+
+        List<byte[]> tags = new ArrayList<>(messages.size());
+        byte[][] lanes = new byte[LANES][];
+        int[] blocks = new int[LANES];
+
+        for (int first = 0; first < messages.size(); first += LANES) {
+            int count = Math.min(LANES, messages.size() - first);
+            int maxBlocks = 0;
+
+            for (int lane = 0; lane < count; lane++) {
+                byte[] message = messages.get(first + lane);
+                if (message == null) {
+                    throw new IllegalArgumentException("Message cannot be null");
+                }
+                lanes[lane] = new byte[BLOCK_SIZE];
+                // Every block except the last goes through plain CBC
+                blocks[lane] = message.length == 0 ? 0 : (message.length - 1) / BLOCK_SIZE;
+                maxBlocks = Math.max(maxBlocks, blocks[lane]);
+            }
+
+            for (int b = 0; b < maxBlocks; b++) {
+                for (int lane = 0; lane < count; lane++) {
+                    if (b < blocks[lane]) {
+                        xorBlock(lanes[lane], messages.get(first + lane), b * BLOCK_SIZE);
+                        key.cipher.encrypt(lanes[lane], 0, lanes[lane], 0);
+                    }
+                }
+            }
+
+            for (int lane = 0; lane < count; lane++) {
+                byte[] message = messages.get(first + lane);
+                int offset = blocks[lane] * BLOCK_SIZE;
+                finish(key, lanes[lane], message, offset, message.length - offset);
+                tags.add(lanes[lane]);
+            }
+        }
+
+        return tags;
+    }
+
+    // ==================== CMAC CORE ====================
+
+    /**
+     * Last block: complete -> XOR K1, partial or empty -> pad with 10* and XOR K2; then encrypt
+     */
+    private static void finish(PreparedKey key, byte[] state, byte[] data, int offset, int length) {
+        for (int j = 0; j < length; j++) {
+            state[j] ^= data[offset + j];
+        }
+        if (length == BLOCK_SIZE) {
+            xorBlock(state, key.k1, 0);
+        } else {
+            state[length] ^= (byte) 0x80;
+            xorBlock(state, key.k2, 0);
+        }
+        key.cipher.encrypt(state, 0, state, 0);
+    }
+
+    /**
+     * Multiplication by x in GF(2^128), big-endian, in place
+     */
+    public static void dbl(byte[] block) {
+        int carry = (block[0] & 0x80) != 0 ? 0x87 : 0;
+        for (int i = 0; i < BLOCK_SIZE - 1; i++) {
+            block[i] = (byte) ((block[i] << 1) | ((block[i + 1] & 0xFF) >>> 7));
+        }
+        block[BLOCK_SIZE - 1] = (byte) ((block[BLOCK_SIZE - 1] << 1) ^ carry);
+    }
+
+    private static void xorBlock(byte[] target, byte[] source, int offset) {
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            target[i] ^= source[offset + i];
+        }
+    }
+}
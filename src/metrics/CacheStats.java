@@ -0,0 +1,110 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for one cache of decrypted pages
+ * Always on: a hit costs one LongAdder increment
+ */
+public final class CacheStats implements CacheStatsMBean {
+
+    private final String name;
+    private final long capacityBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder writebacks = new LongAdder();
+    private final LongAdder residentBytes = new LongAdder();
+
+    public CacheStats(String name, long capacityBytes) {
+        this.name = name;
+        this.capacityBytes = capacityBytes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // ==================== RECORDING ====================
+
+    public void recordHit() {
+        hits.increment();
+    }
+
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    public void recordEviction() {
+        evictions.increment();
+    }
+
+    public void recordWriteback() {
+        writebacks.increment();
+    }
+
+    /**
+     * @param delta Bytes of plaintext pages added (positive) or wiped (negative)
+     */
+    public void recordResident(long delta) {
+        residentBytes.add(delta);
+    }
+
+    // ==================== MBEAN ====================
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getWritebacks() {
+        return writebacks.sum();
+    }
+
+    @Override
+    public long getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    @Override
+    public long getResidentBytes() {
+        return residentBytes.sum();
+    }
+
+    /**
+     * Clears the hit, miss, eviction and writeback counters
+     */
+    @Override
+    public void reset() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+        writebacks.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d hits, %d misses (%.1f%%), %d evictions, %d writebacks, %d/%d bytes resident",
+                name, getHits(), getMisses(), 100 * getHitRatio(), getEvictions(), getWritebacks(),
+                getResidentBytes(), capacityBytes);
+    }
+}
@@ -0,0 +1,24 @@
+package metrics;
+
+/**
+ * JMX view of the statistics of one page cache
+ * Registered as mycrypto:type=PageCache,name=&lt;cache&gt;
+ */
+public interface CacheStatsMBean {
+
+    long getHits();
+
+    long getMisses();
+
+    double getHitRatio();
+
+    long getEvictions();
+
+    long getWritebacks();
+
+    long getCapacityBytes();
+
+    long getResidentBytes();
+
+    void reset();
+}
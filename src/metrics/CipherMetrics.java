@@ -0,0 +1,111 @@
+package metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide registry of per-mode statistics
+ * Disabled by default; while disabled every hook is a single volatile read.
+ * Enable with CipherMetrics.enable() or -Dmycrypto.metrics=true.
+ * Each mode's statistics are exposed over JMX as mycrypto:type=CipherMode,name=&lt;mode&gt;
+ * and page caches register as mycrypto:type=PageCache,name=&lt;cache&gt;
+ */
+public final class CipherMetrics {
+
+    private static final String DOMAIN = "mycrypto";
+
+    private static volatile boolean enabled = Boolean.getBoolean("mycrypto.metrics");
+
+    private static final Map<String, ModeStats> STATS = new ConcurrentHashMap<>();
+
+    private CipherMetrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void enable() {
+        enabled = true;
+    }
+
+    public static void disable() {
+        enabled = false;
+    }
+
+    /**
+     * Statistics for a mode, created and registered with JMX on first use
+     * @param mode Mode name as returned by CipherMode.getModeName()
+     */
+    public static ModeStats forMode(String mode) {
+        return STATS.computeIfAbsent(mode, CipherMetrics::register);
+    }
+
+    /**
+     * Hook for AEAD modes: a tag did not verify
+     */
+    public static void authenticationFailure(String mode) {
+        if (enabled) {
+            forMode(mode).recordAuthenticationFailure();
+        }
+    }
+
+    /**
+     * Hook for padded modes: PKCS#7 padding was malformed
+     */
+    public static void paddingFailure(String mode) {
+        if (enabled) {
+            forMode(mode).recordPaddingFailure();
+        }
+    }
+
+    /**
+     * Exposes a page cache's statistics over JMX as mycrypto:type=PageCache,name=&lt;cache&gt;
+     * Cache statistics are always collected, independent of enable()
+     */
+    public static void registerCache(CacheStats stats) {
+        try {
+            ObjectName name = cacheName(stats);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name)) {
+                server.registerMBean(stats, name);
+            }
+        } catch (JMException | SecurityException e) {
+            // Statistics remain available through the cache itself
+        }
+    }
+
+    public static void unregisterCache(CacheStats stats) {
+        try {
+            ObjectName name = cacheName(stats);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException | SecurityException e) {
+            // Never registered
+        }
+    }
+
+    private static ObjectName cacheName(CacheStats stats) throws JMException {
+        return new ObjectName(DOMAIN + ":type=PageCache,name=" + ObjectName.quote(stats.getName()));
+    }
+
+    private static ModeStats register(String mode) {
+        ModeStats stats = new ModeStats(mode);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":type=CipherMode,name=" + ObjectName.quote(mode));
+            if (!server.isRegistered(name)) {
+                server.registerMBean(stats, name);
+            }
+        } catch (JMException | SecurityException e) {
+            // Metrics remain available in-process even when JMX registration is not possible
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,147 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for one cipher mode
+ * All updates are lock-free (LongAdder / atomic histogram buckets)
+ */
+public final class ModeStats implements ModeStatsMBean {
+
+    private final String mode;
+
+    private final LongAdder encryptOperations = new LongAdder();
+    private final LongAdder decryptOperations = new LongAdder();
+    private final LongAdder bytesEncrypted = new LongAdder();
+    private final LongAdder bytesDecrypted = new LongAdder();
+    private final LongAdder failedOperations = new LongAdder();
+    private final LongAdder authenticationFailures = new LongAdder();
+    private final LongAdder paddingFailures = new LongAdder();
+
+    private final LatencyHistogram encryptLatency = new LatencyHistogram();
+    private final LatencyHistogram decryptLatency = new LatencyHistogram();
+
+    ModeStats(String mode) {
+        this.mode = mode;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    // ==================== RECORDING ====================
+
+    public void recordEncrypt(int bytes, long nanos) {
+        encryptOperations.increment();
+        bytesEncrypted.add(bytes);
+        encryptLatency.record(nanos);
+    }
+
+    public void recordDecrypt(int bytes, long nanos) {
+        decryptOperations.increment();
+        bytesDecrypted.add(bytes);
+        decryptLatency.record(nanos);
+    }
+
+    public void recordFailure() {
+        failedOperations.increment();
+    }
+
+    void recordAuthenticationFailure() {
+        authenticationFailures.increment();
+    }
+
+    void recordPaddingFailure() {
+        paddingFailures.increment();
+    }
+
+    // ==================== MBEAN ====================
+
+    @Override
+    public long getEncryptOperations() {
+        return encryptOperations.sum();
+    }
+
+    @Override
+    public long getDecryptOperations() {
+        return decryptOperations.sum();
+    }
+
+    @Override
+    public long getBytesEncrypted() {
+        return bytesEncrypted.sum();
+    }
+
+    @Override
+    public long getBytesDecrypted() {
+        return bytesDecrypted.sum();
+    }
+
+    @Override
+    public long getFailedOperations() {
+        return failedOperations.sum();
+    }
+
+    @Override
+    public long getAuthenticationFailures() {
+        return authenticationFailures.sum();
+    }
+
+    @Override
+    public long getPaddingFailures() {
+        return paddingFailures.sum();
+    }
+
+    @Override
+    public double getEncryptLatencyMeanNanos() {
+        return encryptLatency.getMean();
+    }
+
+    @Override
+    public long getEncryptLatencyP50Nanos() {
+        return encryptLatency.getPercentile(50);
+    }
+
+    @Override
+    public long getEncryptLatencyP99Nanos() {
+        return encryptLatency.getPercentile(99);
+    }
+
+    @Override
+    public long getEncryptLatencyMaxNanos() {
+        return encryptLatency.getMax();
+    }
+
+    @Override
+    public double getDecryptLatencyMeanNanos() {
+        return decryptLatency.getMean();
+    }
+
+    @Override
+    public long getDecryptLatencyP50Nanos() {
+        return decryptLatency.getPercentile(50);
+    }
+
+    @Override
+    public long getDecryptLatencyP99Nanos() {
+        return decryptLatency.getPercentile(99);
+    }
+
+    @Override
+    public long getDecryptLatencyMaxNanos() {
+        return decryptLatency.getMax();
+    }
+
+    @Override
+    public void reset() {
+        encryptOperations.reset();
+        decryptOperations.reset();
+        bytesEncrypted.reset();
+        bytesDecrypted.reset();
+        failedOperations.reset();
+        authenticationFailures.reset();
+        paddingFailures.reset();
+        encryptLatency.reset();
+        decryptLatency.reset();
+    }
+}
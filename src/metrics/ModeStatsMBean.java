@@ -0,0 +1,40 @@
+package metrics;
+
+/**
+ * JMX view of the statistics of one cipher mode
+ * Registered as mycrypto:type=CipherMode,name=&lt;mode&gt;
+ */
+public interface ModeStatsMBean {
+
+    long getEncryptOperations();
+
+    long getDecryptOperations();
+
+    long getBytesEncrypted();
+
+    long getBytesDecrypted();
+
+    long getFailedOperations();
+
+    long getAuthenticationFailures();
+
+    long getPaddingFailures();
+
+    double getEncryptLatencyMeanNanos();
+
+    long getEncryptLatencyP50Nanos();
+
+    long getEncryptLatencyP99Nanos();
+
+    long getEncryptLatencyMaxNanos();
+
+    double getDecryptLatencyMeanNanos();
+
+    long getDecryptLatencyP50Nanos();
+
+    long getDecryptLatencyP99Nanos();
+
+    long getDecryptLatencyMaxNanos();
+
+    void reset();
+}
@@ -1,5 +1,7 @@
 package modes;
+import core.AES;
 import core.AESBlockCipher;
+import metrics.CipherMetrics;
 import random.RNG;
 
 /**
@@ -48,6 +50,9 @@ public class CBCMode implements CipherMode {
         // Copy IV to result
         System.arraycopy(iv, 0, result, 0, BLOCK_SIZE);
 
+        // Expand the key once for all blocks
+        AES cipher = aes.prepareKey(key);
+
         // Previous ciphertext block (initially the IV)
         byte[] previousCiphertext = iv;
 
@@ -64,7 +69,7 @@ public class CBCMode implements CipherMode {
             byte[] xoredBlock = xor(block, previousCiphertext);
 
             // Encrypt the XORed block
-            byte[] encryptedBlock = aes.encryptBlock(xoredBlock, key);
+            byte[] encryptedBlock = cipher.encrypt(xoredBlock);
 
             // Copy to result
             System.arraycopy(encryptedBlock, 0, result, ciphertextOffset, BLOCK_SIZE);
@@ -98,6 +103,9 @@ public class CBCMode implements CipherMode {
 
         byte[] paddedPlaintext = new byte[encryptedLength];
 
+        // Expand the key once for all blocks
+        AES cipher = aes.prepareKey(key);
+
         // Previous ciphertext block (initially the IV)
         byte[] previousCiphertext = iv;
 
@@ -111,7 +119,7 @@ public class CBCMode implements CipherMode {
             System.arraycopy(ciphertext, ciphertextOffset, block, 0, BLOCK_SIZE);
 
             // Decrypt the block
-            byte[] decryptedBlock = aes.decryptBlock(block, key);
+            byte[] decryptedBlock = cipher.decrypt(block);
 
             // XOR with previous ciphertext block
             byte[] plaintextBlock = xor(decryptedBlock, previousCiphertext);
@@ -174,16 +182,19 @@ public class CBCMode implements CipherMode {
         int paddingLength = paddedData[paddedData.length - 1] & 0xFF;
 
         if (paddingLength < 1 || paddingLength > BLOCK_SIZE) {
+            CipherMetrics.paddingFailure(getModeName());
             throw new IllegalArgumentException("Invalid padding length: " + paddingLength);
         }
 
         if (paddingLength > paddedData.length) {
+            CipherMetrics.paddingFailure(getModeName());
             throw new IllegalArgumentException("Padding length exceeds data length");
         }
 
         // Verify padding
         for (int i = paddedData.length - paddingLength; i < paddedData.length; i++) {
             if ((paddedData[i] & 0xFF) != paddingLength) {
+                CipherMetrics.paddingFailure(getModeName());
                 throw new IllegalArgumentException("Invalid padding bytes");
             }
         }
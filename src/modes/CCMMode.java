@@ -0,0 +1,341 @@
+package modes;
+
+import core.AES;
+import core.AESBlockCipher;
+import metrics.CipherMetrics;
+import random.RNG;
+
+import java.util.Arrays;
+
+/**
+ * CCM (Counter with CBC-MAC) Mode Implementation (NIST SP 800-38C)
+ * Authenticated encryption with configurable nonce (7-13 bytes) and tag (4-16 bytes, even) lengths
+ * CBC-MAC and CTR run interleaved in a single pass over the data,
+ * with one key setup and no per-block allocation
+ * Output format: Nonce || Ciphertext || Tag
+ */
+public class CCMMode implements CipherMode {
+
+    private static final int BLOCK_SIZE = 16; // AES block size in bytes
+    private static final int DEFAULT_NONCE_SIZE = 12;
+    private static final int DEFAULT_TAG_SIZE = 16;
+
+    private AESBlockCipher aes;
+    private RNG randomGenerator;
+    private final int nonceSize;
+    private final int tagSize;
+
+    /**
+     * Constructor with a 96-bit nonce and a 128-bit tag
+     * @param aes The AES block cipher
+     * @param randomGenerator The random number generator
+     */
+    public CCMMode(AESBlockCipher aes, RNG randomGenerator) {
+        this(aes, randomGenerator, DEFAULT_NONCE_SIZE, DEFAULT_TAG_SIZE);
+    }
+
+    /**
+     * Constructor
+     * @param aes The AES block cipher
+     * @param randomGenerator The random number generator
+     * @param nonceSize Nonce length in bytes (7 to 13); longer nonces leave less room for the message length
+     * @param tagSize Tag length in bytes (4, 6, 8, 10, 12, 14 or 16)
+     */
+    public CCMMode(AESBlockCipher aes, RNG randomGenerator, int nonceSize, int tagSize) {
+        if (nonceSize < 7 || nonceSize > 13) {
+            throw new IllegalArgumentException("Nonce size must be 7 to 13 bytes");
+        }
+        if (tagSize < 4 || tagSize > 16 || tagSize % 2 != 0) {
+            throw new IllegalArgumentException("Tag size must be 4, 6, 8, 10, 12, 14 or 16 bytes");
+        }
+
+        this.aes = aes;
+        this.randomGenerator = randomGenerator;
+        this.nonceSize = nonceSize;
+        this.tagSize = tagSize;
+    }
+
+    /**
+     * Encrypts plaintext with additional authenticated data
+     * @param plaintext The data to encrypt
+     * @param key The encryption key
+     * @param aad Additional authenticated data (can be null or empty)
+     * @return Nonce || Ciphertext || Tag
+     */
+    public byte[] encryptWithAAD(byte[] plaintext, byte[] key, byte[] aad) {
+        if (plaintext == null || plaintext.length == 0) {
+            throw new IllegalArgumentException("Plaintext cannot be null or empty");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+
+        // Generate random nonce
+        byte[] nonce = randomGenerator.randomBytes(nonceSize);
+
+        // Result: Nonce || Ciphertext || Tag
+        byte[] result = new byte[nonceSize + plaintext.length + tagSize];
+        System.arraycopy(nonce, 0, result, 0, nonceSize);
+        seal(aes.prepareKey(key), nonce, aad, plaintext, 0, plaintext.length, result, nonceSize);
+
+        return result;
+    }
+
+    /**
+     * Decrypts ciphertext and verifies authentication tag
+     * @param ciphertext Nonce || Ciphertext || Tag
+     * @param key The decryption key
+     * @param aad Additional authenticated data (must match encryption)
+     * @return Decrypted plaintext
+     * @throws IllegalArgumentException if authentication fails
+     */
+    public byte[] decryptWithAAD(byte[] ciphertext, byte[] key, byte[] aad) {
+        if (ciphertext == null || ciphertext.length < nonceSize + tagSize) {
+            throw new IllegalArgumentException("Ciphertext too short");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+
+        // Extract nonce
+        byte[] nonce = new byte[nonceSize];
+        System.arraycopy(ciphertext, 0, nonce, 0, nonceSize);
+
+        byte[] plaintext = new byte[ciphertext.length - nonceSize - tagSize];
+        open(aes.prepareKey(key), nonce, aad, ciphertext, nonceSize, plaintext.length, plaintext);
+
+        return plaintext;
+    }
+
+    /**
+     * Encrypts with a caller-supplied nonce instead of a generated one
+     * The caller must never reuse a nonce under the same key
+     * Empty plaintext is allowed (the result is then a tag over the AAD)
+     * @param plaintext The data to encrypt
+     * @param key The encryption key
+     * @param nonce Nonce of the configured length
+     * @param aad Additional authenticated data (can be null or empty)
+     * @return Ciphertext || Tag (the nonce is not included)
+     */
+    public byte[] encryptWithNonce(byte[] plaintext, byte[] key, byte[] nonce, byte[] aad) {
+        if (plaintext == null) {
+            throw new IllegalArgumentException("Plaintext cannot be null");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        checkNonce(nonce);
+
+        byte[] result = new byte[plaintext.length + tagSize];
+        seal(aes.prepareKey(key), nonce, aad, plaintext, 0, plaintext.length, result, 0);
+
+        return result;
+    }
+
+    /**
+     * Decrypts data sealed by encryptWithNonce
+     * @param ciphertext Ciphertext || Tag (without the nonce)
+     * @param key The decryption key
+     * @param nonce Nonce used for encryption
+     * @param aad Additional authenticated data (must match encryption)
+     * @return Decrypted plaintext
+     * @throws IllegalArgumentException if authentication fails
+     */
+    public byte[] decryptWithNonce(byte[] ciphertext, byte[] key, byte[] nonce, byte[] aad) {
+        if (ciphertext == null || ciphertext.length < tagSize) {
+            throw new IllegalArgumentException("Ciphertext too short");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        checkNonce(nonce);
+
+        byte[] plaintext = new byte[ciphertext.length - tagSize];
+        open(aes.prepareKey(key), nonce, aad, ciphertext, 0, plaintext.length, plaintext);
+
+        return plaintext;
+    }
+
+    @Override
+    public byte[] encrypt(byte[] plaintext, byte[] key) {
+        return encryptWithAAD(plaintext, key, null);
+    }
+
+    @Override
+    public byte[] decrypt(byte[] ciphertext, byte[] key) {
+        return decryptWithAAD(ciphertext, key, null);
+    }
+
+    @Override
+    public String getModeName() {
+        return "CCM";
+    }
+
+    public int getNonceSize() {
+        return nonceSize;
+    }
+
+    public int getTagSize() {
+        return tagSize;
+    }
+
+    // ==================== CCM CORE ====================
+
+    private void checkNonce(byte[] nonce) {
+        if (nonce == null || nonce.length != nonceSize) {
+            throw new IllegalArgumentException("Nonce must be " + nonceSize + " bytes");
+        }
+    }
+
+    /**
+     * One pass: MAC the plaintext block, encrypt it with the next counter block
+     * Writes Ciphertext || Tag to out[outOffset]
+     */
+    private void seal(AES cipher, byte[] nonce, byte[] aad, byte[] in, int inOffset, int length,
+                      byte[] out, int outOffset) {
+        byte[] mac = new byte[BLOCK_SIZE];
+        byte[] counter = new byte[BLOCK_SIZE];
+        byte[] keystream = new byte[BLOCK_SIZE];
+
+        startMac(cipher, mac, nonce, aad, length);
+        initCounter(counter, nonce);
+
+        for (int done = 0; done < length; done += BLOCK_SIZE) {
+            int n = Math.min(BLOCK_SIZE, length - done);
+
+            // CBC-MAC over the plaintext block (zero padded)
+            for (int j = 0; j < n; j++) {
+                mac[j] ^= in[inOffset + done + j];
+            }
+            cipher.encrypt(mac, 0, mac, 0);
+
+            // CTR encryption with counter blocks 1, 2, ...
+            incrementCounter(counter);
+            cipher.encrypt(counter, 0, keystream, 0);
+            for (int j = 0; j < n; j++) {
+                out[outOffset + done + j] = (byte) (in[inOffset + done + j] ^ keystream[j]);
+            }
+        }
+
+        // Tag = MSB_t(MAC) XOR MSB_t(E(K, Ctr0))
+        resetCounter(counter);
+        cipher.encrypt(counter, 0, keystream, 0);
+        for (int j = 0; j < tagSize; j++) {
+            out[outOffset + length + j] = (byte) (mac[j] ^ keystream[j]);
+        }
+    }
+
+    /**
+     * One pass: decrypt the ciphertext block, MAC the recovered plaintext
+     * Reads Ciphertext || Tag from in[inOffset]; plaintext is only returned if the tag verifies
+     */
+    private void open(AES cipher, byte[] nonce, byte[] aad, byte[] in, int inOffset, int length, byte[] out) {
+        byte[] mac = new byte[BLOCK_SIZE];
+        byte[] counter = new byte[BLOCK_SIZE];
+        byte[] keystream = new byte[BLOCK_SIZE];
+
+        startMac(cipher, mac, nonce, aad, length);
+        initCounter(counter, nonce);
+
+        for (int done = 0; done < length; done += BLOCK_SIZE) {
+            int n = Math.min(BLOCK_SIZE, length - done);
+
+            incrementCounter(counter);
+            cipher.encrypt(counter, 0, keystream, 0);
+            for (int j = 0; j < n; j++) {
+                byte p = (byte) (in[inOffset + done + j] ^ keystream[j]);
+                out[done + j] = p;
+                mac[j] ^= p;
+            }
+            cipher.encrypt(mac, 0, mac, 0);
+        }
+
+        resetCounter(counter);
+        cipher.encrypt(counter, 0, keystream, 0);
+
+        // Verify tag (constant-time comparison)
+        int diff = 0;
+        for (int j = 0; j < tagSize; j++) {
+            diff |= (mac[j] ^ keystream[j]) ^ in[inOffset + length + j];
+        }
+        if (diff != 0) {
+            Arrays.fill(out, (byte) 0);
+            CipherMetrics.authenticationFailure(getModeName());
+            throw new IllegalArgumentException("Authentication failed: tag mismatch");
+        }
+    }
+
+    /**
+     * Absorbs B0 and the encoded AAD into the CBC-MAC state
+     */
+    private void startMac(AES cipher, byte[] mac, byte[] nonce, byte[] aad, int length) {
+        int q = 15 - nonceSize;
+        if (q < 4 && (length >>> (8 * q)) != 0) {
+            throw new IllegalArgumentException("Message too long for " + nonceSize + "-byte nonce");
+        }
+
+        boolean hasAAD = aad != null && aad.length > 0;
+
+        // B0 = Flags || Nonce || Q
+        mac[0] = (byte) ((hasAAD ? 0x40 : 0) | (((tagSize - 2) / 2) << 3) | (q - 1));
+        System.arraycopy(nonce, 0, mac, 1, nonceSize);
+        for (int j = 0; j < q; j++) {
+            mac[15 - j] = (byte) (j < 4 ? length >>> (8 * j) : 0);
+        }
+        cipher.encrypt(mac, 0, mac, 0);
+
+        if (!hasAAD) {
+            return;
+        }
+
+        // Encoded AAD length, then the AAD, zero padded to a block boundary
+        int position;
+        if (aad.length < 0xFF00) {
+            mac[0] ^= (byte) (aad.length >>> 8);
+            mac[1] ^= (byte) aad.length;
+            position = 2;
+        } else {
+            mac[0] ^= (byte) 0xFF;
+            mac[1] ^= (byte) 0xFE;
+            mac[2] ^= (byte) (aad.length >>> 24);
+            mac[3] ^= (byte) (aad.length >>> 16);
+            mac[4] ^= (byte) (aad.length >>> 8);
+            mac[5] ^= (byte) aad.length;
+            position = 6;
+        }
+
+        for (byte b : aad) {
+            if (position == BLOCK_SIZE) {
+                cipher.encrypt(mac, 0, mac, 0);
+                position = 0;
+            }
+            mac[position++] ^= b;
+        }
+        cipher.encrypt(mac, 0, mac, 0);
+    }
+
+    /**
+     * Ctr0 = Flags (q - 1) || Nonce || 0
+     */
+    private void initCounter(byte[] counter, byte[] nonce) {
+        counter[0] = (byte) (14 - nonceSize);
+        System.arraycopy(nonce, 0, counter, 1, nonceSize);
+    }
+
+    private void resetCounter(byte[] counter) {
+        for (int j = nonceSize + 1; j < BLOCK_SIZE; j++) {
+            counter[j] = 0;
+        }
+    }
+
+    /**
+     * Increments the q-byte big-endian counter field
+     */
+    private void incrementCounter(byte[] counter) {
+        for (int j = BLOCK_SIZE - 1; j > nonceSize; j--) {
+            if (++counter[j] != 0) {
+                break;
+            }
+        }
+    }
+}
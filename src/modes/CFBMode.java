@@ -0,0 +1,131 @@
+package modes;
+
+import core.AES;
+import core.AESBlockCipher;
+import random.RNG;
+
+import java.util.stream.IntStream;
+
+/**
+ * CFB (Cipher Feedback) Mode Implementation (NIST SP 800-38A)
+ * Self-synchronizing stream mode with 8-bit (CFB-8) or 128-bit (CFB-128) segments
+ * No padding required
+ * Encryption is sequential; decryption is not, because every AES input is
+ * ciphertext, so large inputs are decrypted in parallel chunks like CBC decryption
+ */
+public class CFBMode implements CipherMode {
+
+    private static final int BLOCK_SIZE = 16; // AES block size in bytes
+
+    // Inputs at least this large are decrypted in parallel
+    private static final int PARALLEL_THRESHOLD = 64 * 1024;
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private AESBlockCipher aes;
+    private RNG randomGenerator;
+    private final int segmentSize;
+
+    /**
+     * Constructor for CFB-128
+     * @param aes The AES block cipher
+     * @param randomGenerator The random number generator
+     */
+    public CFBMode(AESBlockCipher aes, RNG randomGenerator) {
+        this(aes, randomGenerator, 128);
+    }
+
+    /**
+     * Constructor
+     * @param aes The AES block cipher
+     * @param randomGenerator The random number generator
+     * @param segmentBits Segment size in bits: 8 (CFB-8) or 128 (CFB-128)
+     */
+    public CFBMode(AESBlockCipher aes, RNG randomGenerator, int segmentBits) {
+        if (segmentBits != 8 && segmentBits != 128) {
+            throw new IllegalArgumentException("Segment size must be 8 or 128 bits");
+        }
+
+        this.aes = aes;
+        this.randomGenerator = randomGenerator;
+        this.segmentSize = segmentBits / 8;
+    }
+
+    @Override
+    public byte[] encrypt(byte[] plaintext, byte[] key) {
+        if (plaintext == null || plaintext.length == 0) {
+            throw new IllegalArgumentException("Plaintext cannot be null or empty");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+
+        // Generate random IV
+        byte[] iv = randomGenerator.randomBytes(BLOCK_SIZE);
+
+        // Result: IV || Ciphertext, so the shift register always reads from result
+        byte[] result = new byte[BLOCK_SIZE + plaintext.length];
+        System.arraycopy(iv, 0, result, 0, BLOCK_SIZE);
+
+        AES cipher = aes.prepareKey(key);
+        byte[] keystream = new byte[BLOCK_SIZE];
+
+        for (int done = 0; done < plaintext.length; done += segmentSize) {
+            // Shift register = previous 16 bytes of IV || Ciphertext
+            cipher.encrypt(result, done, keystream, 0);
+
+            int n = Math.min(segmentSize, plaintext.length - done);
+            for (int j = 0; j < n; j++) {
+                result[BLOCK_SIZE + done + j] = (byte) (plaintext[done + j] ^ keystream[j]);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public byte[] decrypt(byte[] ciphertext, byte[] key) {
+        if (ciphertext == null || ciphertext.length < BLOCK_SIZE) {
+            throw new IllegalArgumentException("Ciphertext too short (must include IV)");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+
+        AES cipher = aes.prepareKey(key);
+        int length = ciphertext.length - BLOCK_SIZE;
+        byte[] plaintext = new byte[length];
+
+        if (length < PARALLEL_THRESHOLD) {
+            decryptRange(cipher, ciphertext, plaintext, 0, length);
+        } else {
+            // Chunks are independent: each only reads ciphertext that is already known
+            int chunks = (length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            IntStream.range(0, chunks).parallel().forEach(chunk -> decryptRange(cipher, ciphertext, plaintext,
+                    chunk * CHUNK_SIZE, Math.min(length, (chunk + 1) * CHUNK_SIZE)));
+        }
+
+        return plaintext;
+    }
+
+    @Override
+    public String getModeName() {
+        return "CFB" + segmentSize * 8;
+    }
+
+    /**
+     * Decrypts plaintext[from, to); from must be a multiple of the segment size
+     */
+    private void decryptRange(AES cipher, byte[] ciphertext, byte[] plaintext, int from, int to) {
+        byte[] keystream = new byte[BLOCK_SIZE];
+
+        for (int done = from; done < to; done += segmentSize) {
+            // Shift register = previous 16 bytes of IV || Ciphertext
+            cipher.encrypt(ciphertext, done, keystream, 0);
+
+            int n = Math.min(segmentSize, to - done);
+            for (int j = 0; j < n; j++) {
+                plaintext[done + j] = (byte) (ciphertext[BLOCK_SIZE + done + j] ^ keystream[j]);
+            }
+        }
+    }
+}
@@ -1,11 +1,19 @@
 package modes;
+import core.AES;
 import core.AESBlockCipher;
 import random.RNG;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
 /**
  * CTR (Counter) Mode Implementation
  * Stream cipher mode that generates keystream by encrypting counter values
  * Uses 96-bit nonce + 32-bit counter
  * No padding required
+ * Inputs of 64 KiB and more are processed in parallel chunks when the call runs in a
+ * dedicated ForkJoinPool (such as AsyncCipherService's); other callers, including
+ * tasks in the common pool, process them sequentially on the calling thread
  */
 public class CTRMode implements CipherMode {
 
@@ -13,6 +21,10 @@ public class CTRMode implements CipherMode {
     private static final int NONCE_SIZE = 12; // 96 bits
     private static final int COUNTER_SIZE = 4; // 32 bits
 
+    // Inputs at least this large are processed in parallel
+    private static final int PARALLEL_THRESHOLD = 64 * 1024;
+    private static final int CHUNK_SIZE = 16 * 1024;
+
     private AESBlockCipher aes;
     private RNG randomGenerator;
 
@@ -78,6 +90,9 @@ public class CTRMode implements CipherMode {
 
     /**
      * Core CTR mode processing (same for encryption and decryption)
+     * Counter blocks are independent, so large inputs are split into chunks
+     * processed in parallel, but only inside the calling thread's own ForkJoinPool:
+     * a direct call never forks onto the common pool
      * @param input Input data (plaintext or ciphertext)
      * @param key Encryption key
      * @param nonce 96-bit nonce
@@ -86,29 +101,41 @@ public class CTRMode implements CipherMode {
     private byte[] ctrProcess(byte[] input, byte[] key, byte[] nonce) {
         byte[] output = new byte[input.length];
 
-        // Calculate number of blocks needed (round up)
-        int numBlocks = (input.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        // Expand the key once for all blocks
+        AES cipher = aes.prepareKey(key);
+
+        ForkJoinPool pool = ForkJoinTask.getPool();
+        if (input.length < PARALLEL_THRESHOLD || pool == null || pool == ForkJoinPool.commonPool()) {
+            processRange(cipher, nonce, input, output, 0, input.length);
+        } else {
+            int chunks = (input.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            IntStream.range(0, chunks).parallel().forEach(chunk -> processRange(cipher, nonce, input, output,
+                    chunk * CHUNK_SIZE, Math.min(input.length, (chunk + 1) * CHUNK_SIZE)));
+        }
+
+        return output;
+    }
+
+    /**
+     * Processes output[from, to); from must be a multiple of the block size
+     */
+    private void processRange(AES cipher, byte[] nonce, byte[] input, byte[] output, int from, int to) {
+        byte[] keystream = new byte[BLOCK_SIZE];
 
         // Process each block
-        for (int i = 0; i < numBlocks; i++) {
+        for (int offset = from; offset < to; offset += BLOCK_SIZE) {
             // Build counter block: Nonce (96 bits) || Counter (32 bits)
-            byte[] counterBlock = buildCounterBlock(nonce, i);
+            byte[] counterBlock = buildCounterBlock(nonce, offset / BLOCK_SIZE);
 
             // Encrypt counter block to generate keystream
-            byte[] keystream = aes.encryptBlock(counterBlock, key);
-
-            // Calculate how many bytes to process in this block
-            int inputOffset = i * BLOCK_SIZE;
-            int remainingBytes = input.length - inputOffset;
-            int bytesToProcess = Math.min(BLOCK_SIZE, remainingBytes);
+            cipher.encrypt(counterBlock, 0, keystream, 0);
 
             // XOR input with keystream
+            int bytesToProcess = Math.min(BLOCK_SIZE, to - offset);
             for (int j = 0; j < bytesToProcess; j++) {
-                output[inputOffset + j] = (byte) (input[inputOffset + j] ^ keystream[j]);
+                output[offset + j] = (byte) (input[offset + j] ^ keystream[j]);
             }
         }
-
-        return output;
     }
 
     /**
@@ -1,5 +1,7 @@
 package modes;
+import core.AES;
 import core.AESBlockCipher;
+import metrics.CipherMetrics;
 /**
  * ECB (Electronic Codebook) Mode Implementation
  * WARNING: ECB is not secure for most use cases as it doesn't hide data patterns
@@ -35,6 +37,9 @@ public class ECBMode implements CipherMode {
         int numBlocks = paddedPlaintext.length / BLOCK_SIZE;
         byte[] ciphertext = new byte[paddedPlaintext.length];
 
+        // Expand the key once for all blocks
+        AES cipher = aes.prepareKey(key);
+
         // Encrypt each block independently
         for (int i = 0; i < numBlocks; i++) {
             int offset = i * BLOCK_SIZE;
@@ -42,7 +47,7 @@ public class ECBMode implements CipherMode {
             System.arraycopy(paddedPlaintext, offset, block, 0, BLOCK_SIZE);
 
             // Encrypt block using AES core
-            byte[] encryptedBlock = aes.encryptBlock(block, key);
+            byte[] encryptedBlock = cipher.encrypt(block);
             System.arraycopy(encryptedBlock, 0, ciphertext, offset, BLOCK_SIZE);
         }
 
@@ -66,6 +71,9 @@ public class ECBMode implements CipherMode {
         int numBlocks = ciphertext.length / BLOCK_SIZE;
         byte[] paddedPlaintext = new byte[ciphertext.length];
 
+        // Expand the key once for all blocks
+        AES cipher = aes.prepareKey(key);
+
         // Decrypt each block independently
         for (int i = 0; i < numBlocks; i++) {
             int offset = i * BLOCK_SIZE;
@@ -73,7 +81,7 @@ public class ECBMode implements CipherMode {
             System.arraycopy(ciphertext, offset, block, 0, BLOCK_SIZE);
 
             // Decrypt block using AES core
-            byte[] decryptedBlock = aes.decryptBlock(block, key);
+            byte[] decryptedBlock = cipher.decrypt(block);
             System.arraycopy(decryptedBlock, 0, paddedPlaintext, offset, BLOCK_SIZE);
         }
 
@@ -123,16 +131,19 @@ public class ECBMode implements CipherMode {
 
         // Validate padding length
         if (paddingLength < 1 || paddingLength > BLOCK_SIZE) {
+            CipherMetrics.paddingFailure(getModeName());
             throw new IllegalArgumentException("Invalid padding length: " + paddingLength);
         }
 
         if (paddingLength > paddedData.length) {
+            CipherMetrics.paddingFailure(getModeName());
             throw new IllegalArgumentException("Padding length exceeds data length");
         }
 
         // Verify all padding bytes have correct value
         for (int i = paddedData.length - paddingLength; i < paddedData.length; i++) {
             if ((paddedData[i] & 0xFF) != paddingLength) {
+                CipherMetrics.paddingFailure(getModeName());
                 throw new IllegalArgumentException("Invalid padding bytes");
             }
         }
@@ -1,31 +1,222 @@
 package modes;
+import core.AES;
 import core.AESBlockCipher;
+import metrics.CipherMetrics;
 import random.RNG;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 /**
  * GCM (Galois/Counter Mode) - Authenticated Encryption with Associated Data (AEAD)
  * Combines CTR mode encryption with GMAC authentication
  * Uses Galois Field GF(2^128) arithmetic for authentication
- * Output format: IV (96 bits) || Ciphertext || Tag (128 bits)
+ * Output format: IV (96 bits by default) || Ciphertext || Tag (128 bits by default)
+ * Other IV lengths derive J0 through GHASH; tags may be truncated to 4, 8 or 12-16 bytes
+ * Per-key work (AES expansion, H and its GHASH table) lives in a PreparedKey that
+ * can be reused for any number of messages, and encryptAll seals many small
+ * messages into one contiguous arena; the byte[]-key methods keep the last few
+ * keys prepared, so an instance holds those keys for as long as it lives
  */
 public class GCMMode implements CipherMode {
 
     private static final int BLOCK_SIZE = 16; // 128 bits
-    private static final int IV_SIZE = 12; // 96 bits
-    private static final int TAG_SIZE = 16; // 128 bits
+    private static final int DEFAULT_IV_SIZE = 12; // 96 bits
+    private static final int DEFAULT_TAG_SIZE = 16; // 128 bits
+
+    // J0 values remembered per key for non-96-bit IVs (retries resend the same IV)
+    private static final int J0_CACHE_SIZE = 64;
+
+    // Keys prepared for the byte[]-key methods, so a retry under the same key reuses
+    // its GHASH table and J0 cache
+    private static final int KEY_CACHE_SIZE = 4;
+
+    // Messages processed side by side in encryptAll
+    private static final int LANES = 4;
+
+    // R = 11100001 || 0^120 (x^128 + x^7 + x^2 + x + 1), high half
+    private static final long REDUCTION_HIGH = 0xE100000000000000L;
+
+    // Reduction of the 4 bits shifted out when a product is multiplied by x^4
+    private static final long[] NIBBLE_REDUCTION = new long[16];
+
+    static {
+        // In GCM bit order bit 0 of the low half is x^127, so bit k of the nibble lands on x^(131 - k)
+        for (int v = 1; v < 16; v++) {
+            for (int k = 0; k < 4; k++) {
+                if ((v & (1 << k)) != 0) {
+                    NIBBLE_REDUCTION[v] ^= REDUCTION_HIGH >>> (3 - k);
+                }
+            }
+        }
+    }
 
     private AESBlockCipher aes;
     private RNG randomGenerator;
+    private final int ivSize;
+    private final int tagSize;
+
+    // Raw key -> prepared key for the byte[]-key methods, replaced round-robin; guarded by keyCache
+    private final byte[][] keyCache = new byte[KEY_CACHE_SIZE][];
+    private final PreparedKey[] preparedCache = new PreparedKey[KEY_CACHE_SIZE];
+    private int nextCacheSlot;
 
     /**
-     * Constructor
+     * Constructor with a 96-bit IV and a 128-bit tag
      * @param aes The AES block cipher
      * @param randomGenerator The random number generator
      */
     public GCMMode(AESBlockCipher aes, RNG randomGenerator) {
+        this(aes, randomGenerator, DEFAULT_IV_SIZE, DEFAULT_TAG_SIZE);
+    }
+
+    /**
+     * Constructor
+     * @param aes The AES block cipher
+     * @param randomGenerator The random number generator
+     * @param ivSize Length of generated IVs in bytes (12 is the fast path; any other length uses GHASH for J0)
+     * @param tagSize Tag length in bytes (16, 15, 14, 13, 12, 8 or 4)
+     */
+    public GCMMode(AESBlockCipher aes, RNG randomGenerator, int ivSize, int tagSize) {
+        if (ivSize < 1) {
+            throw new IllegalArgumentException("IV size must be at least 1 byte");
+        }
+        if (tagSize != 4 && tagSize != 8 && (tagSize < 12 || tagSize > 16)) {
+            throw new IllegalArgumentException("Tag size must be 4, 8 or 12 to 16 bytes");
+        }
+
         this.aes = aes;
         this.randomGenerator = randomGenerator;
+        this.ivSize = ivSize;
+        this.tagSize = tagSize;
+    }
+
+    public int getIvSize() {
+        return ivSize;
+    }
+
+    public int getTagSize() {
+        return tagSize;
+    }
+
+    /**
+     * Expanded AES key with the hash subkey H and its GHASH multiplication table
+     * Safe to share between threads; J0 values for recent non-96-bit IVs are
+     * cached per key, under a lock held by this key only
+     *
+     * H, the table and the cached J0 values are key material on the Java heap;
+     * close() overwrites them. It does not touch the AES cipher: an OffHeapAES
+     * passed to prepareKey(AES) is closed by its owner
+     */
+    public static final class PreparedKey implements AutoCloseable {
+        private final AES cipher;
+        private final byte[] h;
+        private final long[] hashTable;
+        private volatile boolean closed;
+
+        // IV -> J0, least recently used evicted first
+        private final Map<ByteBuffer, byte[]> j0Cache = new LinkedHashMap<ByteBuffer, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, byte[]> eldest) {
+                return size() > J0_CACHE_SIZE;
+            }
+        };
+
+        private PreparedKey(AES cipher, byte[] h, long[] hashTable) {
+            this.cipher = cipher;
+            this.h = h;
+            this.hashTable = hashTable;
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Overwrites H, its GHASH table and the cached J0 values with zeros; the key
+         * cannot be used afterwards and must not be closed while a message is in progress
+         */
+        @Override
+        public void close() {
+            closed = true;
+            Arrays.fill(h, (byte) 0);
+            Arrays.fill(hashTable, 0L);
+            synchronized (j0Cache) {
+                for (byte[] j0 : j0Cache.values()) {
+                    Arrays.fill(j0, (byte) 0);
+                }
+                j0Cache.clear();
+            }
+        }
+
+        private void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("Key has been closed");
+            }
+        }
+    }
+
+    /**
+     * Expands the key and computes H = E(K, 0^128) and its GHASH table
+     * @param key AES key (16, 24 or 32 bytes)
+     */
+    public PreparedKey prepareKey(byte[] key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+
+        return prepareKey(aes.prepareKey(key));
+    }
+
+    /**
+     * Prepared key for the byte[]-key methods: one of the last few keys used with this
+     * instance, compared in constant time, or a newly prepared one
+     * These keys are never closed; use prepareKey for a key whose lifetime the caller controls
+     */
+    private PreparedKey cachedKey(byte[] key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        synchronized (keyCache) {
+            for (int i = 0; i < KEY_CACHE_SIZE; i++) {
+                if (keyCache[i] != null && MessageDigest.isEqual(keyCache[i], key)) {
+                    return preparedCache[i];
+                }
+            }
+        }
+
+        PreparedKey prepared = prepareKey(key);
+        synchronized (keyCache) {
+            int slot = nextCacheSlot;
+            nextCacheSlot = (slot + 1) % KEY_CACHE_SIZE;
+            if (keyCache[slot] != null) {
+                Arrays.fill(keyCache[slot], (byte) 0);
+            }
+            keyCache[slot] = key.clone();
+            preparedCache[slot] = prepared;
+        }
+        return prepared;
+    }
+
+    /**
+     * Computes H and its GHASH table for an already expanded key, e.g. an OffHeapAES
+     * The returned key uses the cipher directly, so it stops working once that is closed
+     */
+    public PreparedKey prepareKey(AES cipher) {
+        if (cipher == null) {
+            throw new IllegalArgumentException("Cipher cannot be null");
+        }
+
+        byte[] h = cipher.encrypt(new byte[BLOCK_SIZE]);
+        return new PreparedKey(cipher, h, buildHashTable(h));
     }
 
+    // ==================== SINGLE MESSAGE ====================
+
     /**
      * Encrypts plaintext with optional additional authenticated data (AAD)
      * @param plaintext The data to encrypt
@@ -34,6 +225,17 @@ public class GCMMode implements CipherMode {
      * @return IV || Ciphertext || Tag
      */
     public byte[] encryptWithAAD(byte[] plaintext, byte[] key, byte[] aad) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return encryptWithAAD(plaintext, cachedKey(key), aad);
+    }
+
+    /**
+     * Encrypts plaintext under an already prepared key
+     * @see #encryptWithAAD(byte[], byte[], byte[])
+     */
+    public byte[] encryptWithAAD(byte[] plaintext, PreparedKey key, byte[] aad) {
         if (plaintext == null || plaintext.length == 0) {
             throw new IllegalArgumentException("Plaintext cannot be null or empty");
         }
@@ -41,29 +243,20 @@ public class GCMMode implements CipherMode {
             throw new IllegalArgumentException("Key cannot be null");
         }
 
-        // Generate random 96-bit IV
-        byte[] iv = randomGenerator.randomBytes(IV_SIZE);
-
-        // Compute H = E(K, 0^128) - the hash subkey
-        byte[] h = computeHashSubkey(key);
-
-        // Perform CTR mode encryption
-        byte[] ciphertext = ctrEncrypt(plaintext, key, iv);
+        // Generate random IV
+        byte[] iv = randomGenerator.randomBytes(ivSize);
 
-        // Compute authentication tag
-        byte[] tag = computeTag(h, iv, ciphertext, aad, key);
-
-        // Combine: IV || Ciphertext || Tag
-        byte[] result = new byte[IV_SIZE + ciphertext.length + TAG_SIZE];
-        System.arraycopy(iv, 0, result, 0, IV_SIZE);
-        System.arraycopy(ciphertext, 0, result, IV_SIZE, ciphertext.length);
-        System.arraycopy(tag, 0, result, IV_SIZE + ciphertext.length, TAG_SIZE);
+        // Result: IV || Ciphertext || Tag
+        byte[] result = new byte[ivSize + plaintext.length + tagSize];
+        System.arraycopy(iv, 0, result, 0, ivSize);
+        // A fresh random IV is never seen again, so it stays out of the J0 cache
+        seal(key, deriveJ0(key, iv), aad, plaintext, 0, plaintext.length, result, ivSize);
 
         return result;
     }
 
     /**
-     * Decrypts ciphertext and verifies authentication tag
+     * Decrypts and verifies ciphertext with AAD
      * @param ciphertext IV || Ciphertext || Tag
      * @param key The decryption key
      * @param aad Additional authenticated data (must match encryption)
@@ -71,7 +264,18 @@ public class GCMMode implements CipherMode {
      * @throws IllegalArgumentException if authentication fails
      */
     public byte[] decryptWithAAD(byte[] ciphertext, byte[] key, byte[] aad) {
-        if (ciphertext == null || ciphertext.length < IV_SIZE + TAG_SIZE) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return decryptWithAAD(ciphertext, cachedKey(key), aad);
+    }
+
+    /**
+     * Decrypts ciphertext under an already prepared key
+     * @see #decryptWithAAD(byte[], byte[], byte[])
+     */
+    public byte[] decryptWithAAD(byte[] ciphertext, PreparedKey key, byte[] aad) {
+        if (ciphertext == null || ciphertext.length < ivSize + tagSize) {
             throw new IllegalArgumentException("Ciphertext too short");
         }
         if (key == null) {
@@ -79,31 +283,271 @@ public class GCMMode implements CipherMode {
         }
 
         // Extract IV
-        byte[] iv = new byte[IV_SIZE];
-        System.arraycopy(ciphertext, 0, iv, 0, IV_SIZE);
+        byte[] iv = new byte[ivSize];
+        System.arraycopy(ciphertext, 0, iv, 0, ivSize);
 
-        // Extract tag
-        byte[] receivedTag = new byte[TAG_SIZE];
-        System.arraycopy(ciphertext, ciphertext.length - TAG_SIZE, receivedTag, 0, TAG_SIZE);
+        return open(key, computeJ0(key, iv), aad, ciphertext, ivSize, ciphertext.length - ivSize - tagSize);
+    }
 
-        // Extract encrypted data
-        int encryptedLength = ciphertext.length - IV_SIZE - TAG_SIZE;
-        byte[] encryptedData = new byte[encryptedLength];
-        System.arraycopy(ciphertext, IV_SIZE, encryptedData, 0, encryptedLength);
+    /**
+     * Encrypts with a caller-supplied IV instead of a generated one
+     * The caller must never reuse an IV under the same key
+     * Empty plaintext is allowed (the result is then a GMAC tag over the AAD)
+     * @param plaintext The data to encrypt
+     * @param key The encryption key
+     * @param iv IV of any non-empty length (96 bits recommended and fastest)
+     * @param aad Additional authenticated data (can be null or empty)
+     * @return Ciphertext || Tag (the IV is not included)
+     */
+    public byte[] encryptWithIV(byte[] plaintext, byte[] key, byte[] iv, byte[] aad) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return encryptWithIV(plaintext, cachedKey(key), iv, aad);
+    }
 
-        // Compute H = E(K, 0^128)
-        byte[] h = computeHashSubkey(key);
+    /**
+     * Encrypts with a caller-supplied IV under an already prepared key
+     * @see #encryptWithIV(byte[], byte[], byte[], byte[])
+     */
+    public byte[] encryptWithIV(byte[] plaintext, PreparedKey key, byte[] iv, byte[] aad) {
+        if (plaintext == null) {
+            throw new IllegalArgumentException("Plaintext cannot be null");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        if (iv == null || iv.length == 0) {
+            throw new IllegalArgumentException("IV cannot be null or empty");
+        }
 
-        // Compute expected tag
-        byte[] computedTag = computeTag(h, iv, encryptedData, aad, key);
+        // Result: Ciphertext || Tag (truncated to the configured length)
+        byte[] result = new byte[plaintext.length + tagSize];
+        seal(key, computeJ0(key, iv), aad, plaintext, 0, plaintext.length, result, 0);
 
-        // Verify tag (constant-time comparison)
-        if (!constantTimeEqual(receivedTag, computedTag)) {
-            throw new IllegalArgumentException("Authentication failed: tag mismatch");
+        return result;
+    }
+
+    /**
+     * Decrypts data sealed by encryptWithIV
+     * @param ciphertext Ciphertext || Tag (without the IV)
+     * @param key The decryption key
+     * @param iv IV used for encryption
+     * @param aad Additional authenticated data (must match encryption)
+     * @return Decrypted plaintext
+     * @throws IllegalArgumentException if authentication fails
+     */
+    public byte[] decryptWithIV(byte[] ciphertext, byte[] key, byte[] iv, byte[] aad) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return decryptWithIV(ciphertext, cachedKey(key), iv, aad);
+    }
+
+    /**
+     * Decrypts data sealed by encryptWithIV under an already prepared key
+     * @see #decryptWithIV(byte[], byte[], byte[], byte[])
+     */
+    public byte[] decryptWithIV(byte[] ciphertext, PreparedKey key, byte[] iv, byte[] aad) {
+        if (ciphertext == null || ciphertext.length < tagSize) {
+            throw new IllegalArgumentException("Ciphertext too short");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        if (iv == null || iv.length == 0) {
+            throw new IllegalArgumentException("IV cannot be null or empty");
+        }
+
+        return open(key, computeJ0(key, iv), aad, ciphertext, 0, ciphertext.length - tagSize);
+    }
+
+    /**
+     * Encrypts input[inputOffset, inputOffset + length) with a caller-supplied IV into output,
+     * for callers that stream data through their own fixed buffers
+     * @return Bytes written to output: length + tag size (Ciphertext || Tag)
+     */
+    public int encryptWithIV(PreparedKey key, byte[] iv, byte[] aad, byte[] input, int inputOffset, int length,
+                             byte[] output, int outputOffset) {
+        checkRangeArguments(key, iv, input, inputOffset, length, output, outputOffset, length + tagSize);
+
+        seal(key, computeJ0(key, iv), aad, input, inputOffset, length, output, outputOffset);
+        return length + tagSize;
+    }
+
+    /**
+     * Verifies and decrypts input[inputOffset, inputOffset + length) (Ciphertext || Tag) into output
+     * Nothing is written to output if authentication fails
+     * @return Plaintext bytes written to output
+     * @throws IllegalArgumentException if authentication fails
+     */
+    public int decryptWithIV(PreparedKey key, byte[] iv, byte[] aad, byte[] input, int inputOffset, int length,
+                             byte[] output, int outputOffset) {
+        if (length < tagSize) {
+            throw new IllegalArgumentException("Ciphertext too short");
+        }
+        checkRangeArguments(key, iv, input, inputOffset, length, output, outputOffset, length - tagSize);
+
+        open(key, computeJ0(key, iv), aad, input, inputOffset, length - tagSize, output, outputOffset);
+        return length - tagSize;
+    }
+
+    private static void checkRangeArguments(PreparedKey key, byte[] iv, byte[] input, int inputOffset, int length,
+                                            byte[] output, int outputOffset, int outputLength) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        if (iv == null || iv.length == 0) {
+            throw new IllegalArgumentException("IV cannot be null or empty");
+        }
+        if (input == null || inputOffset < 0 || length < 0 || inputOffset + length > input.length) {
+            throw new IllegalArgumentException("Invalid input range");
+        }
+        if (output == null || outputOffset < 0 || outputOffset + outputLength > output.length) {
+            throw new IllegalArgumentException("Output buffer too small");
+        }
+    }
+
+    // ==================== INCREMENTAL ENCRYPTION ====================
+
+    /**
+     * Starts encrypting one message whose length is not known in advance
+     * @see Encryptor
+     */
+    public Encryptor startEncryption(PreparedKey key, byte[] iv) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        if (iv == null || iv.length == 0) {
+            throw new IllegalArgumentException("IV cannot be null or empty");
+        }
+        return new Encryptor(key, computeJ0(key, iv));
+    }
+
+    /**
+     * Encrypts one message piece by piece: all AAD first, then any number of update
+     * calls that return ciphertext straight away, then finish for the tag
+     * The output is Ciphertext || Tag, the same as encryptWithIV; not thread-safe
+     */
+    public final class Encryptor {
+        // GCM counters cover at most 2^32 - 2 blocks of plaintext
+        private static final long MAX_TEXT_LENGTH = ((1L << 32) - 2) * BLOCK_SIZE;
+
+        private final PreparedKey key;
+        private final byte[] j0;
+        private final byte[] counter;
+        private final byte[] keystream = new byte[BLOCK_SIZE];
+        private int keystreamUsed = BLOCK_SIZE;
+
+        // GHASH input not yet absorbed (AAD, then ciphertext), less than one block
+        private final long[] state = new long[2];
+        private final byte[] partial = new byte[BLOCK_SIZE];
+        private int partialLength;
+
+        private long aadLength;
+        private long textLength;
+        private boolean dataStarted;
+        private boolean finished;
+
+        private Encryptor(PreparedKey key, byte[] j0) {
+            this.key = key;
+            this.j0 = j0;
+            this.counter = j0.clone();
+        }
+
+        public void updateAAD(byte[] aad, int offset, int length) {
+            checkNotFinished();
+            if (dataStarted) {
+                throw new IllegalStateException("AAD must be supplied before data");
+            }
+            aadLength += length;
+            absorb(aad, offset, length);
+        }
+
+        /**
+         * Encrypts in[inOffset, inOffset + length) into out; in and out may be the same
+         * range but must not otherwise overlap
+         * @return Bytes written to out (always length)
+         */
+        public int update(byte[] in, int inOffset, int length, byte[] out, int outOffset) {
+            checkNotFinished();
+            if (!dataStarted) {
+                // AAD is zero-padded to a block boundary before the ciphertext
+                padPartial();
+                dataStarted = true;
+            }
+            if (length > MAX_TEXT_LENGTH - textLength) {
+                throw new IllegalArgumentException("Message too long for GCM");
+            }
+            textLength += length;
+
+            int done = 0;
+            while (done < length) {
+                if (keystreamUsed == BLOCK_SIZE && partialLength == 0 && length - done >= BLOCK_SIZE) {
+                    // Whole block: encrypt and hash it in place
+                    increment32(counter);
+                    key.cipher.encrypt(counter, 0, keystream, 0);
+                    for (int j = 0; j < BLOCK_SIZE; j++) {
+                        out[outOffset + done + j] = (byte) (in[inOffset + done + j] ^ keystream[j]);
+                    }
+                    ghashBlock(key.hashTable, state, getLong(out, outOffset + done), getLong(out, outOffset + done + 8));
+                    done += BLOCK_SIZE;
+                    continue;
+                }
+
+                if (keystreamUsed == BLOCK_SIZE) {
+                    increment32(counter);
+                    key.cipher.encrypt(counter, 0, keystream, 0);
+                    keystreamUsed = 0;
+                }
+                byte c = (byte) (in[inOffset + done] ^ keystream[keystreamUsed++]);
+                out[outOffset + done] = c;
+                partial[partialLength++] = c;
+                if (partialLength == BLOCK_SIZE) {
+                    ghashBlock(key.hashTable, state, getLong(partial, 0), getLong(partial, 8));
+                    partialLength = 0;
+                }
+                done++;
+            }
+            return length;
+        }
+
+        /**
+         * Writes the tag (getTagSize() bytes) to out; the encryptor cannot be used afterwards
+         * @return Bytes written to out
+         */
+        public int finish(byte[] out, int outOffset) {
+            checkNotFinished();
+            finished = true;
+            padPartial();
+            finishTag(key, state, j0, aadLength, textLength, out, outOffset);
+            Arrays.fill(keystream, (byte) 0);
+            return tagSize;
         }
 
-        // Decrypt using CTR mode
-        return ctrDecrypt(encryptedData, key, iv);
+        private void absorb(byte[] data, int offset, int length) {
+            for (int i = 0; i < length; i++) {
+                partial[partialLength++] = data[offset + i];
+                if (partialLength == BLOCK_SIZE) {
+                    ghashBlock(key.hashTable, state, getLong(partial, 0), getLong(partial, 8));
+                    partialLength = 0;
+                }
+            }
+        }
+
+        private void padPartial() {
+            if (partialLength > 0) {
+                Arrays.fill(partial, partialLength, BLOCK_SIZE, (byte) 0);
+                ghashBlock(key.hashTable, state, getLong(partial, 0), getLong(partial, 8));
+                partialLength = 0;
+            }
+        }
+
+        private void checkNotFinished() {
+            if (finished) {
+                throw new IllegalStateException("Message already finished");
+            }
+        }
     }
 
     @Override
@@ -121,177 +565,434 @@ public class GCMMode implements CipherMode {
         return "GCM";
     }
 
+    // ==================== BATCH ====================
+
+    /**
+     * Many sealed messages in one contiguous array
+     * Message i is data[offset(i), offset(i) + length(i)) and has the same
+     * IV || Ciphertext || Tag layout as encryptWithAAD
+     */
+    public static final class SealedBatch {
+        private final byte[] data;
+        private final int[] offsets;
+
+        /**
+         * @param data The arena holding all messages back to back
+         * @param offsets size() + 1 ascending offsets; the last one is the end of the final message
+         */
+        public SealedBatch(byte[] data, int[] offsets) {
+            if (data == null || offsets == null || offsets.length == 0) {
+                throw new IllegalArgumentException("Batch data and offsets cannot be null or empty");
+            }
+            for (int i = 0; i < offsets.length; i++) {
+                if (offsets[i] < (i == 0 ? 0 : offsets[i - 1]) || offsets[i] > data.length) {
+                    throw new IllegalArgumentException("Invalid batch offset at index " + i);
+                }
+            }
+            this.data = data;
+            this.offsets = offsets;
+        }
+
+        public int size() {
+            return offsets.length - 1;
+        }
+
+        public int offset(int index) {
+            return offsets[index];
+        }
+
+        public int length(int index) {
+            return offsets[index + 1] - offsets[index];
+        }
+
+        /**
+         * The whole arena (not a copy)
+         */
+        public byte[] data() {
+            return data;
+        }
+
+        /**
+         * Copies message index out of the arena
+         */
+        public byte[] get(int index) {
+            byte[] message = new byte[length(index)];
+            System.arraycopy(data, offsets[index], message, 0, message.length);
+            return message;
+        }
+    }
+
     /**
-     * Computes the hash subkey H = E(K, 0^128)
+     * Encrypts many messages under one prepared key into a single arena
+     * @param plaintexts The messages (may be empty)
+     * @param key Prepared key
+     * @return IV || Ciphertext || Tag for each message, in order
      */
-    private byte[] computeHashSubkey(byte[] key) {
-        byte[] zeroBlock = new byte[BLOCK_SIZE];
-        return aes.encryptBlock(zeroBlock, key);
+    public SealedBatch encryptAll(List<byte[]> plaintexts, PreparedKey key) {
+        return encryptAll(plaintexts, key, null);
     }
 
     /**
-     * CTR mode encryption for GCM
+     * Encrypts many messages that share the same AAD
+     * The AAD is hashed once; IVs come from one RNG call; messages are processed
+     * LANES at a time, one block from each lane per step, so consecutive AES and
+     * GHASH steps are independent of each other
+     * @param plaintexts The messages (may be empty)
+     * @param key Prepared key
+     * @param aad Additional authenticated data for every message (can be null or empty)
+     * @return IV || Ciphertext || Tag for each message, in order
      */
-    private byte[] ctrEncrypt(byte[] plaintext, byte[] key, byte[] iv) {
-        byte[] ciphertext = new byte[plaintext.length];
-        int numBlocks = (plaintext.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    public SealedBatch encryptAll(List<byte[]> plaintexts, PreparedKey key, byte[] aad) {
+        if (plaintexts == null) {
+            throw new IllegalArgumentException("Messages cannot be null");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+
+        int count = plaintexts.size();
+        int[] offsets = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            byte[] plaintext = plaintexts.get(i);
+            if (plaintext == null) {
+                throw new IllegalArgumentException("Message cannot be null");
+            }
+            offsets[i + 1] = offsets[i] + ivSize + plaintext.length + tagSize;
+        }
 
-        for (int i = 0; i < numBlocks; i++) {
-            // Counter starts at 2 (1 is reserved for tag generation)
-            byte[] counterBlock = buildCounterBlock(iv, i + 2);
-            byte[] keystream = aes.encryptBlock(counterBlock, key);
+        byte[] data = new byte[offsets[count]];
+        byte[] ivs = randomGenerator.randomBytes(ivSize * count);
 
-            int offset = i * BLOCK_SIZE;
-            int bytesToProcess = Math.min(BLOCK_SIZE, plaintext.length - offset);
+        // GHASH state after the AAD is the same for every message
+        long[] aadState = new long[2];
+        ghashUpdate(key.hashTable, aadState, aad, 0, aad == null ? 0 : aad.length);
+        long aadLength = aad == null ? 0 : aad.length;
 
-            for (int j = 0; j < bytesToProcess; j++) {
-                ciphertext[offset + j] = (byte) (plaintext[offset + j] ^ keystream[j]);
+        long[][] states = new long[LANES][2];
+        byte[][] counters = new byte[LANES][];
+        byte[][] j0s = new byte[LANES][];
+        byte[] keystream = new byte[BLOCK_SIZE];
+
+        for (int first = 0; first < count; first += LANES) {
+            int lanes = Math.min(LANES, count - first);
+            int maxBlocks = 0;
+
+            for (int lane = 0; lane < lanes; lane++) {
+                int index = first + lane;
+                System.arraycopy(ivs, index * ivSize, data, offsets[index], ivSize);
+
+                byte[] iv = new byte[ivSize];
+                System.arraycopy(ivs, index * ivSize, iv, 0, ivSize);
+                j0s[lane] = deriveJ0(key, iv);
+                counters[lane] = j0s[lane].clone();
+                states[lane][0] = aadState[0];
+                states[lane][1] = aadState[1];
+
+                maxBlocks = Math.max(maxBlocks, blockCount(plaintexts.get(index).length));
             }
+
+            for (int b = 0; b < maxBlocks; b++) {
+                for (int lane = 0; lane < lanes; lane++) {
+                    byte[] plaintext = plaintexts.get(first + lane);
+                    int done = b * BLOCK_SIZE;
+                    if (done >= plaintext.length) {
+                        continue;
+                    }
+
+                    int n = Math.min(BLOCK_SIZE, plaintext.length - done);
+                    int out = offsets[first + lane] + ivSize + done;
+
+                    increment32(counters[lane]);
+                    key.cipher.encrypt(counters[lane], 0, keystream, 0);
+                    for (int j = 0; j < n; j++) {
+                        data[out + j] = (byte) (plaintext[done + j] ^ keystream[j]);
+                    }
+                    ghashUpdate(key.hashTable, states[lane], data, out, n);
+                }
+            }
+
+            for (int lane = 0; lane < lanes; lane++) {
+                int index = first + lane;
+                int length = plaintexts.get(index).length;
+                finishTag(key, states[lane], j0s[lane], aadLength, length,
+                        data, offsets[index] + ivSize + length);
+            }
+        }
+
+        return new SealedBatch(data, offsets);
+    }
+
+    /**
+     * Decrypts and verifies every message of a batch; fails on the first message that does not verify
+     * @param batch Messages sealed by encryptAll (or laid out the same way)
+     * @param key Prepared key
+     * @param aad The AAD used for every message (can be null or empty)
+     * @return Plaintext for each message, in order
+     */
+    public List<byte[]> decryptAll(SealedBatch batch, PreparedKey key, byte[] aad) {
+        if (batch == null) {
+            throw new IllegalArgumentException("Batch cannot be null");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
         }
 
-        return ciphertext;
+        List<byte[]> result = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.length(i) < ivSize + tagSize) {
+                throw new IllegalArgumentException("Ciphertext too short");
+            }
+
+            byte[] iv = new byte[ivSize];
+            System.arraycopy(batch.data, batch.offset(i), iv, 0, ivSize);
+            result.add(open(key, deriveJ0(key, iv), aad, batch.data, batch.offset(i) + ivSize,
+                    batch.length(i) - ivSize - tagSize));
+        }
+        return result;
     }
 
+    // ==================== SEAL / OPEN ====================
+
     /**
-     * CTR mode decryption for GCM (same as encryption)
+     * Writes Ciphertext || Tag for in[inOffset, inOffset + length) to out at outOffset
      */
-    private byte[] ctrDecrypt(byte[] ciphertext, byte[] key, byte[] iv) {
-        return ctrEncrypt(ciphertext, key, iv);
+    private void seal(PreparedKey key, byte[] j0, byte[] aad, byte[] in, int inOffset, int length,
+                      byte[] out, int outOffset) {
+        ctr(key.cipher, j0, in, inOffset, out, outOffset, length);
+
+        long[] state = new long[2];
+        int aadLength = aad == null ? 0 : aad.length;
+        ghashUpdate(key.hashTable, state, aad, 0, aadLength);
+        ghashUpdate(key.hashTable, state, out, outOffset, length);
+        finishTag(key, state, j0, aadLength, length, out, outOffset + length);
     }
 
     /**
-     * Builds counter block: IV (96 bits) || Counter (32 bits, big-endian)
+     * Verifies the tag that follows in[offset, offset + length) and only then decrypts
      */
-    private byte[] buildCounterBlock(byte[] iv, int counter) {
-        byte[] block = new byte[BLOCK_SIZE];
-        System.arraycopy(iv, 0, block, 0, IV_SIZE);
+    private byte[] open(PreparedKey key, byte[] j0, byte[] aad, byte[] in, int offset, int length) {
+        byte[] plaintext = new byte[length];
+        open(key, j0, aad, in, offset, length, plaintext, 0);
+        return plaintext;
+    }
+
+    private void open(PreparedKey key, byte[] j0, byte[] aad, byte[] in, int offset, int length,
+                      byte[] out, int outOffset) {
+        long[] state = new long[2];
+        int aadLength = aad == null ? 0 : aad.length;
+        ghashUpdate(key.hashTable, state, aad, 0, aadLength);
+        ghashUpdate(key.hashTable, state, in, offset, length);
 
-        block[12] = (byte) (counter >>> 24);
-        block[13] = (byte) (counter >>> 16);
-        block[14] = (byte) (counter >>> 8);
-        block[15] = (byte) counter;
+        byte[] computedTag = new byte[BLOCK_SIZE];
+        finishTag(key, state, j0, aadLength, length, computedTag, 0);
 
-        return block;
+        // Verify tag (constant-time comparison over the truncated length)
+        if (!constantTimeEqual(in, offset + length, computedTag, tagSize)) {
+            CipherMetrics.authenticationFailure(getModeName());
+            throw new IllegalArgumentException("Authentication failed: tag mismatch");
+        }
+
+        ctr(key.cipher, j0, in, offset, out, outOffset, length);
     }
 
     /**
-     * Computes GMAC authentication tag
+     * Absorbs the length block len(AAD) || len(C) in bits and writes the first
+     * tagSize bytes of GHASH XOR E(K, J0) to out
      */
-    private byte[] computeTag(byte[] h, byte[] iv, byte[] ciphertext, byte[] aad, byte[] key) {
-        // Initialize GHASH with zero
-        byte[] ghash = new byte[BLOCK_SIZE];
-
-        // Process AAD if present
-        if (aad != null && aad.length > 0) {
-            ghash = ghashUpdate(ghash, h, aad);
+    private void finishTag(PreparedKey key, long[] state, byte[] j0, long aadLength, long ciphertextLength,
+                           byte[] out, int outOffset) {
+        ghashBlock(key.hashTable, state, aadLength * 8, ciphertextLength * 8);
+
+        byte[] tag = new byte[BLOCK_SIZE];
+        key.cipher.encrypt(j0, 0, tag, 0);
+        for (int i = 0; i < tagSize; i++) {
+            out[outOffset + i] = (byte) (tag[i] ^ (state[i / 8] >>> (56 - 8 * (i % 8))));
         }
+    }
 
-        // Process ciphertext
-        ghash = ghashUpdate(ghash, h, ciphertext);
-
-        // Process lengths: len(AAD) || len(C) in bits
-        byte[] lengths = new byte[BLOCK_SIZE];
-        long aadBitLength = (aad != null) ? (long) aad.length * 8 : 0;
-        long ciphertextBitLength = (long) ciphertext.length * 8;
+    // ==================== J0 / CTR ====================
 
-        // AAD length (bits 0-63, big-endian)
-        for (int i = 0; i < 8; i++) {
-            lengths[7 - i] = (byte) (aadBitLength >>> (i * 8));
+    /**
+     * Pre-counter block J0, with non-96-bit IVs looked up in the key's J0 cache first
+     * Used where an IV can come back: decryption and caller-supplied IVs
+     */
+    private static byte[] computeJ0(PreparedKey key, byte[] iv) {
+        key.checkOpen();
+        if (iv.length == DEFAULT_IV_SIZE) {
+            return deriveJ0(key, iv);
         }
 
-        // Ciphertext length (bits 64-127, big-endian)
-        for (int i = 0; i < 8; i++) {
-            lengths[15 - i] = (byte) (ciphertextBitLength >>> (i * 8));
+        ByteBuffer lookup = ByteBuffer.wrap(iv.clone());
+        synchronized (key.j0Cache) {
+            byte[] cached = key.j0Cache.get(lookup);
+            if (cached != null) {
+                return cached.clone();
+            }
         }
 
-        ghash = gfMultiply(xor(ghash, lengths), h);
+        byte[] j0 = deriveJ0(key, iv);
+        synchronized (key.j0Cache) {
+            key.j0Cache.put(lookup, j0.clone());
+        }
+        return j0;
+    }
 
-        // Encrypt counter block 1: IV || 0x00000001
-        byte[] j0 = buildCounterBlock(iv, 1);
-        byte[] encryptedJ0 = aes.encryptBlock(j0, key);
+    /**
+     * Pre-counter block J0
+     * 96-bit IV: IV || 0^31 || 1 (fast path, no GHASH)
+     * Other lengths: GHASH(H, IV || 0-padding || 0^64 || [len(IV) in bits]_64)
+     */
+    private static byte[] deriveJ0(PreparedKey key, byte[] iv) {
+        key.checkOpen();
+        byte[] j0 = new byte[BLOCK_SIZE];
+        if (iv.length == DEFAULT_IV_SIZE) {
+            System.arraycopy(iv, 0, j0, 0, DEFAULT_IV_SIZE);
+            j0[15] = 1;
+            return j0;
+        }
 
-        // Final tag = GHASH XOR E(K, J0)
-        return xor(ghash, encryptedJ0);
+        long[] state = new long[2];
+        ghashUpdate(key.hashTable, state, iv, 0, iv.length);
+        ghashBlock(key.hashTable, state, 0, (long) iv.length * 8);
+        putLong(j0, 0, state[0]);
+        putLong(j0, 8, state[1]);
+        return j0;
     }
 
     /**
-     * GHASH update function - processes data blocks
+     * CTR mode for GCM: counter blocks start at inc32(J0) (J0 itself is reserved for the tag)
+     * Encryption and decryption are the same operation
      */
-    private byte[] ghashUpdate(byte[] ghash, byte[] h, byte[] data) {
-        int numBlocks = (data.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    private static void ctr(AES cipher, byte[] j0, byte[] in, int inOffset, byte[] out, int outOffset, int length) {
+        byte[] counter = j0.clone();
+        byte[] keystream = new byte[BLOCK_SIZE];
 
-        for (int i = 0; i < numBlocks; i++) {
-            byte[] block = new byte[BLOCK_SIZE];
-            int offset = i * BLOCK_SIZE;
-            int bytesToCopy = Math.min(BLOCK_SIZE, data.length - offset);
-            System.arraycopy(data, offset, block, 0, bytesToCopy);
+        for (int done = 0; done < length; done += BLOCK_SIZE) {
+            increment32(counter);
+            cipher.encrypt(counter, 0, keystream, 0);
 
-            // GHASH: ghash = (ghash XOR block) * H in GF(2^128)
-            ghash = gfMultiply(xor(ghash, block), h);
+            int n = Math.min(BLOCK_SIZE, length - done);
+            for (int j = 0; j < n; j++) {
+                out[outOffset + done + j] = (byte) (in[inOffset + done + j] ^ keystream[j]);
+            }
         }
-
-        return ghash;
     }
 
     /**
-     * Multiplication in GF(2^128) using the reduction polynomial
-     * R = 11100001 || 0^120 (i.e., x^128 + x^7 + x^2 + x + 1)
+     * inc32: increments the low 32 bits of a counter block modulo 2^32
      */
-    private byte[] gfMultiply(byte[] x, byte[] y) {
-        byte[] result = new byte[BLOCK_SIZE];
-        byte[] v = y.clone();
+    private static void increment32(byte[] counter) {
+        for (int j = BLOCK_SIZE - 1; j >= BLOCK_SIZE - 4; j--) {
+            if (++counter[j] != 0) {
+                break;
+            }
+        }
+    }
 
-        // For each bit in x
-        for (int i = 0; i < BLOCK_SIZE * 8; i++) {
-            // If bit is set, XOR result with v
-            int byteIndex = i / 8;
-            int bitIndex = 7 - (i % 8);
+    private static int blockCount(int length) {
+        return (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
 
-            if (((x[byteIndex] >> bitIndex) & 1) == 1) {
-                result = xor(result, v);
-            }
+    // ==================== GHASH ====================
 
-            // Right shift v by 1 bit
-            boolean lsb = (v[BLOCK_SIZE - 1] & 1) == 1;
+    /**
+     * Builds the 4-bit multiplication table for H:
+     * entry v (high half at 2v, low half at 2v + 1) holds v(x) * H, where the
+     * nibble's most significant bit is the lowest power of x (GCM bit order)
+     */
+    private static long[] buildHashTable(byte[] h) {
+        long[] table = new long[32];
+        long high = getLong(h, 0);
+        long low = getLong(h, 8);
+
+        // Entries 8, 4, 2, 1 are H, H * x, H * x^2, H * x^3
+        for (int bit = 8; bit > 0; bit >>= 1) {
+            table[2 * bit] = high;
+            table[2 * bit + 1] = low;
+
+            // Multiply by x: shift right, reduce with R if a bit falls off
+            long odd = low & 1;
+            low = (low >>> 1) | (high << 63);
+            high = (high >>> 1) ^ (odd != 0 ? REDUCTION_HIGH : 0);
+        }
 
-            for (int j = BLOCK_SIZE - 1; j > 0; j--) {
-                v[j] = (byte) ((v[j] >>> 1) | ((v[j - 1] & 1) << 7));
+        // Other entries by linearity
+        for (int v = 3; v < 16; v++) {
+            int lowest = v & -v;
+            if (lowest != v) {
+                table[2 * v] = table[2 * lowest] ^ table[2 * (v - lowest)];
+                table[2 * v + 1] = table[2 * lowest + 1] ^ table[2 * (v - lowest) + 1];
             }
-            v[0] = (byte) (v[0] >>> 1);
+        }
+        return table;
+    }
 
-            // If LSB was 1, XOR with R
-            if (lsb) {
-                v[0] ^= (byte) 0xE1; // 11100001
-            }
+    /**
+     * S = (S XOR X) * H in GF(2^128), S held as {high, low}
+     * Horner's rule over the 32 nibbles of S XOR X, highest power of x first
+     */
+    private static void ghashBlock(long[] table, long[] state, long xHigh, long xLow) {
+        long aHigh = state[0] ^ xHigh;
+        long aLow = state[1] ^ xLow;
+        long zHigh = 0;
+        long zLow = 0;
+
+        for (int i = 0; i < 32; i++) {
+            // Z = Z * x^4 (a right shift in GCM bit order)
+            int rem = (int) zLow & 0xF;
+            zLow = (zLow >>> 4) | (zHigh << 60);
+            zHigh = (zHigh >>> 4) ^ NIBBLE_REDUCTION[rem];
+
+            int v = (int) ((i < 16 ? aLow : aHigh) >>> (4 * (i & 15))) & 0xF;
+            zHigh ^= table[2 * v];
+            zLow ^= table[2 * v + 1];
         }
 
-        return result;
+        state[0] = zHigh;
+        state[1] = zLow;
     }
 
     /**
-     * XOR two byte arrays
+     * Absorbs data[offset, offset + length) zero-padded to a block boundary
      */
-    private byte[] xor(byte[] a, byte[] b) {
-        byte[] result = new byte[BLOCK_SIZE];
-        for (int i = 0; i < BLOCK_SIZE; i++) {
-            result[i] = (byte) (a[i] ^ b[i]);
+    private static void ghashUpdate(long[] table, long[] state, byte[] data, int offset, int length) {
+        int full = length / BLOCK_SIZE * BLOCK_SIZE;
+        for (int done = 0; done < full; done += BLOCK_SIZE) {
+            ghashBlock(table, state, getLong(data, offset + done), getLong(data, offset + done + 8));
+        }
+        if (full < length) {
+            byte[] last = new byte[BLOCK_SIZE];
+            System.arraycopy(data, offset + full, last, 0, length - full);
+            ghashBlock(table, state, getLong(last, 0), getLong(last, 8));
+        }
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static void putLong(byte[] bytes, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
         }
-        return result;
     }
 
     /**
      * Constant-time comparison to prevent timing attacks
+     * Compares a[aOffset, aOffset + length) with the first length bytes of b;
+     * the running time depends only on length
      */
-    private boolean constantTimeEqual(byte[] a, byte[] b) {
-        if (a.length != b.length) {
-            return false;
-        }
-
+    private static boolean constantTimeEqual(byte[] a, int aOffset, byte[] b, int length) {
         int result = 0;
-        for (int i = 0; i < a.length; i++) {
-            result |= a[i] ^ b[i];
+        for (int i = 0; i < length; i++) {
+            result |= a[aOffset + i] ^ b[i];
         }
 
         return result == 0;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,409 @@
+package modes;
+
+import core.AES;
+import core.AESBlockCipher;
+import metrics.CipherMetrics;
+import random.RNG;
+
+import java.util.Arrays;
+
+/**
+ * AES-GCM-SIV Mode Implementation (RFC 8452)
+ * Nonce-misuse-resistant authenticated encryption: repeating a nonce only reveals
+ * whether two messages (with their AAD) were identical
+ * Per-nonce authentication and encryption keys are derived from the master key,
+ * POLYVAL uses per-key 4-bit multiplication tables, CTR runs several blocks per step
+ * Supports 128-bit and 256-bit keys
+ * Output format: Nonce (12 bytes) || Ciphertext || Tag (16 bytes)
+ */
+public class GCMSIVMode implements CipherMode {
+
+    private static final int BLOCK_SIZE = 16; // AES block size in bytes
+    private static final int NONCE_SIZE = 12; // 96 bits
+    private static final int TAG_SIZE = 16;   // 128 bits
+
+    // Counter blocks encrypted per CTR step
+    private static final int CTR_BATCH = 4;
+
+    // x^128 mod P for P = x^128 + x^127 + x^126 + x^121 + 1 (high half, low half is 1)
+    private static final long REDUCTION_HIGH = 0xC200000000000000L;
+
+    // (v * x^128) mod P for every 4-bit v, used when a product is shifted by one nibble
+    private static final long[] NIBBLE_REDUCTION_LOW = new long[16];
+    private static final long[] NIBBLE_REDUCTION_HIGH = new long[16];
+
+    static {
+        long low = 1;
+        long high = REDUCTION_HIGH;
+        for (int bit = 1; bit < 16; bit <<= 1) {
+            for (int v = bit; v < 2 * bit; v++) {
+                NIBBLE_REDUCTION_LOW[v] = NIBBLE_REDUCTION_LOW[v - bit] ^ low;
+                NIBBLE_REDUCTION_HIGH[v] = NIBBLE_REDUCTION_HIGH[v - bit] ^ high;
+            }
+            // Multiply by x for the next bit
+            long carry = high >>> 63;
+            high = (high << 1) | (low >>> 63);
+            low <<= 1;
+            if (carry != 0) {
+                low ^= 1;
+                high ^= REDUCTION_HIGH;
+            }
+        }
+    }
+
+    private AESBlockCipher aes;
+    private RNG randomGenerator;
+
+    /**
+     * Constructor
+     * @param aes The AES block cipher
+     * @param randomGenerator The random number generator
+     */
+    public GCMSIVMode(AESBlockCipher aes, RNG randomGenerator) {
+        this.aes = aes;
+        this.randomGenerator = randomGenerator;
+    }
+
+    /**
+     * Encrypts plaintext with additional authenticated data
+     * @param plaintext The data to encrypt
+     * @param key The encryption key (16 or 32 bytes)
+     * @param aad Additional authenticated data (can be null or empty)
+     * @return Nonce || Ciphertext || Tag
+     */
+    public byte[] encryptWithAAD(byte[] plaintext, byte[] key, byte[] aad) {
+        if (plaintext == null || plaintext.length == 0) {
+            throw new IllegalArgumentException("Plaintext cannot be null or empty");
+        }
+
+        // Generate random 96-bit nonce
+        byte[] nonce = randomGenerator.randomBytes(NONCE_SIZE);
+
+        byte[] sealed = encryptWithNonce(plaintext, key, nonce, aad);
+
+        // Combine: Nonce || Ciphertext || Tag
+        byte[] result = new byte[NONCE_SIZE + sealed.length];
+        System.arraycopy(nonce, 0, result, 0, NONCE_SIZE);
+        System.arraycopy(sealed, 0, result, NONCE_SIZE, sealed.length);
+
+        return result;
+    }
+
+    /**
+     * Decrypts ciphertext and verifies authentication tag
+     * @param ciphertext Nonce || Ciphertext || Tag
+     * @param key The decryption key
+     * @param aad Additional authenticated data (must match encryption)
+     * @return Decrypted plaintext
+     * @throws IllegalArgumentException if authentication fails
+     */
+    public byte[] decryptWithAAD(byte[] ciphertext, byte[] key, byte[] aad) {
+        if (ciphertext == null || ciphertext.length < NONCE_SIZE + TAG_SIZE) {
+            throw new IllegalArgumentException("Ciphertext too short");
+        }
+
+        // Extract nonce
+        byte[] nonce = Arrays.copyOfRange(ciphertext, 0, NONCE_SIZE);
+
+        // Extract Ciphertext || Tag
+        byte[] sealed = Arrays.copyOfRange(ciphertext, NONCE_SIZE, ciphertext.length);
+
+        return decryptWithNonce(sealed, key, nonce, aad);
+    }
+
+    /**
+     * Encrypts with a caller-supplied nonce
+     * Reusing a nonce does not break confidentiality of distinct messages,
+     * but fresh nonces are still preferred
+     * Empty plaintext is allowed (the result is then a tag over the AAD)
+     * @param plaintext The data to encrypt
+     * @param key The encryption key (16 or 32 bytes)
+     * @param nonce 96-bit nonce
+     * @param aad Additional authenticated data (can be null or empty)
+     * @return Ciphertext || Tag (the nonce is not included)
+     */
+    public byte[] encryptWithNonce(byte[] plaintext, byte[] key, byte[] nonce, byte[] aad) {
+        if (plaintext == null) {
+            throw new IllegalArgumentException("Plaintext cannot be null");
+        }
+        checkKeyAndNonce(key, nonce);
+
+        // Derive per-nonce keys
+        long[] authTable = new long[32];
+        AES encryptionKey = deriveKeys(aes.prepareKey(key), key.length, nonce, authTable);
+
+        // Tag = E(encryption key, POLYVAL(AAD, plaintext, lengths) XOR nonce, top bit cleared)
+        byte[] tag = computeTag(authTable, encryptionKey, nonce, aad, plaintext, plaintext.length);
+
+        // Ciphertext || Tag
+        byte[] result = new byte[plaintext.length + TAG_SIZE];
+        ctr(encryptionKey, tag, plaintext, result, plaintext.length);
+        System.arraycopy(tag, 0, result, plaintext.length, TAG_SIZE);
+
+        return result;
+    }
+
+    /**
+     * Decrypts data sealed by encryptWithNonce
+     * @param ciphertext Ciphertext || Tag (without the nonce)
+     * @param key The decryption key
+     * @param nonce 96-bit nonce used for encryption
+     * @param aad Additional authenticated data (must match encryption)
+     * @return Decrypted plaintext
+     * @throws IllegalArgumentException if authentication fails
+     */
+    public byte[] decryptWithNonce(byte[] ciphertext, byte[] key, byte[] nonce, byte[] aad) {
+        if (ciphertext == null || ciphertext.length < TAG_SIZE) {
+            throw new IllegalArgumentException("Ciphertext too short");
+        }
+        checkKeyAndNonce(key, nonce);
+
+        int length = ciphertext.length - TAG_SIZE;
+        byte[] receivedTag = Arrays.copyOfRange(ciphertext, length, ciphertext.length);
+
+        // Derive per-nonce keys
+        long[] authTable = new long[32];
+        AES encryptionKey = deriveKeys(aes.prepareKey(key), key.length, nonce, authTable);
+
+        // Decrypt first: the tag covers the plaintext
+        byte[] plaintext = new byte[length];
+        ctr(encryptionKey, receivedTag, ciphertext, plaintext, length);
+
+        byte[] computedTag = computeTag(authTable, encryptionKey, nonce, aad, plaintext, length);
+
+        // Verify tag (constant-time comparison)
+        int diff = 0;
+        for (int i = 0; i < TAG_SIZE; i++) {
+            diff |= receivedTag[i] ^ computedTag[i];
+        }
+        if (diff != 0) {
+            Arrays.fill(plaintext, (byte) 0);
+            CipherMetrics.authenticationFailure(getModeName());
+            throw new IllegalArgumentException("Authentication failed: tag mismatch");
+        }
+
+        return plaintext;
+    }
+
+    @Override
+    public byte[] encrypt(byte[] plaintext, byte[] key) {
+        return encryptWithAAD(plaintext, key, null);
+    }
+
+    @Override
+    public byte[] decrypt(byte[] ciphertext, byte[] key) {
+        return decryptWithAAD(ciphertext, key, null);
+    }
+
+    @Override
+    public String getModeName() {
+        return "GCM-SIV";
+    }
+
+    private static void checkKeyAndNonce(byte[] key, byte[] nonce) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        if (key.length != 16 && key.length != 32) {
+            throw new IllegalArgumentException("GCM-SIV key must be 16 or 32 bytes");
+        }
+        if (nonce == null || nonce.length != NONCE_SIZE) {
+            throw new IllegalArgumentException("Nonce must be " + NONCE_SIZE + " bytes");
+        }
+    }
+
+    // ==================== KEY DERIVATION ====================
+
+    /**
+     * Derives the per-nonce keys: block i = E(K, LE32(i) || nonce), keeping the first 8 bytes of each
+     * Blocks 0-1 form the POLYVAL key (expanded into authTable), the rest the encryption key
+     * @return Prepared encryption key
+     */
+    private AES deriveKeys(AES masterKey, int keyLength, byte[] nonce, long[] authTable) {
+        byte[] input = new byte[BLOCK_SIZE];
+        byte[] output = new byte[BLOCK_SIZE];
+        byte[] authKey = new byte[16];
+        byte[] encryptionKey = new byte[keyLength];
+        System.arraycopy(nonce, 0, input, 4, NONCE_SIZE);
+
+        int blocks = 2 + keyLength / 8;
+        for (int i = 0; i < blocks; i++) {
+            input[0] = (byte) i;
+            masterKey.encrypt(input, 0, output, 0);
+            if (i < 2) {
+                System.arraycopy(output, 0, authKey, i * 8, 8);
+            } else {
+                System.arraycopy(output, 0, encryptionKey, (i - 2) * 8, 8);
+            }
+        }
+
+        buildPolyvalTable(authKey, authTable);
+        AES prepared = aes.prepareKey(encryptionKey);
+
+        Arrays.fill(authKey, (byte) 0);
+        Arrays.fill(encryptionKey, (byte) 0);
+        Arrays.fill(output, (byte) 0);
+
+        return prepared;
+    }
+
+    // ==================== POLYVAL ====================
+
+    /**
+     * Builds the 4-bit multiplication table for POLYVAL key H:
+     * entry v (low at 2v, high at 2v + 1) holds v(x) * H * x^-128 mod P,
+     * so dot(X, H) is 32 nibble lookups with no per-bit work
+     */
+    private static void buildPolyvalTable(byte[] h, long[] table) {
+        long low = littleEndianLong(h, 0);
+        long high = littleEndianLong(h, 8);
+
+        // H * x^-128: divide by x 128 times
+        for (int i = 0; i < 128; i++) {
+            long odd = low & 1;
+            low = (low >>> 1) | (high << 63);
+            high >>>= 1;
+            if (odd != 0) {
+                // (a + P) / x adds x^127 + x^126 + x^125 + x^120
+                high ^= 0xE100000000000000L;
+            }
+        }
+
+        table[0] = 0;
+        table[1] = 0;
+        for (int bit = 1; bit < 16; bit <<= 1) {
+            for (int v = bit; v < 2 * bit; v++) {
+                table[2 * v] = table[2 * (v - bit)] ^ low;
+                table[2 * v + 1] = table[2 * (v - bit) + 1] ^ high;
+            }
+            long carry = high >>> 63;
+            high = (high << 1) | (low >>> 63);
+            low <<= 1;
+            if (carry != 0) {
+                low ^= 1;
+                high ^= REDUCTION_HIGH;
+            }
+        }
+    }
+
+    /**
+     * S = (S XOR X) * H * x^-128, S held as {low, high}
+     * Horner's rule over the 32 nibbles of S XOR X, most significant first
+     */
+    private static void polyvalBlock(long[] table, long[] state, long xLow, long xHigh) {
+        long aLow = state[0] ^ xLow;
+        long aHigh = state[1] ^ xHigh;
+        long zLow = 0;
+        long zHigh = 0;
+
+        for (int shift = 60; shift >= 0; shift -= 4) {
+            int top = (int) (zHigh >>> 60);
+            zHigh = (zHigh << 4) | (zLow >>> 60);
+            zLow = (zLow << 4) ^ NIBBLE_REDUCTION_LOW[top];
+            zHigh ^= NIBBLE_REDUCTION_HIGH[top];
+
+            int v = (int) (aHigh >>> shift) & 0xF;
+            zLow ^= table[2 * v];
+            zHigh ^= table[2 * v + 1];
+        }
+        for (int shift = 60; shift >= 0; shift -= 4) {
+            int top = (int) (zHigh >>> 60);
+            zHigh = (zHigh << 4) | (zLow >>> 60);
+            zLow = (zLow << 4) ^ NIBBLE_REDUCTION_LOW[top];
+            zHigh ^= NIBBLE_REDUCTION_HIGH[top];
+
+            int v = (int) (aLow >>> shift) & 0xF;
+            zLow ^= table[2 * v];
+            zHigh ^= table[2 * v + 1];
+        }
+
+        state[0] = zLow;
+        state[1] = zHigh;
+    }
+
+    /**
+     * Absorbs data zero-padded to a block boundary
+     */
+    private static void polyvalUpdate(long[] table, long[] state, byte[] data, int length) {
+        int full = length / BLOCK_SIZE * BLOCK_SIZE;
+        for (int offset = 0; offset < full; offset += BLOCK_SIZE) {
+            polyvalBlock(table, state, littleEndianLong(data, offset), littleEndianLong(data, offset + 8));
+        }
+        if (full < length) {
+            byte[] last = new byte[BLOCK_SIZE];
+            System.arraycopy(data, full, last, 0, length - full);
+            polyvalBlock(table, state, littleEndianLong(last, 0), littleEndianLong(last, 8));
+        }
+    }
+
+    private byte[] computeTag(long[] authTable, AES encryptionKey, byte[] nonce, byte[] aad,
+                              byte[] plaintext, int length) {
+        long[] state = new long[2];
+        int aadLength = aad == null ? 0 : aad.length;
+
+        if (aadLength > 0) {
+            polyvalUpdate(authTable, state, aad, aadLength);
+        }
+        polyvalUpdate(authTable, state, plaintext, length);
+
+        // Length block: LE64(AAD bits) || LE64(plaintext bits)
+        polyvalBlock(authTable, state, (long) aadLength * 8, (long) length * 8);
+
+        byte[] tag = new byte[BLOCK_SIZE];
+        for (int i = 0; i < 8; i++) {
+            tag[i] = (byte) (state[0] >>> (i * 8));
+            tag[8 + i] = (byte) (state[1] >>> (i * 8));
+        }
+        for (int i = 0; i < NONCE_SIZE; i++) {
+            tag[i] ^= nonce[i];
+        }
+        tag[15] &= 0x7F;
+
+        encryptionKey.encrypt(tag, 0, tag, 0);
+        return tag;
+    }
+
+    // ==================== CTR ====================
+
+    /**
+     * CTR with initial block = tag with the top bit set and a 32-bit little-endian
+     * counter in the first four bytes (wrapping modulo 2^32)
+     * Keystream is produced CTR_BATCH blocks at a time
+     */
+    private static void ctr(AES encryptionKey, byte[] tag, byte[] input, byte[] output, int length) {
+        byte[] counterBlocks = new byte[CTR_BATCH * BLOCK_SIZE];
+        byte[] keystream = new byte[CTR_BATCH * BLOCK_SIZE];
+        for (int b = 0; b < CTR_BATCH; b++) {
+            System.arraycopy(tag, 0, counterBlocks, b * BLOCK_SIZE, BLOCK_SIZE);
+            counterBlocks[b * BLOCK_SIZE + 15] |= (byte) 0x80;
+        }
+        int counter = (tag[0] & 0xFF) | (tag[1] & 0xFF) << 8 | (tag[2] & 0xFF) << 16 | (tag[3] & 0xFF) << 24;
+
+        for (int done = 0; done < length; done += CTR_BATCH * BLOCK_SIZE) {
+            int blocks = Math.min(CTR_BATCH, (length - done + BLOCK_SIZE - 1) / BLOCK_SIZE);
+
+            for (int b = 0; b < blocks; b++) {
+                int offset = b * BLOCK_SIZE;
+                counterBlocks[offset] = (byte) counter;
+                counterBlocks[offset + 1] = (byte) (counter >>> 8);
+                counterBlocks[offset + 2] = (byte) (counter >>> 16);
+                counterBlocks[offset + 3] = (byte) (counter >>> 24);
+                counter++;
+                encryptionKey.encrypt(counterBlocks, offset, keystream, offset);
+            }
+
+            int n = Math.min(CTR_BATCH * BLOCK_SIZE, length - done);
+            for (int j = 0; j < n; j++) {
+                output[done + j] = (byte) (input[done + j] ^ keystream[j]);
+            }
+        }
+    }
+
+    private static long littleEndianLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,70 @@
+package modes;
+
+import metrics.CipherMetrics;
+import metrics.ModeStats;
+
+/**
+ * Decorator that records operation counts, bytes processed and latency
+ * of any CipherMode into metrics.CipherMetrics
+ * When metrics are disabled calls go straight to the wrapped mode
+ */
+public class InstrumentedCipherMode implements CipherMode {
+
+    private final CipherMode delegate;
+
+    /**
+     * Constructor
+     * @param delegate The mode to instrument
+     */
+    public InstrumentedCipherMode(CipherMode delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public byte[] encrypt(byte[] plaintext, byte[] key) {
+        if (!CipherMetrics.isEnabled()) {
+            return delegate.encrypt(plaintext, key);
+        }
+
+        ModeStats stats = CipherMetrics.forMode(delegate.getModeName());
+        long start = System.nanoTime();
+        try {
+            byte[] result = delegate.encrypt(plaintext, key);
+            stats.recordEncrypt(plaintext.length, System.nanoTime() - start);
+            return result;
+        } catch (RuntimeException e) {
+            stats.recordFailure();
+            throw e;
+        }
+    }
+
+    @Override
+    public byte[] decrypt(byte[] ciphertext, byte[] key) {
+        if (!CipherMetrics.isEnabled()) {
+            return delegate.decrypt(ciphertext, key);
+        }
+
+        ModeStats stats = CipherMetrics.forMode(delegate.getModeName());
+        long start = System.nanoTime();
+        try {
+            byte[] result = delegate.decrypt(ciphertext, key);
+            stats.recordDecrypt(ciphertext.length, System.nanoTime() - start);
+            return result;
+        } catch (RuntimeException e) {
+            stats.recordFailure();
+            throw e;
+        }
+    }
+
+    @Override
+    public String getModeName() {
+        return delegate.getModeName();
+    }
+
+    /**
+     * @return The wrapped mode
+     */
+    public CipherMode getDelegate() {
+        return delegate;
+    }
+}
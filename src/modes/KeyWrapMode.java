@@ -0,0 +1,325 @@
+package modes;
+
+import core.AES;
+import core.AESBlockCipher;
+import metrics.CipherMetrics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * AES Key Wrap Implementation (RFC 3394 "KW" and RFC 5649 "KWP", NIST SP 800-38F)
+ * Deterministic authenticated wrapping of key material under a key-encryption key (KEK)
+ * KW wraps keys that are a multiple of 8 bytes (at least 16); KWP wraps any non-empty length
+ * The wrapping function runs in place in the output array with one scratch block per key
+ * As a CipherMode it behaves as KWP
+ */
+public class KeyWrapMode implements CipherMode {
+
+    private static final int BLOCK_SIZE = 16;    // AES block size in bytes
+    private static final int SEMIBLOCK_SIZE = 8; // 64 bits
+
+    // RFC 3394 default IV
+    private static final long KW_IV = 0xA6A6A6A6A6A6A6A6L;
+
+    // RFC 5649 alternative IV prefix, followed by the 32-bit message length indicator
+    private static final int KWP_IV_PREFIX = 0xA65959A6;
+
+    private AESBlockCipher aes;
+
+    /**
+     * Constructor
+     * @param aes The AES block cipher
+     */
+    public KeyWrapMode(AESBlockCipher aes) {
+        this.aes = aes;
+    }
+
+    // ==================== KW (RFC 3394) ====================
+
+    /**
+     * Wraps key material with KW
+     * @param keyData Key to wrap (multiple of 8 bytes, at least 16)
+     * @param kek Key-encryption key
+     * @return Wrapped key, 8 bytes longer than keyData
+     */
+    public byte[] wrap(byte[] keyData, byte[] kek) {
+        return wrap(keyData, prepareKek(kek));
+    }
+
+    /**
+     * Wraps key material with KW under an already prepared KEK
+     */
+    public byte[] wrap(byte[] keyData, AES kek) {
+        if (keyData == null || keyData.length < 2 * SEMIBLOCK_SIZE || keyData.length % SEMIBLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("Key data must be a multiple of 8 bytes, at least 16");
+        }
+
+        byte[] result = new byte[SEMIBLOCK_SIZE + keyData.length];
+        System.arraycopy(keyData, 0, result, SEMIBLOCK_SIZE, keyData.length);
+        wrapInPlace(kek, KW_IV, result);
+        return result;
+    }
+
+    /**
+     * Unwraps and verifies a key wrapped with KW
+     * @param wrapped Wrapped key
+     * @param kek Key-encryption key
+     * @return Unwrapped key
+     * @throws IllegalArgumentException if the integrity check fails
+     */
+    public byte[] unwrap(byte[] wrapped, byte[] kek) {
+        return unwrap(wrapped, prepareKek(kek));
+    }
+
+    /**
+     * Unwraps a key wrapped with KW under an already prepared KEK
+     */
+    public byte[] unwrap(byte[] wrapped, AES kek) {
+        if (wrapped == null || wrapped.length < 3 * SEMIBLOCK_SIZE || wrapped.length % SEMIBLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("Wrapped key must be a multiple of 8 bytes, at least 24");
+        }
+
+        byte[] work = wrapped.clone();
+        long a = unwrapInPlace(kek, work);
+        byte[] keyData = Arrays.copyOfRange(work, SEMIBLOCK_SIZE, work.length);
+        Arrays.fill(work, (byte) 0);
+
+        if (a != KW_IV) {
+            fail(keyData, "KW");
+        }
+        return keyData;
+    }
+
+    // ==================== KWP (RFC 5649) ====================
+
+    /**
+     * Wraps key material of any length with KWP
+     * @param keyData Key to wrap (at least 1 byte)
+     * @param kek Key-encryption key
+     * @return Wrapped key (length rounded up to 8 bytes, plus 8)
+     */
+    public byte[] wrapWithPadding(byte[] keyData, byte[] kek) {
+        return wrapWithPadding(keyData, prepareKek(kek));
+    }
+
+    /**
+     * Wraps key material with KWP under an already prepared KEK
+     */
+    public byte[] wrapWithPadding(byte[] keyData, AES kek) {
+        if (keyData == null || keyData.length == 0) {
+            throw new IllegalArgumentException("Key data cannot be null or empty");
+        }
+
+        int padded = (keyData.length + SEMIBLOCK_SIZE - 1) / SEMIBLOCK_SIZE * SEMIBLOCK_SIZE;
+        long aiv = ((long) KWP_IV_PREFIX << 32) | (keyData.length & 0xFFFFFFFFL);
+
+        byte[] result = new byte[SEMIBLOCK_SIZE + padded];
+        System.arraycopy(keyData, 0, result, SEMIBLOCK_SIZE, keyData.length);
+
+        if (padded == SEMIBLOCK_SIZE) {
+            // A single semiblock is encrypted directly as AIV || P
+            putLong(result, 0, aiv);
+            kek.encrypt(result, 0, result, 0);
+        } else {
+            wrapInPlace(kek, aiv, result);
+        }
+        return result;
+    }
+
+    /**
+     * Unwraps and verifies a key wrapped with KWP
+     * @param wrapped Wrapped key
+     * @param kek Key-encryption key
+     * @return Unwrapped key
+     * @throws IllegalArgumentException if the integrity check fails
+     */
+    public byte[] unwrapWithPadding(byte[] wrapped, byte[] kek) {
+        return unwrapWithPadding(wrapped, prepareKek(kek));
+    }
+
+    /**
+     * Unwraps a key wrapped with KWP under an already prepared KEK
+     */
+    public byte[] unwrapWithPadding(byte[] wrapped, AES kek) {
+        if (wrapped == null || wrapped.length < BLOCK_SIZE || wrapped.length % SEMIBLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("Wrapped key must be a multiple of 8 bytes, at least 16");
+        }
+
+        byte[] work = wrapped.clone();
+        long a;
+        if (work.length == BLOCK_SIZE) {
+            kek.decrypt(work, 0, work, 0);
+            a = getLong(work, 0);
+        } else {
+            a = unwrapInPlace(kek, work);
+        }
+
+        // Check prefix, message length indicator and zero padding without early exit
+        int padded = work.length - SEMIBLOCK_SIZE;
+        long mli = a & 0xFFFFFFFFL;
+        int bad = (int) (a >>> 32) ^ KWP_IV_PREFIX;
+        bad |= (mli > padded || mli <= padded - SEMIBLOCK_SIZE) ? 1 : 0;
+        int length = (int) Math.min(mli, padded);
+        for (int i = SEMIBLOCK_SIZE + length; i < work.length; i++) {
+            bad |= work[i];
+        }
+
+        byte[] keyData = Arrays.copyOfRange(work, SEMIBLOCK_SIZE, SEMIBLOCK_SIZE + length);
+        Arrays.fill(work, (byte) 0);
+
+        if (bad != 0) {
+            fail(keyData, getModeName());
+        }
+        return keyData;
+    }
+
+    // ==================== BULK ====================
+
+    /**
+     * Wraps many keys with KW under one KEK, expanding the KEK once and using all cores
+     * @param keys Keys to wrap
+     * @param kek Key-encryption key
+     * @return Wrapped keys, in order
+     */
+    public List<byte[]> wrapAll(List<byte[]> keys, byte[] kek) {
+        AES prepared = prepareKek(kek);
+        return bulk(keys, key -> wrap(key, prepared));
+    }
+
+    /**
+     * Unwraps many KW-wrapped keys under one KEK in parallel
+     * @throws IllegalArgumentException if any key fails the integrity check
+     */
+    public List<byte[]> unwrapAll(List<byte[]> wrappedKeys, byte[] kek) {
+        AES prepared = prepareKek(kek);
+        return bulk(wrappedKeys, key -> unwrap(key, prepared));
+    }
+
+    /**
+     * Wraps many keys with KWP under one KEK in parallel
+     */
+    public List<byte[]> wrapAllWithPadding(List<byte[]> keys, byte[] kek) {
+        AES prepared = prepareKek(kek);
+        return bulk(keys, key -> wrapWithPadding(key, prepared));
+    }
+
+    /**
+     * Unwraps many KWP-wrapped keys under one KEK in parallel
+     * @throws IllegalArgumentException if any key fails the integrity check
+     */
+    public List<byte[]> unwrapAllWithPadding(List<byte[]> wrappedKeys, byte[] kek) {
+        AES prepared = prepareKek(kek);
+        return bulk(wrappedKeys, key -> unwrapWithPadding(key, prepared));
+    }
+
+    private static List<byte[]> bulk(List<byte[]> input, UnaryOperator<byte[]> operation) {
+        if (input == null) {
+            throw new IllegalArgumentException("Key list cannot be null");
+        }
+        return IntStream.range(0, input.size())
+                .parallel()
+                .mapToObj(i -> operation.apply(input.get(i)))
+                .collect(Collectors.toList());
+    }
+
+    // ==================== CIPHERMODE ====================
+
+    @Override
+    public byte[] encrypt(byte[] plaintext, byte[] key) {
+        return wrapWithPadding(plaintext, key);
+    }
+
+    @Override
+    public byte[] decrypt(byte[] ciphertext, byte[] key) {
+        return unwrapWithPadding(ciphertext, key);
+    }
+
+    @Override
+    public String getModeName() {
+        return "KWP";
+    }
+
+    // ==================== WRAPPING FUNCTION W ====================
+
+    private AES prepareKek(byte[] kek) {
+        if (kek == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        return aes.prepareKey(kek);
+    }
+
+    /**
+     * W: buffer holds an empty first semiblock followed by R[1..n]; A ends up in the first semiblock
+     */
+    private static void wrapInPlace(AES kek, long iv, byte[] buffer) {
+        int n = buffer.length / SEMIBLOCK_SIZE - 1;
+        byte[] block = new byte[BLOCK_SIZE];
+        long a = iv;
+
+        for (int j = 0; j < 6; j++) {
+            for (int i = 1; i <= n; i++) {
+                // B = AES(K, A || R[i])
+                putLong(block, 0, a);
+                System.arraycopy(buffer, i * SEMIBLOCK_SIZE, block, SEMIBLOCK_SIZE, SEMIBLOCK_SIZE);
+                kek.encrypt(block, 0, block, 0);
+
+                // A = MSB(B) ^ t, R[i] = LSB(B)
+                a = getLong(block, 0) ^ ((long) n * j + i);
+                System.arraycopy(block, SEMIBLOCK_SIZE, buffer, i * SEMIBLOCK_SIZE, SEMIBLOCK_SIZE);
+            }
+        }
+
+        putLong(buffer, 0, a);
+        Arrays.fill(block, (byte) 0);
+    }
+
+    /**
+     * W^-1: buffer holds C[0..n]; on return R[1..n] are in place and the recovered A is returned
+     */
+    private static long unwrapInPlace(AES kek, byte[] buffer) {
+        int n = buffer.length / SEMIBLOCK_SIZE - 1;
+        byte[] block = new byte[BLOCK_SIZE];
+        long a = getLong(buffer, 0);
+
+        for (int j = 5; j >= 0; j--) {
+            for (int i = n; i >= 1; i--) {
+                // B = AES-1(K, (A ^ t) || R[i])
+                putLong(block, 0, a ^ ((long) n * j + i));
+                System.arraycopy(buffer, i * SEMIBLOCK_SIZE, block, SEMIBLOCK_SIZE, SEMIBLOCK_SIZE);
+                kek.decrypt(block, 0, block, 0);
+
+                // A = MSB(B), R[i] = LSB(B)
+                a = getLong(block, 0);
+                System.arraycopy(block, SEMIBLOCK_SIZE, buffer, i * SEMIBLOCK_SIZE, SEMIBLOCK_SIZE);
+            }
+        }
+
+        Arrays.fill(block, (byte) 0);
+        return a;
+    }
+
+    private static void fail(byte[] keyData, String mode) {
+        Arrays.fill(keyData, (byte) 0);
+        CipherMetrics.authenticationFailure(mode);
+        throw new IllegalArgumentException("Key unwrap failed: integrity check mismatch");
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static void putLong(byte[] bytes, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package modes;
+
+import core.AES;
+import core.AESBlockCipher;
+import random.RNG;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * OFB (Output Feedback) Mode Implementation (NIST SP 800-38A)
+ * Stream mode whose keystream E(K, IV), E(K, E(K, IV)), ... does not depend on the data
+ * No padding required
+ * The keystream is generated into a reusable buffer ahead of the data; for long
+ * streams the next buffer is filled in the background while the current one is consumed
+ */
+public class OFBMode implements CipherMode {
+
+    private static final int BLOCK_SIZE = 16; // AES block size in bytes
+
+    /** Default keystream buffer size */
+    public static final int KEYSTREAM_BUFFER_SIZE = 16 * 1024;
+
+    private AESBlockCipher aes;
+    private RNG randomGenerator;
+
+    /**
+     * Constructor
+     * @param aes The AES block cipher
+     * @param randomGenerator The random number generator
+     */
+    public OFBMode(AESBlockCipher aes, RNG randomGenerator) {
+        this.aes = aes;
+        this.randomGenerator = randomGenerator;
+    }
+
+    @Override
+    public byte[] encrypt(byte[] plaintext, byte[] key) {
+        if (plaintext == null || plaintext.length == 0) {
+            throw new IllegalArgumentException("Plaintext cannot be null or empty");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+
+        // Generate random IV
+        byte[] iv = randomGenerator.randomBytes(BLOCK_SIZE);
+
+        // Result: IV || Ciphertext
+        byte[] result = new byte[BLOCK_SIZE + plaintext.length];
+        System.arraycopy(iv, 0, result, 0, BLOCK_SIZE);
+
+        try (Keystream keystream = keystream(key, iv, plaintext.length)) {
+            keystream.xor(plaintext, 0, result, BLOCK_SIZE, plaintext.length);
+        }
+
+        return result;
+    }
+
+    @Override
+    public byte[] decrypt(byte[] ciphertext, byte[] key) {
+        if (ciphertext == null || ciphertext.length < BLOCK_SIZE) {
+            throw new IllegalArgumentException("Ciphertext too short (must include IV)");
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+
+        // Extract IV
+        byte[] iv = Arrays.copyOf(ciphertext, BLOCK_SIZE);
+
+        byte[] plaintext = new byte[ciphertext.length - BLOCK_SIZE];
+        try (Keystream keystream = keystream(key, iv, plaintext.length)) {
+            keystream.xor(ciphertext, BLOCK_SIZE, plaintext, 0, plaintext.length);
+        }
+
+        return plaintext;
+    }
+
+    @Override
+    public String getModeName() {
+        return "OFB";
+    }
+
+    /**
+     * Opens a keystream for incremental encryption or decryption of a long stream
+     * Keystream is generated before data arrives and refilled in the background
+     * @param key The encryption key
+     * @param iv 128-bit IV (must be unique per key)
+     */
+    public Keystream keystream(byte[] key, byte[] iv) {
+        return keystream(key, iv, Integer.MAX_VALUE);
+    }
+
+    private Keystream keystream(byte[] key, byte[] iv, int expectedLength) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        if (iv == null || iv.length != BLOCK_SIZE) {
+            throw new IllegalArgumentException("IV must be " + BLOCK_SIZE + " bytes");
+        }
+
+        // Short messages get one exactly sized buffer and no background work
+        boolean pipelined = expectedLength > KEYSTREAM_BUFFER_SIZE;
+        int bufferSize = pipelined ? KEYSTREAM_BUFFER_SIZE
+                : Math.max(BLOCK_SIZE, (expectedLength + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE);
+
+        return new Keystream(aes.prepareKey(key), iv, bufferSize, pipelined);
+    }
+
+    /**
+     * Double-buffered OFB keystream
+     * While one buffer is XORed into the data, the other is filled with the
+     * continuation of the keystream; fills run strictly one after another,
+     * since each starts from the last output block of the previous one
+     * Not thread-safe; close() waits for background work and wipes the buffers,
+     * after which the keystream cannot be used
+     */
+    public static final class Keystream implements AutoCloseable {
+        private final AES cipher;
+        private final byte[] feedback;
+        private final boolean pipelined;
+        private byte[] current;
+        private byte[] spare;
+        private int position;
+        private CompletableFuture<Void> pending;
+        private boolean closed;
+
+        private Keystream(AES cipher, byte[] iv, int bufferSize, boolean pipelined) {
+            this.cipher = cipher;
+            this.feedback = iv.clone();
+            this.pipelined = pipelined;
+            this.current = new byte[bufferSize];
+            fill(current);
+
+            if (pipelined) {
+                this.spare = new byte[bufferSize];
+                this.pending = CompletableFuture.runAsync(() -> fill(spare));
+            }
+        }
+
+        /**
+         * XORs the next length bytes of keystream into in, writing to out
+         * in and out may be the same array
+         * @throws IllegalStateException if the keystream has been closed
+         */
+        public void xor(byte[] in, int inOffset, byte[] out, int outOffset, int length) {
+            if (closed) {
+                // The buffers are zeroed: XORing would pass the data through unchanged
+                throw new IllegalStateException("Keystream has been closed");
+            }
+            while (length > 0) {
+                if (position == current.length) {
+                    nextBuffer();
+                }
+
+                int n = Math.min(length, current.length - position);
+                for (int j = 0; j < n; j++) {
+                    out[outOffset + j] = (byte) (in[inOffset + j] ^ current[position + j]);
+                }
+
+                position += n;
+                inOffset += n;
+                outOffset += n;
+                length -= n;
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            if (pending != null) {
+                pending.join();
+                pending = null;
+            }
+            Arrays.fill(current, (byte) 0);
+            if (spare != null) {
+                Arrays.fill(spare, (byte) 0);
+            }
+            Arrays.fill(feedback, (byte) 0);
+        }
+
+        private void nextBuffer() {
+            if (!pipelined) {
+                fill(current);
+            } else {
+                pending.join();
+                byte[] drained = current;
+                current = spare;
+                spare = drained;
+                pending = CompletableFuture.runAsync(() -> fill(drained));
+            }
+            position = 0;
+        }
+
+        /**
+         * Continues the keystream: O[i] = E(K, O[i-1])
+         */
+        private void fill(byte[] buffer) {
+            for (int offset = 0; offset < buffer.length; offset += BLOCK_SIZE) {
+                cipher.encrypt(feedback, 0, feedback, 0);
+                System.arraycopy(feedback, 0, buffer, offset, BLOCK_SIZE);
+            }
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package modes;
+
+import core.AES;
+import core.AESBlockCipher;
+import mac.CMAC;
+import metrics.CipherMetrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * AES-SIV Mode Implementation (RFC 5297)
+ * Deterministic authenticated encryption: the same key, associated data and plaintext
+ * always give the same ciphertext, so encrypted records can still be deduplicated
+ * The synthetic IV is S2V over mac.CMAC and doubles as the authentication tag
+ * The key is K1 || K2 (32, 48 or 64 bytes): K1 for CMAC, K2 for CTR
+ * Output format: V (16 bytes) || Ciphertext
+ */
+public class SIVMode implements CipherMode {
+
+    private static final int BLOCK_SIZE = 16; // AES block size in bytes
+
+    // S2V accepts at most 126 associated data components
+    private static final int MAX_COMPONENTS = 126;
+
+    private AESBlockCipher aes;
+    private CMAC cmac;
+
+    /**
+     * Constructor
+     * @param aes The AES block cipher
+     */
+    public SIVMode(AESBlockCipher aes) {
+        this.aes = aes;
+        this.cmac = new CMAC(aes);
+    }
+
+    /**
+     * Key material prepared once and reused for any number of records:
+     * both AES keys expanded, CMAC subkeys and the S2V starting value precomputed
+     * Safe to share between threads; close() zeroes the CMAC subkeys and the S2V
+     * starting value, while the AES ciphers are closed by whoever expanded them
+     */
+    public static final class PreparedKey implements AutoCloseable {
+        private final CMAC.PreparedKey macKey;
+        private final AES ctrKey;
+        private final byte[] s2vStart;
+        private volatile boolean closed;
+
+        private PreparedKey(CMAC.PreparedKey macKey, AES ctrKey, byte[] s2vStart) {
+            this.macKey = macKey;
+            this.ctrKey = ctrKey;
+            this.s2vStart = s2vStart;
+        }
+
+        /**
+         * Overwrites the derived key material with zeros; the key cannot be used afterwards
+         */
+        @Override
+        public void close() {
+            closed = true;
+            macKey.close();
+            Arrays.fill(s2vStart, (byte) 0);
+        }
+    }
+
+    /**
+     * Expands K1 || K2 and derives the CMAC subkeys
+     * @param key 32, 48 or 64 bytes
+     */
+    public PreparedKey prepareKey(byte[] key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        if (key.length != 32 && key.length != 48 && key.length != 64) {
+            throw new IllegalArgumentException("SIV key must be 32, 48 or 64 bytes (K1 || K2)");
+        }
+
+        int half = key.length / 2;
+        byte[] k1 = Arrays.copyOfRange(key, 0, half);
+        byte[] k2 = Arrays.copyOfRange(key, half, key.length);
+        CMAC.PreparedKey macKey;
+        AES ctrKey;
+        try {
+            macKey = cmac.prepareKey(k1);
+            ctrKey = aes.prepareKey(k2);
+        } finally {
+            Arrays.fill(k1, (byte) 0);
+            Arrays.fill(k2, (byte) 0);
+        }
+
+        // D = CMAC(K1, 0^128) depends only on the key
+        byte[] s2vStart = cmac.compute(new byte[BLOCK_SIZE], macKey);
+        return new PreparedKey(macKey, ctrKey, s2vStart);
+    }
+
+    // ==================== SINGLE RECORD ====================
+
+    /**
+     * Encrypts a record deterministically
+     * @param plaintext The data to encrypt (may be empty)
+     * @param key K1 || K2
+     * @param associatedData Associated data components, authenticated in order (a nonce, if used, goes last)
+     * @return V || Ciphertext
+     */
+    public byte[] encrypt(byte[] plaintext, byte[] key, byte[]... associatedData) {
+        return encrypt(plaintext, prepareKey(key), associatedData);
+    }
+
+    /**
+     * Decrypts and verifies a record sealed by encrypt
+     * @param ciphertext V || Ciphertext
+     * @param key K1 || K2
+     * @param associatedData The same components used for encryption
+     * @return Decrypted plaintext
+     * @throws IllegalArgumentException if authentication fails
+     */
+    public byte[] decrypt(byte[] ciphertext, byte[] key, byte[]... associatedData) {
+        return decrypt(ciphertext, prepareKey(key), associatedData);
+    }
+
+    /**
+     * Encrypts a record under an already prepared key
+     * @see #encrypt(byte[], byte[], byte[]...)
+     */
+    public byte[] encrypt(byte[] plaintext, PreparedKey key, byte[]... associatedData) {
+        if (plaintext == null) {
+            throw new IllegalArgumentException("Plaintext cannot be null");
+        }
+        checkComponents(key, associatedData);
+
+        // V = S2V(K1, AD1, ..., ADn, P)
+        byte[] v = s2v(key, associatedData, plaintext);
+
+        // Result: V || CTR(K2, Q, P)
+        byte[] result = new byte[BLOCK_SIZE + plaintext.length];
+        System.arraycopy(v, 0, result, 0, BLOCK_SIZE);
+        ctr(key.ctrKey, v, plaintext, 0, result, BLOCK_SIZE, plaintext.length);
+
+        return result;
+    }
+
+    /**
+     * Decrypts a record under an already prepared key
+     * @see #decrypt(byte[], byte[], byte[]...)
+     */
+    public byte[] decrypt(byte[] ciphertext, PreparedKey key, byte[]... associatedData) {
+        if (ciphertext == null || ciphertext.length < BLOCK_SIZE) {
+            throw new IllegalArgumentException("Ciphertext too short (must include synthetic IV)");
+        }
+        checkComponents(key, associatedData);
+
+        // Extract V
+        byte[] v = Arrays.copyOf(ciphertext, BLOCK_SIZE);
+
+        byte[] plaintext = new byte[ciphertext.length - BLOCK_SIZE];
+        ctr(key.ctrKey, v, ciphertext, BLOCK_SIZE, plaintext, 0, plaintext.length);
+
+        // Recompute V over the recovered plaintext (constant-time comparison)
+        byte[] expected = s2v(key, associatedData, plaintext);
+        int diff = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            diff |= expected[i] ^ v[i];
+        }
+        if (diff != 0) {
+            Arrays.fill(plaintext, (byte) 0);
+            CipherMetrics.authenticationFailure(getModeName());
+            throw new IllegalArgumentException("Authentication failed: synthetic IV mismatch");
+        }
+
+        return plaintext;
+    }
+
+    // ==================== BATCH ====================
+
+    /**
+     * Encrypts many records under one key, preparing the key and CMAC subkeys once
+     * @param records Plaintext records
+     * @param key K1 || K2
+     * @param associatedData Components shared by every record
+     * @return V || Ciphertext for each record, in order
+     */
+    public List<byte[]> encryptBatch(List<byte[]> records, byte[] key, byte[]... associatedData) {
+        return encryptBatch(records, prepareKey(key), associatedData);
+    }
+
+    /**
+     * Encrypts many records under an already prepared key
+     * @see #encryptBatch(List, byte[], byte[]...)
+     */
+    public List<byte[]> encryptBatch(List<byte[]> records, PreparedKey key, byte[]... associatedData) {
+        if (records == null) {
+            throw new IllegalArgumentException("Records cannot be null");
+        }
+
+        List<byte[]> result = new ArrayList<>(records.size());
+        for (byte[] record : records) {
+            result.add(encrypt(record, key, associatedData));
+        }
+        return result;
+    }
+
+    /**
+     * Decrypts many records under one key; fails on the first record that does not verify
+     * @param records V || Ciphertext records
+     * @param key K1 || K2
+     * @param associatedData Components shared by every record
+     * @return Plaintext for each record, in order
+     */
+    public List<byte[]> decryptBatch(List<byte[]> records, byte[] key, byte[]... associatedData) {
+        return decryptBatch(records, prepareKey(key), associatedData);
+    }
+
+    /**
+     * Decrypts many records under an already prepared key
+     * @see #decryptBatch(List, byte[], byte[]...)
+     */
+    public List<byte[]> decryptBatch(List<byte[]> records, PreparedKey key, byte[]... associatedData) {
+        if (records == null) {
+            throw new IllegalArgumentException("Records cannot be null");
+        }
+
+        List<byte[]> result = new ArrayList<>(records.size());
+        for (byte[] record : records) {
+            result.add(decrypt(record, key, associatedData));
+        }
+        return result;
+    }
+
+    // ==================== CIPHERMODE ====================
+
+    /**
+     * Deterministic encryption without associated data
+     */
+    @Override
+    public byte[] encrypt(byte[] plaintext, byte[] key) {
+        if (plaintext == null || plaintext.length == 0) {
+            throw new IllegalArgumentException("Plaintext cannot be null or empty");
+        }
+        return encrypt(plaintext, prepareKey(key));
+    }
+
+    @Override
+    public byte[] decrypt(byte[] ciphertext, byte[] key) {
+        return decrypt(ciphertext, prepareKey(key));
+    }
+
+    @Override
+    public String getModeName() {
+        return "SIV";
+    }
+
+    // ==================== S2V ====================
+
+    private static void checkComponents(PreparedKey key, byte[][] associatedData) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        if (key.closed) {
+            throw new IllegalStateException("Key has been closed");
+        }
+        if (associatedData.length > MAX_COMPONENTS) {
+            throw new IllegalArgumentException("At most " + MAX_COMPONENTS + " associated data components");
+        }
+        for (byte[] component : associatedData) {
+            if (component == null) {
+                throw new IllegalArgumentException("Associated data component cannot be null");
+            }
+        }
+    }
+
+    private byte[] s2v(PreparedKey key, byte[][] associatedData, byte[] plaintext) {
+        byte[] d = key.s2vStart.clone();
+
+        // D = dbl(D) XOR CMAC(K1, ADi)
+        for (byte[] component : associatedData) {
+            CMAC.dbl(d);
+            xorInto(d, cmac.compute(component, key.macKey));
+        }
+
+        if (plaintext.length >= BLOCK_SIZE) {
+            // T = P xorend D: the prefix goes through as is, only the last 16 bytes are combined with D
+            int tail = plaintext.length - BLOCK_SIZE;
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                d[i] ^= plaintext[tail + i];
+            }
+            return CMAC.start(key.macKey).update(plaintext, 0, tail).update(d).doFinal();
+        }
+
+        // T = dbl(D) XOR pad(P)
+        CMAC.dbl(d);
+        for (int i = 0; i < plaintext.length; i++) {
+            d[i] ^= plaintext[i];
+        }
+        d[plaintext.length] ^= (byte) 0x80;
+        return cmac.compute(d, key.macKey);
+    }
+
+    private static void xorInto(byte[] target, byte[] source) {
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            target[i] ^= source[i];
+        }
+    }
+
+    // ==================== CTR ====================
+
+    /**
+     * CTR with Q = V with bits 63 and 31 cleared, 128-bit big-endian counter
+     */
+    private static void ctr(AES ctrKey, byte[] v, byte[] in, int inOffset, byte[] out, int outOffset, int length) {
+        byte[] counter = v.clone();
+        counter[8] &= 0x7F;
+        counter[12] &= 0x7F;
+        byte[] keystream = new byte[BLOCK_SIZE];
+
+        for (int done = 0; done < length; done += BLOCK_SIZE) {
+            ctrKey.encrypt(counter, 0, keystream, 0);
+
+            int n = Math.min(BLOCK_SIZE, length - done);
+            for (int j = 0; j < n; j++) {
+                out[outOffset + done + j] = (byte) (in[inOffset + done + j] ^ keystream[j]);
+            }
+
+            // Increment counter
+            for (int j = BLOCK_SIZE - 1; j >= 0; j--) {
+                if (++counter[j] != 0) {
+                    break;
+                }
+            }
+        }
+    }
+}
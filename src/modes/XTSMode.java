@@ -0,0 +1,423 @@
+package modes;
+
+import core.AES;
+import core.AESBlockCipher;
+import random.RNG;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * XTS-AES Mode Implementation (IEEE 1619)
+ * Length-preserving tweakable mode for sector-addressable storage
+ * The key is Key1 || Key2 (32 bytes for XTS-AES-128, 64 bytes for XTS-AES-256):
+ * Key1 encrypts data, Key2 encrypts the sector number into the initial tweak
+ * Sectors that are not a multiple of 16 bytes use ciphertext stealing
+ * Sectors are independent, so whole images are processed in parallel
+ */
+public class XTSMode implements CipherMode {
+
+    private static final int BLOCK_SIZE = 16; // AES block size in bytes
+    private static final int TWEAK_SIZE = 16; // 128-bit tweak
+
+    /** Default sector size for storage images */
+    public static final int SECTOR_SIZE = 4096;
+
+    // Sectors handed to one parallel task, keeps task overhead small for tiny sectors
+    private static final int SECTORS_PER_TASK = 16;
+
+    private AESBlockCipher aes;
+    private RNG randomGenerator;
+
+    /**
+     * Constructor
+     * @param aes The AES block cipher
+     * @param randomGenerator The random number generator
+     */
+    public XTSMode(AESBlockCipher aes, RNG randomGenerator) {
+        this.aes = aes;
+        this.randomGenerator = randomGenerator;
+    }
+
+    // ==================== CIPHERMODE ====================
+
+    /**
+     * Encrypts a message as one data unit under a random tweak
+     * @return Tweak (16 bytes) || Ciphertext (same length as plaintext)
+     */
+    @Override
+    public byte[] encrypt(byte[] plaintext, byte[] key) {
+        return encrypt(plaintext, prepareKey(key));
+    }
+
+    /**
+     * Encrypts a message under an already prepared key
+     * @see #encrypt(byte[], byte[])
+     */
+    public byte[] encrypt(byte[] plaintext, PreparedKey keys) {
+        if (keys == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        if (plaintext == null || plaintext.length < BLOCK_SIZE) {
+            throw new IllegalArgumentException("Plaintext must be at least " + BLOCK_SIZE + " bytes");
+        }
+
+        // Generate random tweak
+        byte[] tweak = randomGenerator.randomBytes(TWEAK_SIZE);
+
+        // Result: Tweak || Ciphertext
+        byte[] result = new byte[TWEAK_SIZE + plaintext.length];
+        System.arraycopy(tweak, 0, result, 0, TWEAK_SIZE);
+        System.arraycopy(plaintext, 0, result, TWEAK_SIZE, plaintext.length);
+
+        processDataUnit(keys, keys.tweakKey.encrypt(tweak), result, TWEAK_SIZE, plaintext.length, true);
+
+        return result;
+    }
+
+    @Override
+    public byte[] decrypt(byte[] ciphertext, byte[] key) {
+        return decrypt(ciphertext, prepareKey(key));
+    }
+
+    /**
+     * Decrypts a message under an already prepared key
+     * @see #decrypt(byte[], byte[])
+     */
+    public byte[] decrypt(byte[] ciphertext, PreparedKey keys) {
+        if (keys == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        if (ciphertext == null || ciphertext.length < TWEAK_SIZE + BLOCK_SIZE) {
+            throw new IllegalArgumentException("Ciphertext too short (must include tweak)");
+        }
+
+        // Extract tweak
+        byte[] tweak = new byte[TWEAK_SIZE];
+        System.arraycopy(ciphertext, 0, tweak, 0, TWEAK_SIZE);
+
+        byte[] plaintext = new byte[ciphertext.length - TWEAK_SIZE];
+        System.arraycopy(ciphertext, TWEAK_SIZE, plaintext, 0, plaintext.length);
+
+        processDataUnit(keys, keys.tweakKey.encrypt(tweak), plaintext, 0, plaintext.length, false);
+
+        return plaintext;
+    }
+
+    @Override
+    public String getModeName() {
+        return "XTS";
+    }
+
+    // ==================== SECTOR API ====================
+
+    /**
+     * Encrypts one sector in place
+     * @param key Key1 || Key2
+     * @param sectorNumber Data unit sequence number (the tweak)
+     * @param buffer Buffer holding the sector
+     * @param offset Start of the sector in buffer
+     * @param length Sector length in bytes (at least 16)
+     */
+    public void encryptSector(byte[] key, long sectorNumber, byte[] buffer, int offset, int length) {
+        processSector(prepareKey(key), sectorNumber, buffer, offset, length, true);
+    }
+
+    /**
+     * Decrypts one sector in place
+     * @see #encryptSector(byte[], long, byte[], int, int)
+     */
+    public void decryptSector(byte[] key, long sectorNumber, byte[] buffer, int offset, int length) {
+        processSector(prepareKey(key), sectorNumber, buffer, offset, length, false);
+    }
+
+    /**
+     * Encrypts one sector in place under an already prepared key
+     * @see #encryptSector(byte[], long, byte[], int, int)
+     */
+    public void encryptSector(PreparedKey key, long sectorNumber, byte[] buffer, int offset, int length) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        processSector(key, sectorNumber, buffer, offset, length, true);
+    }
+
+    /**
+     * Decrypts one sector in place under an already prepared key
+     * @see #encryptSector(byte[], long, byte[], int, int)
+     */
+    public void decryptSector(PreparedKey key, long sectorNumber, byte[] buffer, int offset, int length) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        processSector(key, sectorNumber, buffer, offset, length, false);
+    }
+
+    /**
+     * Encrypts consecutive sectors of an image in place, in parallel
+     * @param key Key1 || Key2
+     * @param firstSector Sector number of the first sector in buffer
+     * @param buffer Image data
+     * @param offset Start of the first sector in buffer
+     * @param length Image length, a multiple of sectorSize
+     * @param sectorSize Sector size in bytes (at least 16)
+     */
+    public void encryptSectors(byte[] key, long firstSector, byte[] buffer, int offset, int length, int sectorSize) {
+        processSectors(key, firstSector, buffer, offset, length, sectorSize, true);
+    }
+
+    /**
+     * Decrypts consecutive sectors of an image in place, in parallel
+     * @see #encryptSectors(byte[], long, byte[], int, int, int)
+     */
+    public void decryptSectors(byte[] key, long firstSector, byte[] buffer, int offset, int length, int sectorSize) {
+        processSectors(key, firstSector, buffer, offset, length, sectorSize, false);
+    }
+
+    /**
+     * Encrypts all sectors between position and limit of a buffer in place, in parallel
+     * Works with heap and direct buffers; direct buffers are processed through
+     * one scratch sector per task
+     * @param key Key1 || Key2
+     * @param firstSector Sector number of the sector at the buffer position
+     * @param buffer Image data, remaining() must be a multiple of sectorSize
+     * @param sectorSize Sector size in bytes (at least 16)
+     */
+    public void encryptSectors(byte[] key, long firstSector, ByteBuffer buffer, int sectorSize) {
+        processSectors(key, firstSector, buffer, sectorSize, true);
+    }
+
+    /**
+     * Decrypts all sectors between position and limit of a buffer in place, in parallel
+     * @see #encryptSectors(byte[], long, ByteBuffer, int)
+     */
+    public void decryptSectors(byte[] key, long firstSector, ByteBuffer buffer, int sectorSize) {
+        processSectors(key, firstSector, buffer, sectorSize, false);
+    }
+
+    /**
+     * Allocates a direct buffer whose start is aligned to SECTOR_SIZE,
+     * suitable for page-aligned (e.g. O_DIRECT) storage I/O
+     * @param capacity Buffer capacity in bytes
+     */
+    public static ByteBuffer allocateAligned(int capacity) {
+        ByteBuffer raw = ByteBuffer.allocateDirect(capacity + SECTOR_SIZE);
+        ByteBuffer aligned = raw.alignedSlice(SECTOR_SIZE);
+        aligned.limit(capacity);
+        return aligned.slice();
+    }
+
+    // ==================== PARALLEL PROCESSING ====================
+
+    private void processSectors(byte[] key, long firstSector, byte[] buffer, int offset, int length,
+                                int sectorSize, boolean encrypt) {
+        int sectors = checkImage(length, sectorSize);
+        if (buffer == null || offset < 0 || offset + length > buffer.length) {
+            throw new IllegalArgumentException("Image out of buffer bounds");
+        }
+
+        PreparedKey keys = prepareKey(key);
+        int tasks = (sectors + SECTORS_PER_TASK - 1) / SECTORS_PER_TASK;
+
+        IntStream.range(0, tasks).parallel().forEach(task -> {
+            int end = Math.min(sectors, (task + 1) * SECTORS_PER_TASK);
+            for (int s = task * SECTORS_PER_TASK; s < end; s++) {
+                processSector(keys, firstSector + s, buffer, offset + s * sectorSize, sectorSize, encrypt);
+            }
+        });
+    }
+
+    private void processSectors(byte[] key, long firstSector, ByteBuffer buffer, int sectorSize, boolean encrypt) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("Buffer cannot be null");
+        }
+        if (buffer.hasArray()) {
+            processSectors(key, firstSector, buffer.array(), buffer.arrayOffset() + buffer.position(),
+                    buffer.remaining(), sectorSize, encrypt);
+            return;
+        }
+
+        int sectors = checkImage(buffer.remaining(), sectorSize);
+        int base = buffer.position();
+        PreparedKey keys = prepareKey(key);
+        int tasks = (sectors + SECTORS_PER_TASK - 1) / SECTORS_PER_TASK;
+
+        IntStream.range(0, tasks).parallel().forEach(task -> {
+            // Each task works on its own view and scratch sector
+            ByteBuffer view = buffer.duplicate();
+            byte[] scratch = new byte[sectorSize];
+            int end = Math.min(sectors, (task + 1) * SECTORS_PER_TASK);
+
+            for (int s = task * SECTORS_PER_TASK; s < end; s++) {
+                int position = base + s * sectorSize;
+                view.get(position, scratch);
+                processSector(keys, firstSector + s, scratch, 0, sectorSize, encrypt);
+                view.put(position, scratch);
+            }
+        });
+    }
+
+    private static int checkImage(int length, int sectorSize) {
+        if (sectorSize < BLOCK_SIZE) {
+            throw new IllegalArgumentException("Sector size must be at least " + BLOCK_SIZE + " bytes");
+        }
+        if (length % sectorSize != 0) {
+            throw new IllegalArgumentException("Image length must be multiple of sector size");
+        }
+        return length / sectorSize;
+    }
+
+    // ==================== XTS CORE ====================
+
+    /**
+     * Data key and tweak key, each expanded once
+     * Immutable and safe to share between threads
+     */
+    public static final class PreparedKey {
+        private final AES dataKey;
+        private final AES tweakKey;
+
+        private PreparedKey(AES dataKey, AES tweakKey) {
+            this.dataKey = dataKey;
+            this.tweakKey = tweakKey;
+        }
+    }
+
+    /**
+     * Splits and expands Key1 || Key2 once for any number of sectors
+     * Key1 must differ from Key2 (IEEE 1619-2018, SP 800-38E); the halves are
+     * compared in constant time
+     * @param key Key1 || Key2 (32 or 64 bytes)
+     */
+    public PreparedKey prepareKey(byte[] key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        if (key.length != 32 && key.length != 64) {
+            throw new IllegalArgumentException("XTS key must be 32 or 64 bytes (Key1 || Key2)");
+        }
+
+        int half = key.length / 2;
+        byte[] key1 = new byte[half];
+        byte[] key2 = new byte[half];
+        System.arraycopy(key, 0, key1, 0, half);
+        System.arraycopy(key, half, key2, 0, half);
+
+        try {
+            if (MessageDigest.isEqual(key1, key2)) {
+                throw new IllegalArgumentException("XTS Key1 and Key2 must be different");
+            }
+            return new PreparedKey(aes.prepareKey(key1), aes.prepareKey(key2));
+        } finally {
+            Arrays.fill(key1, (byte) 0);
+            Arrays.fill(key2, (byte) 0);
+        }
+    }
+
+    private void processSector(PreparedKey keys, long sectorNumber, byte[] buffer, int offset, int length, boolean encrypt) {
+        if (length < BLOCK_SIZE) {
+            throw new IllegalArgumentException("Sector must be at least " + BLOCK_SIZE + " bytes");
+        }
+        if (buffer == null || offset < 0 || offset + length > buffer.length) {
+            throw new IllegalArgumentException("Sector out of buffer bounds");
+        }
+
+        // Initial tweak: E(Key2, sector number as 128-bit little-endian)
+        byte[] tweak = new byte[TWEAK_SIZE];
+        for (int i = 0; i < 8; i++) {
+            tweak[i] = (byte) (sectorNumber >>> (i * 8));
+        }
+        keys.tweakKey.encrypt(tweak, 0, tweak, 0);
+
+        processDataUnit(keys, tweak, buffer, offset, length, encrypt);
+    }
+
+    /**
+     * Encrypts or decrypts one data unit in place, starting from an already encrypted tweak
+     */
+    private static void processDataUnit(PreparedKey keys, byte[] encryptedTweak, byte[] buffer, int offset, int length,
+                                        boolean encrypt) {
+        // Tweak as two little-endian 64-bit halves
+        long tweakLow = littleEndianLong(encryptedTweak, 0);
+        long tweakHigh = littleEndianLong(encryptedTweak, 8);
+
+        int fullBlocks = length / BLOCK_SIZE;
+        int partial = length % BLOCK_SIZE;
+
+        // With ciphertext stealing the last full block is handled separately
+        int regularBlocks = partial == 0 ? fullBlocks : fullBlocks - 1;
+
+        for (int j = 0; j < regularBlocks; j++) {
+            processBlock(keys.dataKey, buffer, offset + j * BLOCK_SIZE, tweakLow, tweakHigh, encrypt);
+
+            // Tweak *= alpha
+            long carry = tweakHigh >>> 63;
+            tweakHigh = (tweakHigh << 1) | (tweakLow >>> 63);
+            tweakLow = (tweakLow << 1) ^ (carry * 0x87);
+        }
+
+        if (partial == 0) {
+            return;
+        }
+
+        // Ciphertext stealing over the last full block (at last) and the partial block (at last + 16)
+        int last = offset + regularBlocks * BLOCK_SIZE;
+        long carry = tweakHigh >>> 63;
+        long nextHigh = (tweakHigh << 1) | (tweakLow >>> 63);
+        long nextLow = (tweakLow << 1) ^ (carry * 0x87);
+
+        if (encrypt) {
+            // CC = E(P[m-1]) with T[m-1]; C[m] = head of CC; C[m-1] = E(P[m] || tail of CC) with T[m]
+            processBlock(keys.dataKey, buffer, last, tweakLow, tweakHigh, true);
+            swapHead(buffer, last, partial);
+            processBlock(keys.dataKey, buffer, last, nextLow, nextHigh, true);
+        } else {
+            // PP = D(C[m-1]) with T[m]; P[m] = head of PP; P[m-1] = D(C[m] || tail of PP) with T[m-1]
+            processBlock(keys.dataKey, buffer, last, nextLow, nextHigh, false);
+            swapHead(buffer, last, partial);
+            processBlock(keys.dataKey, buffer, last, tweakLow, tweakHigh, false);
+        }
+    }
+
+    /**
+     * XOR tweak, AES in place, XOR tweak
+     */
+    private static void processBlock(AES cipher, byte[] buffer, int offset, long tweakLow, long tweakHigh,
+                                     boolean encrypt) {
+        xorTweak(buffer, offset, tweakLow, tweakHigh);
+        if (encrypt) {
+            cipher.encrypt(buffer, offset, buffer, offset);
+        } else {
+            cipher.decrypt(buffer, offset, buffer, offset);
+        }
+        xorTweak(buffer, offset, tweakLow, tweakHigh);
+    }
+
+    /**
+     * Swaps the first count bytes of the block at offset with the bytes that follow the block
+     */
+    private static void swapHead(byte[] buffer, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            byte tmp = buffer[offset + BLOCK_SIZE + i];
+            buffer[offset + BLOCK_SIZE + i] = buffer[offset + i];
+            buffer[offset + i] = tmp;
+        }
+    }
+
+    private static void xorTweak(byte[] buffer, int offset, long tweakLow, long tweakHigh) {
+        for (int i = 0; i < 8; i++) {
+            buffer[offset + i] ^= (byte) (tweakLow >>> (i * 8));
+            buffer[offset + 8 + i] ^= (byte) (tweakHigh >>> (i * 8));
+        }
+    }
+
+    private static long littleEndianLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
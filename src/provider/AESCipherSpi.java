@@ -0,0 +1,383 @@
+package provider;
+
+import core.AES;
+import core.KeySize;
+
+import javax.crypto.*;
+import javax.crypto.spec.IvParameterSpec;
+import java.security.*;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.InvalidParameterSpecException;
+import java.util.Arrays;
+
+/**
+ * CipherSpi for AES in ECB, CBC (both with PKCS#5 padding) and CTR mode
+ * Streams data through core.AES in engineUpdate: only a partial block is buffered
+ * (plus one full block when decrypting with padding, since it may hold the padding)
+ *
+ * The concrete transformations are the nested ECB, CBC and CTR classes
+ */
+public abstract class AESCipherSpi extends CipherSpi {
+
+    private static final int BLOCK_SIZE = 16;
+
+    private enum Mode { ECB, CBC, CTR }
+
+    private final Mode mode;
+    private final boolean padding;
+
+    private AES cipher;
+    private boolean encrypting;
+    private byte[] iv;
+
+    // Chaining value (CBC) or counter block (CTR)
+    private byte[] register;
+
+    // Partial input block (ECB/CBC) or unused keystream (CTR)
+    private final byte[] buffer = new byte[BLOCK_SIZE];
+    private int buffered;
+
+    /**
+     * AES/ECB/PKCS5Padding
+     */
+    public static final class ECB extends AESCipherSpi {
+        public ECB() {
+            super(Mode.ECB, true);
+        }
+    }
+
+    /**
+     * AES/CBC/PKCS5Padding
+     */
+    public static final class CBC extends AESCipherSpi {
+        public CBC() {
+            super(Mode.CBC, true);
+        }
+    }
+
+    /**
+     * AES/CTR/NoPadding with a 128-bit big-endian counter block (as in SunJCE)
+     */
+    public static final class CTR extends AESCipherSpi {
+        public CTR() {
+            super(Mode.CTR, false);
+        }
+    }
+
+    private AESCipherSpi(Mode mode, boolean padding) {
+        this.mode = mode;
+        this.padding = padding;
+    }
+
+    // ==================== CONFIGURATION ====================
+
+    @Override
+    protected void engineSetMode(String mode) throws NoSuchAlgorithmException {
+        if (!this.mode.name().equalsIgnoreCase(mode)) {
+            throw new NoSuchAlgorithmException("Unsupported mode: " + mode);
+        }
+    }
+
+    @Override
+    protected void engineSetPadding(String padding) throws NoSuchPaddingException {
+        String expected = this.padding ? "PKCS5Padding" : "NoPadding";
+        if (!expected.equalsIgnoreCase(padding)) {
+            throw new NoSuchPaddingException("Unsupported padding: " + padding);
+        }
+    }
+
+    @Override
+    protected int engineGetBlockSize() {
+        return BLOCK_SIZE;
+    }
+
+    @Override
+    protected int engineGetOutputSize(int inputLen) {
+        if (mode == Mode.CTR) {
+            return inputLen;
+        }
+        int total = buffered + inputLen;
+        return encrypting ? total - total % BLOCK_SIZE + BLOCK_SIZE : total;
+    }
+
+    @Override
+    protected byte[] engineGetIV() {
+        return iv == null ? null : iv.clone();
+    }
+
+    @Override
+    protected AlgorithmParameters engineGetParameters() {
+        if (iv == null) {
+            return null;
+        }
+        try {
+            AlgorithmParameters params = AlgorithmParameters.getInstance("AES");
+            params.init(new IvParameterSpec(iv));
+            return params;
+        } catch (NoSuchAlgorithmException | InvalidParameterSpecException e) {
+            throw new ProviderException("Cannot encode IV parameters", e);
+        }
+    }
+
+    @Override
+    protected int engineGetKeySize(Key key) throws InvalidKeyException {
+        return keySize(key).getBytesAmount() * 8;
+    }
+
+    // ==================== INITIALIZATION ====================
+
+    @Override
+    protected void engineInit(int opmode, Key key, SecureRandom random) throws InvalidKeyException {
+        try {
+            engineInit(opmode, key, (AlgorithmParameterSpec) null, random);
+        } catch (InvalidAlgorithmParameterException e) {
+            throw new InvalidKeyException("IV required for decryption", e);
+        }
+    }
+
+    @Override
+    protected void engineInit(int opmode, Key key, AlgorithmParameters params, SecureRandom random)
+            throws InvalidKeyException, InvalidAlgorithmParameterException {
+        AlgorithmParameterSpec spec = null;
+        if (params != null) {
+            try {
+                spec = params.getParameterSpec(IvParameterSpec.class);
+            } catch (InvalidParameterSpecException e) {
+                throw new InvalidAlgorithmParameterException("Expected IV parameters", e);
+            }
+        }
+        engineInit(opmode, key, spec, random);
+    }
+
+    @Override
+    protected void engineInit(int opmode, Key key, AlgorithmParameterSpec params, SecureRandom random)
+            throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if (opmode != Cipher.ENCRYPT_MODE && opmode != Cipher.DECRYPT_MODE) {
+            throw new UnsupportedOperationException("Only ENCRYPT_MODE and DECRYPT_MODE are supported");
+        }
+        KeySize keySize = keySize(key);
+        byte[] rawKey = key.getEncoded();
+
+        byte[] newIv = null;
+        if (mode == Mode.ECB) {
+            if (params != null) {
+                throw new InvalidAlgorithmParameterException("ECB mode does not use an IV");
+            }
+        } else if (params instanceof IvParameterSpec) {
+            newIv = ((IvParameterSpec) params).getIV();
+            if (newIv.length != BLOCK_SIZE) {
+                throw new InvalidAlgorithmParameterException("IV must be " + BLOCK_SIZE + " bytes");
+            }
+        } else if (params != null) {
+            throw new InvalidAlgorithmParameterException("Expected IvParameterSpec");
+        } else if (opmode == Cipher.ENCRYPT_MODE) {
+            newIv = new byte[BLOCK_SIZE];
+            (random != null ? random : new SecureRandom()).nextBytes(newIv);
+        } else {
+            throw new InvalidAlgorithmParameterException("IV required for decryption");
+        }
+
+        this.cipher = new AES(rawKey, keySize);
+        this.encrypting = opmode == Cipher.ENCRYPT_MODE;
+        this.iv = newIv;
+        reset();
+    }
+
+    private static KeySize keySize(Key key) throws InvalidKeyException {
+        if (key == null || !"AES".equalsIgnoreCase(key.getAlgorithm()) || !"RAW".equalsIgnoreCase(key.getFormat())) {
+            throw new InvalidKeyException("Expected a raw AES key");
+        }
+        try {
+            return KeySize.forKeyLength(key.getEncoded().length);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidKeyException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns to the state right after init (a Cipher is reusable after doFinal)
+     */
+    private void reset() {
+        register = iv == null ? null : iv.clone();
+        Arrays.fill(buffer, (byte) 0);
+        // CTR: no keystream available yet
+        buffered = mode == Mode.CTR ? BLOCK_SIZE : 0;
+    }
+
+    // ==================== STREAMING ====================
+
+    @Override
+    protected byte[] engineUpdate(byte[] input, int inputOffset, int inputLen) {
+        byte[] output = new byte[updateOutputSize(inputLen)];
+        update(input, inputOffset, inputLen, output, 0);
+        return output;
+    }
+
+    @Override
+    protected int engineUpdate(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset)
+            throws ShortBufferException {
+        if (output.length - outputOffset < updateOutputSize(inputLen)) {
+            throw new ShortBufferException("Need " + updateOutputSize(inputLen) + " bytes of output space");
+        }
+        return update(input, inputOffset, inputLen, output, outputOffset);
+    }
+
+    @Override
+    protected byte[] engineDoFinal(byte[] input, int inputOffset, int inputLen)
+            throws IllegalBlockSizeException, BadPaddingException {
+        byte[] output = new byte[engineGetOutputSize(inputLen)];
+        int written = doFinal(input, inputOffset, inputLen, output, 0);
+        return written == output.length ? output : Arrays.copyOf(output, written);
+    }
+
+    @Override
+    protected int engineDoFinal(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset)
+            throws ShortBufferException, IllegalBlockSizeException, BadPaddingException {
+        checkOutput(output, outputOffset, inputLen);
+        return doFinal(input, inputOffset, inputLen, output, outputOffset);
+    }
+
+    /**
+     * Exact number of bytes an update of inputLen bytes produces
+     */
+    private int updateOutputSize(int inputLen) {
+        if (mode == Mode.CTR) {
+            return inputLen;
+        }
+        int total = buffered + inputLen;
+        int blocks = total - total % BLOCK_SIZE;
+        boolean holdBack = !encrypting && padding;
+        return holdBack && inputLen > 0 && blocks == total ? blocks - BLOCK_SIZE : blocks;
+    }
+
+    private void checkOutput(byte[] output, int outputOffset, int inputLen) throws ShortBufferException {
+        if (output.length - outputOffset < engineGetOutputSize(inputLen)) {
+            throw new ShortBufferException("Need " + engineGetOutputSize(inputLen) + " bytes of output space");
+        }
+    }
+
+    private int update(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset) {
+        if (cipher == null) {
+            throw new IllegalStateException("Cipher not initialized");
+        }
+        if (input == null || inputLen == 0) {
+            return 0;
+        }
+        if (mode == Mode.CTR) {
+            ctrProcess(input, inputOffset, inputLen, output, outputOffset);
+            return inputLen;
+        }
+
+        // Decrypting with padding: the last full block is held back for doFinal
+        boolean holdBack = !encrypting && padding;
+        int written = 0;
+        while (inputLen > 0) {
+            if (buffered == BLOCK_SIZE) {
+                processBlock(output, outputOffset + written);
+                written += BLOCK_SIZE;
+                buffered = 0;
+            }
+
+            int take = Math.min(inputLen, BLOCK_SIZE - buffered);
+            System.arraycopy(input, inputOffset, buffer, buffered, take);
+            buffered += take;
+            inputOffset += take;
+            inputLen -= take;
+
+            if (buffered == BLOCK_SIZE && !holdBack) {
+                processBlock(output, outputOffset + written);
+                written += BLOCK_SIZE;
+                buffered = 0;
+            }
+        }
+        return written;
+    }
+
+    private int doFinal(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset)
+            throws IllegalBlockSizeException, BadPaddingException {
+        int written = update(input, inputOffset, inputLen, output, outputOffset);
+        if (mode == Mode.CTR) {
+            reset();
+            return written;
+        }
+
+        try {
+            if (encrypting) {
+                // PKCS#7: n bytes of value n, a full block if already aligned
+                int paddingLength = BLOCK_SIZE - buffered;
+                Arrays.fill(buffer, buffered, BLOCK_SIZE, (byte) paddingLength);
+                processBlock(output, outputOffset + written);
+                return written + BLOCK_SIZE;
+            }
+
+            if (buffered != BLOCK_SIZE) {
+                throw new IllegalBlockSizeException("Input length must be multiple of " + BLOCK_SIZE);
+            }
+            byte[] last = new byte[BLOCK_SIZE];
+            processBlock(last, 0);
+            int paddingLength = last[BLOCK_SIZE - 1] & 0xFF;
+            if (paddingLength < 1 || paddingLength > BLOCK_SIZE) {
+                throw new BadPaddingException("Invalid padding length: " + paddingLength);
+            }
+            for (int i = BLOCK_SIZE - paddingLength; i < BLOCK_SIZE; i++) {
+                if ((last[i] & 0xFF) != paddingLength) {
+                    throw new BadPaddingException("Invalid padding bytes");
+                }
+            }
+            System.arraycopy(last, 0, output, outputOffset + written, BLOCK_SIZE - paddingLength);
+            return written + BLOCK_SIZE - paddingLength;
+        } finally {
+            reset();
+        }
+    }
+
+    /**
+     * Transforms the full block in the buffer into output
+     */
+    private void processBlock(byte[] output, int outputOffset) {
+        if (mode == Mode.ECB) {
+            if (encrypting) {
+                cipher.encrypt(buffer, 0, output, outputOffset);
+            } else {
+                cipher.decrypt(buffer, 0, output, outputOffset);
+            }
+        } else if (encrypting) {
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                register[i] ^= buffer[i];
+            }
+            cipher.encrypt(register, 0, register, 0);
+            System.arraycopy(register, 0, output, outputOffset, BLOCK_SIZE);
+        } else {
+            cipher.decrypt(buffer, 0, output, outputOffset);
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                output[outputOffset + i] ^= register[i];
+            }
+            System.arraycopy(buffer, 0, register, 0, BLOCK_SIZE);
+        }
+    }
+
+    /**
+     * CTR keystream XOR; the unused keystream tail is kept for the next update
+     */
+    private void ctrProcess(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset) {
+        for (int i = 0; i < inputLen; i++) {
+            if (buffered == BLOCK_SIZE) {
+                cipher.encrypt(register, 0, buffer, 0);
+                incrementCounter(register);
+                buffered = 0;
+            }
+            output[outputOffset + i] = (byte) (input[inputOffset + i] ^ buffer[buffered++]);
+        }
+    }
+
+    /**
+     * Increments the 128-bit counter block (big-endian, wrapping)
+     */
+    private static void incrementCounter(byte[] counter) {
+        for (int i = BLOCK_SIZE - 1; i >= 0; i--) {
+            if (++counter[i] != 0) {
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package provider;
+
+import core.AESBlockCipher;
+import modes.GCMMode;
+
+import javax.crypto.*;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.ByteArrayOutputStream;
+import java.security.*;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.InvalidParameterSpecException;
+import java.util.Arrays;
+
+/**
+ * CipherSpi for AES/GCM/NoPadding on top of modes.GCMMode
+ * The key is expanded (with H and its GHASH table) once in engineInit and kept
+ * while re-initializations use the same key
+ * Encryption streams: engineUpdate returns ciphertext at once and engineDoFinal
+ * adds the tag. Decryption accumulates input and opens it in engineDoFinal, since
+ * plaintext must not be released before the tag is verified
+ *
+ * As in SunJCE, an encrypting instance must be re-initialized with a new IV
+ * after each doFinal so a key/IV pair is never used twice
+ *
+ * GCMParameterSpec may carry any non-empty IV and a tag of 128, 120, 112, 104,
+ * 96, 64 or 32 bits; without parameters a random 96-bit IV and a 128-bit tag are used
+ */
+public final class AESGCMCipherSpi extends CipherSpi {
+
+    private static final int DEFAULT_IV_SIZE = 12;
+    private static final int DEFAULT_TAG_BITS = 128;
+
+    private final AESBlockCipher aes = new AESBlockCipher();
+    private GCMMode gcm = new GCMMode(aes, null);
+
+    private byte[] key;
+    private GCMMode.PreparedKey preparedKey;
+    private byte[] iv;
+    private boolean encrypting;
+    private boolean ivConsumed;
+
+    // Encryption state for the current message
+    private GCMMode.Encryptor encryptor;
+
+    // Decryption buffers until the tag can be checked
+    private final ByteArrayOutputStream aad = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream input = new ByteArrayOutputStream();
+
+    // ==================== CONFIGURATION ====================
+
+    @Override
+    protected void engineSetMode(String mode) throws NoSuchAlgorithmException {
+        if (!"GCM".equalsIgnoreCase(mode)) {
+            throw new NoSuchAlgorithmException("Unsupported mode: " + mode);
+        }
+    }
+
+    @Override
+    protected void engineSetPadding(String padding) throws NoSuchPaddingException {
+        if (!"NoPadding".equalsIgnoreCase(padding)) {
+            throw new NoSuchPaddingException("Unsupported padding: " + padding);
+        }
+    }
+
+    @Override
+    protected int engineGetBlockSize() {
+        return 16;
+    }
+
+    @Override
+    protected int engineGetOutputSize(int inputLen) {
+        if (encrypting) {
+            return inputLen + gcm.getTagSize();
+        }
+        return Math.max(0, input.size() + inputLen - gcm.getTagSize());
+    }
+
+    @Override
+    protected byte[] engineGetIV() {
+        return iv == null ? null : iv.clone();
+    }
+
+    @Override
+    protected AlgorithmParameters engineGetParameters() {
+        if (iv == null) {
+            return null;
+        }
+        try {
+            AlgorithmParameters params = AlgorithmParameters.getInstance("GCM");
+            params.init(new GCMParameterSpec(gcm.getTagSize() * 8, iv));
+            return params;
+        } catch (NoSuchAlgorithmException | InvalidParameterSpecException e) {
+            throw new ProviderException("Cannot encode GCM parameters", e);
+        }
+    }
+
+    // ==================== INITIALIZATION ====================
+
+    @Override
+    protected void engineInit(int opmode, Key key, SecureRandom random) throws InvalidKeyException {
+        try {
+            engineInit(opmode, key, (AlgorithmParameterSpec) null, random);
+        } catch (InvalidAlgorithmParameterException e) {
+            throw new InvalidKeyException("GCM parameters required for decryption", e);
+        }
+    }
+
+    @Override
+    protected void engineInit(int opmode, Key key, AlgorithmParameters params, SecureRandom random)
+            throws InvalidKeyException, InvalidAlgorithmParameterException {
+        AlgorithmParameterSpec spec = null;
+        if (params != null) {
+            try {
+                spec = params.getParameterSpec(GCMParameterSpec.class);
+            } catch (InvalidParameterSpecException e) {
+                throw new InvalidAlgorithmParameterException("Expected GCM parameters", e);
+            }
+        }
+        engineInit(opmode, key, spec, random);
+    }
+
+    @Override
+    protected void engineInit(int opmode, Key key, AlgorithmParameterSpec params, SecureRandom random)
+            throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if (opmode != Cipher.ENCRYPT_MODE && opmode != Cipher.DECRYPT_MODE) {
+            throw new UnsupportedOperationException("Only ENCRYPT_MODE and DECRYPT_MODE are supported");
+        }
+        if (key == null || !"AES".equalsIgnoreCase(key.getAlgorithm()) || !"RAW".equalsIgnoreCase(key.getFormat())) {
+            throw new InvalidKeyException("Expected a raw AES key");
+        }
+        byte[] rawKey = key.getEncoded();
+        if (rawKey.length != 16 && rawKey.length != 24 && rawKey.length != 32) {
+            throw new InvalidKeyException("Invalid key length: " + rawKey.length);
+        }
+
+        byte[] newIv;
+        int tagBits = DEFAULT_TAG_BITS;
+        if (params instanceof GCMParameterSpec) {
+            GCMParameterSpec gcmSpec = (GCMParameterSpec) params;
+            tagBits = gcmSpec.getTLen();
+            if (tagBits % 8 != 0 || (tagBits != 32 && tagBits != 64 && (tagBits < 96 || tagBits > 128))) {
+                throw new InvalidAlgorithmParameterException("Unsupported tag length: " + tagBits + " bits");
+            }
+            newIv = gcmSpec.getIV();
+            if (newIv.length == 0) {
+                throw new InvalidAlgorithmParameterException("IV cannot be empty");
+            }
+        } else if (params != null) {
+            throw new InvalidAlgorithmParameterException("Expected GCMParameterSpec");
+        } else if (opmode == Cipher.ENCRYPT_MODE) {
+            newIv = new byte[DEFAULT_IV_SIZE];
+            (random != null ? random : new SecureRandom()).nextBytes(newIv);
+        } else {
+            throw new InvalidAlgorithmParameterException("GCM parameters required for decryption");
+        }
+
+        boolean newEncrypting = opmode == Cipher.ENCRYPT_MODE;
+        if (newEncrypting && encrypting && Arrays.equals(rawKey, this.key) && Arrays.equals(newIv, this.iv)) {
+            throw new InvalidAlgorithmParameterException("Cannot reuse key and IV for GCM encryption");
+        }
+
+        if (newIv.length != gcm.getIvSize() || tagBits / 8 != gcm.getTagSize()) {
+            gcm = new GCMMode(aes, null, newIv.length, tagBits / 8);
+        }
+        if (!Arrays.equals(rawKey, this.key)) {
+            this.preparedKey = gcm.prepareKey(rawKey);
+        }
+        this.key = rawKey;
+        this.iv = newIv;
+        this.encrypting = newEncrypting;
+        this.ivConsumed = false;
+        this.encryptor = newEncrypting ? gcm.startEncryption(preparedKey, newIv) : null;
+        aad.reset();
+        input.reset();
+    }
+
+    // ==================== DATA ====================
+
+    @Override
+    protected void engineUpdateAAD(byte[] src, int offset, int len) {
+        checkState();
+        if (encrypting) {
+            encryptor.updateAAD(src, offset, len);
+            return;
+        }
+        if (input.size() > 0) {
+            throw new IllegalStateException("AAD must be supplied before data");
+        }
+        aad.write(src, offset, len);
+    }
+
+    @Override
+    protected byte[] engineUpdate(byte[] in, int inputOffset, int inputLen) {
+        checkState();
+        if (in == null || inputLen == 0) {
+            return new byte[0];
+        }
+        if (encrypting) {
+            byte[] out = new byte[inputLen];
+            encryptor.update(in, inputOffset, inputLen, out, 0);
+            return out;
+        }
+        input.write(in, inputOffset, inputLen);
+        return new byte[0];
+    }
+
+    @Override
+    protected int engineUpdate(byte[] in, int inputOffset, int inputLen, byte[] output, int outputOffset)
+            throws ShortBufferException {
+        checkState();
+        if (in == null || inputLen == 0) {
+            return 0;
+        }
+        if (!encrypting) {
+            input.write(in, inputOffset, inputLen);
+            return 0;
+        }
+        if (output.length - outputOffset < inputLen) {
+            throw new ShortBufferException("Need " + inputLen + " bytes of output space");
+        }
+        if (in == output && inputOffset != outputOffset) {
+            // Overlapping ranges would be overwritten before they are read
+            in = Arrays.copyOfRange(in, inputOffset, inputOffset + inputLen);
+            inputOffset = 0;
+        }
+        return encryptor.update(in, inputOffset, inputLen, output, outputOffset);
+    }
+
+    @Override
+    protected byte[] engineDoFinal(byte[] in, int inputOffset, int inputLen) throws AEADBadTagException {
+        checkState();
+        if (encrypting) {
+            byte[] out = new byte[engineGetOutputSize(in == null ? 0 : inputLen)];
+            finishEncryption(in, inputOffset, in == null ? 0 : inputLen, out, 0);
+            return out;
+        }
+        return finishDecryption(in, inputOffset, inputLen);
+    }
+
+    @Override
+    protected int engineDoFinal(byte[] in, int inputOffset, int inputLen, byte[] output, int outputOffset)
+            throws ShortBufferException, AEADBadTagException {
+        checkState();
+        int length = in == null ? 0 : inputLen;
+        if (output.length - outputOffset < engineGetOutputSize(length)) {
+            throw new ShortBufferException("Need " + engineGetOutputSize(length) + " bytes of output space");
+        }
+        if (encrypting) {
+            if (in == output && length > 0 && inputOffset != outputOffset) {
+                in = Arrays.copyOfRange(in, inputOffset, inputOffset + length);
+                inputOffset = 0;
+            }
+            return finishEncryption(in, inputOffset, length, output, outputOffset);
+        }
+        byte[] result = finishDecryption(in, inputOffset, inputLen);
+        System.arraycopy(result, 0, output, outputOffset, result.length);
+        return result.length;
+    }
+
+    private int finishEncryption(byte[] in, int inputOffset, int inputLen, byte[] output, int outputOffset) {
+        int written = inputLen == 0 ? 0 : encryptor.update(in, inputOffset, inputLen, output, outputOffset);
+        written += encryptor.finish(output, outputOffset + written);
+        encryptor = null;
+        ivConsumed = true;
+        return written;
+    }
+
+    private byte[] finishDecryption(byte[] in, int inputOffset, int inputLen) throws AEADBadTagException {
+        if (in != null) {
+            input.write(in, inputOffset, inputLen);
+        }
+        byte[] data = input.toByteArray();
+        byte[] associated = aad.toByteArray();
+        aad.reset();
+        input.reset();
+
+        if (data.length < gcm.getTagSize()) {
+            throw new AEADBadTagException("Input shorter than the tag");
+        }
+        try {
+            return gcm.decryptWithIV(data, preparedKey, iv, associated);
+        } catch (IllegalArgumentException e) {
+            throw new AEADBadTagException(e.getMessage());
+        }
+    }
+
+    private void checkState() {
+        if (key == null) {
+            throw new IllegalStateException("Cipher not initialized");
+        }
+        if (ivConsumed) {
+            throw new IllegalStateException("Cipher must be re-initialized with a new IV after encryption");
+        }
+    }
+}
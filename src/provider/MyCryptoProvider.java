@@ -0,0 +1,26 @@
+package provider;
+
+import java.security.Provider;
+
+/**
+ * JCA provider exposing the project's AES engine and modes through javax.crypto.Cipher
+ *
+ * Usage:
+ *   Security.addProvider(new MyCryptoProvider());
+ *   Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding", MyCryptoProvider.NAME);
+ */
+public final class MyCryptoProvider extends Provider {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String NAME = "MyCrypto";
+
+    public MyCryptoProvider() {
+        super(NAME, "1.0", "Educational AES implementation (ECB, CBC, CTR, GCM)");
+
+        put("Cipher.AES/ECB/PKCS5Padding", AESCipherSpi.ECB.class.getName());
+        put("Cipher.AES/CBC/PKCS5Padding", AESCipherSpi.CBC.class.getName());
+        put("Cipher.AES/CTR/NoPadding", AESCipherSpi.CTR.class.getName());
+        put("Cipher.AES/GCM/NoPadding", AESGCMCipherSpi.class.getName());
+    }
+}
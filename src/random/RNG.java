@@ -1,5 +1,7 @@
 package random;
 
+import core.Codec;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -80,7 +82,8 @@ public class RNG {
     }
 
     // Улучшенный Linear Congruential Generator (64-bit)
-    public int nextInt() {
+    // Синхронизирован: один генератор может использоваться из нескольких потоков
+    public synchronized int nextInt() {
         // LCG с параметрами из Numerical Recipes
         state = (state * 0x5DEECE66DL + 0xBL) & ((1L << 48) - 1);
 
@@ -123,7 +126,7 @@ public class RNG {
     }
 
     // Генерация массива случайных байт
-    public byte[] randomBytes(int n) {
+    public synchronized byte[] randomBytes(int n) {
         if (n < 0) {
             throw new IllegalArgumentException("n must be non-negative");
         }
@@ -142,11 +145,7 @@ public class RNG {
 
     // Вспомогательная функция для вывода в hex
     public static String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02x ", b));
-        }
-        return sb.toString();
+        return Codec.toHex(bytes, ' ');
     }
 
     // Демонстрация сбора энтропии
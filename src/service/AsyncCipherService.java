@@ -0,0 +1,160 @@
+package service;
+
+import modes.CipherMode;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BinaryOperator;
+
+/**
+ * Asynchronous front end for a CipherMode
+ * Jobs are submitted with encrypt/decrypt and complete through a CompletableFuture
+ *
+ * Small jobs run one per task on a fixed pool of worker threads; large jobs run on a
+ * bounded ForkJoinPool, and modes that split large inputs into parallel chunks
+ * (CTR, CFB decryption, XTS, bulk key wrap) fork those chunks into the same pool
+ * instead of the common pool. CTR only splits inside such a pool, so its large
+ * jobs are parallel through the service and sequential when called directly
+ *
+ * GCM, CCM, CBC encryption and the other chained modes cannot be split: a large
+ * job of theirs still runs start to finish on a single ForkJoinPool thread, and
+ * throughput for them comes only from running several jobs at once
+ *
+ * Backpressure: a submitter blocks while the input bytes of accepted but unfinished
+ * jobs would exceed the in-flight limit, so bursts cannot exhaust the heap
+ *
+ * The mode (and its random generator) must be safe to call from several threads
+ */
+public class AsyncCipherService implements AutoCloseable {
+
+    /** Default limit on input bytes of unfinished jobs */
+    public static final int DEFAULT_MAX_IN_FLIGHT_BYTES = 64 * 1024 * 1024;
+
+    /** Jobs at least this large go to the ForkJoinPool */
+    public static final int LARGE_JOB_THRESHOLD = 64 * 1024;
+
+    private final CipherMode mode;
+    private final ExecutorService smallJobs;
+    private final ForkJoinPool largeJobs;
+    private final Semaphore inFlight;
+    private final int maxInFlightBytes;
+
+    /**
+     * Constructor with one worker per CPU and the default in-flight limit
+     * @param mode The mode that performs the jobs
+     */
+    public AsyncCipherService(CipherMode mode) {
+        this(mode, Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_IN_FLIGHT_BYTES);
+    }
+
+    /**
+     * Constructor
+     * @param mode The mode that performs the jobs
+     * @param parallelism Threads in each pool
+     * @param maxInFlightBytes Limit on input bytes of unfinished jobs
+     */
+    public AsyncCipherService(CipherMode mode, int parallelism, int maxInFlightBytes) {
+        if (mode == null) {
+            throw new IllegalArgumentException("Mode cannot be null");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        if (maxInFlightBytes < 1) {
+            throw new IllegalArgumentException("In-flight limit must be at least 1 byte");
+        }
+
+        this.mode = mode;
+        this.maxInFlightBytes = maxInFlightBytes;
+        this.inFlight = new Semaphore(maxInFlightBytes, true);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.smallJobs = Executors.newFixedThreadPool(parallelism, task -> {
+            Thread thread = new Thread(task, "cipher-" + mode.getModeName() + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.largeJobs = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Submits an encryption job; blocks while the in-flight limit is reached
+     * @param plaintext The data to encrypt (must not be modified until the job completes)
+     * @param key The encryption key
+     * @return Future completed with the mode's output, or exceptionally with its exception
+     */
+    public CompletableFuture<byte[]> encrypt(byte[] plaintext, byte[] key) {
+        return submit(plaintext, key, mode::encrypt);
+    }
+
+    /**
+     * Submits a decryption job; blocks while the in-flight limit is reached
+     * @param ciphertext The data to decrypt (must not be modified until the job completes)
+     * @param key The decryption key
+     * @return Future completed with the plaintext, or exceptionally (e.g. authentication failure)
+     */
+    public CompletableFuture<byte[]> decrypt(byte[] ciphertext, byte[] key) {
+        return submit(ciphertext, key, mode::decrypt);
+    }
+
+    /**
+     * Input bytes of jobs accepted but not yet finished
+     */
+    public int getInFlightBytes() {
+        return maxInFlightBytes - inFlight.availablePermits();
+    }
+
+    public int getMaxInFlightBytes() {
+        return maxInFlightBytes;
+    }
+
+    /**
+     * Stops accepting jobs and waits for accepted ones to finish
+     */
+    @Override
+    public void close() {
+        smallJobs.shutdown();
+        largeJobs.shutdown();
+        try {
+            while (!smallJobs.awaitTermination(1, TimeUnit.SECONDS) || !largeJobs.awaitTermination(1, TimeUnit.SECONDS)) {
+                // keep waiting for accepted jobs
+            }
+        } catch (InterruptedException e) {
+            smallJobs.shutdownNow();
+            largeJobs.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private CompletableFuture<byte[]> submit(byte[] input, byte[] key, BinaryOperator<byte[]> operation) {
+        if (input == null) {
+            throw new IllegalArgumentException("Input cannot be null");
+        }
+
+        // A job larger than the whole limit waits until it can run alone
+        int cost = Math.min(input.length, maxInFlightBytes);
+        try {
+            inFlight.acquire(cost);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        ExecutorService executor = input.length >= LARGE_JOB_THRESHOLD ? largeJobs : smallJobs;
+        CompletableFuture<byte[]> job;
+        try {
+            job = CompletableFuture.supplyAsync(() -> operation.apply(input, key), executor);
+        } catch (RejectedExecutionException e) {
+            inFlight.release(cost);
+            throw new IllegalStateException("Service is closed", e);
+        }
+
+        return job.whenComplete((result, error) -> inFlight.release(cost));
+    }
+}
@@ -0,0 +1,171 @@
+package service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client for CipherDaemon
+ * Requests are written as soon as they are made and answered through futures,
+ * so any number of them can be in flight on one connection (pipelining);
+ * a reader thread matches responses to requests by id
+ * Safe to use from several threads
+ */
+public class CipherClient implements AutoCloseable {
+
+    private final SocketChannel channel;
+    private final Thread reader;
+    private final Map<Integer, CompletableFuture<byte[]>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger nextRequestId = new AtomicInteger();
+    private final Object writeLock = new Object();
+    private volatile boolean closed;
+
+    private CipherClient(SocketChannel channel) {
+        this.channel = channel;
+        this.reader = new Thread(this::readResponses, "cipher-client-reader");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * Connects to a daemon
+     * @param address Address from DaemonProtocol.parseAddress or CipherDaemon.getLocalAddress
+     */
+    public static CipherClient connect(SocketAddress address) throws IOException {
+        return new CipherClient(SocketChannel.open(address));
+    }
+
+    /**
+     * Loads a key on the daemon for this connection
+     * @param mode Mode name as returned by CipherMode.getModeName() (e.g. "GCM", "CTR", "SIV")
+     * @param key Key bytes for that mode
+     * @return Future completed with the key handle
+     */
+    public CompletableFuture<Integer> loadKey(String mode, byte[] key) {
+        byte[] name = mode.getBytes(StandardCharsets.US_ASCII);
+        if (name.length == 0 || name.length > 255) {
+            throw new IllegalArgumentException("Mode name must be 1 to 255 characters");
+        }
+        return send(DaemonProtocol.LOAD_KEY, new byte[]{(byte) name.length}, name, key)
+                .thenApply(handle -> ByteBuffer.wrap(handle).getInt());
+    }
+
+    public CompletableFuture<byte[]> encrypt(int handle, byte[] plaintext) {
+        return send(DaemonProtocol.ENCRYPT, DaemonProtocol.intBytes(handle), plaintext);
+    }
+
+    /**
+     * @return Future completed with the plaintext, or exceptionally with
+     * IllegalArgumentException if the daemon rejects the ciphertext
+     */
+    public CompletableFuture<byte[]> decrypt(int handle, byte[] ciphertext) {
+        return send(DaemonProtocol.DECRYPT, DaemonProtocol.intBytes(handle), ciphertext);
+    }
+
+    /**
+     * Forgets a key on the daemon, which wipes its copy
+     */
+    public CompletableFuture<Void> dropKey(int handle) {
+        return send(DaemonProtocol.DROP_KEY, DaemonProtocol.intBytes(handle)).thenApply(empty -> null);
+    }
+
+    /**
+     * Requests sent but not yet answered
+     */
+    public int getPendingRequests() {
+        return pending.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Already gone
+        }
+        failPending(new IllegalStateException("Connection closed"));
+    }
+
+    private CompletableFuture<byte[]> send(byte opcode, byte[]... payload) {
+        if (closed) {
+            throw new IllegalStateException("Connection closed");
+        }
+
+        int requestId = nextRequestId.incrementAndGet();
+        CompletableFuture<byte[]> response = new CompletableFuture<>();
+        pending.put(requestId, response);
+
+        ByteBuffer frame = DaemonProtocol.frame(opcode, requestId, payload);
+        try {
+            synchronized (writeLock) {
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+            }
+        } catch (IOException e) {
+            pending.remove(requestId);
+            response.completeExceptionally(e);
+        }
+        return response;
+    }
+
+    private void readResponses() {
+        ByteBuffer header = ByteBuffer.allocate(DaemonProtocol.HEADER_SIZE);
+        try {
+            while (!closed) {
+                header.clear();
+                readFully(header);
+                header.flip();
+
+                int length = header.getInt();
+                byte status = header.get();
+                int requestId = header.getInt();
+                if (length < DaemonProtocol.HEADER_SIZE - 4 || length > DaemonProtocol.MAX_FRAME_SIZE) {
+                    throw new IOException("Malformed response frame");
+                }
+
+                ByteBuffer payload = ByteBuffer.allocate(length - (DaemonProtocol.HEADER_SIZE - 4));
+                readFully(payload);
+
+                CompletableFuture<byte[]> response = pending.remove(requestId);
+                if (response == null) {
+                    continue;
+                }
+                if (status == DaemonProtocol.STATUS_OK) {
+                    response.complete(payload.array());
+                } else {
+                    response.completeExceptionally(new IllegalArgumentException(DaemonProtocol.utf8(payload.array())));
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                failPending(new IllegalStateException("Connection lost: " + e.getMessage(), e));
+            }
+        }
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Daemon closed the connection");
+            }
+        }
+    }
+
+    private void failPending(RuntimeException cause) {
+        for (Integer requestId : pending.keySet()) {
+            CompletableFuture<byte[]> response = pending.remove(requestId);
+            if (response != null) {
+                response.completeExceptionally(cause);
+            }
+        }
+    }
+}
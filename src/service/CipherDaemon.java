@@ -0,0 +1,556 @@
+package service;
+
+import core.AES;
+import core.AESBlockCipher;
+import core.OffHeapAES;
+import modes.*;
+import random.RNG;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Local encryption daemon: exposes the modes package to other processes over a
+ * Unix-domain socket or a loopback TCP port, using the DaemonProtocol framing
+ *
+ * One selector thread accepts connections and moves bytes; requests are decoded on
+ * that thread and executed on a worker pool, so a connection may pipeline requests
+ * and get responses back out of order. A connection with MAX_PIPELINED_REQUESTS
+ * unanswered requests is not read from until some responses have been written
+ *
+ * Keys are loaded once per connection and referred to by handle, and are fully
+ * prepared at load time (AES expansion, hash subkeys) for every mode. A handle is
+ * wiped only after the requests already using it have finished
+ * Only loopback addresses are accepted: the daemon does not authenticate clients
+ *
+ * Usage: java service.CipherDaemon [port | unix:/path] [workers]
+ */
+public class CipherDaemon implements AutoCloseable {
+
+    public static final int DEFAULT_PORT = 7878;
+    public static final int MAX_PIPELINED_REQUESTS = 256;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final ExecutorService workers;
+    private final Thread selectorThread;
+    private final SocketAddress localAddress;
+
+    // Connections with responses waiting for OP_WRITE to be enabled on the selector thread
+    private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+
+    private final AESBlockCipher aes = new AESBlockCipher();
+    // Mode name -> mode built around a given block cipher
+    private final Map<String, Function<AESBlockCipher, CipherMode>> modes = new LinkedHashMap<>();
+    private final RNG rng = new RNG();
+
+    private volatile boolean running = true;
+
+    /**
+     * Binds the daemon; call start() to begin serving
+     * @param address Loopback InetSocketAddress (port 0 picks a free port) or UnixDomainSocketAddress
+     * @param workerThreads Threads executing requests
+     * @throws IllegalArgumentException if an InetSocketAddress is not a loopback address
+     */
+    public CipherDaemon(SocketAddress address, int workerThreads) throws IOException {
+        if (workerThreads < 1) {
+            throw new IllegalArgumentException("Worker count must be at least 1");
+        }
+        if (address instanceof InetSocketAddress) {
+            InetSocketAddress inet = (InetSocketAddress) address;
+            if (inet.isUnresolved() || !inet.getAddress().isLoopbackAddress()) {
+                throw new IllegalArgumentException("Daemon only listens on loopback addresses, not " + address);
+            }
+        } else if (!(address instanceof UnixDomainSocketAddress)) {
+            throw new IllegalArgumentException("Unsupported daemon address: " + address);
+        }
+
+        List<Function<AESBlockCipher, CipherMode>> factories = List.of(ECBMode::new,
+                cipher -> new CBCMode(cipher, rng), cipher -> new CTRMode(cipher, rng),
+                cipher -> new GCMMode(cipher, rng), cipher -> new GCMSIVMode(cipher, rng), SIVMode::new,
+                cipher -> new CCMMode(cipher, rng), cipher -> new CFBMode(cipher, rng, 8),
+                cipher -> new CFBMode(cipher, rng), cipher -> new OFBMode(cipher, rng),
+                cipher -> new XTSMode(cipher, rng), KeyWrapMode::new);
+        for (Function<AESBlockCipher, CipherMode> factory : factories) {
+            modes.put(factory.apply(aes).getModeName(), factory);
+        }
+
+        if (address instanceof UnixDomainSocketAddress) {
+            // A stale socket file from a previous run would make bind fail
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            this.server = ServerSocketChannel.open();
+        }
+        server.bind(address);
+        server.configureBlocking(false);
+        this.localAddress = server.getLocalAddress();
+
+        this.selector = Selector.open();
+        server.register(selector, SelectionKey.OP_ACCEPT);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerThreads, task -> {
+            Thread thread = new Thread(task, "cipher-daemon-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.selectorThread = new Thread(this::serve, "cipher-daemon-selector");
+    }
+
+    public static void main(String[] args) throws Exception {
+        SocketAddress address = DaemonProtocol.parseAddress(args.length > 0 ? args[0] : String.valueOf(DEFAULT_PORT));
+        int workerThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        CipherDaemon daemon = new CipherDaemon(address, workerThreads);
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::close));
+        daemon.start();
+
+        System.out.println("Cipher daemon listening on " + daemon.getLocalAddress());
+        System.out.println("Modes:   " + daemon.modes.keySet());
+        System.out.println("Workers: " + workerThreads);
+        daemon.selectorThread.join();
+    }
+
+    public void start() {
+        selectorThread.start();
+    }
+
+    /**
+     * The bound address (with the actual port if port 0 was requested)
+     */
+    public SocketAddress getLocalAddress() {
+        return localAddress;
+    }
+
+    /**
+     * Stops serving, closes all connections and wipes their keys
+     */
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            if (selectorThread.getState() == Thread.State.NEW) {
+                shutdown();
+            } else {
+                selectorThread.join(TimeUnit.SECONDS.toMillis(5));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ==================== SELECTOR LOOP ====================
+
+    private void serve() {
+        try {
+            while (running) {
+                selector.select();
+
+                Connection ready;
+                while ((ready = pendingWrites.poll()) != null) {
+                    if (ready.key.isValid()) {
+                        ready.key.interestOps(ready.key.interestOps() | SelectionKey.OP_WRITE);
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            Connection connection = (Connection) key.attachment();
+                            if (key.isReadable()) {
+                                connection.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.write();
+                            }
+                        }
+                    } catch (IOException e) {
+                        if (key.attachment() instanceof Connection) {
+                            ((Connection) key.attachment()).close();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Cipher daemon stopped: " + e.getMessage());
+        } finally {
+            shutdown();
+        }
+    }
+
+    private void shutdown() {
+        running = false;
+        workers.shutdownNow();
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection) {
+                ((Connection) key.attachment()).close();
+            }
+        }
+        try {
+            selector.close();
+            server.close();
+            if (localAddress instanceof UnixDomainSocketAddress) {
+                Files.deleteIfExists(((UnixDomainSocketAddress) localAddress).getPath());
+            }
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    // ==================== CONNECTION ====================
+
+    /**
+     * Per-connection state; read/write/close run on the selector thread,
+     * request handling on the workers
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        private final Queue<ByteBuffer> outgoing = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger unanswered = new AtomicInteger();
+
+        private final Map<Integer, KeyHandle> keys = new ConcurrentHashMap<>();
+        private final AtomicInteger nextHandle = new AtomicInteger();
+        private volatile boolean closed;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() throws IOException {
+            if (channel.read(readBuffer) < 0) {
+                close();
+                return;
+            }
+
+            readBuffer.flip();
+            while (readBuffer.remaining() >= 4) {
+                int length = readBuffer.getInt(readBuffer.position());
+                if (length < DaemonProtocol.HEADER_SIZE - 4 || length > DaemonProtocol.MAX_FRAME_SIZE) {
+                    // Not speaking the protocol; nothing sensible can follow
+                    close();
+                    return;
+                }
+                if (readBuffer.remaining() < 4 + length) {
+                    break;
+                }
+
+                readBuffer.getInt();
+                byte opcode = readBuffer.get();
+                int requestId = readBuffer.getInt();
+                byte[] payload = new byte[length - (DaemonProtocol.HEADER_SIZE - 4)];
+                readBuffer.get(payload);
+                dispatch(opcode, requestId, payload);
+            }
+            readBuffer.compact();
+
+            // Make room for a frame larger than the buffer
+            if (readBuffer.position() >= 4) {
+                int needed = 4 + readBuffer.getInt(0);
+                if (needed > readBuffer.capacity()) {
+                    ByteBuffer larger = ByteBuffer.allocate(needed);
+                    readBuffer.flip();
+                    larger.put(readBuffer);
+                    readBuffer = larger;
+                }
+            } else if (readBuffer.capacity() > READ_BUFFER_SIZE) {
+                ByteBuffer smaller = ByteBuffer.allocate(READ_BUFFER_SIZE);
+                readBuffer.flip();
+                smaller.put(readBuffer);
+                readBuffer = smaller;
+            }
+
+            if (unanswered.get() >= MAX_PIPELINED_REQUESTS && key.isValid()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        }
+
+        void write() throws IOException {
+            ByteBuffer response;
+            while ((response = outgoing.peek()) != null) {
+                channel.write(response);
+                if (response.hasRemaining()) {
+                    return;
+                }
+                outgoing.poll();
+                unanswered.decrementAndGet();
+            }
+
+            int ops = key.interestOps() & ~SelectionKey.OP_WRITE;
+            if (unanswered.get() < MAX_PIPELINED_REQUESTS) {
+                ops |= SelectionKey.OP_READ;
+            }
+            key.interestOps(ops);
+        }
+
+        void close() {
+            closed = true;
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Already gone
+            }
+            for (Integer id : keys.keySet()) {
+                KeyHandle handle = keys.remove(id);
+                if (handle != null) {
+                    handle.release();
+                }
+            }
+        }
+
+        private void dispatch(byte opcode, int requestId, byte[] payload) {
+            unanswered.incrementAndGet();
+            workers.execute(() -> {
+                ByteBuffer response;
+                try {
+                    response = DaemonProtocol.frame(DaemonProtocol.STATUS_OK, requestId, handle(opcode, payload));
+                } catch (RuntimeException e) {
+                    String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+                    response = DaemonProtocol.frame(DaemonProtocol.STATUS_ERROR, requestId, DaemonProtocol.utf8(message));
+                }
+                outgoing.add(response);
+                pendingWrites.add(this);
+                selector.wakeup();
+            });
+        }
+
+        private byte[] handle(byte opcode, byte[] payload) {
+            switch (opcode) {
+                case DaemonProtocol.LOAD_KEY: {
+                    int nameLength = payload.length > 0 ? payload[0] & 0xFF : 0;
+                    if (nameLength == 0 || payload.length < 1 + nameLength) {
+                        throw new IllegalArgumentException("Malformed LOAD_KEY request");
+                    }
+                    String name = new String(payload, 1, nameLength, StandardCharsets.US_ASCII);
+                    byte[] keyBytes = Arrays.copyOfRange(payload, 1 + nameLength, payload.length);
+                    Arrays.fill(payload, (byte) 0);
+
+                    int id = nextHandle.incrementAndGet();
+                    KeyHandle handle = loadKey(name, keyBytes);
+                    keys.put(id, handle);
+                    // A close() that ran meanwhile did not see this handle
+                    if (closed && keys.remove(id) != null) {
+                        handle.release();
+                    }
+                    return DaemonProtocol.intBytes(id);
+                }
+                case DaemonProtocol.ENCRYPT:
+                    return apply(payload, true);
+                case DaemonProtocol.DECRYPT:
+                    return apply(payload, false);
+                case DaemonProtocol.DROP_KEY: {
+                    // Requests still running keep the key until they finish
+                    KeyHandle handle = keys.remove(handleId(payload));
+                    if (handle != null) {
+                        handle.release();
+                    }
+                    return new byte[0];
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown opcode: " + opcode);
+            }
+        }
+
+        private byte[] apply(byte[] payload, boolean encrypt) {
+            KeyHandle handle = keys.get(handleId(payload));
+            if (handle == null || !handle.acquire()) {
+                throw new IllegalArgumentException("Unknown key handle");
+            }
+            try {
+                byte[] data = Arrays.copyOfRange(payload, 4, payload.length);
+                return encrypt ? handle.encrypt.apply(data) : handle.decrypt.apply(data);
+            } finally {
+                handle.release();
+            }
+        }
+
+        private int handleId(byte[] payload) {
+            if (payload.length < 4) {
+                throw new IllegalArgumentException("Missing key handle");
+            }
+            return ByteBuffer.wrap(payload).getInt();
+        }
+    }
+
+    // ==================== KEY HANDLES ====================
+
+    /**
+     * A key bound to a mode; operations are fixed when the key is loaded
+     * Reference counted: one reference for the connection's handle table and one per
+     * running request; when the last one is released the key bytes are wiped and the
+     * prepared key material (round keys, GHASH tables, subkeys) is closed
+     */
+    private static final class KeyHandle {
+        private final byte[] key;
+        private final UnaryOperator<byte[]> encrypt;
+        private final UnaryOperator<byte[]> decrypt;
+        private final Runnable wipe;
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        KeyHandle(byte[] key, UnaryOperator<byte[]> encrypt, UnaryOperator<byte[]> decrypt, Runnable wipe) {
+            this.key = key;
+            this.encrypt = encrypt;
+            this.decrypt = decrypt;
+            this.wipe = wipe;
+        }
+
+        /**
+         * @return false if the handle has already been released for good
+         */
+        boolean acquire() {
+            while (true) {
+                int count = references.get();
+                if (count == 0) {
+                    return false;
+                }
+                if (references.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                Arrays.fill(key, (byte) 0);
+                wipe.run();
+            }
+        }
+    }
+
+    /**
+     * Block cipher for one loaded key: hands out the off-heap expansion made at load time
+     * when a mode asks for that key, and expands anything else (per-message keys) as usual
+     */
+    private static final class LoadedKeyCipher extends AESBlockCipher {
+        private final byte[] key;
+        private final OffHeapAES expanded;
+
+        LoadedKeyCipher(byte[] key) {
+            this.key = key;
+            this.expanded = super.prepareOffHeapKey(key);
+        }
+
+        @Override
+        public AES prepareKey(byte[] candidate) {
+            if (candidate != null && MessageDigest.isEqual(candidate, key)) {
+                return expanded;
+            }
+            return super.prepareKey(candidate);
+        }
+    }
+
+    /**
+     * Block cipher whose every expansion goes off-heap and is closed with the handle;
+     * used while a mode prepares its key once at load time
+     */
+    private static final class OffHeapKeys extends AESBlockCipher implements AutoCloseable {
+        private final List<OffHeapAES> expanded = new ArrayList<>();
+
+        @Override
+        public synchronized AES prepareKey(byte[] key) {
+            OffHeapAES cipher = prepareOffHeapKey(key);
+            expanded.add(cipher);
+            return cipher;
+        }
+
+        @Override
+        public synchronized void close() {
+            for (OffHeapAES cipher : expanded) {
+                cipher.close();
+            }
+        }
+    }
+
+    private KeyHandle loadKey(String modeName, byte[] key) {
+        switch (modeName) {
+            case "GCM": {
+                OffHeapKeys keys = new OffHeapKeys();
+                GCMMode gcm = new GCMMode(keys, rng);
+                GCMMode.PreparedKey prepared = gcm.prepareKey(key);
+                return new KeyHandle(key, data -> gcm.encryptWithAAD(data, prepared, null),
+                        data -> gcm.decryptWithAAD(data, prepared, null), () -> {
+                            prepared.close();
+                            keys.close();
+                        });
+            }
+            case "SIV": {
+                OffHeapKeys keys = new OffHeapKeys();
+                SIVMode siv = new SIVMode(keys);
+                SIVMode.PreparedKey prepared = siv.prepareKey(key);
+                return new KeyHandle(key, data -> siv.encrypt(data, prepared), data -> siv.decrypt(data, prepared),
+                        () -> {
+                            prepared.close();
+                            keys.close();
+                        });
+            }
+            case "XTS": {
+                OffHeapKeys keys = new OffHeapKeys();
+                XTSMode xts = new XTSMode(keys, rng);
+                XTSMode.PreparedKey prepared = xts.prepareKey(key);
+                return new KeyHandle(key, data -> xts.encrypt(data, prepared), data -> xts.decrypt(data, prepared),
+                        keys::close);
+            }
+            default: {
+                Function<AESBlockCipher, CipherMode> factory = modes.get(modeName);
+                if (factory == null) {
+                    throw new IllegalArgumentException("Unknown mode: " + modeName + " (supported: " + modes.keySet() + ")");
+                }
+                LoadedKeyCipher cipher = new LoadedKeyCipher(key);
+                CipherMode mode = factory.apply(cipher);
+                return new KeyHandle(key, data -> mode.encrypt(data, key), data -> mode.decrypt(data, key),
+                        cipher.expanded::close);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package service;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format shared by CipherDaemon and CipherClient
+ * Every frame is [int length][byte code][int requestId][payload], big-endian,
+ * where length counts the code, the request id and the payload
+ * In a request the code is an opcode; a response carries a status and echoes the request id,
+ * so a client may pipeline any number of requests and match responses as they arrive
+ *
+ *   LOAD_KEY  [byte nameLength][mode name, ASCII][key]  -> [int handle]
+ *   ENCRYPT   [int handle][plaintext]                   -> output of the mode
+ *   DECRYPT   [int handle][ciphertext]                  -> plaintext
+ *   DROP_KEY  [int handle]                              -> empty
+ *
+ * On failure the status is STATUS_ERROR and the payload is a UTF-8 message
+ * Key handles belong to the connection that loaded them
+ */
+public final class DaemonProtocol {
+
+    public static final byte LOAD_KEY = 1;
+    public static final byte ENCRYPT = 2;
+    public static final byte DECRYPT = 3;
+    public static final byte DROP_KEY = 4;
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ERROR = 1;
+
+    /** Length prefix, code and request id */
+    public static final int HEADER_SIZE = 9;
+
+    /** Largest accepted value of the length field */
+    public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    private DaemonProtocol() {
+    }
+
+    /**
+     * Parses a daemon address: "unix:/path/to/socket", "port" or "host:port"
+     * A bare port binds or connects to the loopback interface; the daemon refuses
+     * to bind any other interface
+     */
+    public static SocketAddress parseAddress(String spec) {
+        if (spec.startsWith("unix:")) {
+            return UnixDomainSocketAddress.of(spec.substring("unix:".length()));
+        }
+
+        int colon = spec.lastIndexOf(':');
+        if (colon < 0) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(spec));
+        }
+        return new InetSocketAddress(spec.substring(0, colon), Integer.parseInt(spec.substring(colon + 1)));
+    }
+
+    /**
+     * Builds a complete frame, ready to write, from the payload parts
+     */
+    static ByteBuffer frame(byte code, int requestId, byte[]... parts) {
+        int payloadLength = 0;
+        for (byte[] part : parts) {
+            payloadLength += part.length;
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + payloadLength);
+        frame.putInt(HEADER_SIZE - 4 + payloadLength).put(code).putInt(requestId);
+        for (byte[] part : parts) {
+            frame.put(part);
+        }
+        return frame.flip();
+    }
+
+    static byte[] intBytes(int value) {
+        return ByteBuffer.allocate(4).putInt(value).array();
+    }
+
+    static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String utf8(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,131 @@
+package service;
+
+import metrics.LatencyHistogram;
+import random.RNG;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator for CipherDaemon
+ * Opens several connections, keeps a fixed number of encrypt requests in flight
+ * on each (pipeline depth) for a fixed time, then reports throughput and the
+ * request latency distribution
+ *
+ * Usage: java service.LoadGenerator [address] [mode] [messageBytes] [connections] [depth] [seconds]
+ * Defaults: 7878 GCM 256 4 32 10
+ */
+public class LoadGenerator {
+
+    public static void main(String[] args) throws Exception {
+        SocketAddress address = DaemonProtocol.parseAddress(
+                args.length > 0 ? args[0] : String.valueOf(CipherDaemon.DEFAULT_PORT));
+        String mode = args.length > 1 ? args[1] : "GCM";
+        int messageBytes = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+        int connections = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        int depth = args.length > 4 ? Integer.parseInt(args[4]) : 32;
+        int seconds = args.length > 5 ? Integer.parseInt(args[5]) : 10;
+
+        System.out.println("Daemon:      " + address);
+        System.out.println("Mode:        " + mode);
+        System.out.println("Message:     " + messageBytes + " bytes");
+        System.out.println("Connections: " + connections + " x depth " + depth);
+        System.out.println("Duration:    " + seconds + " s");
+
+        Result result = run(address, mode, messageBytes, connections, depth, TimeUnit.SECONDS.toNanos(seconds));
+
+        double elapsedSeconds = result.elapsedNanos / 1e9;
+        System.out.println("\n" + "═".repeat(60));
+        System.out.printf("Requests:    %d (%d failed)%n", result.requests, result.failures);
+        System.out.printf("Throughput:  %.0f req/s, %.2f MB/s%n",
+                result.requests / elapsedSeconds, result.requests * (double) messageBytes / elapsedSeconds / 1e6);
+        System.out.printf("Latency:     mean %.1f us, p50 %.1f us, p99 %.1f us, max %.1f us%n",
+                result.latency.getMean() / 1e3, result.latency.getPercentile(50) / 1e3,
+                result.latency.getPercentile(99) / 1e3, result.latency.getMax() / 1e3);
+        System.out.println("═".repeat(60));
+    }
+
+    /**
+     * Load test outcome
+     */
+    public static final class Result {
+        public final long requests;
+        public final long failures;
+        public final long elapsedNanos;
+        public final LatencyHistogram latency;
+
+        Result(long requests, long failures, long elapsedNanos, LatencyHistogram latency) {
+            this.requests = requests;
+            this.failures = failures;
+            this.elapsedNanos = elapsedNanos;
+            this.latency = latency;
+        }
+    }
+
+    /**
+     * Runs a load test against a daemon
+     * @param address Daemon address
+     * @param mode Mode name to load a random key for (16 bytes, 32 for SIV and XTS)
+     * @param messageBytes Plaintext size of each request
+     * @param connections Parallel connections
+     * @param depth Requests kept in flight per connection
+     * @param durationNanos How long to keep sending
+     */
+    public static Result run(SocketAddress address, String mode, int messageBytes, int connections, int depth,
+                             long durationNanos) throws Exception {
+        RNG rng = new RNG();
+        byte[] message = rng.randomBytes(messageBytes);
+        int keyLength = mode.equals("SIV") || mode.equals("XTS") ? 32 : 16;
+
+        LatencyHistogram latency = new LatencyHistogram();
+        AtomicLong requests = new AtomicLong();
+        AtomicLong failures = new AtomicLong();
+
+        List<CipherClient> clients = new ArrayList<>();
+        List<Thread> senders = new ArrayList<>();
+        long start = System.nanoTime();
+        long deadline = start + durationNanos;
+
+        try {
+            for (int c = 0; c < connections; c++) {
+                CipherClient client = CipherClient.connect(address);
+                clients.add(client);
+                int handle = client.loadKey(mode, rng.randomBytes(keyLength)).get();
+
+                Thread sender = new Thread(() -> {
+                    Semaphore window = new Semaphore(depth);
+                    while (System.nanoTime() < deadline) {
+                        window.acquireUninterruptibly();
+                        long sent = System.nanoTime();
+                        client.encrypt(handle, message).whenComplete((sealed, error) -> {
+                            latency.record(System.nanoTime() - sent);
+                            requests.incrementAndGet();
+                            if (error != null) {
+                                failures.incrementAndGet();
+                            }
+                            window.release();
+                        });
+                    }
+                    // Wait for the last responses
+                    window.acquireUninterruptibly(depth);
+                }, "load-generator-" + c);
+                senders.add(sender);
+                sender.start();
+            }
+
+            for (Thread sender : senders) {
+                sender.join();
+            }
+        } finally {
+            for (CipherClient client : clients) {
+                client.close();
+            }
+        }
+
+        return new Result(requests.get(), failures.get(), System.nanoTime() - start, latency);
+    }
+}
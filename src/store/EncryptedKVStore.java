@@ -0,0 +1,420 @@
+package store;
+
+import core.AESBlockCipher;
+import metrics.CacheStats;
+import metrics.CipherMetrics;
+import modes.XTSMode;
+import random.RNG;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Embedded key-value store whose pages are encrypted at rest with XTS-AES
+ * Every page is one XTS data unit with its page number as the tweak, so pages are
+ * encrypted and decrypted independently and in place, with no per-page overhead;
+ * a PageCache of decrypted pages serves hot reads without running the cipher
+ *
+ * Layout: a hash table of bucketCount chains of pages
+ *   Page 0          plaintext superblock (geometry, counters, key check value)
+ *   Pages 1..n      bucket heads, further pages are chained overflow pages
+ *   Page            nextPage (4) || recordCount (2) || usedBytes (2) || records
+ *   Record          keyLength (2) || valueLength (4) || key || value
+ * A record must fit in one page
+ *
+ * XTS hides contents but does not authenticate them: a modified page decrypts to
+ * garbage rather than failing. Changes are durable after flush() or close()
+ *
+ * Pages reach the file only at checkpoints: flush(), close(), or before an operation
+ * when the cache has too few clean pages left. The superblock's pageCount is made
+ * durable before any page beyond the old count is written, so a chain on disk never
+ * points at a page that a reopened store would hand out again. A crash during a
+ * checkpoint can still leave a mix of old and new pages
+ * All operations are thread-safe and run one at a time
+ */
+public class EncryptedKVStore implements AutoCloseable {
+
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+    public static final int DEFAULT_BUCKET_COUNT = 1024;
+    public static final long DEFAULT_CACHE_BYTES = 16L * 1024 * 1024;
+
+    private static final int MIN_PAGE_SIZE = 4096;
+    private static final int MAX_PAGE_SIZE = 64 * 1024;
+
+    private static final byte[] MAGIC = {'A', 'E', 'S', 'K'};
+    private static final byte VERSION = 1;
+    private static final int SUPERBLOCK_SIZE = 48;
+    private static final long KEY_CHECK_SECTOR = -1;
+
+    private static final int PAGE_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 6;
+    private static final int MAX_PAGES = Integer.MAX_VALUE;
+
+    // remove() dirties one page, the insert at most two (the chain's last page and a new one)
+    private static final int MAX_PAGES_DIRTIED = 3;
+
+    private final PageFile file;
+    private final PageCache cache;
+    private final CacheStats stats;
+    private final int pageSize;
+    private final int bucketCount;
+    private final byte[] keyCheck;
+    private long pageCount;
+    private long durablePageCount;
+    private long recordCount;
+    private boolean closed;
+
+    private EncryptedKVStore(PageFile file, CacheStats stats, long cacheBytes, int bucketCount, long pageCount,
+                             long recordCount, byte[] keyCheck) {
+        this.file = file;
+        this.stats = stats;
+        this.cache = new PageCache(file, cacheBytes, stats);
+        this.pageSize = file.getPageSize();
+        this.bucketCount = bucketCount;
+        this.pageCount = pageCount;
+        this.durablePageCount = pageCount;
+        this.recordCount = recordCount;
+        this.keyCheck = keyCheck;
+    }
+
+    /**
+     * Opens a store, creating it with the default geometry and a 16 MiB cache if needed
+     * @param key XTS key Key1 || Key2 (32 or 64 bytes)
+     */
+    public static EncryptedKVStore open(Path path, byte[] key) throws IOException {
+        return open(path, key, DEFAULT_PAGE_SIZE, DEFAULT_BUCKET_COUNT, DEFAULT_CACHE_BYTES);
+    }
+
+    /**
+     * Opens a store
+     * @param key XTS key Key1 || Key2 (32 or 64 bytes)
+     * @param pageSize Page size for a new store: a power of two from 4 KiB to 64 KiB (an existing store keeps its own)
+     * @param bucketCount Hash buckets for a new store
+     * @param cacheBytes Bound on decrypted pages held in memory
+     * @throws IllegalArgumentException if the file is not a store or the key does not match
+     */
+    public static EncryptedKVStore open(Path path, byte[] key, int pageSize, int bucketCount, long cacheBytes)
+            throws IOException {
+        XTSMode xts = new XTSMode(new AESBlockCipher(), new RNG());
+        XTSMode.PreparedKey prepared = xts.prepareKey(key);
+        byte[] keyCheck = new byte[16];
+        xts.encryptSector(prepared, KEY_CHECK_SECTOR, keyCheck, 0, keyCheck.length);
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            ByteBuffer superblock = ByteBuffer.allocate(SUPERBLOCK_SIZE);
+            while (superblock.hasRemaining() && channel.read(superblock, superblock.position()) >= 0) {
+                // Read until full or end of file
+            }
+
+            if (superblock.position() == 0) {
+                if (Integer.bitCount(pageSize) != 1 || pageSize < MIN_PAGE_SIZE || pageSize > MAX_PAGE_SIZE) {
+                    throw new IllegalArgumentException("Page size must be a power of two from 4 KiB to 64 KiB");
+                }
+                if (bucketCount < 1 || bucketCount >= MAX_PAGES) {
+                    throw new IllegalArgumentException("Bucket count must be positive");
+                }
+                EncryptedKVStore store = create(channel, xts, prepared, pageSize, bucketCount, cacheBytes,
+                        path, keyCheck, 1L + bucketCount, 0);
+                store.writeSuperblock();
+                return store;
+            }
+
+            superblock.flip();
+            if (superblock.remaining() < SUPERBLOCK_SIZE) {
+                throw new IllegalArgumentException("Truncated store superblock");
+            }
+            byte[] magic = new byte[MAGIC.length];
+            superblock.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || superblock.get() != VERSION) {
+                throw new IllegalArgumentException("Not an encrypted store");
+            }
+            superblock.position(8);
+            int storedPageSize = superblock.getInt();
+            int storedBuckets = superblock.getInt();
+            long storedPages = superblock.getLong();
+            long storedRecords = superblock.getLong();
+            byte[] storedCheck = new byte[16];
+            superblock.get(storedCheck);
+            if (Integer.bitCount(storedPageSize) != 1 || storedPageSize < MIN_PAGE_SIZE
+                    || storedPageSize > MAX_PAGE_SIZE || storedBuckets < 1 || storedPages <= storedBuckets) {
+                throw new IllegalArgumentException("Corrupt store superblock");
+            }
+            if (!MessageDigest.isEqual(storedCheck, keyCheck)) {
+                throw new IllegalArgumentException("Wrong key for this store");
+            }
+
+            return create(channel, xts, prepared, storedPageSize, storedBuckets, cacheBytes, path, keyCheck,
+                    storedPages, storedRecords);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static EncryptedKVStore create(FileChannel channel, XTSMode xts, XTSMode.PreparedKey key, int pageSize,
+                                           int bucketCount, long cacheBytes, Path path, byte[] keyCheck,
+                                           long pageCount, long recordCount) {
+        CacheStats stats = new CacheStats(path.toAbsolutePath().toString(), cacheBytes);
+        EncryptedKVStore store = new EncryptedKVStore(new PageFile(channel, xts, key, pageSize), stats, cacheBytes,
+                bucketCount, pageCount, recordCount, keyCheck);
+        CipherMetrics.registerCache(stats);
+        return store;
+    }
+
+    // ==================== OPERATIONS ====================
+
+    /**
+     * @return A copy of the value, or null if the key is absent
+     */
+    public synchronized byte[] get(byte[] key) throws IOException {
+        checkKey(key);
+        checkOpen();
+
+        long pageNumber = bucketPage(key);
+        while (pageNumber != 0) {
+            byte[] page = cache.read(pageNumber);
+            int position = find(page, key);
+            if (position >= 0) {
+                int valueStart = position + RECORD_HEADER_SIZE + key.length;
+                return Arrays.copyOfRange(page, valueStart, valueStart + valueLength(page, position));
+            }
+            pageNumber = nextPage(page);
+        }
+        return null;
+    }
+
+    /**
+     * Inserts or replaces a value
+     * @throws IllegalArgumentException if the record does not fit in one page
+     */
+    public synchronized void put(byte[] key, byte[] value) throws IOException {
+        checkKey(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Value cannot be null");
+        }
+        int size = RECORD_HEADER_SIZE + key.length + value.length;
+        if (size > pageSize - PAGE_HEADER_SIZE) {
+            throw new IllegalArgumentException("Record larger than a page (" + (pageSize - PAGE_HEADER_SIZE
+                    - RECORD_HEADER_SIZE) + " bytes of key and value)");
+        }
+        checkOpen();
+        if (cache.needsFlush(MAX_PAGES_DIRTIED)) {
+            checkpoint();
+        }
+
+        remove(key);
+
+        // First page in the chain with room, or a new overflow page at its end
+        long pageNumber = bucketPage(key);
+        long last = pageNumber;
+        while (pageNumber != 0) {
+            if (pageSize - PAGE_HEADER_SIZE - usedBytes(cache.read(pageNumber)) >= size) {
+                append(cache.write(pageNumber), key, value);
+                recordCount++;
+                return;
+            }
+            last = pageNumber;
+            pageNumber = nextPage(cache.read(pageNumber));
+        }
+
+        if (pageCount >= MAX_PAGES) {
+            throw new IllegalStateException("Store is full");
+        }
+        // Pages past pageCount may hold leftovers from before a crash
+        long fresh = pageCount++;
+        byte[] page = cache.write(fresh);
+        Arrays.fill(page, (byte) 0);
+        append(page, key, value);
+        setNextPage(cache.write(last), fresh);
+        recordCount++;
+    }
+
+    /**
+     * @return true if the key was present
+     */
+    public synchronized boolean delete(byte[] key) throws IOException {
+        checkKey(key);
+        checkOpen();
+        if (cache.needsFlush(1)) {
+            checkpoint();
+        }
+        return remove(key);
+    }
+
+    /**
+     * Records in the store
+     */
+    public synchronized long size() {
+        return recordCount;
+    }
+
+    public CacheStats getCacheStats() {
+        return stats;
+    }
+
+    /**
+     * Writes dirty pages and the superblock and syncs the file
+     */
+    public synchronized void flush() throws IOException {
+        checkOpen();
+        checkpoint();
+    }
+
+    /**
+     * Flushes, wipes every cached plaintext page and closes the file
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            closed = true;
+            cache.wipe();
+            file.close();
+            CipherMetrics.unregisterCache(stats);
+        }
+    }
+
+    // ==================== PAGES ====================
+
+    private boolean remove(byte[] key) throws IOException {
+        long pageNumber = bucketPage(key);
+        while (pageNumber != 0) {
+            int position = find(cache.read(pageNumber), key);
+            if (position >= 0) {
+                byte[] page = cache.write(pageNumber);
+                int size = RECORD_HEADER_SIZE + key.length + valueLength(page, position);
+                int end = PAGE_HEADER_SIZE + usedBytes(page);
+
+                // Close the gap and wipe the freed tail
+                System.arraycopy(page, position + size, page, position, end - position - size);
+                Arrays.fill(page, end - size, end, (byte) 0);
+                setRecordCount(page, recordCountOf(page) - 1);
+                setUsedBytes(page, usedBytes(page) - size);
+                recordCount--;
+                return true;
+            }
+            pageNumber = nextPage(cache.read(pageNumber));
+        }
+        return false;
+    }
+
+    /**
+     * Offset of the record with this key in the page, or -1
+     */
+    private static int find(byte[] page, byte[] key) {
+        int position = PAGE_HEADER_SIZE;
+        int records = recordCountOf(page);
+        for (int i = 0; i < records; i++) {
+            int keyLength = keyLength(page, position);
+            if (keyLength == key.length
+                    && Arrays.equals(page, position + RECORD_HEADER_SIZE, position + RECORD_HEADER_SIZE + keyLength,
+                    key, 0, key.length)) {
+                return position;
+            }
+            position += RECORD_HEADER_SIZE + keyLength + valueLength(page, position);
+        }
+        return -1;
+    }
+
+    private static void append(byte[] page, byte[] key, byte[] value) {
+        int position = PAGE_HEADER_SIZE + usedBytes(page);
+        ByteBuffer.wrap(page, position, RECORD_HEADER_SIZE)
+                .putShort((short) key.length)
+                .putInt(value.length);
+        System.arraycopy(key, 0, page, position + RECORD_HEADER_SIZE, key.length);
+        System.arraycopy(value, 0, page, position + RECORD_HEADER_SIZE + key.length, value.length);
+        setRecordCount(page, recordCountOf(page) + 1);
+        setUsedBytes(page, usedBytes(page) + RECORD_HEADER_SIZE + key.length + value.length);
+    }
+
+    private long bucketPage(byte[] key) {
+        int hash = Arrays.hashCode(key);
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        return 1 + Math.floorMod(hash, bucketCount);
+    }
+
+    private static long nextPage(byte[] page) {
+        return ByteBuffer.wrap(page).getInt(0) & 0xFFFFFFFFL;
+    }
+
+    private static void setNextPage(byte[] page, long next) {
+        ByteBuffer.wrap(page).putInt(0, (int) next);
+    }
+
+    private static int recordCountOf(byte[] page) {
+        return ByteBuffer.wrap(page).getShort(4) & 0xFFFF;
+    }
+
+    private static void setRecordCount(byte[] page, int count) {
+        ByteBuffer.wrap(page).putShort(4, (short) count);
+    }
+
+    private static int usedBytes(byte[] page) {
+        return ByteBuffer.wrap(page).getShort(6) & 0xFFFF;
+    }
+
+    private static void setUsedBytes(byte[] page, int used) {
+        ByteBuffer.wrap(page).putShort(6, (short) used);
+    }
+
+    private static int keyLength(byte[] page, int position) {
+        return ByteBuffer.wrap(page).getShort(position) & 0xFFFF;
+    }
+
+    private static int valueLength(byte[] page, int position) {
+        return ByteBuffer.wrap(page).getInt(position + 2);
+    }
+
+    /**
+     * Writes every dirty page and the superblock; new pages only once their count is on disk
+     */
+    private void checkpoint() throws IOException {
+        if (pageCount > durablePageCount) {
+            writeSuperblock();
+            file.force();
+            durablePageCount = pageCount;
+        }
+        cache.flush();
+        writeSuperblock();
+        file.force();
+    }
+
+    private void writeSuperblock() throws IOException {
+        byte[] superblock = new byte[pageSize];
+        ByteBuffer.wrap(superblock)
+                .put(MAGIC)
+                .put(VERSION)
+                .put(new byte[3])
+                .putInt(pageSize)
+                .putInt(bucketCount)
+                .putLong(pageCount)
+                .putLong(recordCount)
+                .put(keyCheck);
+        file.writeRaw(0, superblock);
+    }
+
+    private static void checkKey(byte[] key) {
+        if (key == null || key.length == 0 || key.length > 0xFFFF) {
+            throw new IllegalArgumentException("Key must be 1 to 65535 bytes");
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Store closed");
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package store;
+
+import metrics.CacheStats;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded cache of decrypted pages with CLOCK (second chance) replacement
+ * A hit returns the cached plaintext without touching the cipher; a miss reads and
+ * decrypts into a preallocated frame, so the cache never allocates after construction
+ * Dirty pages are never evicted (no-steal): they are encrypted and written only by
+ * flush(), so the file changes only at the owning store's checkpoints. The store
+ * checks needsFlush() before each operation so that enough clean frames remain for
+ * the operation to run to the end. Every frame is wiped when its page leaves the cache
+ *
+ * A returned page array is only valid until the next read or write call, which may
+ * evict it; callers must not hold two pages at once
+ * Not thread-safe; the owning store serializes access
+ */
+final class PageCache {
+
+    // Fewer frames than this would thrash on every chain step
+    static final int MIN_FRAMES = 4;
+
+    private static final long EMPTY = -1;
+
+    private final PageFile file;
+    private final CacheStats stats;
+    private final int pageSize;
+
+    private final byte[][] frames;
+    private final long[] framePage;
+    private final boolean[] referenced;
+    private final boolean[] dirty;
+    private int dirtyCount;
+    private final Map<Long, Integer> frameOf = new HashMap<>();
+    private int hand;
+
+    /**
+     * @param capacityBytes Plaintext bytes the cache may hold (rounded down to whole pages)
+     */
+    PageCache(PageFile file, long capacityBytes, CacheStats stats) {
+        this.file = file;
+        this.stats = stats;
+        this.pageSize = file.getPageSize();
+
+        long frameCount = capacityBytes / pageSize;
+        if (frameCount < MIN_FRAMES || frameCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cache must hold " + MIN_FRAMES + " to 2^31 pages");
+        }
+        int count = (int) frameCount;
+        this.frames = new byte[count][pageSize];
+        this.framePage = new long[count];
+        this.referenced = new boolean[count];
+        this.dirty = new boolean[count];
+        Arrays.fill(framePage, EMPTY);
+    }
+
+    /**
+     * Plaintext of a page for reading
+     */
+    byte[] read(long pageNumber) throws IOException {
+        return frames[frame(pageNumber)];
+    }
+
+    /**
+     * Plaintext of a page that the caller is about to modify
+     */
+    byte[] write(long pageNumber) throws IOException {
+        int frame = frame(pageNumber);
+        if (!dirty[frame]) {
+            dirty[frame] = true;
+            dirtyCount++;
+        }
+        return frames[frame];
+    }
+
+    /**
+     * Whether the cache must be flushed before an operation that dirties up to pagesToDirty pages
+     * One clean frame is always kept for reading the pages in between
+     */
+    boolean needsFlush(int pagesToDirty) {
+        return dirtyCount + pagesToDirty >= frames.length;
+    }
+
+    /**
+     * Encrypts and writes every dirty page; the pages stay cached
+     */
+    void flush() throws IOException {
+        for (int i = 0; i < frames.length; i++) {
+            if (dirty[i]) {
+                file.write(framePage[i], frames[i]);
+                dirty[i] = false;
+                stats.recordWriteback();
+            }
+        }
+        dirtyCount = 0;
+    }
+
+    /**
+     * Wipes and forgets every page without writing anything
+     */
+    void wipe() {
+        for (int i = 0; i < frames.length; i++) {
+            if (framePage[i] != EMPTY) {
+                release(i);
+            }
+        }
+    }
+
+    private int frame(long pageNumber) throws IOException {
+        Integer cached = frameOf.get(pageNumber);
+        if (cached != null) {
+            referenced[cached] = true;
+            stats.recordHit();
+            return cached;
+        }
+
+        stats.recordMiss();
+        int frame = victim();
+        try {
+            file.read(pageNumber, frames[frame]);
+        } catch (IOException e) {
+            Arrays.fill(frames[frame], (byte) 0);
+            throw e;
+        }
+        framePage[frame] = pageNumber;
+        referenced[frame] = true;
+        frameOf.put(pageNumber, frame);
+        stats.recordResident(pageSize);
+        return frame;
+    }
+
+    /**
+     * Sweeps the clock hand to a free frame or a clean one not referenced since the last sweep
+     */
+    private int victim() {
+        // Two full turns clear every reference bit, so a clean frame is found by then if there is one
+        for (int step = 0; step < 2 * frames.length; step++) {
+            int frame = hand;
+            hand = (hand + 1) % frames.length;
+
+            if (framePage[frame] == EMPTY) {
+                return frame;
+            }
+            if (referenced[frame]) {
+                referenced[frame] = false;
+                continue;
+            }
+            if (dirty[frame]) {
+                continue;
+            }
+
+            release(frame);
+            stats.recordEviction();
+            return frame;
+        }
+        throw new IllegalStateException("Every cached page is dirty; flush before continuing");
+    }
+
+    private void release(int frame) {
+        Arrays.fill(frames[frame], (byte) 0);
+        frameOf.remove(framePage[frame]);
+        framePage[frame] = EMPTY;
+        referenced[frame] = false;
+        if (dirty[frame]) {
+            dirty[frame] = false;
+            dirtyCount--;
+        }
+        stats.recordResident(-pageSize);
+    }
+}
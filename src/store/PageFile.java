@@ -0,0 +1,89 @@
+package store;
+
+import modes.XTSMode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Fixed-size pages of a file, each encrypted with XTS using its page number as the tweak
+ * Page 0 is the plaintext superblock and is only accessed raw
+ * A page that was never written (beyond the end of the file, or a hole) reads as zeros
+ */
+final class PageFile implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final XTSMode xts;
+    private final XTSMode.PreparedKey key;
+    private final int pageSize;
+
+    // Ciphertext of the page being written; pages stay plaintext in the cache
+    private final byte[] scratch;
+
+    PageFile(FileChannel channel, XTSMode xts, XTSMode.PreparedKey key, int pageSize) {
+        this.channel = channel;
+        this.xts = xts;
+        this.key = key;
+        this.pageSize = pageSize;
+        this.scratch = new byte[pageSize];
+    }
+
+    int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Reads and decrypts a page into page
+     */
+    void read(long pageNumber, byte[] page) throws IOException {
+        readRaw(pageNumber, page);
+
+        // Never-written pages stay zero instead of decrypting to noise
+        for (byte b : page) {
+            if (b != 0) {
+                xts.decryptSector(key, pageNumber, page, 0, pageSize);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Encrypts a copy of page and writes it; page itself is left as it was
+     */
+    void write(long pageNumber, byte[] page) throws IOException {
+        System.arraycopy(page, 0, scratch, 0, pageSize);
+        xts.encryptSector(key, pageNumber, scratch, 0, pageSize);
+        writeRaw(pageNumber, scratch);
+    }
+
+    void readRaw(long pageNumber, byte[] page) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(page);
+        long position = pageNumber * pageSize;
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) < 0) {
+                Arrays.fill(page, target.position(), page.length, (byte) 0);
+                return;
+            }
+        }
+    }
+
+    void writeRaw(long pageNumber, byte[] page) throws IOException {
+        ByteBuffer source = ByteBuffer.wrap(page);
+        long position = pageNumber * pageSize;
+        while (source.hasRemaining()) {
+            channel.write(source, position + source.position());
+        }
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        Arrays.fill(scratch, (byte) 0);
+        channel.close();
+    }
+}
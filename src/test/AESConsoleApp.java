@@ -1,21 +1,40 @@
 package test;
 
 import core.AESBlockCipher;
+import core.Codec;
 import core.KeySize;
+import core.OffHeapAES;
+import file.CompressionPipeline;
+import file.DirectoryEncryptor;
+import file.StreamEncryptor;
 import modes.*;
 import random.RNG;
 
 import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Paths;
-import java.util.Base64;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Scanner;
 
 /**
  * Interactive Console Application for AES Encryption/Decryption
+ * With arguments it runs one command non-interactively instead:
+ *   encrypt|decrypt --key-file <path> [--mode gcm] [--in file|-] [--out file|-] [--chunk-kib n]
+ *                   [--compress zlib [--level n]]
+ *   encrypt-dir <source> <target> --key-file <path> [--threads n] [--chunk-kib n]
+ *   decrypt-dir <source> <target> --key-file <path> [--threads n]
  */
 public class AESConsoleApp {
 
+    // Larger outputs are only previewed on the console
+    private static final int DISPLAY_LIMIT = 4096;
+
     private Scanner scanner;
     private RNG rng;
     private AESBlockCipher aesCore;
@@ -33,6 +52,9 @@ public class AESConsoleApp {
 
     public static void main(String[] args) {
         AESConsoleApp app = new AESConsoleApp();
+        if (args.length > 0) {
+            System.exit(app.runCommand(args));
+        }
         app.run();
     }
 
@@ -63,6 +85,7 @@ public class AESConsoleApp {
                     runTestVectors();
                     break;
                 case 7:
+                    setCurrentKey(null);
                     System.out.println("\nGoodbye!");
                     return;
             }
@@ -126,7 +149,7 @@ public class AESConsoleApp {
 
         // Clear current key if size changed
         if (currentKey != null && currentKey.length != selectedKeySize.getBytesAmount()) {
-            currentKey = null;
+            setCurrentKey(null);
             System.out.println("⚠ Previous key cleared (size mismatch)");
         }
     }
@@ -196,10 +219,20 @@ public class AESConsoleApp {
     }
 
     private void generateRandomKey() {
-        currentKey = rng.randomBytes(selectedKeySize.getBytesAmount());
+        setCurrentKey(rng.randomBytes(selectedKeySize.getBytesAmount()));
         System.out.println("\n✓ Random key generated!");
-        System.out.println("Key (hex): " + bytesToHex(currentKey));
-        System.out.println("Key (base64): " + bytesToBase64(currentKey));
+        System.out.println("Key (hex): " + Codec.toHex(currentKey));
+        System.out.println("Key (base64): " + Codec.toBase64(currentKey));
+    }
+
+    /**
+     * Replaces the current key, overwriting the old key bytes first
+     */
+    private void setCurrentKey(byte[] key) {
+        if (currentKey != null) {
+            Arrays.fill(currentKey, (byte) 0);
+        }
+        currentKey = key;
     }
 
     private void enterKeyManually() {
@@ -210,14 +243,14 @@ public class AESConsoleApp {
         String hexKey = scanner.nextLine().trim().replaceAll("\\s+", "");
 
         try {
-            byte[] key = hexToBytes(hexKey);
+            byte[] key = Codec.fromHex(hexKey);
 
             if (key.length != selectedKeySize.getBytesAmount()) {
                 System.out.println("✗ Error: Key must be " + selectedKeySize.getBytesAmount() + " bytes");
                 return;
             }
 
-            currentKey = key;
+            setCurrentKey(key);
             System.out.println("✓ Key set successfully!");
         } catch (Exception e) {
             System.out.println("✗ Error: Invalid hexadecimal format");
@@ -231,8 +264,8 @@ public class AESConsoleApp {
         }
 
         System.out.println("\nCurrent Key:");
-        System.out.println("  Hex:    " + bytesToHex(currentKey));
-        System.out.println("  Base64: " + bytesToBase64(currentKey));
+        System.out.println("  Hex:    " + Codec.toHex(currentKey));
+        System.out.println("  Base64: " + Codec.toBase64(currentKey));
         System.out.println("  Length: " + currentKey.length + " bytes");
     }
 
@@ -396,9 +429,9 @@ public class AESConsoleApp {
 
     private void testVector(String keyHex, String plaintextHex, String expectedHex, KeySize keySize) {
         try {
-            byte[] key = hexToBytes(keyHex);
-            byte[] plaintext = hexToBytes(plaintextHex);
-            byte[] expected = hexToBytes(expectedHex);
+            byte[] key = Codec.fromHex(keyHex);
+            byte[] plaintext = Codec.fromHex(plaintextHex);
+            byte[] expected = Codec.fromHex(expectedHex);
 
             System.out.println("Key:       " + keyHex);
             System.out.println("Plaintext: " + plaintextHex);
@@ -407,7 +440,7 @@ public class AESConsoleApp {
             // Encrypt using our AES core directly (no mode)
             byte[] actual = aesCore.encryptBlock(plaintext, key);
 
-            System.out.println("Got:       " + bytesToHex(actual));
+            System.out.println("Got:       " + Codec.toHex(actual));
 
             if (java.util.Arrays.equals(expected, actual)) {
                 System.out.println("✓ PASS");
@@ -419,6 +452,288 @@ public class AESConsoleApp {
         }
     }
 
+    // ==================== COMMAND LINE ====================
+
+    /**
+     * Runs one non-interactive command
+     * @return Process exit code: 0 on success, 1 if any file failed, 2 on bad usage
+     */
+    public int runCommand(String[] args) {
+        try {
+            switch (args[0]) {
+                case "encrypt":
+                case "decrypt":
+                    return streamCommand(args);
+                case "encrypt-dir":
+                case "decrypt-dir":
+                    return directoryCommand(args);
+                default:
+                    throw new IllegalArgumentException("Unknown command: " + args[0]);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("✗ Error: " + e.getMessage());
+            printUsage();
+            return 2;
+        } catch (IOException e) {
+            System.err.println("✗ Error: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Encrypts or decrypts one input into one output, "-" meaning stdin/stdout
+     * GCM streams through fixed chunks (StreamEncryptor format); the other modes
+     * use their one-shot message format and hold the whole input in memory
+     * With --compress zlib (GCM only) the data is deflated before encryption on a
+     * separate thread, and inflated after decryption
+     * Nothing but the output data is written to stdout
+     */
+    private int streamCommand(String[] args) throws IOException {
+        boolean encrypt = args[0].equals("encrypt");
+        Map<String, String> options = parseOptions(args, 1);
+
+        String keyFile = options.get("key-file");
+        if (keyFile == null) {
+            throw new IllegalArgumentException("--key-file is required");
+        }
+        String mode = options.getOrDefault("mode", "gcm").toUpperCase();
+        if (!mode.equals("GCM") && !mode.equals("CTR") && !mode.equals("CBC") && !mode.equals("ECB")) {
+            throw new IllegalArgumentException("--mode must be gcm, ctr, cbc or ecb");
+        }
+        int chunkKiB = parseIntOption(options, "chunk-kib", StreamEncryptor.DEFAULT_CHUNK_SIZE / 1024);
+        if (chunkKiB < 1 || chunkKiB > StreamEncryptor.MAX_CHUNK_SIZE / 1024) {
+            throw new IllegalArgumentException("--chunk-kib must be 1 to " + StreamEncryptor.MAX_CHUNK_SIZE / 1024);
+        }
+        String compress = options.getOrDefault("compress", "none");
+        if (!compress.equals("none") && !compress.equals("zlib")) {
+            throw new IllegalArgumentException("--compress must be none or zlib");
+        }
+        if (compress.equals("zlib") && !mode.equals("GCM")) {
+            throw new IllegalArgumentException("--compress needs --mode gcm");
+        }
+        int level = parseIntOption(options, "level", CompressionPipeline.DEFAULT_LEVEL);
+        String inPath = options.getOrDefault("in", "-");
+        String outPath = options.getOrDefault("out", "-");
+        // Opening the output truncates it before the input has been read
+        if (!inPath.equals("-") && !outPath.equals("-") && Files.exists(Paths.get(inPath))
+                && Files.exists(Paths.get(outPath)) && Files.isSameFile(Paths.get(inPath), Paths.get(outPath))) {
+            throw new IllegalArgumentException("--in and --out must be different files");
+        }
+        byte[] key = readKeyFile(keyFile, options.getOrDefault("key-format", "auto"));
+        OffHeapAES cipher = null;
+        GCMMode.PreparedKey prepared = null;
+        // Set once this command has created or truncated the output file
+        boolean outputOpened = false;
+
+        try (InputStream in = openInput(inPath); OutputStream out = openOutput(outPath)) {
+            outputOpened = true;
+            if (mode.equals("GCM")) {
+                StreamEncryptor streams = new StreamEncryptor(rng, chunkKiB * 1024);
+                cipher = aesCore.prepareOffHeapKey(key);
+                prepared = new GCMMode(aesCore, rng).prepareKey(cipher);
+                if (compress.equals("zlib")) {
+                    CompressionPipeline pipeline = new CompressionPipeline(streams, level);
+                    if (encrypt) {
+                        pipeline.encrypt(in, out, prepared);
+                    } else {
+                        pipeline.decrypt(in, out, prepared);
+                    }
+                } else if (encrypt) {
+                    streams.encrypt(in, out, prepared);
+                } else {
+                    streams.decrypt(in, out, prepared);
+                }
+            } else {
+                selectedMode = mode;
+                CipherMode cipherMode = getCipherMode();
+                byte[] input = in.readAllBytes();
+                out.write(encrypt ? cipherMode.encrypt(input, key) : cipherMode.decrypt(input, key));
+            }
+        } catch (IOException | RuntimeException e) {
+            // Never leave unauthenticated plaintext or half a ciphertext behind,
+            // but an output file this command never opened is not ours to delete
+            if (outputOpened && !outPath.equals("-")) {
+                Files.deleteIfExists(Paths.get(outPath));
+            }
+            if (e instanceof IllegalArgumentException && e.getMessage() != null
+                    && e.getMessage().startsWith("Authentication failed")) {
+                System.err.println("✗ Error: " + e.getMessage());
+                return 1;
+            }
+            throw e;
+        } finally {
+            if (prepared != null) {
+                prepared.close();
+            }
+            if (cipher != null) {
+                cipher.close();
+            }
+            Arrays.fill(key, (byte) 0);
+        }
+        return 0;
+    }
+
+    // Raw descriptors: System.out would add a PrintStream and its flushing
+    private static InputStream openInput(String path) throws IOException {
+        if (path.equals("-")) {
+            return new FileInputStream(FileDescriptor.in);
+        }
+        try {
+            return Files.newInputStream(Paths.get(path));
+        } catch (IOException e) {
+            throw new IOException("Cannot read input " + path + ": " + describe(e), e);
+        }
+    }
+
+    private static OutputStream openOutput(String path) throws IOException {
+        if (path.equals("-")) {
+            return new FileOutputStream(FileDescriptor.out);
+        }
+        try {
+            return Files.newOutputStream(Paths.get(path));
+        } catch (IOException e) {
+            throw new IOException("Cannot write output " + path + ": " + describe(e), e);
+        }
+    }
+
+    // File system exceptions carry only the path as their message
+    private static String describe(IOException e) {
+        if (e instanceof NoSuchFileException) {
+            return "no such file";
+        }
+        if (e instanceof AccessDeniedException) {
+            return "permission denied";
+        }
+        if (e instanceof FileSystemException) {
+            String reason = ((FileSystemException) e).getReason();
+            return reason != null ? reason : e.getClass().getSimpleName();
+        }
+        return e.getMessage();
+    }
+
+    private int directoryCommand(String[] args) throws IOException {
+        if (args.length < 3) {
+            throw new IllegalArgumentException(args[0] + " needs a source and a target directory");
+        }
+        boolean encrypt = args[0].equals("encrypt-dir");
+        Map<String, String> options = parseOptions(args, 3);
+
+        String keyFile = options.get("key-file");
+        if (keyFile == null) {
+            throw new IllegalArgumentException("--key-file is required");
+        }
+        int threads = parseIntOption(options, "threads", Runtime.getRuntime().availableProcessors());
+        int chunkKiB = parseIntOption(options, "chunk-kib", StreamEncryptor.DEFAULT_CHUNK_SIZE / 1024);
+        if (chunkKiB < 1 || chunkKiB > StreamEncryptor.MAX_CHUNK_SIZE / 1024) {
+            throw new IllegalArgumentException("--chunk-kib must be 1 to " + StreamEncryptor.MAX_CHUNK_SIZE / 1024);
+        }
+
+        byte[] key = readKeyFile(keyFile, options.getOrDefault("key-format", "auto"));
+        DirectoryEncryptor tree = new DirectoryEncryptor(new StreamEncryptor(rng, chunkKiB * 1024), threads);
+        DirectoryEncryptor.Summary summary;
+        try {
+            summary = encrypt
+                    ? tree.encryptTree(Paths.get(args[1]), Paths.get(args[2]), key)
+                    : tree.decryptTree(Paths.get(args[1]), Paths.get(args[2]), key);
+        } finally {
+            Arrays.fill(key, (byte) 0);
+        }
+
+        for (String skipped : summary.skipped) {
+            System.out.println("- Skipped: " + skipped);
+        }
+        for (String failure : summary.failures) {
+            System.out.println("✗ " + failure);
+        }
+        System.out.println("─".repeat(60));
+        System.out.printf("%s %d files, %d failed, %.2f MB in %.2f s (%.2f MB/s, %d threads)%n",
+                encrypt ? "Encrypted" : "Decrypted", summary.files, summary.failed, summary.bytes / 1e6,
+                summary.elapsedNanos / 1e9, summary.getMegabytesPerSecond(), threads);
+        return summary.failed == 0 ? 0 : 1;
+    }
+
+    /**
+     * Parses "--name value" pairs starting at args[from]
+     */
+    private Map<String, String> parseOptions(String[] args, int from) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = from; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected --option value, got: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    private int parseIntOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--" + name + " must be a number");
+        }
+    }
+
+    /**
+     * Reads a key file as raw bytes (16, 24 or 32), hex text, or "auto": hex whenever the
+     * file is nothing but hex digits and whitespace (so 32 hex digits without a newline are
+     * an AES-128 key, not a raw AES-256 one), raw otherwise
+     */
+    private byte[] readKeyFile(String path, String format) throws IOException {
+        if (!format.equals("auto") && !format.equals("raw") && !format.equals("hex")) {
+            throw new IllegalArgumentException("--key-format must be auto, raw or hex");
+        }
+        byte[] content;
+        try {
+            content = Files.readAllBytes(Paths.get(path));
+        } catch (IOException e) {
+            throw new IOException("Cannot read key file " + path + ": " + describe(e), e);
+        }
+
+        byte[] key = null;
+        if (!format.equals("raw")) {
+            char[] text = new char[content.length];
+            for (int i = 0; i < content.length; i++) {
+                text[i] = (char) (content[i] & 0xFF);
+            }
+            try {
+                key = Codec.fromHex(CharBuffer.wrap(text));
+            } catch (IllegalArgumentException e) {
+                if (format.equals("hex")) {
+                    Arrays.fill(content, (byte) 0);
+                    throw new IllegalArgumentException("Key file is not hex text");
+                }
+            } finally {
+                Arrays.fill(text, '\0');
+            }
+        }
+        if (key == null) {
+            key = content;
+        } else {
+            Arrays.fill(content, (byte) 0);
+        }
+
+        if (key.length != 16 && key.length != 24 && key.length != 32) {
+            Arrays.fill(key, (byte) 0);
+            throw new IllegalArgumentException("Key must be 16, 24 or 32 bytes");
+        }
+        return key;
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage:");
+        System.err.println("  encrypt|decrypt --key-file <path> [--key-format auto|raw|hex] [--mode gcm|ctr|cbc|ecb]"
+                + " [--in file|-] [--out file|-] [--chunk-kib n] [--compress zlib [--level n]]");
+        System.err.println("  encrypt-dir <source> <target> --key-file <path> [--key-format auto|raw|hex] [--threads n]"
+                + " [--chunk-kib n]");
+        System.err.println("  decrypt-dir <source> <target> --key-file <path> [--key-format auto|raw|hex] [--threads n]");
+        System.err.println("  Key files hold the raw key or its hex text; auto reads all-hex files as hex");
+    }
+
     // ==================== HELPER METHODS ====================
 
     private CipherMode getCipherMode() {
@@ -442,9 +757,9 @@ public class AESConsoleApp {
 
     private byte[] getHexInput() {
         System.out.print("\nEnter hex (without spaces): ");
-        String hex = scanner.nextLine().trim().replaceAll("\\s+", "");
+        String hex = scanner.nextLine();
         try {
-            return hexToBytes(hex);
+            return Codec.fromHex(hex);
         } catch (Exception e) {
             System.out.println("✗ Error: Invalid hex format");
             return null;
@@ -455,7 +770,7 @@ public class AESConsoleApp {
         System.out.print("\nEnter base64: ");
         String base64 = scanner.nextLine().trim();
         try {
-            return Base64.getDecoder().decode(base64);
+            return Codec.fromBase64(base64);
         } catch (Exception e) {
             System.out.println("✗ Error: Invalid base64 format");
             return null;
@@ -483,11 +798,15 @@ public class AESConsoleApp {
         System.out.println("─".repeat(60));
 
         // Show in multiple formats
-        System.out.println("\n[HEX]");
-        System.out.println(bytesToHex(data));
-
-        System.out.println("\n[BASE64]");
-        System.out.println(bytesToBase64(data));
+        if (data.length <= DISPLAY_LIMIT) {
+            System.out.println("\n[HEX]");
+            System.out.println(Codec.toHex(data));
+
+            System.out.println("\n[BASE64]");
+            System.out.println(Codec.toBase64(data));
+        } else {
+            printPreview(data);
+        }
 
         // Ask to save
         System.out.print("\nSave to file? (y/n): ");
@@ -509,7 +828,9 @@ public class AESConsoleApp {
         System.out.println("\n[TEXT]");
         try {
             String text = new String(data, "UTF-8");
-            if (isPrintable(text)) {
+            if (data.length > DISPLAY_LIMIT) {
+                System.out.println("(Too large to display - save to a file)");
+            } else if (isPrintable(text)) {
                 System.out.println(text);
             } else {
                 System.out.println("(Binary data - not printable)");
@@ -518,8 +839,12 @@ public class AESConsoleApp {
             System.out.println("(Cannot display as text)");
         }
 
-        System.out.println("\n[HEX]");
-        System.out.println(bytesToHex(data));
+        if (data.length <= DISPLAY_LIMIT) {
+            System.out.println("\n[HEX]");
+            System.out.println(Codec.toHex(data));
+        } else {
+            printPreview(data);
+        }
 
         // Ask to save
         System.out.print("\nSave to file? (y/n): ");
@@ -530,6 +855,13 @@ public class AESConsoleApp {
         }
     }
 
+    private void printPreview(byte[] data) {
+        System.out.println("\n[HEX, first " + DISPLAY_LIMIT + " bytes]");
+        System.out.println(Codec.toHex(Arrays.copyOf(data, DISPLAY_LIMIT)) + "...");
+        System.out.println("(" + (data.length - DISPLAY_LIMIT) + " more bytes - save to a file, or use the"
+                + " encrypt/decrypt command for large data)");
+    }
+
     private void saveToFile(byte[] data) {
         System.out.print("Enter output file path: ");
         String path = scanner.nextLine().trim();
@@ -566,26 +898,4 @@ public class AESConsoleApp {
         }
         return true;
     }
-
-    // Conversion utilities
-    private byte[] hexToBytes(String hex) {
-        hex = hex.replaceAll("\\s+", "");
-        byte[] bytes = new byte[hex.length() / 2];
-        for (int i = 0; i < hex.length(); i += 2) {
-            bytes[i / 2] = (byte) Integer.parseInt(hex.substring(i, i + 2), 16);
-        }
-        return bytes;
-    }
-
-    private String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02x", b & 0xFF));
-        }
-        return sb.toString();
-    }
-
-    private String bytesToBase64(byte[] bytes) {
-        return Base64.getEncoder().encodeToString(bytes);
-    }
 }
\ No newline at end of file
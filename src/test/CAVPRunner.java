@@ -0,0 +1,471 @@
+package test;
+
+import core.AES;
+import core.AESBlockCipher;
+import core.Codec;
+import core.OffHeapAES;
+import modes.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * NIST CAVP known-answer test harness
+ * Parses CAVP .rsp files (ECB/CBC/CTR KAT, MMT and Monte Carlo, GCM encrypt/decrypt)
+ * from a directory and runs every vector against every registered AES engine
+ * (the heap and the off-heap key schedule) in parallel
+ *
+ * Usage: java test.CAVPRunner [vector-dir] [threads]
+ */
+public class CAVPRunner {
+
+    public static final String DEFAULT_VECTOR_DIR = "src/test/resources/cavp";
+
+    private static final int BLOCK_SIZE = 16;
+    private static final int MCT_ITERATIONS = 1000;
+
+    /**
+     * AES engines under test, by display name
+     * Every vector is run once per engine
+     */
+    private static final Map<String, Supplier<AESBlockCipher>> ENGINES = new LinkedHashMap<>();
+
+    static {
+        ENGINES.put("AESBlockCipher", AESBlockCipher::new);
+        ENGINES.put("OffHeapAES", OffHeapEngine::new);
+    }
+
+    /**
+     * Engine whose expansions go through prepareOffHeapKey; the last expansion is
+     * reused while the key stays the same and closed when the key or the vector changes
+     */
+    private static final class OffHeapEngine extends AESBlockCipher implements AutoCloseable {
+        private byte[] key;
+        private OffHeapAES expanded;
+
+        @Override
+        public AES prepareKey(byte[] candidate) {
+            if (expanded == null || !Arrays.equals(candidate, key)) {
+                close();
+                expanded = prepareOffHeapKey(candidate);
+                key = candidate.clone();
+            }
+            return expanded;
+        }
+
+        @Override
+        public void close() {
+            if (expanded != null) {
+                expanded.close();
+                expanded = null;
+            }
+        }
+    }
+
+    private enum Outcome { PASS, FAIL, SKIP }
+
+    /**
+     * One COUNT record of a .rsp file together with the section and bracketed
+     * parameters ([ENCRYPT], [IVlen = 96], ...) in effect where it appears
+     */
+    private record Vector(String file, String section, Map<String, String> params, Map<String, String> fields) {
+
+        byte[] bytes(String name) {
+            String value = fields.get(name);
+            if (value == null) {
+                throw new IllegalArgumentException(file + ": missing " + name + " in COUNT " + fields.get("COUNT"));
+            }
+            return Codec.fromHex(value);
+        }
+
+        boolean has(String name) {
+            return fields.containsKey(name);
+        }
+
+        String describe() {
+            return file + " [" + section + "] COUNT=" + fields.get("COUNT");
+        }
+    }
+
+    private record Result(String engine, Vector vector, Outcome outcome, String message) {
+    }
+
+    /**
+     * Aggregated harness result
+     */
+    public static final class Summary {
+        public final int passed;
+        public final int failed;
+        public final int skipped;
+        public final List<String> failures;
+
+        Summary(int passed, int failed, int skipped, List<String> failures) {
+            this.passed = passed;
+            this.failed = failed;
+            this.skipped = skipped;
+            this.failures = failures;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Paths.get(args.length > 0 ? args[0] : DEFAULT_VECTOR_DIR);
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.println("CAVP vectors: " + dir.toAbsolutePath());
+        System.out.println("Engines:      " + ENGINES.keySet());
+        System.out.println("Threads:      " + threads);
+
+        long start = System.currentTimeMillis();
+        Summary summary = run(dir, threads);
+        long end = System.currentTimeMillis();
+
+        for (String failure : summary.failures) {
+            System.out.println("✗ " + failure);
+        }
+        System.out.println("Passed:  " + summary.passed);
+        System.out.println("Failed:  " + summary.failed);
+        System.out.println("Skipped: " + summary.skipped);
+        System.out.println("Time:    " + (end - start) + " ms");
+
+        if (summary.failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs all .rsp files in a directory against all registered engines
+     * @param dir Directory containing CAVP response files
+     * @param threads Worker thread count
+     * @return Pass/fail/skip counts and failure descriptions
+     */
+    public static Summary run(Path dir, int threads) throws IOException, InterruptedException {
+        List<Vector> vectors = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.filter(p -> p.toString().endsWith(".rsp")).sorted().collect(Collectors.toList())) {
+                vectors.addAll(parse(file));
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> futures = new ArrayList<>();
+        try {
+            for (Map.Entry<String, Supplier<AESBlockCipher>> engine : ENGINES.entrySet()) {
+                for (Vector vector : vectors) {
+                    futures.add(pool.submit(() -> check(engine.getKey(), engine.getValue().get(), vector)));
+                }
+            }
+
+            int passed = 0, failed = 0, skipped = 0;
+            List<String> failures = new ArrayList<>();
+            for (Future<Result> future : futures) {
+                Result result;
+                try {
+                    result = future.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Vector task crashed", e.getCause());
+                }
+                switch (result.outcome()) {
+                    case PASS -> passed++;
+                    case SKIP -> skipped++;
+                    case FAIL -> {
+                        failed++;
+                        failures.add(result.vector().describe() + " on " + result.engine() + ": " + result.message());
+                    }
+                }
+            }
+            return new Summary(passed, failed, skipped, failures);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // ==================== PARSER ====================
+
+    /**
+     * Parses a CAVP response file into COUNT records
+     * Bare lines without '=' (e.g. FAIL in GCM decrypt files) are kept as flags
+     */
+    private static List<Vector> parse(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        List<Vector> vectors = new ArrayList<>();
+        Map<String, String> params = new HashMap<>();
+        String section = "ENCRYPT";
+        Map<String, String> current = null;
+
+        for (String raw : Files.readAllLines(file)) {
+            String line = raw.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            if (line.startsWith("[") && line.endsWith("]")) {
+                if (current != null) {
+                    vectors.add(new Vector(name, section, Map.copyOf(params), current));
+                    current = null;
+                }
+                String inner = line.substring(1, line.length() - 1).strip();
+                int eq = inner.indexOf('=');
+                if (eq < 0) {
+                    section = inner.toUpperCase();
+                } else {
+                    params.put(inner.substring(0, eq).strip().toUpperCase(), inner.substring(eq + 1).strip());
+                }
+                continue;
+            }
+
+            int eq = line.indexOf('=');
+            String key = (eq < 0 ? line : line.substring(0, eq)).strip().toUpperCase();
+            String value = eq < 0 ? "" : line.substring(eq + 1).strip();
+
+            if (key.equals("COUNT")) {
+                if (current != null) {
+                    vectors.add(new Vector(name, section, Map.copyOf(params), current));
+                }
+                current = new LinkedHashMap<>();
+            }
+            if (current != null) {
+                current.put(key, value);
+            }
+        }
+
+        if (current != null) {
+            vectors.add(new Vector(name, section, Map.copyOf(params), current));
+        }
+        return vectors;
+    }
+
+    // ==================== DISPATCH ====================
+
+    private static Result check(String engineName, AESBlockCipher engine, Vector vector) {
+        String file = vector.file().toUpperCase();
+        try (AutoCloseable ignored = engine instanceof AutoCloseable ? (AutoCloseable) engine : null) {
+            Outcome outcome;
+            if (file.startsWith("GCM")) {
+                outcome = checkGCM(engine, vector);
+            } else if (file.contains("MCT")) {
+                outcome = checkMonteCarlo(engine, vector, file.substring(0, 3));
+            } else if (file.startsWith("ECB") || file.startsWith("CBC") || file.startsWith("CTR")) {
+                outcome = checkBlockMode(engine, vector, file.substring(0, 3));
+            } else {
+                outcome = Outcome.SKIP;
+            }
+            return new Result(engineName, vector, outcome, outcome == Outcome.FAIL ? "output mismatch" : null);
+        } catch (Exception e) {
+            return new Result(engineName, vector, Outcome.FAIL, e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    // ==================== KAT / MMT ====================
+
+    /**
+     * Known-answer and multi-block message tests for ECB, CBC and CTR
+     * The modes pad (ECB/CBC) and prefix the IV, so encryption compares the
+     * vector-sized part of the output, and decryption appends one extra
+     * ciphertext block that decrypts to a full PKCS#7 padding block
+     * CTR vectors whose counter block CTRMode cannot express (nonzero low 32 bits,
+     * as in SP 800-38A) run the engine over a 128-bit big-endian counter instead
+     */
+    private static Outcome checkBlockMode(AESBlockCipher engine, Vector v, String mode) {
+        byte[] key = v.bytes("KEY");
+        byte[] plaintext = v.bytes("PLAINTEXT");
+        byte[] ciphertext = v.bytes("CIPHERTEXT");
+        boolean encrypt = v.section().equals("ENCRYPT");
+
+        switch (mode) {
+            case "ECB": {
+                ECBMode ecb = new ECBMode(engine);
+                if (encrypt) {
+                    byte[] out = ecb.encrypt(plaintext, key);
+                    return verdict(Arrays.equals(out, 0, ciphertext.length, ciphertext, 0, ciphertext.length));
+                }
+                byte[] padBlock = engine.encryptBlock(fullPaddingBlock(), key);
+                return verdict(Arrays.equals(ecb.decrypt(concat(ciphertext, padBlock), key), plaintext));
+            }
+            case "CBC": {
+                byte[] iv = v.bytes("IV");
+                CBCMode cbc = new CBCMode(engine, new FixedRNG(iv));
+                if (encrypt) {
+                    byte[] out = cbc.encrypt(plaintext, key);
+                    return verdict(Arrays.equals(iv, 0, BLOCK_SIZE, out, 0, BLOCK_SIZE)
+                            && Arrays.equals(out, BLOCK_SIZE, BLOCK_SIZE + ciphertext.length, ciphertext, 0, ciphertext.length));
+                }
+                byte[] last = Arrays.copyOfRange(ciphertext, ciphertext.length - BLOCK_SIZE, ciphertext.length);
+                byte[] padBlock = engine.encryptBlock(xor(fullPaddingBlock(), last), key);
+                return verdict(Arrays.equals(cbc.decrypt(concat(iv, ciphertext, padBlock), key), plaintext));
+            }
+            default: {
+                // CTRMode counts from zero in the low 32 bits of the counter block
+                byte[] counter = v.bytes("IV");
+                if (counter.length != BLOCK_SIZE) {
+                    return Outcome.SKIP;
+                }
+                if (!isZero(counter, 12, BLOCK_SIZE)) {
+                    byte[] input = encrypt ? plaintext : ciphertext;
+                    byte[] expected = encrypt ? ciphertext : plaintext;
+                    return verdict(Arrays.equals(counterMode(engine, key, counter, input), expected));
+                }
+                byte[] nonce = Arrays.copyOf(counter, 12);
+                CTRMode ctr = new CTRMode(engine, new FixedRNG(nonce));
+                if (encrypt) {
+                    byte[] out = ctr.encrypt(plaintext, key);
+                    return verdict(Arrays.equals(out, 12, out.length, ciphertext, 0, ciphertext.length));
+                }
+                return verdict(Arrays.equals(ctr.decrypt(concat(nonce, ciphertext), key), plaintext));
+            }
+        }
+    }
+
+    // ==================== MONTE CARLO ====================
+
+    /**
+     * AESAVS Monte Carlo tests for ECB and CBC
+     * Each record states its own key, IV and seed text, so records are checked
+     * independently: 1000 chained block operations must reach the recorded output
+     */
+    private static Outcome checkMonteCarlo(AESBlockCipher engine, Vector v, String mode) {
+        byte[] key = v.bytes("KEY");
+        boolean encrypt = v.section().equals("ENCRYPT");
+        byte[] input = encrypt ? v.bytes("PLAINTEXT") : v.bytes("CIPHERTEXT");
+        byte[] expected = encrypt ? v.bytes("CIPHERTEXT") : v.bytes("PLAINTEXT");
+        byte[] output = null;
+
+        if (mode.equals("ECB")) {
+            for (int j = 0; j < MCT_ITERATIONS; j++) {
+                output = encrypt ? engine.encryptBlock(input, key) : engine.decryptBlock(input, key);
+                input = output;
+            }
+        } else if (mode.equals("CBC")) {
+            byte[] iv = v.bytes("IV");
+            byte[] chain = iv;
+            if (encrypt) {
+                // CT[j] = E(PT[j] ^ CT[j-1]), PT[j+1] = CT[j-1], with CT[-1] = IV
+                for (int j = 0; j < MCT_ITERATIONS; j++) {
+                    output = engine.encryptBlock(xor(input, chain), key);
+                    input = chain;
+                    chain = output;
+                }
+            } else {
+                // PT[j] = D(CT[j]) ^ CT[j-1], CT[j+1] = PT[j-1], with CT[-1] = CT[1] = IV
+                byte[] previousOutput = iv;
+                for (int j = 0; j < MCT_ITERATIONS; j++) {
+                    output = xor(engine.decryptBlock(input, key), chain);
+                    chain = input;
+                    input = previousOutput;
+                    previousOutput = output;
+                }
+            }
+        } else {
+            return Outcome.SKIP;
+        }
+
+        return verdict(Arrays.equals(output, expected));
+    }
+
+    // ==================== GCM ====================
+
+    /**
+     * GCM encrypt/decrypt vectors with AAD
+     * GCMMode is built with each vector's IV and tag length; tag lengths GCMMode
+     * does not accept are skipped, and empty plaintexts go through encryptWithIV
+     */
+    private static Outcome checkGCM(AESBlockCipher engine, Vector v) {
+        byte[] key = v.bytes("KEY");
+        byte[] iv = v.bytes("IV");
+        byte[] aad = v.bytes("AAD");
+        byte[] ciphertext = v.bytes("CT");
+        byte[] tag = v.bytes("TAG");
+
+        GCMMode gcm;
+        try {
+            gcm = new GCMMode(engine, new FixedRNG(iv), iv.length, tag.length);
+        } catch (IllegalArgumentException e) {
+            return Outcome.SKIP;
+        }
+
+        if (!v.file().toUpperCase().contains("DECRYPT")) {
+            byte[] plaintext = v.bytes("PT");
+            if (plaintext.length == 0) {
+                return verdict(Arrays.equals(gcm.encryptWithIV(plaintext, key, iv, aad), concat(ciphertext, tag)));
+            }
+            return verdict(Arrays.equals(gcm.encryptWithAAD(plaintext, key, aad), concat(iv, ciphertext, tag)));
+        }
+
+        boolean expectFailure = v.has("FAIL");
+        try {
+            byte[] plaintext = gcm.decryptWithAAD(concat(iv, ciphertext, tag), key, aad);
+            return verdict(!expectFailure && Arrays.equals(plaintext, v.bytes("PT")));
+        } catch (IllegalArgumentException e) {
+            return verdict(expectFailure);
+        }
+    }
+
+    // ==================== UTILITIES ====================
+
+    private static Outcome verdict(boolean ok) {
+        return ok ? Outcome.PASS : Outcome.FAIL;
+    }
+
+    private static byte[] fullPaddingBlock() {
+        byte[] block = new byte[BLOCK_SIZE];
+        Arrays.fill(block, (byte) BLOCK_SIZE);
+        return block;
+    }
+
+    /**
+     * Counter-mode keystream XOR with a full 128-bit big-endian counter (SP 800-38A)
+     */
+    private static byte[] counterMode(AESBlockCipher engine, byte[] key, byte[] initialCounter, byte[] input) {
+        byte[] counter = initialCounter.clone();
+        byte[] output = new byte[input.length];
+        for (int offset = 0; offset < input.length; offset += BLOCK_SIZE) {
+            byte[] keystream = engine.encryptBlock(counter, key);
+            for (int i = 0; i < Math.min(BLOCK_SIZE, input.length - offset); i++) {
+                output[offset + i] = (byte) (input[offset + i] ^ keystream[i]);
+            }
+            for (int i = BLOCK_SIZE - 1; i >= 0; i--) {
+                if (++counter[i] != 0) {
+                    break;
+                }
+            }
+        }
+        return output;
+    }
+
+    private static boolean isZero(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] xor(byte[] a, byte[] b) {
+        byte[] result = new byte[a.length];
+        for (int i = 0; i < a.length; i++) {
+            result[i] = (byte) (a[i] ^ b[i]);
+        }
+        return result;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+        return result;
+    }
+}
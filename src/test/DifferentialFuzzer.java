@@ -0,0 +1,284 @@
+package test;
+
+import core.AES;
+import core.AESBlockCipher;
+import core.Codec;
+import modes.*;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Randomized differential test: ECB, CBC, CTR and GCM output is compared
+ * byte-for-byte against the JDK's SunJCE provider
+ * Every case is derived from (seed, case index), so any failure can be replayed
+ *
+ * Usage: java test.DifferentialFuzzer [cases] [threads] [seed]
+ */
+public class DifferentialFuzzer {
+
+    private static final int BLOCK_SIZE = 16;
+    private static final int[] KEY_SIZES = {16, 24, 32};
+    private static final int MAX_REPORTED_FAILURES = 20;
+
+    private final long seed;
+    private final AtomicLong executed = new AtomicLong();
+    private final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Aggregated fuzzing result
+     */
+    public static final class Summary {
+        public final long cases;
+        public final List<String> failures;
+
+        Summary(long cases, List<String> failures) {
+            this.cases = cases;
+            this.failures = failures;
+        }
+    }
+
+    private DifferentialFuzzer(long seed) {
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long cases = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000L;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime();
+
+        System.out.println("Differential fuzzing against SunJCE");
+        System.out.println("Cases:   " + cases);
+        System.out.println("Threads: " + threads);
+        System.out.println("Seed:    " + seed);
+
+        long start = System.currentTimeMillis();
+        Summary summary = run(cases, threads, seed);
+        long end = System.currentTimeMillis();
+
+        for (String failure : summary.failures) {
+            System.out.println("✗ " + failure);
+        }
+        System.out.println("Executed: " + summary.cases);
+        System.out.println("Failures: " + summary.failures.size());
+        System.out.println("Time:     " + (end - start) + " ms");
+
+        if (!summary.failures.isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs cases [0, cases) on a fixed thread pool
+     * @param cases Number of cases (each case exercises all four modes)
+     * @param threads Worker thread count
+     * @param seed Seed every case is derived from
+     * @return Executed case count and failure descriptions (capped)
+     */
+    public static Summary run(long cases, int threads, long seed) throws InterruptedException {
+        DifferentialFuzzer fuzzer = new DifferentialFuzzer(seed);
+        AtomicLong next = new AtomicLong();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                AESBlockCipher aes = new AESBlockCipher();
+                long index;
+                while ((index = next.getAndIncrement()) < cases
+                        && fuzzer.failures.size() < MAX_REPORTED_FAILURES) {
+                    fuzzer.runCase(aes, index);
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+        return new Summary(fuzzer.executed.get(), new ArrayList<>(fuzzer.failures));
+    }
+
+    // ==================== CASE GENERATION ====================
+
+    private void runCase(AESBlockCipher aes, long index) {
+        SplittableRandom random = new SplittableRandom(seed ^ (index * 0x9E3779B97F4A7C15L));
+
+        byte[] key = bytes(random, KEY_SIZES[random.nextInt(KEY_SIZES.length)]);
+        byte[] iv = bytes(random, BLOCK_SIZE);
+        byte[] nonce = bytes(random, 12);
+        byte[] aad = random.nextInt(4) == 0 ? null : bytes(random, random.nextInt(3) == 0 ? random.nextInt(200) : random.nextInt(33));
+        byte[] plaintext = bytes(random, messageLength(random));
+
+        String context = "case " + index + " (seed " + seed + ", key " + key.length * 8
+                + " bits, " + plaintext.length + " bytes" + (aad != null ? ", aad " + aad.length : "") + ")";
+
+        check("ECB", context, () -> checkECB(aes, key, plaintext));
+        check("CBC", context, () -> checkCBC(aes, key, iv, plaintext));
+        check("CTR", context, () -> checkCTR(aes, key, nonce, plaintext));
+        check("GCM", context, () -> checkGCM(aes, key, nonce, aad, plaintext));
+
+        executed.incrementAndGet();
+    }
+
+    /**
+     * Message length distribution: empty, exact block boundaries and their
+     * neighbours, short messages, and rarely multi-megabyte inputs
+     */
+    private static int messageLength(SplittableRandom random) {
+        int pick = random.nextInt(10_000);
+        if (pick == 0) {
+            return (1 + random.nextInt(4)) * 1024 * 1024 + random.nextInt(BLOCK_SIZE);
+        }
+        if (pick < 100) {
+            return 0;
+        }
+        if (pick < 3000) {
+            return (1 + random.nextInt(16)) * BLOCK_SIZE + random.nextInt(3) - 1;
+        }
+        if (pick < 9000) {
+            return 1 + random.nextInt(256);
+        }
+        return 1 + random.nextInt(64 * 1024);
+    }
+
+    private static byte[] bytes(SplittableRandom random, int length) {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        return data;
+    }
+
+    // ==================== MODE CHECKS ====================
+
+    private interface Check {
+        String run() throws Exception;
+    }
+
+    /**
+     * Runs one mode comparison; a non-null return value or an exception is a failure
+     */
+    private void check(String mode, String context, Check check) {
+        try {
+            String problem = check.run();
+            if (problem != null) {
+                failures.add(mode + " " + context + ": " + problem);
+            }
+        } catch (Exception e) {
+            failures.add(mode + " " + context + ": " + e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    private static String checkECB(AESBlockCipher aes, byte[] key, byte[] plaintext) throws Exception {
+        ECBMode ecb = new ECBMode(aes);
+        if (plaintext.length == 0) {
+            return rejectsEmpty(() -> ecb.encrypt(plaintext, key));
+        }
+
+        Cipher jce = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        jce.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+        byte[] expected = jce.doFinal(plaintext);
+
+        return compare(ecb.encrypt(plaintext, key), expected, ecb.decrypt(expected, key), plaintext);
+    }
+
+    private static String checkCBC(AESBlockCipher aes, byte[] key, byte[] iv, byte[] plaintext) throws Exception {
+        CBCMode cbc = new CBCMode(aes, new FixedRNG(iv));
+        if (plaintext.length == 0) {
+            return rejectsEmpty(() -> cbc.encrypt(plaintext, key));
+        }
+
+        Cipher jce = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        jce.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+        byte[] expected = concat(iv, jce.doFinal(plaintext));
+
+        return compare(cbc.encrypt(plaintext, key), expected, cbc.decrypt(expected, key), plaintext);
+    }
+
+    private static String checkCTR(AESBlockCipher aes, byte[] key, byte[] nonce, byte[] plaintext) throws Exception {
+        CTRMode ctr = new CTRMode(aes, new FixedRNG(nonce));
+        if (plaintext.length == 0) {
+            return rejectsEmpty(() -> ctr.encrypt(plaintext, key));
+        }
+
+        // CTRMode counter block: nonce (96 bits) || 32-bit counter starting at 0
+        Cipher jce = Cipher.getInstance("AES/CTR/NoPadding");
+        jce.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(Arrays.copyOf(nonce, BLOCK_SIZE)));
+        byte[] expected = concat(nonce, jce.doFinal(plaintext));
+
+        return compare(ctr.encrypt(plaintext, key), expected, ctr.decrypt(expected, key), plaintext);
+    }
+
+    private static String checkGCM(AESBlockCipher aes, byte[] key, byte[] iv, byte[] aad, byte[] plaintext) throws Exception {
+        GCMMode gcm = new GCMMode(aes, new FixedRNG(iv));
+        if (plaintext.length == 0) {
+            return rejectsEmpty(() -> gcm.encryptWithAAD(plaintext, key, aad));
+        }
+
+        Cipher jce = Cipher.getInstance("AES/GCM/NoPadding");
+        jce.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(128, iv));
+        if (aad != null) {
+            jce.updateAAD(aad);
+        }
+        byte[] expected = concat(iv, jce.doFinal(plaintext));
+
+        String problem = compare(gcm.encryptWithAAD(plaintext, key, aad), expected,
+                gcm.decryptWithAAD(expected, key, aad), plaintext);
+        if (problem != null) {
+            return problem;
+        }
+
+        // A flipped tag bit must be rejected
+        byte[] tampered = expected.clone();
+        tampered[tampered.length - 1] ^= 0x01;
+        try {
+            gcm.decryptWithAAD(tampered, key, aad);
+            return "tampered tag accepted";
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // ==================== UTILITIES ====================
+
+    private static String compare(byte[] actual, byte[] expected, byte[] decrypted, byte[] plaintext) {
+        if (!Arrays.equals(actual, expected)) {
+            return "ciphertext differs at byte " + Arrays.mismatch(actual, expected)
+                    + " (ours " + actual.length + " bytes, SunJCE " + expected.length + " bytes)";
+        }
+        if (!Arrays.equals(decrypted, plaintext)) {
+            return "decryption of SunJCE ciphertext differs at byte " + Arrays.mismatch(decrypted, plaintext);
+        }
+        return null;
+    }
+
+    private interface Encryption {
+        byte[] run();
+    }
+
+    /**
+     * The modes reject empty plaintext by contract
+     */
+    private static String rejectsEmpty(Encryption encryption) {
+        try {
+            byte[] result = encryption.run();
+            return "empty plaintext accepted (" + Codec.toHex(result) + ")";
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = new byte[a.length + b.length];
+        System.arraycopy(a, 0, result, 0, a.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
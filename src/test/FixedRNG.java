@@ -0,0 +1,28 @@
+package test;
+
+import random.RNG;
+
+/**
+ * RNG stub that always returns the same bytes
+ * Lets test code drive modes that draw their IV/nonce from the generator
+ * with an externally supplied value (test vectors, differential testing)
+ */
+class FixedRNG extends RNG {
+
+    private final byte[] value;
+
+    /**
+     * @param value Bytes returned by every randomBytes call
+     */
+    FixedRNG(byte[] value) {
+        this.value = value.clone();
+    }
+
+    @Override
+    public byte[] randomBytes(int n) {
+        if (n != value.length) {
+            throw new IllegalStateException("Expected request for " + value.length + " bytes, got " + n);
+        }
+        return value.clone();
+    }
+}
@@ -2,10 +2,70 @@ package test;
 
 import core.AES;
 import core.AESBlockCipher;
+import core.Codec;
 import core.KeySize;
+import core.OffHeapAES;
+import file.CompressionPipeline;
+import file.DirectoryEncryptor;
+import file.EncryptedLog;
+import file.EncryptedLogReader;
+import file.StreamEncryptor;
+import mac.CMAC;
+import metrics.CacheStats;
+import metrics.CipherMetrics;
+import metrics.LatencyHistogram;
+import metrics.ModeStats;
 import modes.*;
+import provider.MyCryptoProvider;
 import random.RNG;
+import service.AsyncCipherService;
+import service.CipherClient;
+import service.CipherDaemon;
+import service.DaemonProtocol;
+import store.EncryptedKVStore;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.Provider;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * Automated Test Runner for Report Generation
@@ -31,6 +91,29 @@ public class TestRunner {
         testPadding();
         testGCMAuthentication();
         testLargeData();
+        testCAVPVectors();
+        testDifferential();
+        testJCAProvider();
+        testMetrics();
+        testPreparedKeys();
+        testXTS();
+        testCCM();
+        testGCMSIV();
+        testSIV();
+        testCMAC();
+        testKeyWrap();
+        testFeedbackModes();
+        testGCMParameters();
+        testGCMBatch();
+        testAsyncService();
+        testCipherDaemon();
+        testDirectoryEncryption();
+        testStreamCommand();
+        testCodec();
+        testEncryptedLog();
+        testEncryptedKVStore();
+        testCompressionPipeline();
+        testOffHeapKey();
 
         long endTime = System.currentTimeMillis();
 
@@ -49,6 +132,7 @@ public class TestRunner {
             System.out.println("\n✓ ALL TESTS PASSED - Ready for submission!");
         } else {
             System.out.println("\n✗ SOME TESTS FAILED - Review implementation");
+            System.exit(1);
         }
     }
 
@@ -83,9 +167,9 @@ public class TestRunner {
 
     private static void testVector(String name, String keyHex, String ptHex, String ctHex, KeySize ks) {
         try {
-            byte[] key = hexToBytes(keyHex);
-            byte[] plaintext = hexToBytes(ptHex);
-            byte[] expected = hexToBytes(ctHex);
+            byte[] key = Codec.fromHex(keyHex);
+            byte[] plaintext = Codec.fromHex(ptHex);
+            byte[] expected = Codec.fromHex(ctHex);
 
             System.out.println("\n" + name + ":");
             System.out.println("  Key:       " + keyHex);
@@ -93,7 +177,7 @@ public class TestRunner {
             System.out.println("  Expected:  " + ctHex);
 
             byte[] actual = aes.encryptBlock(plaintext, key);
-            System.out.println("  Got:       " + bytesToHex(actual));
+            System.out.println("  Got:       " + Codec.toHex(actual));
 
             if (Arrays.equals(expected, actual)) {
                 System.out.println("  ✓ PASS");
@@ -262,22 +346,2269 @@ public class TestRunner {
         }
     }
 
-    // ==================== UTILITIES ====================
+    // ==================== CAVP VECTORS ====================
+
+    private static void testCAVPVectors() {
+        System.out.println("\n" + "─".repeat(60));
+        System.out.println("TEST 6: NIST CAVP Vector Files");
+        System.out.println("─".repeat(60));
+
+        Path dir = Paths.get(CAVPRunner.DEFAULT_VECTOR_DIR);
+        if (!Files.isDirectory(dir)) {
+            System.out.println("- Skipped (no vector directory at " + dir + ")");
+            return;
+        }
+
+        try {
+            CAVPRunner.Summary summary = CAVPRunner.run(dir, Runtime.getRuntime().availableProcessors());
+            for (String failure : summary.failures) {
+                System.out.println("✗ " + failure);
+            }
+            if (summary.failed == 0 && summary.passed > 0) {
+                System.out.println("✓ " + summary.passed + " vectors passed (" + summary.skipped + " skipped)");
+                passed++;
+            } else {
+                System.out.println("✗ " + summary.failed + " of " + (summary.passed + summary.failed) + " vectors failed");
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e.getMessage());
+            failed++;
+        }
+    }
+
+    // ==================== DIFFERENTIAL TEST ====================
+
+    private static void testDifferential() {
+        System.out.println("\n" + "─".repeat(60));
+        System.out.println("TEST 7: Differential vs SunJCE");
+        System.out.println("─".repeat(60));
+
+        try {
+            DifferentialFuzzer.Summary summary = DifferentialFuzzer.run(300, Runtime.getRuntime().availableProcessors(), 20240601L);
+            for (String failure : summary.failures) {
+                System.out.println("✗ " + failure);
+            }
+            if (summary.failures.isEmpty()) {
+                System.out.println("✓ " + summary.cases + " random cases match SunJCE (ECB/CBC/CTR/GCM)");
+                passed++;
+            } else {
+                System.out.println("✗ " + summary.failures.size() + " mismatches");
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e.getMessage());
+            failed++;
+        }
+    }
+
+    // ==================== JCA PROVIDER TEST ====================
+
+    private static void testJCAProvider() {
+        System.out.println("\n" + "─".repeat(60));
+        System.out.println("TEST 8: JCA Provider vs SunJCE");
+        System.out.println("─".repeat(60));
+
+        Provider provider = new MyCryptoProvider();
+        String[] transformations = {"AES/ECB/PKCS5Padding", "AES/CBC/PKCS5Padding", "AES/CTR/NoPadding", "AES/GCM/NoPadding"};
+        int[] lengths = {0, 1, 15, 16, 17, 100, 1000};
+
+        for (String transformation : transformations) {
+            try {
+                boolean ok = true;
+                for (int len : lengths) {
+                    byte[] keyBytes = rng.randomBytes(16 + 8 * (len % 3));
+                    SecretKeySpec key = new SecretKeySpec(keyBytes, "AES");
+                    byte[] plaintext = rng.randomBytes(len);
+                    byte[] aad = rng.randomBytes(len % 20);
+
+                    Cipher ours = Cipher.getInstance(transformation, provider);
+                    ours.init(Cipher.ENCRYPT_MODE, key);
+                    if (transformation.contains("GCM")) {
+                        ours.updateAAD(aad);
+                    }
+                    byte[] encrypted = streamThrough(ours, plaintext, 7);
+
+                    Cipher reference = Cipher.getInstance(transformation, "SunJCE");
+                    if (ours.getParameters() != null) {
+                        reference.init(Cipher.DECRYPT_MODE, key, ours.getParameters());
+                    } else {
+                        reference.init(Cipher.DECRYPT_MODE, key);
+                    }
+                    if (transformation.contains("GCM")) {
+                        reference.updateAAD(aad);
+                    }
+                    byte[] referenceDecrypted = reference.doFinal(encrypted);
+
+                    Cipher decryptor = Cipher.getInstance(transformation, provider);
+                    if (ours.getParameters() != null) {
+                        decryptor.init(Cipher.DECRYPT_MODE, key, ours.getParameters());
+                    } else {
+                        decryptor.init(Cipher.DECRYPT_MODE, key);
+                    }
+                    if (transformation.contains("GCM")) {
+                        decryptor.updateAAD(aad);
+                    }
+                    byte[] decrypted = streamThrough(decryptor, encrypted, 5);
+
+                    ok &= Arrays.equals(plaintext, referenceDecrypted) && Arrays.equals(plaintext, decrypted);
+                }
+
+                if (ok) {
+                    System.out.println("✓ " + transformation + " - interoperates with SunJCE (streamed)");
+                    passed++;
+                } else {
+                    System.out.println("✗ " + transformation + " - Mismatch");
+                    failed++;
+                }
+            } catch (Exception e) {
+                System.out.println("✗ " + transformation + " - Error: " + e);
+                failed++;
+            }
+        }
+
+        // GCM encryption releases ciphertext from update(); in-place doFinal matches SunJCE
+        try {
+            SecretKeySpec key = new SecretKeySpec(rng.randomBytes(16), "AES");
+            GCMParameterSpec spec = new GCMParameterSpec(128, rng.randomBytes(12));
+            byte[] plaintext = rng.randomBytes(100);
+
+            Cipher ours = Cipher.getInstance("AES/GCM/NoPadding", provider);
+            ours.init(Cipher.ENCRYPT_MODE, key, spec);
+            byte[] head = ours.update(plaintext, 0, 40);
+            byte[] buffer = Arrays.copyOf(plaintext, 100 + 16);
+            int tail = ours.doFinal(buffer, 40, 60, buffer, 40);
+
+            Cipher reference = Cipher.getInstance("AES/GCM/NoPadding", "SunJCE");
+            reference.init(Cipher.ENCRYPT_MODE, key, spec);
+            byte[] expected = reference.doFinal(plaintext);
+            System.arraycopy(head, 0, buffer, 0, head.length);
+
+            if (head.length == 40 && tail == 76 && Arrays.equals(expected, buffer)) {
+                System.out.println("✓ AES/GCM/NoPadding - encryption streams ciphertext from update()");
+                passed++;
+            } else {
+                System.out.println("✗ AES/GCM/NoPadding - update() held back ciphertext or output differs");
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e);
+            failed++;
+        }
+    }
+
+    /**
+     * Feeds data to a Cipher in small update() chunks, then doFinal()
+     */
+    private static byte[] streamThrough(Cipher cipher, byte[] data, int chunk) throws Exception {
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        for (int off = 0; off < data.length; off += chunk) {
+            byte[] part = cipher.update(data, off, Math.min(chunk, data.length - off));
+            if (part != null) {
+                out.write(part);
+            }
+        }
+        out.write(cipher.doFinal());
+        return out.toByteArray();
+    }
+
+    // ==================== METRICS TEST ====================
+
+    private static void testMetrics() {
+        System.out.println("\n" + "─".repeat(60));
+        System.out.println("TEST 9: Metrics Instrumentation");
+        System.out.println("─".repeat(60));
+
+        CipherMetrics.enable();
+        try {
+            ModeStats gcmStats = CipherMetrics.forMode("GCM");
+            ModeStats cbcStats = CipherMetrics.forMode("CBC");
+            gcmStats.reset();
+            cbcStats.reset();
+
+            CipherMode gcm = new InstrumentedCipherMode(new GCMMode(aes, rng));
+            CipherMode cbc = new InstrumentedCipherMode(new CBCMode(aes, rng));
+            byte[] key = rng.randomBytes(16);
+            byte[] plaintext = "Hello".getBytes();
+
+            byte[] sealed = gcm.encrypt(plaintext, key);
+            gcm.decrypt(sealed, key);
+            sealed[sealed.length - 1] ^= 0x01;
+            try {
+                gcm.decrypt(sealed, key);
+            } catch (IllegalArgumentException expected) {
+                // counted as authentication failure
+            }
+
+            // Flipping the last IV byte turns padding 0x0b into an invalid 0x0a
+            byte[] padded = cbc.encrypt(plaintext, key);
+            padded[15] ^= 0x01;
+            try {
+                cbc.decrypt(padded, key);
+            } catch (IllegalArgumentException expected) {
+                // counted as padding failure
+            }
+
+            ObjectName name = new ObjectName("mycrypto:type=CipherMode,name=\"GCM\"");
+            Object jmxOps = ManagementFactory.getPlatformMBeanServer().getAttribute(name, "EncryptOperations");
+
+            if (gcmStats.getEncryptOperations() == 1 && gcmStats.getDecryptOperations() == 1
+                    && gcmStats.getBytesEncrypted() == plaintext.length
+                    && gcmStats.getAuthenticationFailures() == 1 && gcmStats.getFailedOperations() == 1
+                    && cbcStats.getPaddingFailures() == 1
+                    && gcmStats.getEncryptLatencyP99Nanos() > 0
+                    && Long.valueOf(1).equals(jmxOps)) {
+                System.out.println("✓ Counters, failures, latency and JMX view recorded");
+                passed++;
+            } else {
+                System.out.println("✗ Unexpected metrics: encrypt=" + gcmStats.getEncryptOperations()
+                        + " decrypt=" + gcmStats.getDecryptOperations()
+                        + " auth=" + gcmStats.getAuthenticationFailures()
+                        + " padding=" + cbcStats.getPaddingFailures() + " jmx=" + jmxOps);
+                failed++;
+            }
+
+            LatencyHistogram histogram = new LatencyHistogram();
+            for (int i = 1; i <= 1000; i++) {
+                histogram.record(i * 1000L);
+            }
+            long p50 = histogram.getPercentile(50);
+            if (histogram.getCount() == 1000 && p50 >= 500_000 && p50 <= 500_000 * 17 / 16
+                    && histogram.getPercentile(100) == 1_000_000) {
+                System.out.println("✓ Histogram percentiles within bucket precision");
+                passed++;
+            } else {
+                System.out.println("✗ Histogram p50=" + p50 + " max=" + histogram.getPercentile(100));
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e);
+            failed++;
+        } finally {
+            CipherMetrics.disable();
+        }
+    }
+
+    // ==================== PREPARED KEYS ====================
+
+    private static void testPreparedKeys() {
+        System.out.println("\n" + "─".repeat(60));
+        System.out.println("TEST 10: Prepared Keys");
+        System.out.println("─".repeat(60));
+
+        // FIPS-197 Appendix C: exercises the unrolled schedule of every key size
+        String[][] vectors = {
+                {"000102030405060708090a0b0c0d0e0f", "69c4e0d86a7b0430d8cdb78070b4c55a"},
+                {"000102030405060708090a0b0c0d0e0f1011121314151617", "dda97ca4864cdfe06eaf70a0ec0d7191"},
+                {"000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f", "8ea2b7ca516745bfeafc49904b496089"}
+        };
+        byte[] plaintext = Codec.fromHex("00112233445566778899aabbccddeeff");
+
+        for (String[] vector : vectors) {
+            try {
+                AES prepared = aes.prepareKey(Codec.fromHex(vector[0]));
+                byte[] expected = Codec.fromHex(vector[1]);
+
+                // In-place encryption and decryption at an offset
+                byte[] buffer = new byte[24];
+                System.arraycopy(plaintext, 0, buffer, 5, 16);
+                prepared.encrypt(buffer, 5, buffer, 5);
+                boolean encrypted = Arrays.equals(Arrays.copyOfRange(buffer, 5, 21), expected);
+                prepared.decrypt(buffer, 5, buffer, 5);
+                boolean decrypted = Arrays.equals(Arrays.copyOfRange(buffer, 5, 21), plaintext);
+
+                if (encrypted && decrypted) {
+                    System.out.println("✓ " + prepared.getKeySize() + " schedule and offset API");
+                    passed++;
+                } else {
+                    System.out.println("✗ " + prepared.getKeySize() + " mismatch");
+                    failed++;
+                }
+            } catch (Exception e) {
+                System.out.println("✗ Error: " + e.getMessage());
+                failed++;
+            }
+        }
+
+        // One prepared key shared by several threads
+        try {
+            AES shared = aes.prepareKey(rng.randomBytes(32));
+            byte[] block = rng.randomBytes(16);
+            byte[] expected = shared.encrypt(block);
+
+            List<Thread> threads = new ArrayList<>();
+            AtomicInteger mismatches = new AtomicInteger();
+            for (int t = 0; t < 4; t++) {
+                Thread thread = new Thread(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        if (!Arrays.equals(shared.decrypt(shared.encrypt(block)), block)
+                                || !Arrays.equals(shared.encrypt(block), expected)) {
+                            mismatches.incrementAndGet();
+                        }
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            if (mismatches.get() == 0) {
+                System.out.println("✓ Prepared key reused concurrently by 4 threads");
+                passed++;
+            } else {
+                System.out.println("✗ " + mismatches.get() + " mismatches under concurrent reuse");
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e.getMessage());
+            failed++;
+        }
+    }
+
+    // ==================== XTS ====================
+
+    private static void testXTS() {
+        System.out.println("\n" + "─".repeat(60));
+        System.out.println("TEST 11: XTS Mode");
+        System.out.println("─".repeat(60));
+
+        XTSMode xts = new XTSMode(aes, rng);
+
+        // IEEE 1619 vector 2, then ciphertext stealing cases (17 and 40 bytes)
+        String[][] vectors = {
+                {"1111111111111111111111111111111122222222222222222222222222222222", "3333333333",
+                        "4444444444444444444444444444444444444444444444444444444444444444",
+                        "c454185e6a16936e39334038acef838bfb186fff7480adc4289382ecd6d394f0"},
+                {"000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f", "5",
+                        "000102030405060708090a0b0c0d0e0f10",
+                        "fd5d879923f47c9cd11911fa4884f6b22d"},
+                {"000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f", "5",
+                        "000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f2021222324252627",
+                        "2dbdc260709c00db30639a42ffb50a67475941ce0f9fd6f77f6054a0dffe27f780a3b540429e484f"}
+        };
+
+        for (String[] vector : vectors) {
+            try {
+                byte[] key = Codec.fromHex(vector[0]);
+                long sector = Long.parseLong(vector[1], 16);
+                byte[] plaintext = Codec.fromHex(vector[2]);
+                byte[] buffer = plaintext.clone();
+
+                xts.encryptSector(key, sector, buffer, 0, buffer.length);
+                boolean encrypted = Codec.toHex(buffer).equals(vector[3]);
+                xts.decryptSector(key, sector, buffer, 0, buffer.length);
+
+                if (encrypted && Arrays.equals(buffer, plaintext)) {
+                    System.out.println("✓ " + plaintext.length + "-byte sector " + vector[1]);
+                    passed++;
+                } else {
+                    System.out.println("✗ " + plaintext.length + "-byte sector " + vector[1] + " mismatch");
+                    failed++;
+                }
+            } catch (Exception e) {
+                System.out.println("✗ Error: " + e.getMessage());
+                failed++;
+            }
+        }
+
+        // Parallel image API must match sector-by-sector encryption, for heap and aligned direct buffers
+        try {
+            byte[] key = rng.randomBytes(64);
+            int sectors = 40;
+            byte[] image = rng.randomBytes(sectors * XTSMode.SECTOR_SIZE);
+
+            byte[] expected = image.clone();
+            for (int s = 0; s < sectors; s++) {
+                xts.encryptSector(key, 100 + s, expected, s * XTSMode.SECTOR_SIZE, XTSMode.SECTOR_SIZE);
+            }
+
+            byte[] parallel = image.clone();
+            xts.encryptSectors(key, 100, parallel, 0, parallel.length, XTSMode.SECTOR_SIZE);
+
+            ByteBuffer direct = XTSMode.allocateAligned(image.length);
+            direct.put(image).flip();
+            xts.encryptSectors(key, 100, direct, XTSMode.SECTOR_SIZE);
+            byte[] directResult = new byte[image.length];
+            direct.get(0, directResult);
+            xts.decryptSectors(key, 100, direct, XTSMode.SECTOR_SIZE);
+            byte[] directPlain = new byte[image.length];
+            direct.get(0, directPlain);
+
+            xts.decryptSectors(key, 100, parallel, 0, parallel.length, XTSMode.SECTOR_SIZE);
+
+            if (Arrays.equals(directResult, expected) && Arrays.equals(parallel, image)
+                    && Arrays.equals(directPlain, image)) {
+                System.out.println("✓ Parallel image API (heap and page-aligned direct buffers)");
+                passed++;
+            } else {
+                System.out.println("✗ Parallel image API mismatch");
+                failed++;
+            }
+
+            byte[] message = rng.randomBytes(1000);
+            if (Arrays.equals(xts.decrypt(xts.encrypt(message, key), key), message)) {
+                System.out.println("✓ CipherMode round-trip");
+                passed++;
+            } else {
+                System.out.println("✗ CipherMode round-trip mismatch");
+                failed++;
+            }
+
+            // Key1 == Key2 is forbidden by IEEE 1619
+            byte[] half = rng.randomBytes(32);
+            byte[] repeated = new byte[64];
+            System.arraycopy(half, 0, repeated, 0, 32);
+            System.arraycopy(half, 0, repeated, 32, 32);
+            boolean rejected = false;
+            try {
+                xts.prepareKey(repeated);
+            } catch (IllegalArgumentException e) {
+                rejected = true;
+            }
+            if (rejected) {
+                System.out.println("✓ Key1 == Key2 rejected");
+                passed++;
+            } else {
+                System.out.println("✗ Key1 == Key2 accepted");
+                failed++;
+            }
+
+            // A sector running past the end of the buffer is rejected before any block is touched
+            byte[] shortBuffer = rng.randomBytes(48);
+            byte[] untouched = shortBuffer.clone();
+            boolean outOfBounds = false;
+            try {
+                xts.encryptSector(xts.prepareKey(key), 0, shortBuffer, 16, 48);
+            } catch (IllegalArgumentException e) {
+                outOfBounds = true;
+            }
+            if (outOfBounds && Arrays.equals(shortBuffer, untouched)) {
+                System.out.println("✓ Out-of-bounds sector rejected, buffer untouched");
+                passed++;
+            } else {
+                System.out.println("✗ Out-of-bounds sector not rejected cleanly");
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e.getMessage());
+            failed++;
+        }
+    }
+
+    // ==================== CCM ====================
+
+    private static void testCCM() {
+        System.out.println("\n" + "─".repeat(60));
+        System.out.println("TEST 12: CCM Mode");
+        System.out.println("─".repeat(60));
+
+        // SP 800-38C example 1, then 13-byte nonce / 8-byte tag, then AAD above the 2-byte length encoding
+        byte[] aad300 = new byte[300];
+        byte[] aad70000 = new byte[70000];
+        for (int i = 0; i < aad70000.length; i++) {
+            aad70000[i] = (byte) i;
+        }
+        System.arraycopy(aad70000, 0, aad300, 0, aad300.length);
+
+        Object[][] vectors = {
+                {"404142434445464748494a4b4c4d4e4f", "10111213141516", Codec.fromHex("0001020304050607"),
+                        "20212223", 4, "7162015b4dac255d"},
+                {"000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f",
+                        "000102030405060708090a0b0c", aad300,
+                        "000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f2021222324252627", 8,
+                        "1c06a96508ad7c8fc9d9dc3b16d71be7afee062a86f27ba4f663fa74bd01b74f4f9d4257c93092fc0596eabc673d18c6"},
+                {"000102030405060708090a0b0c0d0e0f1011121314151617", "000102030405060708090a0b", aad70000,
+                        "000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f20", 16,
+                        "1f94e0c048b9dbb91dbc2c30a5eccae6dabc92ec115ba3adee474085f00c4fb6ceb7561a03d56d94834b1e522388e28225"}
+        };
+
+        for (Object[] vector : vectors) {
+            try {
+                byte[] key = Codec.fromHex((String) vector[0]);
+                byte[] nonce = Codec.fromHex((String) vector[1]);
+                byte[] aad = (byte[]) vector[2];
+                byte[] plaintext = Codec.fromHex((String) vector[3]);
+                int tagSize = (Integer) vector[4];
+                CCMMode ccm = new CCMMode(aes, rng, nonce.length, tagSize);
+
+                byte[] sealed = ccm.encryptWithNonce(plaintext, key, nonce, aad);
+                boolean encrypted = Codec.toHex(sealed).equals(vector[5]);
+                boolean decrypted = Arrays.equals(ccm.decryptWithNonce(sealed, key, nonce, aad), plaintext);
+
+                if (encrypted && decrypted) {
+                    System.out.println("✓ " + nonce.length + "-byte nonce, " + tagSize + "-byte tag, "
+                            + aad.length + "-byte AAD");
+                    passed++;
+                } else {
+                    System.out.println("✗ " + nonce.length + "-byte nonce vector mismatch");
+                    failed++;
+                }
+            } catch (Exception e) {
+                System.out.println("✗ Error: " + e.getMessage());
+                failed++;
+            }
+        }
 
-    private static byte[] hexToBytes(String hex) {
-        hex = hex.replaceAll("\\s+", "");
-        byte[] bytes = new byte[hex.length() / 2];
-        for (int i = 0; i < hex.length(); i += 2) {
-            bytes[i / 2] = (byte) Integer.parseInt(hex.substring(i, i + 2), 16);
+        try {
+            CCMMode ccm = new CCMMode(aes, rng);
+            byte[] key = rng.randomBytes(16);
+            byte[] aad = "header".getBytes();
+            byte[] sealed = ccm.encryptWithAAD("Hello, CCM!".getBytes(), key, aad);
+            sealed[sealed.length - 1] ^= 0x01;
+            try {
+                ccm.decryptWithAAD(sealed, key, aad);
+                System.out.println("✗ Tampered tag accepted");
+                failed++;
+            } catch (IllegalArgumentException expected) {
+                System.out.println("✓ Tampered tag rejected");
+                passed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e.getMessage());
+            failed++;
         }
-        return bytes;
     }
 
-    private static String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02x", b & 0xFF));
+    // ==================== GCM-SIV ====================
+
+    private static void testGCMSIV() {
+        System.out.println("\n" + "─".repeat(60));
+        System.out.println("TEST 13: GCM-SIV Mode");
+        System.out.println("─".repeat(60));
+
+        GCMSIVMode siv = new GCMSIVMode(aes, rng);
+
+        // RFC 8452 C.1/C.2 vectors, then a multi-batch message with AAD under a 256-bit key
+        String[][] vectors = {
+                {"01000000000000000000000000000000", "030000000000000000000000", "", "",
+                        "dc20e2d83f25705bb49e439eca56de25"},
+                {"01000000000000000000000000000000", "030000000000000000000000", "", "0100000000000000",
+                        "b5d839330ac7b786578782fff6013b815b287c22493a364c"},
+                {"0100000000000000000000000000000000000000000000000000000000000000", "030000000000000000000000",
+                        "", "", "07f5f4169bbf55a8400cd47ea6fd400f"}
+        };
+
+        for (String[] vector : vectors) {
+            checkGCMSIV(siv, Codec.fromHex(vector[0]), Codec.fromHex(vector[1]), Codec.fromHex(vector[2]),
+                    Codec.fromHex(vector[3]), vector[4]);
+        }
+
+        byte[] key = new byte[32];
+        byte[] nonce = new byte[12];
+        byte[] aad = new byte[40];
+        byte[] plaintext = new byte[77];
+        for (int i = 0; i < plaintext.length; i++) {
+            plaintext[i] = (byte) i;
+            if (i < key.length) key[i] = (byte) i;
+            if (i < nonce.length) nonce[i] = (byte) i;
+            if (i < aad.length) aad[i] = (byte) i;
+        }
+        checkGCMSIV(siv, key, nonce, aad, plaintext,
+                "2658ef1613e1fd7a703f108665cd6e0f66aac7b394ca498cc57462ed267b68cf5d5a035d57146b0e780d9f624c485b36"
+                        + "5a5531d8830b0792b5f7ea13dfa0de0189dbd881757bed349d7d73428a3ef631c62a66bc4fca309ef475de3f54");
+
+        // A repeated nonce must not produce a shared keystream
+        try {
+            byte[] k = rng.randomBytes(16);
+            byte[] n = rng.randomBytes(12);
+            byte[] c1 = siv.encryptWithNonce(new byte[32], k, n, null);
+            byte[] p2 = new byte[32];
+            p2[31] = 1;
+            byte[] c2 = siv.encryptWithNonce(p2, k, n, null);
+            boolean sharedKeystream = Arrays.equals(Arrays.copyOf(c1, 16), Arrays.copyOf(c2, 16));
+
+            byte[] sealed = siv.encrypt("Hello, GCM-SIV!".getBytes(), k);
+            sealed[12] ^= 0x01;
+            boolean rejected = false;
+            try {
+                siv.decrypt(sealed, k);
+            } catch (IllegalArgumentException expected) {
+                rejected = true;
+            }
+
+            if (!sharedKeystream && rejected) {
+                System.out.println("✓ Nonce reuse keeps distinct messages independent, tampering rejected");
+                passed++;
+            } else {
+                System.out.println("✗ Misuse resistance or tamper check failed");
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e.getMessage());
+            failed++;
+        }
+    }
+
+    private static void checkGCMSIV(GCMSIVMode siv, byte[] key, byte[] nonce, byte[] aad, byte[] plaintext,
+                                    String expected) {
+        try {
+            byte[] sealed = siv.encryptWithNonce(plaintext, key, nonce, aad);
+            boolean encrypted = Codec.toHex(sealed).equals(expected);
+            boolean decrypted = Arrays.equals(siv.decryptWithNonce(sealed, key, nonce, aad), plaintext);
+
+            if (encrypted && decrypted) {
+                System.out.println("✓ AES-" + key.length * 8 + ", " + plaintext.length + "-byte plaintext, "
+                        + aad.length + "-byte AAD");
+                passed++;
+            } else {
+                System.out.println("✗ AES-" + key.length * 8 + " vector mismatch: " + Codec.toHex(sealed));
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e.getMessage());
+            failed++;
+        }
+    }
+
+    // ==================== SIV ====================
+
+    private static void testSIV() {
+        System.out.println("\n" + "─".repeat(60));
+        System.out.println("TEST 14: SIV Mode");
+        System.out.println("─".repeat(60));
+
+        SIVMode siv = new SIVMode(aes);
+
+        // RFC 5297 A.1 (deterministic) and A.2 (three components: two headers and a nonce), AES-256 with no AAD
+        Object[][] vectors = {
+                {"fffefdfcfbfaf9f8f7f6f5f4f3f2f1f0f0f1f2f3f4f5f6f7f8f9fafbfcfdfeff",
+                        new String[]{"101112131415161718191a1b1c1d1e1f2021222324252627"},
+                        "112233445566778899aabbccddee",
+                        "85632d07c6e8f37f950acd320a2ecc9340c02b9690c4dc04daef7f6afe5c"},
+                {"7f7e7d7c7b7a79787776757473727170404142434445464748494a4b4c4d4e4f",
+                        new String[]{"00112233445566778899aabbccddeeffdeaddadadeaddadaffeeddccbbaa99887766554433221100",
+                                "102030405060708090a0", "09f911029d74e35bd84156c5635688c0"},
+                        "7468697320697320736f6d6520706c61696e7465787420746f20656e6372797074207573696e67205349562d414553",
+                        "7bdb6e3b432667eb06f4d14bff2fbd0fcb900f2fddbe404326601965c889bf17dba77ceb094fa663b7a3f748ba8af829"
+                                + "ea64ad544a272e9c485b62a3fd5c0d"},
+                {"000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f"
+                        + "202122232425262728292a2b2c2d2e2f303132333435363738393a3b3c3d3e3f",
+                        new String[0], "0001020304", "a13412268bff1331d0a1e9fbe13276bace46e0c5b7"}
+        };
+
+        for (Object[] vector : vectors) {
+            try {
+                byte[] key = Codec.fromHex((String) vector[0]);
+                String[] componentsHex = (String[]) vector[1];
+                byte[][] components = new byte[componentsHex.length][];
+                for (int i = 0; i < components.length; i++) {
+                    components[i] = Codec.fromHex(componentsHex[i]);
+                }
+                byte[] plaintext = Codec.fromHex((String) vector[2]);
+
+                byte[] sealed = siv.encrypt(plaintext, key, components);
+                boolean encrypted = Codec.toHex(sealed).equals(vector[3]);
+                boolean decrypted = Arrays.equals(siv.decrypt(sealed, key, components), plaintext);
+
+                if (encrypted && decrypted) {
+                    System.out.println("✓ AES-" + key.length * 4 + "-SIV, " + components.length + " AAD components");
+                    passed++;
+                } else {
+                    System.out.println("✗ AES-" + key.length * 4 + "-SIV mismatch: " + Codec.toHex(sealed));
+                    failed++;
+                }
+            } catch (Exception e) {
+                System.out.println("✗ Error: " + e.getMessage());
+                failed++;
+            }
+        }
+
+        // Batch API: identical records encrypt identically, tampering is detected
+        try {
+            byte[] key = rng.randomBytes(32);
+            byte[] table = "users".getBytes();
+            List<byte[]> records = new ArrayList<>();
+            records.add("alice".getBytes());
+            records.add("bob".getBytes());
+            records.add("alice".getBytes());
+
+            List<byte[]> sealed = siv.encryptBatch(records, key, table);
+            List<byte[]> opened = siv.decryptBatch(sealed, key, table);
+            List<byte[]> openedPrepared;
+            try (SIVMode.PreparedKey prepared = siv.prepareKey(key)) {
+                openedPrepared = siv.decryptBatch(sealed, prepared, table);
+            }
+            boolean roundTrip = true;
+            for (int i = 0; i < records.size(); i++) {
+                roundTrip &= Arrays.equals(opened.get(i), records.get(i));
+                roundTrip &= Arrays.equals(openedPrepared.get(i), records.get(i));
+            }
+
+            byte[] tampered = sealed.get(1).clone();
+            tampered[tampered.length - 1] ^= 0x01;
+            boolean rejected = false;
+            try {
+                siv.decrypt(tampered, key, table);
+            } catch (IllegalArgumentException expected) {
+                rejected = true;
+            }
+
+            if (roundTrip && rejected && Arrays.equals(sealed.get(0), sealed.get(2))
+                    && !Arrays.equals(sealed.get(0), sealed.get(1))) {
+                System.out.println("✓ Batch API deterministic, round-trips and rejects tampering");
+                passed++;
+            } else {
+                System.out.println("✗ Batch API check failed");
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e.getMessage());
+            failed++;
+        }
+    }
+
+    // ==================== CMAC ====================
+
+    private static void testCMAC() {
+        System.out.println("\n" + "─".repeat(60));
+        System.out.println("TEST 15: AES-CMAC");
+        System.out.println("─".repeat(60));
+
+        CMAC cmac = new CMAC(aes);
+        byte[] key = Codec.fromHex("2b7e151628aed2a6abf7158809cf4f3c");
+        byte[] message = Codec.fromHex("6bc1bee22e409f96e93d7e117393172aae2d8a571e03ac9c9eb76fac45af8e51"
+                + "30c81c46a35ce411e5fbc1191a0a52eff69f2445df4f9b17ad2b417be66c3710");
+
+        // RFC 4493 examples 1-4
+        int[] lengths = {0, 16, 40, 64};
+        String[] expected = {
+                "bb1d6929e95937287fa37d129b756746",
+                "070a16b46b4d4144f79bdd9dd04a287c",
+                "dfa66747de9ae63030ca32611497c827",
+                "51f0bebf7e3b9d92fc49741779363cfe"
+        };
+
+        CMAC.PreparedKey prepared = cmac.prepareKey(key);
+        List<byte[]> batch = new ArrayList<>();
+        for (int i = 0; i < lengths.length; i++) {
+            byte[] m = Arrays.copyOf(message, lengths[i]);
+            batch.add(m);
+            try {
+                // One-shot, then incremental in uneven chunks, then byte by byte
+                byte[] oneShot = cmac.compute(m, prepared);
+                CMAC.Context context = CMAC.start(prepared);
+                for (int offset = 0; offset < m.length; offset += 7) {
+                    context.update(m, offset, Math.min(7, m.length - offset));
+                }
+                byte[] chunked = context.doFinal();
+                for (byte b : m) {
+                    context.update(b);
+                }
+                byte[] byteWise = context.doFinal();
+
+                if (Codec.toHex(oneShot).equals(expected[i]) && Arrays.equals(chunked, oneShot)
+                        && Arrays.equals(byteWise, oneShot) && cmac.verify(m, key, oneShot)) {
+                    System.out.println("✓ " + lengths[i] + "-byte message (one-shot, chunked, byte-wise)");
+                    passed++;
+                } else {
+                    System.out.println("✗ " + lengths[i] + "-byte message mismatch: " + Codec.toHex(oneShot));
+                    failed++;
+                }
+            } catch (Exception e) {
+                System.out.println("✗ Error: " + e.getMessage());
+                failed++;
+            }
+        }
+
+        // Interleaved batch over messages of different lengths (more than one group of lanes)
+        try {
+            for (int i = 0; i < 7; i++) {
+                batch.add(rng.randomBytes(1 + i * 23));
+            }
+            List<byte[]> tags = cmac.computeBatch(batch, prepared);
+            boolean match = tags.size() == batch.size();
+            for (int i = 0; match && i < batch.size(); i++) {
+                match = Arrays.equals(tags.get(i), cmac.compute(batch.get(i), prepared));
+            }
+
+            byte[] tampered = batch.get(3).clone();
+            tampered[0] ^= 0x01;
+            if (match && !cmac.verify(tampered, prepared, tags.get(3))) {
+                System.out.println("✓ Batch tags match one-shot tags, tampering detected");
+                passed++;
+            } else {
+                System.out.println("✗ Batch tag mismatch");
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e.getMessage());
+            failed++;
+        }
+    }
+
+    // ==================== KEY WRAP ====================
+
+    private static void testKeyWrap() {
+        System.out.println("\n" + "─".repeat(60));
+        System.out.println("TEST 16: AES Key Wrap");
+        System.out.println("─".repeat(60));
+
+        KeyWrapMode keyWrap = new KeyWrapMode(aes);
+
+        // RFC 3394 4.1 and 4.6, RFC 5649 section 6 examples
+        String[][] vectors = {
+                {"KW", "000102030405060708090a0b0c0d0e0f", "00112233445566778899aabbccddeeff",
+                        "1fa68b0a8112b447aef34bd8fb5a7b829d3e862371d2cfe5"},
+                {"KW", "000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f",
+                        "00112233445566778899aabbccddeeff000102030405060708090a0b0c0d0e0f",
+                        "28c9f404c4b810f4cbccb35cfb87f8263f5786e2d80ed326cbc7f0e71a99f43bfb988b9b7a02dd21"},
+                {"KWP", "5840df6e29b02af1ab493b705bf16ea1ae8338f4dcc176a8", "c37b7e6492584340bed12207808941155068f738",
+                        "138bdeaa9b8fa7fc61f97742e72248ee5ae6ae5360d1ae6a5f54f373fa543b6a"},
+                {"KWP", "5840df6e29b02af1ab493b705bf16ea1ae8338f4dcc176a8", "466f7250617369",
+                        "afbeb0f07dfbf5419200f2ccb50bb24f"}
+        };
+
+        for (String[] vector : vectors) {
+            try {
+                byte[] kek = Codec.fromHex(vector[1]);
+                byte[] keyData = Codec.fromHex(vector[2]);
+                boolean padded = vector[0].equals("KWP");
+
+                byte[] wrapped = padded ? keyWrap.wrapWithPadding(keyData, kek) : keyWrap.wrap(keyData, kek);
+                byte[] unwrapped = padded ? keyWrap.unwrapWithPadding(wrapped, kek) : keyWrap.unwrap(wrapped, kek);
+
+                if (Codec.toHex(wrapped).equals(vector[3]) && Arrays.equals(unwrapped, keyData)) {
+                    System.out.println("✓ " + vector[0] + ", " + keyData.length + "-byte key under "
+                            + kek.length * 8 + "-bit KEK");
+                    passed++;
+                } else {
+                    System.out.println("✗ " + vector[0] + " mismatch: " + Codec.toHex(wrapped));
+                    failed++;
+                }
+            } catch (Exception e) {
+                System.out.println("✗ Error: " + e.getMessage());
+                failed++;
+            }
+        }
+
+        // Bulk API and integrity check
+        try {
+            byte[] kek = rng.randomBytes(32);
+            List<byte[]> keys = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                keys.add(rng.randomBytes(i % 2 == 0 ? 32 : 5 + i % 40));
+            }
+
+            List<byte[]> wrapped = keyWrap.wrapAllWithPadding(keys, kek);
+            List<byte[]> unwrapped = keyWrap.unwrapAllWithPadding(wrapped, kek);
+            boolean match = unwrapped.size() == keys.size();
+            for (int i = 0; match && i < keys.size(); i++) {
+                match = Arrays.equals(unwrapped.get(i), keys.get(i))
+                        && Arrays.equals(wrapped.get(i), keyWrap.wrapWithPadding(keys.get(i), kek));
+            }
+
+            byte[] tampered = keyWrap.wrap(keys.get(0), kek);
+            tampered[5] ^= 0x01;
+            boolean rejected = false;
+            try {
+                keyWrap.unwrap(tampered, kek);
+            } catch (IllegalArgumentException expected) {
+                rejected = true;
+            }
+
+            if (match && rejected) {
+                System.out.println("✓ Bulk wrap/unwrap of 200 keys, tampered key rejected");
+                passed++;
+            } else {
+                System.out.println("✗ Bulk key wrap check failed");
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e.getMessage());
+            failed++;
+        }
+    }
+
+    // ==================== CFB / OFB ====================
+
+    private static void testFeedbackModes() {
+        System.out.println("\n" + "─".repeat(60));
+        System.out.println("TEST 17: CFB and OFB Modes (against SunJCE)");
+        System.out.println("─".repeat(60));
+
+        CipherMode[] modes = {new CFBMode(aes, rng, 8), new CFBMode(aes, rng), new OFBMode(aes, rng)};
+        String[] transformations = {"AES/CFB8/NoPadding", "AES/CFB/NoPadding", "AES/OFB/NoPadding"};
+
+        // 100 KB crosses the parallel CFB decryption and pipelined OFB thresholds
+        int[] lengths = {1, 33, 100_000};
+
+        for (int m = 0; m < modes.length; m++) {
+            try {
+                boolean ok = true;
+                for (int length : lengths) {
+                    byte[] key = rng.randomBytes(24);
+                    byte[] plaintext = rng.randomBytes(length);
+                    SecretKeySpec keySpec = new SecretKeySpec(key, "AES");
+
+                    // Ours -> SunJCE
+                    byte[] sealed = modes[m].encrypt(plaintext, key);
+                    Cipher reference = Cipher.getInstance(transformations[m], "SunJCE");
+                    reference.init(Cipher.DECRYPT_MODE, keySpec, new IvParameterSpec(sealed, 0, 16));
+                    ok &= Arrays.equals(reference.doFinal(sealed, 16, sealed.length - 16), plaintext);
+
+                    // SunJCE -> ours
+                    byte[] iv = rng.randomBytes(16);
+                    reference.init(Cipher.ENCRYPT_MODE, keySpec, new IvParameterSpec(iv));
+                    byte[] theirs = reference.doFinal(plaintext);
+                    byte[] framed = new byte[16 + theirs.length];
+                    System.arraycopy(iv, 0, framed, 0, 16);
+                    System.arraycopy(theirs, 0, framed, 16, theirs.length);
+                    ok &= Arrays.equals(modes[m].decrypt(framed, key), plaintext);
+                }
+
+                if (ok) {
+                    System.out.println("✓ " + modes[m].getModeName() + " matches " + transformations[m]);
+                    passed++;
+                } else {
+                    System.out.println("✗ " + modes[m].getModeName() + " differs from " + transformations[m]);
+                    failed++;
+                }
+            } catch (Exception e) {
+                System.out.println("✗ Error: " + e);
+                failed++;
+            }
+        }
+
+        // Streaming OFB keystream in uneven chunks across several buffer refills
+        try {
+            byte[] key = rng.randomBytes(16);
+            byte[] iv = rng.randomBytes(16);
+            byte[] data = rng.randomBytes(3 * OFBMode.KEYSTREAM_BUFFER_SIZE + 1000);
+            byte[] streamed = new byte[data.length];
+
+            try (OFBMode.Keystream keystream = new OFBMode(aes, rng).keystream(key, iv)) {
+                for (int offset = 0; offset < data.length; offset += 4099) {
+                    keystream.xor(data, offset, streamed, offset, Math.min(4099, data.length - offset));
+                }
+            }
+
+            Cipher reference = Cipher.getInstance("AES/OFB/NoPadding", "SunJCE");
+            reference.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+            if (Arrays.equals(streamed, reference.doFinal(data))) {
+                System.out.println("✓ Pipelined OFB keystream across buffer refills");
+                passed++;
+            } else {
+                System.out.println("✗ Pipelined OFB keystream mismatch");
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e);
+            failed++;
+        }
+
+        // A closed keystream has zeroed buffers and must refuse to be used
+        try {
+            OFBMode.Keystream keystream = new OFBMode(aes, rng).keystream(rng.randomBytes(16), rng.randomBytes(16));
+            byte[] data = rng.randomBytes(64);
+            keystream.xor(data, 0, new byte[64], 0, 16);
+            keystream.close();
+
+            byte[] out = new byte[64];
+            boolean rejected = false;
+            try {
+                keystream.xor(data, 0, out, 0, data.length);
+            } catch (IllegalStateException e) {
+                rejected = true;
+            }
+
+            if (rejected && Arrays.equals(new byte[64], out)) {
+                System.out.println("✓ Closed OFB keystream rejects further use");
+                passed++;
+            } else {
+                System.out.println("✗ Closed OFB keystream still produced output");
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e);
+            failed++;
+        }
+    }
+
+    // ==================== GCM IV AND TAG LENGTHS ====================
+
+    private static void testGCMParameters() {
+        System.out.println("\n" + "─".repeat(60));
+        System.out.println("TEST 18: GCM IV and Tag Lengths (against SunJCE)");
+        System.out.println("─".repeat(60));
+
+        // 64-bit, 96-bit and 480-bit IVs with full and truncated tags
+        int[] ivSizes = {8, 12, 60};
+        int[] tagSizes = {16, 12};
+
+        for (int ivSize : ivSizes) {
+            for (int tagSize : tagSizes) {
+                try {
+                    GCMMode gcm = new GCMMode(aes, rng, ivSize, tagSize);
+                    byte[] key = rng.randomBytes(16);
+                    byte[] plaintext = rng.randomBytes(100);
+                    byte[] aad = rng.randomBytes(20);
+
+                    byte[] sealed = gcm.encryptWithAAD(plaintext, key, aad);
+                    Cipher reference = Cipher.getInstance("AES/GCM/NoPadding", "SunJCE");
+                    reference.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"),
+                            new GCMParameterSpec(tagSize * 8, sealed, 0, ivSize));
+                    reference.updateAAD(aad);
+                    boolean ok = Arrays.equals(reference.doFinal(sealed, ivSize, sealed.length - ivSize), plaintext);
+
+                    // Same IV again goes through the J0 cache and must give the same result
+                    byte[] iv = Arrays.copyOf(sealed, ivSize);
+                    byte[] again = gcm.encryptWithIV(plaintext, key, iv, aad);
+                    ok &= Arrays.equals(again, 0, again.length, sealed, ivSize, sealed.length);
+                    ok &= Arrays.equals(gcm.decryptWithAAD(sealed, key, aad), plaintext);
+
+                    // Through the byte[] API a repeated IV is answered from the J0 cache (the stored
+                    // entry is not replaced), while random encryption IVs never enter it
+                    if (ivSize != 12) {
+                        Map<?, ?> j0Cache = j0Cache(gcm);
+                        Object cached = j0Cache.get(ByteBuffer.wrap(iv));
+                        gcm.decryptWithAAD(sealed, key, aad);
+                        ok &= j0Cache.size() == 1 && cached != null && j0Cache.get(ByteBuffer.wrap(iv)) == cached;
+                        gcm.encryptWithAAD(plaintext, key, aad);
+                        ok &= j0Cache.size() == 1;
+                    }
+
+                    String name = (ivSize * 8) + "-bit IV, " + (tagSize * 8) + "-bit tag";
+                    if (ok) {
+                        System.out.println("✓ " + name + " matches SunJCE");
+                        passed++;
+                    } else {
+                        System.out.println("✗ " + name + " differs from SunJCE");
+                        failed++;
+                    }
+                } catch (Exception e) {
+                    System.out.println("✗ Error: " + e);
+                    failed++;
+                }
+            }
+        }
+
+        // A truncated 32-bit tag still rejects tampering
+        try {
+            GCMMode gcm = new GCMMode(aes, rng, 12, 4);
+            byte[] key = rng.randomBytes(16);
+            byte[] sealed = gcm.encrypt("Secret message".getBytes(), key);
+            sealed[sealed.length - 1] ^= 0x01;
+
+            try {
+                gcm.decrypt(sealed, key);
+                System.out.println("✗ Should reject tampered 32-bit tag");
+                failed++;
+            } catch (IllegalArgumentException e) {
+                System.out.println("✓ Correctly rejects tampered 32-bit tag");
+                passed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e);
+            failed++;
+        }
+
+        // Provider with a 120-bit tag and a 128-bit IV
+        try {
+            SecretKeySpec key = new SecretKeySpec(rng.randomBytes(32), "AES");
+            GCMParameterSpec spec = new GCMParameterSpec(120, rng.randomBytes(16));
+            byte[] plaintext = rng.randomBytes(77);
+
+            Cipher ours = Cipher.getInstance("AES/GCM/NoPadding", new MyCryptoProvider());
+            ours.init(Cipher.ENCRYPT_MODE, key, spec);
+            Cipher reference = Cipher.getInstance("AES/GCM/NoPadding", "SunJCE");
+            reference.init(Cipher.ENCRYPT_MODE, key, spec);
+
+            if (Arrays.equals(ours.doFinal(plaintext), reference.doFinal(plaintext))) {
+                System.out.println("✓ Provider accepts GCMParameterSpec(120, 16-byte IV)");
+                passed++;
+            } else {
+                System.out.println("✗ Provider output differs for GCMParameterSpec(120, 16-byte IV)");
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e);
+            failed++;
+        }
+    }
+
+    // ==================== GCM BATCH ====================
+
+    private static void testGCMBatch() {
+        System.out.println("\n" + "─".repeat(60));
+        System.out.println("TEST 19: GCM Batch Encryption");
+        System.out.println("─".repeat(60));
+
+        GCMMode gcm = new GCMMode(aes, rng);
+        byte[] key = rng.randomBytes(16);
+        byte[] aad = "topic=orders".getBytes();
+        GCMMode.PreparedKey prepared = gcm.prepareKey(key);
+
+        // Message-bus sized payloads, plus an empty one and a count that is not a multiple of the lanes
+        List<byte[]> messages = new ArrayList<>();
+        messages.add(new byte[0]);
+        for (int i = 0; i < 1001; i++) {
+            messages.add(rng.randomBytes(100 + i % 401));
+        }
+
+        try {
+            GCMMode.SealedBatch batch = gcm.encryptAll(messages, prepared, aad);
+
+            boolean ok = batch.size() == messages.size();
+            Cipher reference = Cipher.getInstance("AES/GCM/NoPadding", "SunJCE");
+            for (int i = 0; i < batch.size() && ok; i++) {
+                reference.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"),
+                        new GCMParameterSpec(128, batch.data(), batch.offset(i), 12));
+                reference.updateAAD(aad);
+                ok = Arrays.equals(reference.doFinal(batch.data(), batch.offset(i) + 12, batch.length(i) - 12),
+                        messages.get(i));
+            }
+
+            if (ok) {
+                System.out.println("✓ " + batch.size() + " messages in one arena decrypt with SunJCE");
+                passed++;
+            } else {
+                System.out.println("✗ Batch output differs from SunJCE");
+                failed++;
+            }
+
+            List<byte[]> decrypted = gcm.decryptAll(batch, prepared, aad);
+            boolean roundTrip = decrypted.size() == messages.size();
+            for (int i = 0; i < decrypted.size() && roundTrip; i++) {
+                roundTrip = Arrays.equals(decrypted.get(i), messages.get(i))
+                        && Arrays.equals(gcm.decryptWithAAD(batch.get(i), key, aad), messages.get(i));
+            }
+
+            if (roundTrip) {
+                System.out.println("✓ decryptAll and single-message decryption round trip");
+                passed++;
+            } else {
+                System.out.println("✗ Batch round trip failed");
+                failed++;
+            }
+
+            batch.data()[batch.offset(500) + 40] ^= 0x01;
+            try {
+                gcm.decryptAll(batch, prepared, aad);
+                System.out.println("✗ Should reject a tampered message in the arena");
+                failed++;
+            } catch (IllegalArgumentException e) {
+                System.out.println("✓ Correctly rejects a tampered message in the arena");
+                passed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e);
+            failed++;
+        }
+    }
+
+    // ==================== ASYNC SERVICE ====================
+
+    private static void testAsyncService() {
+        System.out.println("\n" + "─".repeat(60));
+        System.out.println("TEST 20: Async Cipher Service");
+        System.out.println("─".repeat(60));
+
+        // Small and large jobs mixed, for a stream mode and an AEAD mode
+        CipherMode[] modes = {new CTRMode(aes, rng), new GCMMode(aes, rng)};
+        for (CipherMode mode : modes) {
+            try (AsyncCipherService service = new AsyncCipherService(mode, 4, 4 * 1024 * 1024)) {
+                byte[] key = rng.randomBytes(32);
+                List<byte[]> inputs = new ArrayList<>();
+                List<CompletableFuture<byte[]>> jobs = new ArrayList<>();
+                for (int i = 0; i < 200; i++) {
+                    byte[] plaintext = rng.randomBytes(i % 50 == 0 ? 1024 * 1024 + i : 1 + i * 7);
+                    inputs.add(plaintext);
+                    jobs.add(service.encrypt(plaintext, key).thenCompose(sealed -> service.decrypt(sealed, key)));
+                }
+
+                boolean ok = true;
+                for (int i = 0; i < jobs.size(); i++) {
+                    ok &= Arrays.equals(jobs.get(i).get(30, TimeUnit.SECONDS), inputs.get(i));
+                }
+                ok &= service.getInFlightBytes() == 0;
+
+                if (ok) {
+                    System.out.println("✓ " + mode.getModeName() + " - 200 async round trips (small and 1 MB jobs)");
+                    passed++;
+                } else {
+                    System.out.println("✗ " + mode.getModeName() + " - async round trip mismatch");
+                    failed++;
+                }
+            } catch (Exception e) {
+                System.out.println("✗ Error: " + e);
+                failed++;
+            }
+        }
+
+        // Authentication failures complete the future exceptionally
+        try (AsyncCipherService service = new AsyncCipherService(new GCMMode(aes, rng))) {
+            byte[] key = rng.randomBytes(16);
+            byte[] sealed = service.encrypt("Secret message".getBytes(), key).get();
+            sealed[sealed.length - 1] ^= 0x01;
+
+            try {
+                service.decrypt(sealed, key).get();
+                System.out.println("✗ Should fail the future for tampered data");
+                failed++;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IllegalArgumentException) {
+                    System.out.println("✓ Tampered data fails the future with IllegalArgumentException");
+                    passed++;
+                } else {
+                    System.out.println("✗ Unexpected failure: " + e.getCause());
+                    failed++;
+                }
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e);
+            failed++;
+        }
+
+        // Backpressure: with room for one 48 KB job, a second submit waits for the first to finish
+        CountDownLatch release = new CountDownLatch(1);
+        CipherMode blocking = new CipherMode() {
+            @Override
+            public byte[] encrypt(byte[] plaintext, byte[] key) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return plaintext.clone();
+            }
+
+            @Override
+            public byte[] decrypt(byte[] ciphertext, byte[] key) {
+                return ciphertext.clone();
+            }
+
+            @Override
+            public String getModeName() {
+                return "Blocking";
+            }
+        };
+
+        try (AsyncCipherService service = new AsyncCipherService(blocking, 2, 64 * 1024)) {
+            byte[] job = new byte[48 * 1024];
+            CompletableFuture<byte[]> first = service.encrypt(job, null);
+            CompletableFuture<CompletableFuture<byte[]>> second =
+                    CompletableFuture.supplyAsync(() -> service.encrypt(job, null));
+
+            Thread.sleep(200);
+            boolean heldBack = !second.isDone() && service.getInFlightBytes() == job.length;
+            release.countDown();
+            first.get(10, TimeUnit.SECONDS);
+            second.get(10, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS);
+
+            if (heldBack && service.getInFlightBytes() == 0) {
+                System.out.println("✓ Submit blocks while the in-flight byte limit is reached");
+                passed++;
+            } else {
+                System.out.println("✗ In-flight byte limit was not enforced");
+                failed++;
+            }
+        } catch (Exception e) {
+            release.countDown();
+            System.out.println("✗ Error: " + e);
+            failed++;
+        }
+
+        // Large CTR jobs split only inside the service's pool, never onto the common pool
+        try {
+            Set<String> threads = ConcurrentHashMap.newKeySet();
+            AESBlockCipher recording = new AESBlockCipher() {
+                @Override
+                public AES prepareKey(byte[] key) {
+                    return new AES(key, KeySize.forKeyLength(key.length)) {
+                        @Override
+                        public void encrypt(byte[] in, int inOffset, byte[] out, int outOffset) {
+                            threads.add(Thread.currentThread().getName());
+                            super.encrypt(in, inOffset, out, outOffset);
+                        }
+                    };
+                }
+            };
+            CTRMode ctr = new CTRMode(recording, rng);
+            byte[] key = rng.randomBytes(32);
+            byte[] large = rng.randomBytes(1024 * 1024);
+
+            ctr.encrypt(large, key);
+            boolean directSequential = threads.equals(Set.of(Thread.currentThread().getName()));
+
+            threads.clear();
+            try (AsyncCipherService service = new AsyncCipherService(ctr, 4, 4 * 1024 * 1024)) {
+                service.encrypt(large, key).get(30, TimeUnit.SECONDS);
+            }
+            boolean servicePoolOnly = !threads.isEmpty()
+                    && threads.stream().noneMatch(name -> name.contains("commonPool"));
+
+            if (directSequential && servicePoolOnly) {
+                System.out.println("✓ Large CTR jobs stay on the caller or the service pool ("
+                        + threads.size() + " service threads)");
+                passed++;
+            } else {
+                System.out.println("✗ Large CTR job used unexpected threads: " + threads);
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e);
+            failed++;
+        }
+    }
+
+    // ==================== CIPHER DAEMON ====================
+
+    private static void testCipherDaemon() {
+        System.out.println("\n" + "─".repeat(60));
+        System.out.println("TEST 21: Cipher Daemon (loopback and Unix socket)");
+        System.out.println("─".repeat(60));
+
+        List<SocketAddress> addresses = new ArrayList<>();
+        addresses.add(DaemonProtocol.parseAddress("0"));
+        addresses.add(DaemonProtocol.parseAddress("unix:" + Paths.get(System.getProperty("java.io.tmpdir"),
+                "cipher-daemon-" + ProcessHandle.current().pid() + ".sock")));
+
+        for (SocketAddress address : addresses) {
+            try (CipherDaemon daemon = new CipherDaemon(address, 4)) {
+                daemon.start();
+
+                try (CipherClient client = CipherClient.connect(daemon.getLocalAddress())) {
+                    byte[] key = rng.randomBytes(16);
+                    int gcmHandle = client.loadKey("GCM", key).get(10, TimeUnit.SECONDS);
+                    int ctrHandle = client.loadKey("CTR", key).get(10, TimeUnit.SECONDS);
+
+                    // 500 pipelined requests, more than the daemon's per-connection window
+                    List<byte[]> messages = new ArrayList<>();
+                    List<CompletableFuture<byte[]>> sealed = new ArrayList<>();
+                    for (int i = 0; i < 500; i++) {
+                        byte[] message = rng.randomBytes(1 + i * 3);
+                        messages.add(message);
+                        sealed.add(client.encrypt(i % 2 == 0 ? gcmHandle : ctrHandle, message));
+                    }
+
+                    boolean ok = true;
+                    for (int i = 0; i < messages.size(); i++) {
+                        byte[] ciphertext = sealed.get(i).get(10, TimeUnit.SECONDS);
+                        CipherMode local = i % 2 == 0 ? new GCMMode(aes, rng) : new CTRMode(aes, rng);
+                        ok &= Arrays.equals(local.decrypt(ciphertext, key), messages.get(i));
+                        ok &= Arrays.equals(client.decrypt(i % 2 == 0 ? gcmHandle : ctrHandle, ciphertext)
+                                .get(10, TimeUnit.SECONDS), messages.get(i));
+                    }
+
+                    if (ok) {
+                        System.out.println("✓ 500 pipelined GCM/CTR requests over " + daemon.getLocalAddress());
+                        passed++;
+                    } else {
+                        System.out.println("✗ Daemon output mismatch over " + daemon.getLocalAddress());
+                        failed++;
+                    }
+
+                    // Errors come back per request; the connection stays usable
+                    byte[] tampered = sealed.get(0).get();
+                    tampered[tampered.length - 1] ^= 0x01;
+                    boolean rejected = false;
+                    try {
+                        client.decrypt(gcmHandle, tampered).get(10, TimeUnit.SECONDS);
+                    } catch (ExecutionException e) {
+                        rejected = e.getCause() instanceof IllegalArgumentException;
+                    }
+                    client.dropKey(ctrHandle).get(10, TimeUnit.SECONDS);
+                    boolean dropped = false;
+                    try {
+                        client.encrypt(ctrHandle, messages.get(0)).get(10, TimeUnit.SECONDS);
+                    } catch (ExecutionException e) {
+                        dropped = e.getCause().getMessage().contains("Unknown key handle");
+                    }
+                    boolean stillUsable = client.encrypt(gcmHandle, messages.get(1)).get(10, TimeUnit.SECONDS) != null;
+
+                    if (rejected && dropped && stillUsable) {
+                        System.out.println("✓ Tampered data and dropped handles are reported per request");
+                        passed++;
+                    } else {
+                        System.out.println("✗ Daemon error reporting failed");
+                        failed++;
+                    }
+
+                    // DROP_KEY pipelined right behind requests never lets them run under a wiped key
+                    boolean dropSafe = true;
+                    for (int round = 0; round < 20; round++) {
+                        byte[] roundKey = rng.randomBytes(16);
+                        int cbcHandle = client.loadKey("CBC", roundKey).get(10, TimeUnit.SECONDS);
+                        byte[] message = rng.randomBytes(64 * 1024);
+                        List<CompletableFuture<byte[]>> inFlight = new ArrayList<>();
+                        for (int i = 0; i < 4; i++) {
+                            inFlight.add(client.encrypt(cbcHandle, message));
+                        }
+                        client.dropKey(cbcHandle);
+                        for (CompletableFuture<byte[]> result : inFlight) {
+                            try {
+                                byte[] ciphertext = result.get(10, TimeUnit.SECONDS);
+                                dropSafe &= Arrays.equals(new CBCMode(aes, rng).decrypt(ciphertext, roundKey), message);
+                            } catch (ExecutionException e) {
+                                dropSafe &= e.getCause().getMessage().contains("Unknown key handle");
+                            }
+                        }
+                    }
+
+                    if (dropSafe) {
+                        System.out.println("✓ Requests racing DROP_KEY finish under the right key or are refused");
+                        passed++;
+                    } else {
+                        System.out.println("✗ A request ran under a dropped key");
+                        failed++;
+                    }
+                }
+            } catch (Exception e) {
+                System.out.println("✗ Error: " + e);
+                failed++;
+            }
+        }
+
+        // No unauthenticated service on a network interface
+        boolean refused = false;
+        try (CipherDaemon daemon = new CipherDaemon(DaemonProtocol.parseAddress("0.0.0.0:0"), 1)) {
+            daemon.getLocalAddress();
+        } catch (IllegalArgumentException e) {
+            refused = true;
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e);
+        }
+        if (refused) {
+            System.out.println("✓ Non-loopback bind address refused");
+            passed++;
+        } else {
+            System.out.println("✗ Daemon bound a non-loopback address");
+            failed++;
+        }
+    }
+
+    private static void testDirectoryEncryption() {
+        System.out.println("\n" + "─".repeat(60));
+        System.out.println("TEST 22: Directory Tree Encryption");
+        System.out.println("─".repeat(60));
+
+        Path work = null;
+        try {
+            work = Files.createTempDirectory("dir-encryptor");
+            Path source = work.resolve("source");
+            Path sealed = work.resolve("sealed");
+            Path restored = work.resolve("restored");
+
+            // 1 KiB chunks so sizes land before, on and after chunk boundaries
+            int[] sizes = {0, 1, 1023, 1024, 1025, 5000, 100000};
+            FileTime mtime = FileTime.fromMillis(1_600_000_000_000L);
+            List<Path> files = new ArrayList<>();
+            for (int i = 0; i < sizes.length; i++) {
+                Path dir = source.resolve(i % 2 == 0 ? "a" : "a/b/c");
+                Files.createDirectories(dir);
+                Path file = Files.write(dir.resolve("file" + i + ".bin"), rng.randomBytes(sizes[i]));
+                Files.setLastModifiedTime(file, mtime);
+                files.add(file);
+            }
+            Files.createDirectories(source.resolve("empty"));
+
+            byte[] key = rng.randomBytes(32);
+            DirectoryEncryptor tree = new DirectoryEncryptor(new StreamEncryptor(rng, 1024), 3);
+            DirectoryEncryptor.Summary encrypted = tree.encryptTree(source, sealed, key);
+            DirectoryEncryptor.Summary decrypted = tree.decryptTree(sealed, restored, key);
+
+            boolean ok = encrypted.files == sizes.length && encrypted.failed == 0
+                    && decrypted.files == sizes.length && decrypted.failed == 0
+                    && Files.isDirectory(restored.resolve("empty"));
+            for (Path file : files) {
+                Path relative = source.relativize(file);
+                Path copy = restored.resolve(relative);
+                ok &= Files.exists(sealed.resolve(relative + DirectoryEncryptor.ENCRYPTED_SUFFIX));
+                ok &= Arrays.equals(Files.readAllBytes(file), Files.readAllBytes(copy));
+                ok &= Files.getLastModifiedTime(copy).equals(mtime);
+            }
+
+            if (ok) {
+                System.out.printf("✓ %d files round-trip with structure and mtimes (%.1f MB/s)%n",
+                        decrypted.files, encrypted.getMegabytesPerSecond());
+                passed++;
+            } else {
+                System.out.println("✗ Directory round trip failed");
+                failed++;
+            }
+
+            // Flip one byte in one file, cut another at a chunk boundary
+            Path tampered = sealed.resolve(source.relativize(files.get(5)) + DirectoryEncryptor.ENCRYPTED_SUFFIX);
+            byte[] data = Files.readAllBytes(tampered);
+            data[data.length / 2] ^= 0x01;
+            Files.write(tampered, data);
+            Path truncated = sealed.resolve(source.relativize(files.get(6)) + DirectoryEncryptor.ENCRYPTED_SUFFIX);
+            data = Files.readAllBytes(truncated);
+            Files.write(truncated, Arrays.copyOf(data, StreamEncryptor.HEADER_SIZE + 2 * (1024 + 16)));
+
+            Path rejected = work.resolve("rejected");
+            DirectoryEncryptor.Summary damaged = tree.decryptTree(sealed, rejected, key);
+            boolean detected = damaged.failed == 2 && damaged.files == sizes.length - 2
+                    && !Files.exists(rejected.resolve(source.relativize(files.get(5))))
+                    && !Files.exists(rejected.resolve(source.relativize(files.get(6))));
+
+            if (detected) {
+                System.out.println("✓ Tampered and truncated files rejected, partial output removed");
+                passed++;
+            } else {
+                System.out.println("✗ Damaged files not detected: " + damaged.failures);
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e);
+            failed++;
+        } finally {
+            deleteTree(work);
+        }
+    }
+
+    private static void testStreamCommand() {
+        System.out.println("\n" + "─".repeat(60));
+        System.out.println("TEST 23: Streaming CLI (encrypt / decrypt)");
+        System.out.println("─".repeat(60));
+
+        // Stream format: sizes around the chunk boundary, swapped chunks rejected
+        try {
+            StreamEncryptor streams = new StreamEncryptor(rng, 256);
+            GCMMode.PreparedKey key = streams.prepareKey(rng.randomBytes(16));
+            boolean ok = true;
+            for (int size : new int[]{0, 1, 255, 256, 257, 512, 3000}) {
+                byte[] data = rng.randomBytes(size);
+                ByteArrayOutputStream sealed = new ByteArrayOutputStream();
+                streams.encrypt(new ByteArrayInputStream(data), sealed, key);
+                ByteArrayOutputStream opened = new ByteArrayOutputStream();
+                streams.decrypt(new ByteArrayInputStream(sealed.toByteArray()), opened, key);
+                ok &= Arrays.equals(opened.toByteArray(), data);
+            }
+
+            ByteArrayOutputStream sealed = new ByteArrayOutputStream();
+            streams.encrypt(new ByteArrayInputStream(rng.randomBytes(1000)), sealed, key);
+            byte[] swapped = sealed.toByteArray();
+            int chunk = 256 + 16;
+            byte[] first = Arrays.copyOfRange(swapped, StreamEncryptor.HEADER_SIZE, StreamEncryptor.HEADER_SIZE + chunk);
+            System.arraycopy(swapped, StreamEncryptor.HEADER_SIZE + chunk, swapped, StreamEncryptor.HEADER_SIZE, chunk);
+            System.arraycopy(first, 0, swapped, StreamEncryptor.HEADER_SIZE + chunk, chunk);
+            boolean rejected = false;
+            try {
+                streams.decrypt(new ByteArrayInputStream(swapped), new ByteArrayOutputStream(), key);
+            } catch (IllegalArgumentException e) {
+                rejected = true;
+            }
+
+            if (ok && rejected) {
+                System.out.println("✓ Chunked stream round-trips; reordered chunks rejected");
+                passed++;
+            } else {
+                System.out.println("✗ Chunked stream format failed");
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e);
+            failed++;
+        }
+
+        // Command line with files for --in/--out (stdin/stdout work the same way)
+        Path work = null;
+        try {
+            work = Files.createTempDirectory("stream-command");
+            Path keyFile = Files.writeString(work.resolve("key.hex"), Codec.toHex(rng.randomBytes(32)) + "\n");
+            Path plain = Files.write(work.resolve("plain.bin"), rng.randomBytes(200_000));
+            AESConsoleApp app = new AESConsoleApp();
+
+            boolean ok = true;
+            for (String mode : new String[]{"gcm", "ctr", "cbc"}) {
+                Path sealed = work.resolve("sealed." + mode);
+                Path opened = work.resolve("opened." + mode);
+                ok &= app.runCommand(new String[]{"encrypt", "--mode", mode, "--key-file", keyFile.toString(),
+                        "--in", plain.toString(), "--out", sealed.toString(), "--chunk-kib", "16"}) == 0;
+                ok &= app.runCommand(new String[]{"decrypt", "--mode", mode, "--key-file", keyFile.toString(),
+                        "--in", sealed.toString(), "--out", opened.toString()}) == 0;
+                ok &= Arrays.equals(Files.readAllBytes(plain), Files.readAllBytes(opened));
+            }
+
+            Path tampered = work.resolve("sealed.gcm");
+            byte[] data = Files.readAllBytes(tampered);
+            data[data.length - 1] ^= 0x01;
+            Files.write(tampered, data);
+            Path rejectedOut = work.resolve("rejected.bin");
+            boolean rejected = app.runCommand(new String[]{"decrypt", "--key-file", keyFile.toString(),
+                    "--in", tampered.toString(), "--out", rejectedOut.toString()}) == 1
+                    && !Files.exists(rejectedOut);
+
+            // A failure before the output is opened must not touch an existing file
+            Path existing = Files.write(work.resolve("existing.enc"), new byte[]{1, 2, 3});
+            boolean kept = app.runCommand(new String[]{"encrypt", "--key-file", keyFile.toString(),
+                    "--in", work.resolve("missing.bin").toString(), "--out", existing.toString()}) == 1
+                    && Arrays.equals(new byte[]{1, 2, 3}, Files.readAllBytes(existing));
+
+            // 32 hex digits without a newline are an AES-128 key, the same as with one
+            String hex128 = Codec.toHex(rng.randomBytes(16));
+            Path bareHex = Files.writeString(work.resolve("bare.hex"), hex128);
+            Path lineHex = Files.writeString(work.resolve("line.hex"), hex128 + "\n");
+            Path sealedHex = work.resolve("sealed.hex-key");
+            Path openedHex = work.resolve("opened.hex-key");
+            boolean hexKey = app.runCommand(new String[]{"encrypt", "--key-file", bareHex.toString(),
+                    "--in", plain.toString(), "--out", sealedHex.toString()}) == 0
+                    && app.runCommand(new String[]{"decrypt", "--key-file", lineHex.toString(),
+                    "--in", sealedHex.toString(), "--out", openedHex.toString()}) == 0
+                    && Arrays.equals(Files.readAllBytes(plain), Files.readAllBytes(openedHex));
+
+            // --in and --out naming one file would truncate the input before reading it
+            byte[] before = Files.readAllBytes(plain);
+            boolean sameFileRejected = app.runCommand(new String[]{"encrypt", "--key-file", keyFile.toString(),
+                    "--in", plain.toString(), "--out", plain.toString()}) == 2
+                    && Arrays.equals(before, Files.readAllBytes(plain));
+
+            if (ok && rejected && kept && hexKey && sameFileRejected) {
+                System.out.println("✓ encrypt/decrypt commands round-trip GCM, CTR and CBC; tampering exits 1");
+                passed++;
+            } else {
+                System.out.println("✗ Streaming command failed");
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e);
+            failed++;
+        } finally {
+            deleteTree(work);
+        }
+    }
+
+    private static void testCodec() {
+        System.out.println("\n" + "─".repeat(60));
+        System.out.println("TEST 24: Hex and Base64 Codec");
+        System.out.println("─".repeat(60));
+
+        try {
+            // Against the JDK encoders, every byte value included
+            byte[] all = new byte[256];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = (byte) i;
+            }
+            byte[] data = rng.randomBytes(100_000);
+            boolean ok = Codec.toHex(all).equals(HexFormat.of().formatHex(all))
+                    && Codec.toHex(data).equals(HexFormat.of().formatHex(data))
+                    && Arrays.equals(Codec.fromHex(HexFormat.of().withUpperCase().formatHex(data)), data)
+                    && Arrays.equals(Codec.fromHex("0A 1b\n2c\t"), new byte[]{0x0a, 0x1b, 0x2c})
+                    && Codec.toHex(new byte[]{0x0a, 0x1b, 0x2c}, ' ').equals("0a 1b 2c")
+                    && Codec.toBase64(data).equals(Base64.getEncoder().encodeToString(data))
+                    && Arrays.equals(Codec.fromBase64(Base64.getMimeEncoder().encodeToString(data)), data);
+
+            boolean rejected = true;
+            for (String bad : new String[]{"abc", "0g", "zz", "\u00e900"}) {
+                try {
+                    Codec.fromHex(bad);
+                    rejected = false;
+                } catch (IllegalArgumentException e) {
+                    // Expected
+                }
+            }
+
+            if (ok && rejected) {
+                System.out.println("✓ Hex and Base64 match the JDK; invalid hex rejected");
+                passed++;
+            } else {
+                System.out.println("✗ Codec mismatch");
+                failed++;
+            }
+
+            // Streaming variants over a buffer-straddling size, with line breaks in the hex
+            byte[] large = rng.randomBytes(3 * 8192 + 7);
+            StringWriter hex = new StringWriter();
+            Codec.encodeHex(new ByteArrayInputStream(large), hex);
+            String wrapped = hex.toString().replaceAll("(.{76})", "$1\n");
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            Codec.decodeHex(new StringReader(wrapped), decoded);
+
+            ByteArrayOutputStream base64 = new ByteArrayOutputStream();
+            try (OutputStream encoder = Codec.base64Encoder(base64)) {
+                encoder.write(large);
+            }
+            byte[] roundTrip;
+            try (InputStream decoder = Codec.base64Decoder(new ByteArrayInputStream(base64.toByteArray()))) {
+                roundTrip = decoder.readAllBytes();
+            }
+
+            if (hex.toString().equals(Codec.toHex(large)) && Arrays.equals(decoded.toByteArray(), large)
+                    && Arrays.equals(roundTrip, large)) {
+                System.out.println("✓ Streaming hex and Base64 round-trip " + large.length + " bytes");
+                passed++;
+            } else {
+                System.out.println("✗ Streaming codec mismatch");
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e);
+            failed++;
+        }
+    }
+
+    private static void testEncryptedLog() {
+        System.out.println("\n" + "─".repeat(60));
+        System.out.println("TEST 25: Encrypted Append-Only Log");
+        System.out.println("─".repeat(60));
+
+        Path work = null;
+        try {
+            work = Files.createTempDirectory("encrypted-log");
+            Path path = work.resolve("records.log");
+            byte[] key = rng.randomBytes(16);
+
+            // 4 threads appending concurrently; record numbers come back through the futures
+            int perThread = 250;
+            byte[][] expected = new byte[4 * perThread][];
+            long commits;
+            try (EncryptedLog log = EncryptedLog.open(path, key, 16)) {
+                List<Thread> writers = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    Thread writer = new Thread(() -> {
+                        List<CompletableFuture<Long>> numbers = new ArrayList<>();
+                        List<byte[]> records = new ArrayList<>();
+                        for (int i = 0; i < perThread; i++) {
+                            byte[] record = rng.randomBytes(i % 300);
+                            records.add(record);
+                            numbers.add(log.append(record));
+                        }
+                        for (int i = 0; i < perThread; i++) {
+                            expected[(int) (long) numbers.get(i).join()] = records.get(i);
+                        }
+                    });
+                    writers.add(writer);
+                    writer.start();
+                }
+                for (Thread writer : writers) {
+                    writer.join();
+                }
+                commits = log.getCommitCount();
+            }
+
+            EncryptedLogReader reader = EncryptedLogReader.open(path, key);
+            AtomicInteger mismatches = new AtomicInteger();
+            IntStream.range(0, expected.length).parallel().forEach(i -> {
+                if (!Arrays.equals(reader.read(i), expected[i])) {
+                    mismatches.incrementAndGet();
+                }
+            });
+
+            if (reader.size() == expected.length && mismatches.get() == 0 && commits < expected.length) {
+                System.out.println("✓ " + expected.length + " concurrent appends in " + commits
+                        + " group commits, read back in parallel from the mapped file");
+                passed++;
+            } else {
+                System.out.println("✗ Log round trip failed (" + mismatches.get() + " mismatches, "
+                        + commits + " commits)");
+                failed++;
+            }
+
+            // Crash in the middle of a record: reopening cuts the torn tail and appends continue
+            try (EncryptedLog log = EncryptedLog.open(path, key)) {
+                log.append(rng.randomBytes(100)).join();
+                log.append(rng.randomBytes(100)).join();
+            }
+            // Footer length sits just before the trailing "AESI"; cut 100 bytes into the last record
+            byte[] closed = Files.readAllBytes(path);
+            long tornSize = closed.length - ByteBuffer.wrap(closed, closed.length - 8, 4).getInt() - 100;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(tornSize);
+            }
+            byte[] after = rng.randomBytes(50);
+            long recovered;
+            try (EncryptedLog log = EncryptedLog.open(path, key)) {
+                recovered = log.getRecordCount();
+                log.append(after).join();
+            }
+            EncryptedLogReader reopened = EncryptedLogReader.open(path, key);
+            boolean recoveredOk = recovered == expected.length + 1 && reopened.size() == expected.length + 2
+                    && Arrays.equals(reopened.read(expected.length + 1), after)
+                    && Arrays.equals(reopened.read(7), expected[7]);
+
+            // Tampering shows up on the affected record only
+            byte[] data = Files.readAllBytes(path);
+            data[44 + 6] ^= 0x01; // first byte after the header and record 0's frame header
+            Files.write(path, data);
+            EncryptedLogReader tampered = EncryptedLogReader.open(path, key);
+            boolean rejected = false;
+            try {
+                tampered.read(0);
+            } catch (IllegalArgumentException e) {
+                rejected = true;
+            }
+            rejected &= Arrays.equals(tampered.read(1), expected[1]);
+
+            // close() wipes the reader's key; it cannot read afterwards
+            tampered.close();
+            boolean closedRejected = false;
+            try {
+                tampered.read(1);
+            } catch (IllegalStateException e) {
+                closedRejected = true;
+            }
+
+            if (recoveredOk && rejected && closedRejected) {
+                System.out.println("✓ Torn tail recovered on reopen; tampered record rejected; closed reader refuses");
+                passed++;
+            } else {
+                System.out.println("✗ Log recovery, tamper detection or reader close failed");
+                failed++;
+            }
+
+            // Log left without a footer: a wrong key or a corrupt middle record must not truncate it
+            Path unclean = work.resolve("unclean.log");
+            try (EncryptedLog log = EncryptedLog.open(unclean, key, 4)) {
+                for (int i = 0; i < 20; i++) {
+                    log.append(rng.randomBytes(100)).join();
+                }
+            }
+            byte[] withFooter = Files.readAllBytes(unclean);
+            int footerLength = ByteBuffer.wrap(withFooter, withFooter.length - 8, 4).getInt();
+            byte[] records = Arrays.copyOf(withFooter, withFooter.length - footerLength);
+            Files.write(unclean, records);
+
+            boolean wrongKeyRejected = false;
+            try {
+                EncryptedLog.open(unclean, rng.randomBytes(16)).close();
+            } catch (IllegalArgumentException e) {
+                wrongKeyRejected = true;
+            }
+            wrongKeyRejected &= Arrays.equals(Files.readAllBytes(unclean), records);
+
+            byte[] corrupt = records.clone();
+            corrupt[44 + 3 * (6 + 116) + 10] ^= 0x01; // inside record 3 of 20
+            Files.write(unclean, corrupt);
+            boolean corruptionRejected = false;
+            try {
+                EncryptedLog.open(unclean, key).close();
+            } catch (IllegalArgumentException e) {
+                corruptionRejected = true;
+            }
+            corruptionRejected &= Arrays.equals(Files.readAllBytes(unclean), corrupt);
+
+            Files.write(unclean, records);
+            long reopenedCount;
+            boolean secondWriterRejected = false;
+            try (EncryptedLog log = EncryptedLog.open(unclean, key)) {
+                reopenedCount = log.getRecordCount();
+                // A second writer would take the same epoch and reuse IVs
+                try {
+                    EncryptedLog.open(unclean, key).close();
+                } catch (IllegalStateException e) {
+                    secondWriterRejected = true;
+                }
+            }
+
+            if (wrongKeyRejected && corruptionRejected && reopenedCount == 20) {
+                System.out.println("✓ Wrong key and mid-log corruption rejected without truncating");
+                passed++;
+            } else {
+                System.out.println("✗ Unclean log was damaged by a failed open");
+                failed++;
+            }
+
+            // Same key, same record, same offset: the per-log key keeps two logs apart
+            Path otherA = work.resolve("a.log");
+            Path otherB = work.resolve("b.log");
+            byte[] record = rng.randomBytes(64);
+            for (Path other : new Path[]{otherA, otherB}) {
+                try (EncryptedLog log = EncryptedLog.open(other, key)) {
+                    log.append(record).join();
+                }
+            }
+            byte[] sealedA = Arrays.copyOfRange(Files.readAllBytes(otherA), 44, 44 + 6 + 64 + 16);
+            byte[] sealedB = Arrays.copyOfRange(Files.readAllBytes(otherB), 44, 44 + 6 + 64 + 16);
+
+            if (secondWriterRejected && !Arrays.equals(sealedA, sealedB)) {
+                System.out.println("✓ Second writer locked out; logs under one key seal differently");
+                passed++;
+            } else {
+                System.out.println("✗ Concurrent writers or cross-log IV reuse not prevented");
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e);
+            failed++;
+        } finally {
+            deleteTree(work);
+        }
+    }
+
+    private static void testEncryptedKVStore() {
+        System.out.println("\n" + "─".repeat(60));
+        System.out.println("TEST 26: Encrypted Key-Value Store (XTS pages, CLOCK cache)");
+        System.out.println("─".repeat(60));
+
+        Path work = null;
+        try {
+            work = Files.createTempDirectory("kv-store");
+            Path path = work.resolve("store.db");
+            byte[] key = rng.randomBytes(32);
+
+            // 8 buckets and an 8-page cache force overflow chains and constant eviction
+            Map<String, byte[]> expected = new HashMap<>();
+            CacheStats stats;
+            try (EncryptedKVStore store = EncryptedKVStore.open(path, key, 4096, 8, 8 * 4096)) {
+                stats = store.getCacheStats();
+                for (int i = 0; i < 2000; i++) {
+                    byte[] value = ("SECRET-VALUE-" + i + "-").repeat(1 + i % 10).getBytes();
+                    store.put(("key-" + i).getBytes(), value);
+                    expected.put("key-" + i, value);
+                }
+                for (int i = 0; i < 2000; i += 3) {
+                    store.delete(("key-" + i).getBytes());
+                    expected.remove("key-" + i);
+                }
+                for (int i = 1; i < 2000; i += 7) {
+                    byte[] value = rng.randomBytes(i % 500);
+                    store.put(("key-" + i).getBytes(), value);
+                    expected.put("key-" + i, value);
+                }
+
+                boolean ok = store.size() == expected.size();
+                for (int i = 0; i < 2000; i++) {
+                    ok &= Arrays.equals(store.get(("key-" + i).getBytes()), expected.get("key-" + i));
+                }
+
+                // A hot key is served from the cache without another miss
+                store.get("key-1".getBytes());
+                long misses = stats.getMisses();
+                long hits = stats.getHits();
+                for (int i = 0; i < 100; i++) {
+                    store.get("key-1".getBytes());
+                }
+                boolean cached = stats.getMisses() == misses && stats.getHits() >= hits + 100
+                        && stats.getEvictions() > 0 && stats.getResidentBytes() <= stats.getCapacityBytes();
+
+                if (ok && cached) {
+                    System.out.println("✓ 2000 puts, deletes and overwrites; hot reads hit the cache ("
+                            + stats.getEvictions() + " evictions)");
+                    passed++;
+                } else {
+                    System.out.println("✗ Store contents or cache behaviour wrong: " + stats);
+                    failed++;
+                }
+            }
+
+            // Reopen: contents survive, plaintext never reached the disk, cache was wiped on close
+            String disk = new String(Files.readAllBytes(path), StandardCharsets.ISO_8859_1);
+            boolean ok = !disk.contains("SECRET-VALUE") && !disk.contains("key-1") && stats.getResidentBytes() == 0;
+            try (EncryptedKVStore store = EncryptedKVStore.open(path, key)) {
+                ok &= store.size() == expected.size();
+                for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+                    ok &= Arrays.equals(store.get(entry.getKey().getBytes()), entry.getValue());
+                }
+                ok &= store.get("key-0".getBytes()) == null;
+            }
+            boolean wrongKeyRejected = false;
+            try {
+                EncryptedKVStore.open(path, rng.randomBytes(32)).close();
+            } catch (IllegalArgumentException e) {
+                wrongKeyRejected = true;
+            }
+
+            if (ok && wrongKeyRejected) {
+                System.out.println("✓ Reopened store intact, pages encrypted on disk, wrong key rejected");
+                passed++;
+            } else {
+                System.out.println("✗ Store persistence failed");
+                failed++;
+            }
+
+            // Crash after flush(): copy the file while the store is still open and never closed
+            Path crashed = work.resolve("crashed.db");
+            Path snapshot = work.resolve("snapshot.db");
+            EncryptedKVStore live = EncryptedKVStore.open(crashed, key, 4096, 2, 4 * 4096);
+            for (int i = 0; i < 10; i++) {
+                live.put(("durable-" + i).getBytes(), ("V" + i).repeat(250).getBytes());
+            }
+            live.flush();
+            for (int i = 0; i < 50; i++) {
+                live.put(("pending-" + i).getBytes(), ("P" + i).repeat(250).getBytes());
+            }
+            Files.copy(crashed, snapshot);
+
+            boolean crashOk = true;
+            try (EncryptedKVStore store = EncryptedKVStore.open(snapshot, key, 4096, 2, 4 * 4096)) {
+                long present = 0;
+                for (int i = 0; i < 10; i++) {
+                    crashOk &= Arrays.equals(store.get(("durable-" + i).getBytes()), ("V" + i).repeat(250).getBytes());
+                    present++;
+                }
+                for (int i = 0; i < 50; i++) {
+                    byte[] value = store.get(("pending-" + i).getBytes());
+                    if (value != null) {
+                        crashOk &= Arrays.equals(value, ("P" + i).repeat(250).getBytes());
+                        present++;
+                    }
+                }
+                crashOk &= store.size() == present;
+                for (int i = 0; i < 60; i++) {
+                    store.put(("after-" + i).getBytes(), ("A" + i).repeat(250).getBytes());
+                }
+                crashOk &= store.size() == present + 60;
+                for (int i = 0; i < 10; i++) {
+                    crashOk &= store.get(("durable-" + i).getBytes()) != null;
+                }
+                for (int i = 0; i < 60; i++) {
+                    crashOk &= Arrays.equals(store.get(("after-" + i).getBytes()), ("A" + i).repeat(250).getBytes());
+                }
+            }
+            live.close();
+
+            if (crashOk) {
+                System.out.println("✓ Crash after flush: flushed keys survive and reopened store stays consistent");
+                passed++;
+            } else {
+                System.out.println("✗ Store damaged by a crash after flush");
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e);
+            failed++;
+        } finally {
+            deleteTree(work);
+        }
+    }
+
+    private static void testCompressionPipeline() {
+        System.out.println("\n" + "─".repeat(60));
+        System.out.println("TEST 27: Compress-then-Encrypt Pipeline");
+        System.out.println("─".repeat(60));
+
+        StreamEncryptor streams = new StreamEncryptor(rng, 16 * 1024);
+        GCMMode.PreparedKey key = streams.prepareKey(rng.randomBytes(32));
+        CompressionPipeline pipeline = new CompressionPipeline(streams);
+
+        // Compressible and incompressible inputs, larger than the queue holds
+        try {
+            StringBuilder log = new StringBuilder();
+            for (int i = 0; log.length() < 2_000_000; i++) {
+                log.append("2026-10-18T12:00:00Z INFO request ").append(i).append(" served in 3 ms\n");
+            }
+            byte[] text = log.toString().getBytes(StandardCharsets.US_ASCII);
+            byte[] noise = rng.randomBytes(1_000_000);
+
+            boolean ok = true;
+            long textSealed = 0;
+            CompressionPipeline.Result last = null;
+            for (byte[] data : new byte[][]{new byte[0], text, noise}) {
+                ByteArrayOutputStream sealed = new ByteArrayOutputStream();
+                CompressionPipeline.Result sealing = pipeline.encrypt(new ByteArrayInputStream(data), sealed, key);
+                ByteArrayOutputStream opened = new ByteArrayOutputStream();
+                last = pipeline.decrypt(new ByteArrayInputStream(sealed.toByteArray()), opened, key);
+                ok &= Arrays.equals(opened.toByteArray(), data);
+                ok &= sealing.first.bytesIn == data.length && sealing.second.bytesOut == sealed.size();
+                ok &= sealing.first.bytesOut == sealing.second.bytesIn;
+                ok &= last.first.bytesIn == sealed.size() && last.second.bytesOut == data.length;
+                if (data == text) {
+                    textSealed = sealed.size();
+                }
+            }
+
+            if (ok && textSealed < text.length / 5) {
+                System.out.println("✓ Round-trips; log text sealed to " + textSealed + " of " + text.length + " bytes");
+                System.out.println("  " + last.first);
+                System.out.println("  " + last.second);
+                passed++;
+            } else {
+                System.out.println("✗ Pipeline round-trip or stage counters failed");
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e);
+            failed++;
+        }
+
+        // Tampered chunk and a failing output stream both end the run with an error
+        try {
+            ByteArrayOutputStream sealed = new ByteArrayOutputStream();
+            pipeline.encrypt(new ByteArrayInputStream(rng.randomBytes(300_000)), sealed, key);
+            byte[] tampered = sealed.toByteArray();
+            tampered[tampered.length - 40] ^= 1;
+            boolean tamperRejected = false;
+            try {
+                pipeline.decrypt(new ByteArrayInputStream(tampered), new ByteArrayOutputStream(), key);
+            } catch (IllegalArgumentException e) {
+                tamperRejected = true;
+            }
+
+            OutputStream broken = new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    throw new IOException("disk full");
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    throw new IOException("disk full");
+                }
+            };
+            boolean writeFailureReported = false;
+            try {
+                pipeline.encrypt(new ByteArrayInputStream(rng.randomBytes(2_000_000)), broken, key);
+            } catch (IOException e) {
+                writeFailureReported = e.getMessage().equals("disk full");
+            }
+
+            // A failing input must not be sealed as a shorter but valid stream
+            InputStream unreadable = new InputStream() {
+                private int remaining = 200_000;
+
+                @Override
+                public int read() throws IOException {
+                    if (remaining-- <= 0) {
+                        throw new IOException("read error");
+                    }
+                    return 'x';
+                }
+            };
+            ByteArrayOutputStream truncated = new ByteArrayOutputStream();
+            boolean readFailureReported = false;
+            try {
+                pipeline.encrypt(unreadable, truncated, key);
+            } catch (IOException e) {
+                readFailureReported = e.getMessage().equals("read error");
+            }
+
+            if (tamperRejected && writeFailureReported && readFailureReported) {
+                System.out.println("✓ Tampered chunk rejected; input and output failures stop both stages");
+                passed++;
+            } else {
+                System.out.println("✗ Pipeline error handling failed");
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e);
+            failed++;
+        }
+    }
+
+    private static void testOffHeapKey() {
+        System.out.println("\n" + "─".repeat(60));
+        System.out.println("TEST 28: Off-Heap Prepared Key");
+        System.out.println("─".repeat(60));
+
+        // Same results as the heap key for every key size, in both directions and under GCM
+        try {
+            boolean ok = true;
+            for (KeySize size : KeySize.values()) {
+                byte[] key = rng.randomBytes(size.getBytesAmount());
+                AES heap = new AES(key, size);
+                try (OffHeapAES offHeap = new OffHeapAES(key, size)) {
+                    for (int i = 0; i < 100; i++) {
+                        byte[] block = rng.randomBytes(16);
+                        byte[] sealed = offHeap.encrypt(block);
+                        ok &= Arrays.equals(sealed, heap.encrypt(block));
+                        ok &= Arrays.equals(offHeap.decrypt(sealed), block);
+                    }
+
+                    GCMMode gcm = new GCMMode(new AESBlockCipher(), rng);
+                    byte[] iv = rng.randomBytes(12);
+                    byte[] message = rng.randomBytes(1000);
+                    byte[] sealed = gcm.encryptWithIV(message, gcm.prepareKey(offHeap), iv, null);
+                    ok &= Arrays.equals(sealed, gcm.encryptWithIV(message, key, iv, null));
+                    ok &= Arrays.equals(gcm.decryptWithIV(sealed, gcm.prepareKey(offHeap), iv, null), message);
+                }
+            }
+
+            if (ok) {
+                System.out.println("✓ Off-heap key matches the heap key (AES-128/192/256, GCM)");
+                passed++;
+            } else {
+                System.out.println("✗ Off-heap key output differs");
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e);
+            failed++;
+        }
+
+        // close() zeroes the round keys and blocks further use
+        try {
+            OffHeapAES key = new AESBlockCipher().prepareOffHeapKey(rng.randomBytes(32));
+            Field field = OffHeapAES.class.getDeclaredField("roundKeys");
+            field.setAccessible(true);
+            ByteBuffer roundKeys = (ByteBuffer) field.get(key);
+            boolean direct = roundKeys.isDirect();
+
+            key.close();
+            boolean zeroed = true;
+            for (int i = 0; i < roundKeys.capacity(); i++) {
+                zeroed &= roundKeys.get(i) == 0;
+            }
+            boolean rejected = false;
+            try {
+                key.encrypt(new byte[16]);
+            } catch (IllegalStateException e) {
+                rejected = true;
+            }
+
+            if (direct && zeroed && rejected && key.isClosed()) {
+                System.out.println("✓ Round keys off-heap, zeroed on close, closed key rejected");
+                passed++;
+            } else {
+                System.out.println("✗ Off-heap key zeroization failed");
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e);
+            failed++;
+        }
+
+        // GCM's H and GHASH table stay on the heap; PreparedKey.close() zeroes them
+        try {
+            GCMMode gcm = new GCMMode(aes, rng, 16, 16);
+            GCMMode.PreparedKey prepared = gcm.prepareKey(rng.randomBytes(16));
+            gcm.encryptWithIV(new byte[32], prepared, rng.randomBytes(16), null);
+            Field hField = GCMMode.PreparedKey.class.getDeclaredField("h");
+            Field tableField = GCMMode.PreparedKey.class.getDeclaredField("hashTable");
+            Field cacheField = GCMMode.PreparedKey.class.getDeclaredField("j0Cache");
+            hField.setAccessible(true);
+            tableField.setAccessible(true);
+            cacheField.setAccessible(true);
+            byte[] h = (byte[]) hField.get(prepared);
+            long[] table = (long[]) tableField.get(prepared);
+
+            prepared.close();
+            boolean zeroed = Arrays.equals(new byte[16], h) && Arrays.equals(new long[table.length], table)
+                    && ((Map<?, ?>) cacheField.get(prepared)).isEmpty();
+            boolean rejected = false;
+            try {
+                gcm.encryptWithIV(new byte[32], prepared, rng.randomBytes(16), null);
+            } catch (IllegalStateException e) {
+                rejected = true;
+            }
+
+            if (zeroed && rejected && prepared.isClosed()) {
+                System.out.println("✓ GCM PreparedKey close() zeroes H, GHASH table and J0 cache");
+                passed++;
+            } else {
+                System.out.println("✗ GCM PreparedKey zeroization failed");
+                failed++;
+            }
+        } catch (Exception e) {
+            System.out.println("✗ Error: " + e);
+            failed++;
+        }
+    }
+
+    // ==================== UTILITIES ====================
+
+    /**
+     * J0 cache of the key most recently prepared by a GCMMode's byte[]-key methods
+     */
+    private static Map<?, ?> j0Cache(GCMMode gcm) throws ReflectiveOperationException {
+        Field slots = GCMMode.class.getDeclaredField("preparedCache");
+        slots.setAccessible(true);
+        Object prepared = ((Object[]) slots.get(gcm))[0];
+        Field cache = GCMMode.PreparedKey.class.getDeclaredField("j0Cache");
+        cache.setAccessible(true);
+        return (Map<?, ?>) cache.get(prepared);
+    }
+
+    private static void deleteTree(Path root) {
+        if (root == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (Exception e) {
+            // Best effort
         }
-        return sb.toString();
     }
 }
\ No newline at end of file